@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.frameworkadmin.equinox;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.jar.JarFile;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.frameworkadmin.BundleInfo;
+import org.eclipse.equinox.internal.frameworkadmin.utils.Utils;
+import org.eclipse.osgi.service.resolver.State;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Caches the manifest headers of bundles used to compose an
+ * {@link EquinoxBundlesState}, keyed by bundle location and validated against
+ * the last modified time and size of the bundle. The cache is persisted in the
+ * data area of this bundle so that loading a manipulator only needs to read the
+ * manifests of bundles that changed since the last time.
+ * <p>
+ * When {@link #PROP_REUSE_RESOLVED_STATE} is set, the cache additionally keeps
+ * the last resolved {@link State}. A new state for the same platform properties
+ * is then either shared as is (when only start levels or started flags
+ * changed) or derived from a copy of it by removing and adding the changed
+ * bundles.
+ * </p>
+ */
+class BundleDescriptionCache {
+	static final String PROP_REUSE_RESOLVED_STATE = "eclipse.frameworkadmin.reuseResolvedState"; //$NON-NLS-1$
+	private static final String CACHE_FILE = "bundleDescriptions.cache"; //$NON-NLS-1$
+	private static final int FORMAT_VERSION = 1;
+	private static final int NO_MANIFEST = -1;
+
+	// one cache per bundle context, so that each framework keeps its own data file
+	private static final Map<BundleContext, BundleDescriptionCache> instances = new WeakHashMap<>();
+
+	private static class Entry {
+		final long lastModified;
+		final long length;
+		final Map<String, String> manifest;
+
+		Entry(long lastModified, long length, Map<String, String> manifest) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.manifest = manifest;
+		}
+	}
+
+	/**
+	 * A resolved state together with the platform properties and the bundle
+	 * stamps it was composed from.
+	 */
+	static class Snapshot {
+		final Map<Object, Object> platformProperties;
+		final LinkedHashMap<String, String> stamps;
+		final State state;
+
+		Snapshot(Map<Object, Object> platformProperties, LinkedHashMap<String, String> stamps, State state) {
+			this.platformProperties = platformProperties;
+			this.stamps = stamps;
+			this.state = state;
+		}
+
+		boolean isCompatible(Map<Object, Object> properties) {
+			return platformProperties.equals(properties);
+		}
+
+		boolean isUnchanged(LinkedHashMap<String, String> currentStamps) {
+			return new ArrayList<>(stamps.entrySet()).equals(new ArrayList<>(currentStamps.entrySet()));
+		}
+	}
+
+	private final File cacheFile;
+	private final Map<String, Entry> entries = new HashMap<>();
+	private boolean dirty;
+	private Snapshot snapshot;
+	private final boolean reuseResolvedState;
+	private int readCount;
+
+	/**
+	 * Returns the cache of the given bundle context. Without a context the
+	 * returned cache is neither shared nor persisted.
+	 */
+	static BundleDescriptionCache getInstance(BundleContext context) {
+		if (context == null)
+			return new BundleDescriptionCache(null, false);
+		synchronized (instances) {
+			return instances.computeIfAbsent(context, c -> new BundleDescriptionCache(c.getDataFile(CACHE_FILE),
+					Boolean.parseBoolean(c.getProperty(PROP_REUSE_RESOLVED_STATE))));
+		}
+	}
+
+	BundleDescriptionCache(File cacheFile, boolean reuseResolvedState) {
+		this.cacheFile = cacheFile;
+		this.reuseResolvedState = reuseResolvedState;
+		load();
+	}
+
+	boolean isReuseResolvedState() {
+		return reuseResolvedState;
+	}
+
+	/**
+	 * Returns the OSGi manifest of the bundle at the given location, reading it
+	 * from disk only if the bundle changed since it was cached.
+	 */
+	synchronized Dictionary<String, String> getManifest(URI location) {
+		File stampFile = getStampFile(location);
+		if (stampFile == null)
+			return Utils.getOSGiManifest(location);
+		String key = location.toString();
+		long lastModified = stampFile.lastModified();
+		long length = stampFile.length();
+		Entry entry = entries.get(key);
+		if (entry == null || entry.lastModified != lastModified || entry.length != length || lastModified == 0) {
+			Dictionary<String, String> manifest = Utils.getOSGiManifest(location);
+			readCount++;
+			Map<String, String> headers = null;
+			if (manifest != null) {
+				headers = new HashMap<>(manifest.size());
+				for (Enumeration<String> keys = manifest.keys(); keys.hasMoreElements();) {
+					String header = keys.nextElement();
+					headers.put(header, manifest.get(header));
+				}
+			}
+			entry = new Entry(lastModified, length, headers);
+			entries.put(key, entry);
+			dirty = true;
+		}
+		return entry.manifest == null ? null : new Hashtable<>(entry.manifest);
+	}
+
+	/**
+	 * Returns the stamps of the given bundles in order, or <code>null</code> if
+	 * some bundle cannot be stamped and the state can therefore not be reused.
+	 */
+	LinkedHashMap<String, String> getStamps(BundleInfo[] bInfos) {
+		LinkedHashMap<String, String> result = new LinkedHashMap<>();
+		for (BundleInfo bInfo : bInfos) {
+			URI location = bInfo.getLocation();
+			File stampFile = location == null ? null : getStampFile(location);
+			if (stampFile == null)
+				return null;
+			result.put(location.toString(), stampFile.lastModified() + ":" + stampFile.length()); //$NON-NLS-1$
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of manifests read from disk by this cache.
+	 */
+	synchronized int getReadCount() {
+		return readCount;
+	}
+
+	synchronized Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	synchronized void setSnapshot(Snapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	private static File getStampFile(URI location) {
+		if (!"file".equals(location.getScheme())) //$NON-NLS-1$
+			return null;
+		File file = URIUtil.toFile(location);
+		if (file == null)
+			return null;
+		if (file.isDirectory()) {
+			// the directory time stamp does not change when the manifest is edited
+			File manifest = new File(file, JarFile.MANIFEST_NAME);
+			return manifest.isFile() ? manifest : file;
+		}
+		return file;
+	}
+
+	private void load() {
+		if (cacheFile == null || !cacheFile.isFile())
+			return;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (in.readInt() != FORMAT_VERSION)
+				return;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String location = readString(in);
+				long lastModified = in.readLong();
+				long length = in.readLong();
+				int headerCount = in.readInt();
+				Map<String, String> headers = null;
+				if (headerCount != NO_MANIFEST) {
+					headers = new HashMap<>(headerCount);
+					for (int j = 0; j < headerCount; j++)
+						headers.put(readString(in), readString(in));
+				}
+				entries.put(location, new Entry(lastModified, length, headers));
+			}
+		} catch (IOException e) {
+			// a corrupt cache is simply rebuilt
+			entries.clear();
+			Log.warn(this, "load()", e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Writes the cache back to disk if bundles were read since it was loaded.
+	 * Entries of bundles that no longer exist are dropped.
+	 */
+	synchronized void save() {
+		if (!dirty || cacheFile == null)
+			return;
+		for (Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator(); iter.hasNext();) {
+			File stampFile = getStampFile(URI.create(iter.next().getKey()));
+			if (stampFile == null || !stampFile.exists())
+				iter.remove();
+		}
+		File tempFile = new File(cacheFile.getParentFile(), CACHE_FILE + ".tmp"); //$NON-NLS-1$
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				writeString(out, mapEntry.getKey());
+				out.writeLong(entry.lastModified);
+				out.writeLong(entry.length);
+				if (entry.manifest == null) {
+					out.writeInt(NO_MANIFEST);
+					continue;
+				}
+				out.writeInt(entry.manifest.size());
+				for (Map.Entry<String, String> header : entry.manifest.entrySet()) {
+					writeString(out, header.getKey());
+					writeString(out, header.getValue());
+				}
+			}
+		} catch (IOException e) {
+			Log.warn(this, "save()", e); //$NON-NLS-1$
+			tempFile.delete();
+			return;
+		}
+		cacheFile.delete();
+		if (tempFile.renameTo(cacheFile))
+			dirty = false;
+	}
+
+	// DataOutput.writeUTF is limited to 64k which large Export-Package headers exceed
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
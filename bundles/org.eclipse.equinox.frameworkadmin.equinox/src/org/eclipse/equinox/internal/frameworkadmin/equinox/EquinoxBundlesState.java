@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -153,11 +153,14 @@ public class EquinoxBundlesState implements BundlesState {
 		if (bundleInfo == null || bundleInfo.getLocation() == null)
 			return null;
 		URI bundleLocation = bundleInfo.getLocation();
+		// only open the manifest of bundles that can be the framework
+		String path = bundleLocation.getPath();
+		if (path == null || path.indexOf(EquinoxConstants.FW_SYMBOLIC_NAME) <= 0)
+			return null;
 		try {
 			String[] clauses = Utils.getClausesManifestMainAttributes(bundleLocation, Constants.BUNDLE_SYMBOLICNAME);
-			if (bundleLocation.getPath().indexOf(EquinoxConstants.FW_SYMBOLIC_NAME) > 0)
-				if (EquinoxConstants.PERSISTENT_DIR_NAME.equals(Utils.getPathFromClause(clauses[0])))
-					return new File(bundleLocation);
+			if (EquinoxConstants.PERSISTENT_DIR_NAME.equals(Utils.getPathFromClause(clauses[0])))
+				return new File(bundleLocation);
 		} catch (RuntimeException e) {
 			e.printStackTrace();
 		}
@@ -219,6 +222,12 @@ public class EquinoxBundlesState implements BundlesState {
 	long maxId = DEFAULT_TIMESTAMP;
 	StateObjectFactory soFactory = null;
 	State state = null;
+	/**
+	 * <code>true</code> while {@link #state} is the resolved snapshot held by the
+	 * {@link BundleDescriptionCache}. It is copied before being modified.
+	 */
+	private boolean sharedState = false;
+	private final BundleDescriptionCache descriptionCache;
 
 	/**
 	 * Map of URI->BundleDescription, where the key is the bundle location.
@@ -241,6 +250,7 @@ public class EquinoxBundlesState implements BundlesState {
 		this.context = context;
 		this.fwAdmin = fwAdmin;
 		this.platformAdmin = admin;
+		this.descriptionCache = BundleDescriptionCache.getInstance(context);
 		// copy manipulator object for avoiding modifying the parameters of the
 		// manipulator.
 		this.manipulator = fwAdmin.getManipulator();
@@ -259,6 +269,7 @@ public class EquinoxBundlesState implements BundlesState {
 		this.context = context;
 		this.fwAdmin = fwAdmin;
 		this.platformAdmin = admin;
+		this.descriptionCache = BundleDescriptionCache.getInstance(context);
 		// copy manipulator object for avoiding modifying the parameters of the
 		// manipulator.
 		this.manipulator = fwAdmin.getManipulator();
@@ -291,6 +302,7 @@ public class EquinoxBundlesState implements BundlesState {
 		this.setFwJar(fwJar);
 		composeState(configData.getBundles(), properties, null);
 		resolve(true);
+		descriptionCache.save();
 	}
 
 	/**
@@ -321,7 +333,7 @@ public class EquinoxBundlesState implements BundlesState {
 			this.manipulator.getConfigData().setBundles(infos);
 			return false;
 		}
-		setPlatformPropertiesToState(props);
+		Properties stateProperties = setPlatformPropertiesToState(props);
 		setPlatformProperties(state);
 
 		try {
@@ -351,6 +363,9 @@ public class EquinoxBundlesState implements BundlesState {
 				bInfos = newBundleInfos;
 			}
 		}
+		LinkedHashMap<String, String> stamps = descriptionCache.isReuseResolvedState() ? descriptionCache.getStamps(bInfos) : null;
+		if (stamps != null && reuseSnapshot(bInfos, stateProperties, stamps))
+			return true;
 		for (int j = 0; j < bInfos.length; j++) {
 			if (DEBUG)
 				Log.debug(this, "composeExpectedState()", "bInfos[" + j + "]=" + bInfos[j]); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -362,9 +377,86 @@ public class EquinoxBundlesState implements BundlesState {
 				Log.error("BundleInfo:" + bInfos[j], e); //$NON-NLS-1$
 			}
 		}
+		if (stamps != null) {
+			resolve(true);
+			descriptionCache.setSnapshot(new BundleDescriptionCache.Snapshot(new HashMap<>(stateProperties), stamps, state));
+			sharedState = true;
+		}
 		return true;
 	}
 
+	/**
+	 * Composes the state from the resolved snapshot of a previous composition with
+	 * the same platform properties. If none of the bundles changed the snapshot is
+	 * shared and no resolution is needed, otherwise a copy of it is updated with
+	 * the changed bundles only.
+	 *
+	 * @return <code>false</code> if there is no usable snapshot
+	 */
+	private boolean reuseSnapshot(BundleInfo[] bInfos, Properties stateProperties, LinkedHashMap<String, String> stamps) {
+		BundleDescriptionCache.Snapshot snapshot = descriptionCache.getSnapshot();
+		if (snapshot == null || !snapshot.isCompatible(stateProperties))
+			return false;
+		if (snapshot.isUnchanged(stamps)) {
+			state = snapshot.state;
+			sharedState = true;
+		} else {
+			state = copyState(snapshot.state);
+			for (BundleDescription description : state.getBundles()) {
+				String previous = snapshot.stamps.get(description.getLocation());
+				if (previous == null || !previous.equals(stamps.get(description.getLocation())))
+					state.removeBundle(description);
+			}
+			sharedState = false;
+		}
+		locationStateIndex.clear();
+		nameVersionStateIndex.clear();
+		createStateIndexes();
+		maxId = state.getHighestBundleId();
+		Set<URI> added = new HashSet<>();
+		for (BundleInfo bInfo : bInfos) {
+			try {
+				BundleDescription existing = getBundleByLocation(bInfo.getLocation());
+				if (existing == null) {
+					installBundle(bInfo);
+				} else if (added.add(bInfo.getLocation())) {
+					bInfo.setBundleId(existing.getBundleId());
+					manipulator.getConfigData().addBundle(bInfo);
+				}
+			} catch (RuntimeException e) {
+				Log.error("BundleInfo:" + bInfo, e); //$NON-NLS-1$
+			}
+		}
+		if (!sharedState) {
+			resolve(true);
+			descriptionCache.setSnapshot(new BundleDescriptionCache.Snapshot(new HashMap<>(stateProperties), stamps, state));
+			sharedState = true;
+		}
+		return true;
+	}
+
+	private State copyState(State original) {
+		State copy = soFactory.createState(original);
+		copy.setPlatformProperties(original.getPlatformProperties());
+		if (copy.getResolver() == null)
+			copy.setResolver(platformAdmin.createResolver());
+		return copy;
+	}
+
+	/**
+	 * Replaces a state shared with the {@link BundleDescriptionCache} by a private
+	 * copy before it gets modified.
+	 */
+	private void detachState() {
+		if (!sharedState)
+			return;
+		state = copyState(state);
+		sharedState = false;
+		locationStateIndex.clear();
+		nameVersionStateIndex.clear();
+		createStateIndexes();
+	}
+
 	private BundleInfo convertSystemBundle(BundleDescription toConvert) {
 		// Converting the System Bundle
 		boolean markedAsStarted = false;
@@ -560,7 +652,7 @@ public class EquinoxBundlesState implements BundlesState {
 		if (getBundleByLocation(realLocation) != null)
 			return;
 
-		Dictionary<String, String> manifest = Utils.getOSGiManifest(realLocation);
+		Dictionary<String, String> manifest = descriptionCache.getManifest(realLocation);
 		if (manifest == null)
 			return;
 
@@ -573,6 +665,7 @@ public class EquinoxBundlesState implements BundlesState {
 		if (getBundleByNameVersion(newSymbolicName, newVersion) != null)
 			return;
 
+		detachState();
 		try {
 			bInfo.setBundleId(++maxId);
 			BundleDescription newBundleDescription = soFactory.createBundleDescription(state, manifest,
@@ -605,6 +698,9 @@ public class EquinoxBundlesState implements BundlesState {
 
 	@Override
 	public void resolve(boolean increment) {
+		// a shared snapshot is already resolved and must not be touched
+		if (sharedState && state.isResolved())
+			return;
 		state.resolve(increment);
 	}
 
@@ -634,7 +730,7 @@ public class EquinoxBundlesState implements BundlesState {
 	 * set platfromProperties required to compose state object into
 	 * platformProperties of this state.
 	 */
-	private void setPlatformPropertiesToState(Dictionary<Object, Object> props) {
+	private Properties setPlatformPropertiesToState(Dictionary<Object, Object> props) {
 		Properties platformProperties = setDefaultPlatformProperties();
 
 		for (Enumeration<Object> enumeration = props.keys(); enumeration.hasMoreElements();) {
@@ -649,6 +745,7 @@ public class EquinoxBundlesState implements BundlesState {
 		// TODO ignore uses directive for resolution here
 		platformProperties.put("osgi.resolver.usesMode", "ignore"); //$NON-NLS-1$ //$NON-NLS-2$
 		state.setPlatformProperties(platformProperties);
+		return platformProperties;
 	}
 
 	private void setStateObjectFactory() {
@@ -699,8 +796,9 @@ public class EquinoxBundlesState implements BundlesState {
 			id = bundle.getBundleId();
 
 		if (id != DEFAULT_TIMESTAMP) {
+			detachState();
 			try {
-				Dictionary<String, String> manifest = Utils.getOSGiManifest(bInfo.getLocation());
+				Dictionary<String, String> manifest = descriptionCache.getManifest(bInfo.getLocation());
 				if (manifest == null) {
 					Log.warn(this, "uninstallBundle(BundleInfo)", //$NON-NLS-1$
 							NLS.bind(Messages.exception_bundleManifest, bInfo.getLocation()));
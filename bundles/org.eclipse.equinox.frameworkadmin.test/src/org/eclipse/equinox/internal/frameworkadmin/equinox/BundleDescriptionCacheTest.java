@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.frameworkadmin.equinox;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.*;
+import java.util.jar.*;
+import org.eclipse.equinox.frameworkadmin.BundleInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.BundleContext;
+
+public class BundleDescriptionCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCacheHit() throws IOException {
+		URI bundle = createBundle("a", "1.0.0").toURI();
+		BundleDescriptionCache cache = new BundleDescriptionCache(new File(folder.getRoot(), "cache"), false);
+		assertEquals("a", cache.getManifest(bundle).get("Bundle-SymbolicName"));
+		assertEquals(1, cache.getReadCount());
+		assertEquals("a", cache.getManifest(bundle).get("Bundle-SymbolicName"));
+		assertEquals(1, cache.getReadCount());
+	}
+
+	@Test
+	public void testInvalidation() throws IOException {
+		File jar = createBundle("a", "1.0.0");
+		BundleDescriptionCache cache = new BundleDescriptionCache(new File(folder.getRoot(), "cache"), false);
+		cache.getManifest(jar.toURI());
+
+		// replaced in place with a different size
+		createBundle("a", "1.0.0.qualifier");
+		assertEquals("1.0.0.qualifier", cache.getManifest(jar.toURI()).get("Bundle-Version"));
+		assertEquals(2, cache.getReadCount());
+
+		// same size, different time stamp
+		assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+		cache.getManifest(jar.toURI());
+		assertEquals(3, cache.getReadCount());
+	}
+
+	@Test
+	public void testPersistence() throws IOException {
+		File cacheFile = new File(folder.getRoot(), "cache");
+		URI a = createBundle("a", "1.0.0").toURI();
+		File b = createBundle("b", "1.0.0");
+		BundleDescriptionCache cache = new BundleDescriptionCache(cacheFile, false);
+		cache.getManifest(a);
+		cache.getManifest(b.toURI());
+		cache.save();
+		assertTrue(cacheFile.isFile());
+
+		cache = new BundleDescriptionCache(cacheFile, false);
+		assertEquals("a", cache.getManifest(a).get("Bundle-SymbolicName"));
+		assertEquals(0, cache.getReadCount());
+
+		// entries of deleted bundles are dropped on save
+		assertTrue(b.delete());
+		cache.getManifest(createBundle("c", "1.0.0").toURI());
+		cache.save();
+		cache = new BundleDescriptionCache(cacheFile, false);
+		assertNull(cache.getManifest(b.toURI()));
+		assertEquals(1, cache.getReadCount());
+	}
+
+	@Test
+	public void testInstancePerContext() throws IOException {
+		BundleContext first = createContext(folder.newFolder("first"), null);
+		BundleContext second = createContext(folder.newFolder("second"), "true");
+		BundleDescriptionCache cache = BundleDescriptionCache.getInstance(first);
+		assertSame(cache, BundleDescriptionCache.getInstance(first));
+		assertNotSame(cache, BundleDescriptionCache.getInstance(second));
+		assertFalse(cache.isReuseResolvedState());
+		assertTrue(BundleDescriptionCache.getInstance(second).isReuseResolvedState());
+
+		cache.getManifest(createBundle("a", "1.0.0").toURI());
+		cache.save();
+		assertTrue(first.getDataFile("bundleDescriptions.cache").isFile());
+		assertFalse(second.getDataFile("bundleDescriptions.cache").exists());
+	}
+
+	@Test
+	public void testSnapshotReuse() throws IOException {
+		File a = createBundle("a", "1.0.0");
+		File b = createBundle("b", "1.0.0");
+		BundleInfo[] bInfos = {new BundleInfo(a.toURI()), new BundleInfo(b.toURI())};
+		BundleDescriptionCache cache = new BundleDescriptionCache(new File(folder.getRoot(), "cache"), true);
+		Map<Object, Object> properties = Map.of("osgi.os", "linux");
+		LinkedHashMap<String, String> stamps = cache.getStamps(bInfos);
+		cache.setSnapshot(new BundleDescriptionCache.Snapshot(new HashMap<>(properties), stamps, null));
+
+		BundleDescriptionCache.Snapshot snapshot = cache.getSnapshot();
+		assertTrue(snapshot.isCompatible(new HashMap<>(properties)));
+		assertFalse(snapshot.isCompatible(Map.of("osgi.os", "win32")));
+		assertTrue(snapshot.isUnchanged(cache.getStamps(bInfos)));
+		// the order of the bundles is part of the state
+		assertFalse(snapshot.isUnchanged(cache.getStamps(new BundleInfo[] {bInfos[1], bInfos[0]})));
+
+		createBundle("b", "1.0.0.qualifier");
+		LinkedHashMap<String, String> changed = cache.getStamps(bInfos);
+		assertFalse(snapshot.isUnchanged(changed));
+		assertEquals(stamps.get(a.toURI().toString()), changed.get(a.toURI().toString()));
+
+		// bundles which are not files cannot be stamped
+		assertNull(cache.getStamps(new BundleInfo[] {new BundleInfo(URI.create("http://example.com/c.jar"))}));
+	}
+
+	private File createBundle(String symbolicName, String version) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue("Bundle-ManifestVersion", "2");
+		attributes.putValue("Bundle-SymbolicName", symbolicName);
+		attributes.putValue("Bundle-Version", version);
+		File jar = new File(folder.getRoot(), symbolicName + ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+			// manifest only
+		}
+		return jar;
+	}
+
+	private static BundleContext createContext(File dataArea, String reuseResolvedState) {
+		return (BundleContext) Proxy.newProxyInstance(BundleDescriptionCacheTest.class.getClassLoader(),
+				new Class<?>[] {BundleContext.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getDataFile":
+							return new File(dataArea, (String) args[0]);
+						case "getProperty":
+							return BundleDescriptionCache.PROP_REUSE_RESOLVED_STATE.equals(args[0]) ? reuseResolvedState : null;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015, 2022 Mykola Nikishov and others.
+ * Copyright (c) 2015, 2024 Mykola Nikishov and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,10 +14,16 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.artifact.processors.checksum;
 
-import java.io.*;
-import java.security.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.Messages;
@@ -32,6 +38,7 @@ import org.eclipse.osgi.util.NLS;
 public class ChecksumUtilities {
 
 	private static final String ARTIFACT_CHECKSUMS_POINT = "org.eclipse.equinox.p2.artifact.repository.artifactChecksums"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 64 * 1024;
 
 	/**
 	 * Instances of checksum verifiers applicable for the artifact descriptor
@@ -108,7 +115,76 @@ public class ChecksumUtilities {
 			Collection<String> checksumsToSkip) {
 		MultiStatus status = new MultiStatus(Activator.ID, IStatus.OK,
 				NLS.bind(Messages.calculateChecksum_file, pathOnDisk.getAbsolutePath()), null);
-		Map<ChecksumProducer, MessageDigest> digestMap = new HashMap<>();
+		List<ChecksumProducer> producers = getChecksumProducers(checksumsToSkip, status);
+		calculateChecksums(pathOnDisk, producers, checksums, status);
+		return status;
+	}
+
+	/**
+	 * Calculates the checksums of several files. Each file is read once for all
+	 * the checksums and up to <code>parallelism</code> files are read
+	 * concurrently. Caller is responsible for checking the returned status and
+	 * decide if problems are fatal or not.
+	 *
+	 * @param files files to calculate checksums for
+	 * @param checksums receives the calculated checksums of each file
+	 * @param parallelism the number of files to read concurrently
+	 * @return status, containing the status of each file in the given order
+	 */
+	public static IStatus calculateChecksums(List<File> files, Map<File, Map<String, String>> checksums,
+			Collection<String> checksumsToSkip, int parallelism) {
+		MultiStatus status = new MultiStatus(Activator.ID, IStatus.OK, Messages.calculateChecksum_files, null);
+		List<ChecksumProducer> producers = getChecksumProducers(checksumsToSkip, status);
+		int count = files.size();
+		MultiStatus[] fileStatuses = new MultiStatus[count];
+		List<Map<String, String>> fileChecksums = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			fileStatuses[i] = new MultiStatus(Activator.ID, IStatus.OK,
+					NLS.bind(Messages.calculateChecksum_file, files.get(i).getAbsolutePath()), null);
+			fileChecksums.add(new HashMap<>());
+		}
+		if (parallelism <= 1 || count <= 1) {
+			for (int i = 0; i < count; i++)
+				calculateChecksums(files.get(i), producers, fileChecksums.get(i), fileStatuses[i]);
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, count), runnable -> {
+				Thread thread = new Thread(runnable, "Checksum Calculator"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			});
+			try {
+				List<Future<?>> futures = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) {
+					int index = i;
+					futures.add(executor.submit(() -> calculateChecksums(files.get(index), producers,
+							fileChecksums.get(index), fileStatuses[index])));
+				}
+				for (Future<?> future : futures)
+					future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				status.add(Status.CANCEL_STATUS);
+				return status;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			status.add(fileStatuses[i]);
+			checksums.put(files.get(i), fileChecksums.get(i));
+		}
+		return status;
+	}
+
+	private static List<ChecksumProducer> getChecksumProducers(Collection<String> checksumsToSkip, MultiStatus status) {
+		List<ChecksumProducer> producers = new ArrayList<>();
 		for (IConfigurationElement checksumVerifierConfiguration : ChecksumUtilities
 				.getChecksumComparatorConfigurations()) {
 			String id = checksumVerifierConfiguration.getAttribute("id"); //$NON-NLS-1$
@@ -119,43 +195,62 @@ public class ChecksumUtilities {
 			String providerName = checksumVerifierConfiguration.getAttribute("providerName"); //$NON-NLS-1$
 			try {
 				ChecksumProducer producer = new ChecksumProducer(id, algorithm, providerName);
-				digestMap.put(producer, producer.getMessageDigest());
+				producer.getMessageDigest();
+				producers.add(producer);
 			} catch (GeneralSecurityException e) {
 				String message = NLS.bind(Messages.calculateChecksum_providerError,
 						new Object[] { id, algorithm, providerName });
 				status.add(new Status(IStatus.ERROR, Activator.ID, message, e));
 			}
 		}
-		if (digestMap.isEmpty()) {
-			return status;
+		return producers;
+	}
+
+	/**
+	 * Reads the file once and feeds every block to all the digests.
+	 */
+	private static void calculateChecksums(File pathOnDisk, List<ChecksumProducer> producers,
+			Map<String, String> checksums, MultiStatus status) {
+		if (producers.isEmpty()) {
+			return;
 		}
-		try {
-			// chain all streams together
-			InputStream stream = new FileInputStream(pathOnDisk);
+		// the producers are shared between threads, every file gets its own digests
+		MessageDigest[] digests = new MessageDigest[producers.size()];
+		for (int i = 0; i < digests.length; i++) {
+			ChecksumProducer producer = producers.get(i);
 			try {
-				for (MessageDigest md : digestMap.values()) {
-					stream = new DigestInputStream(stream, md);
-				}
-				// read all bytes and discard them
-				stream.transferTo(OutputStream.nullOutputStream());
-			} finally {
-				stream.close();
+				digests[i] = ChecksumProducer.getMessageDigest(producer.getAlgorithm(), producer.getProviderName());
+			} catch (GeneralSecurityException e) {
+				String message = NLS.bind(Messages.calculateChecksum_providerError,
+						new Object[] { producer.getId(), producer.getAlgorithm(), producer.getProviderName() });
+				status.add(new Status(IStatus.ERROR, Activator.ID, message, e));
+				return;
 			}
-			// now all digest contains the required data
-			for (var entry : digestMap.entrySet()) {
-				ChecksumProducer producer = entry.getKey();
-				String checksum = ChecksumHelper.toHexString(entry.getValue().digest());
-				String id = producer.getId();
-				String message = NLS.bind(Messages.calculateChecksum_ok,
-						new Object[] { id, producer.getAlgorithm(), producer.getProviderName(), checksum });
-				status.add(new Status(IStatus.OK, Activator.ID, message));
-				checksums.put(id, checksum);
+		}
+		try (FileChannel channel = FileChannel.open(pathOnDisk.toPath(), StandardOpenOption.READ)) {
+			// MessageDigest copies direct and mapped buffers into an array anyway
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[] bytes = buffer.array();
+			while (channel.read(buffer) != -1) {
+				for (MessageDigest digest : digests) {
+					digest.update(bytes, 0, buffer.position());
+				}
+				buffer.clear();
 			}
 		} catch (IOException e) {
 			String message = NLS.bind(Messages.calculateChecksum_file, pathOnDisk.getAbsolutePath());
 			status.add(new Status(IStatus.ERROR, Activator.ID, message, e));
+			return;
+		}
+		for (int i = 0; i < digests.length; i++) {
+			ChecksumProducer producer = producers.get(i);
+			String checksum = ChecksumHelper.toHexString(digests[i].digest());
+			String id = producer.getId();
+			String message = NLS.bind(Messages.calculateChecksum_ok,
+					new Object[] { id, producer.getAlgorithm(), producer.getProviderName(), checksum });
+			status.add(new Status(IStatus.OK, Activator.ID, message));
+			checksums.put(id, checksum);
 		}
-		return status;
 	}
 
 	private static boolean shouldPublish(IConfigurationElement checksumVerifierConfiguration) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2018 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -70,6 +70,7 @@ public class Messages extends NLS {
 	public static String error_copying_local_file;
 
 	public static String calculateChecksum_file;
+	public static String calculateChecksum_files;
 	public static String calculateChecksum_ok;
 	public static String calculateChecksum_error;
 	public static String calculateChecksum_providerError;
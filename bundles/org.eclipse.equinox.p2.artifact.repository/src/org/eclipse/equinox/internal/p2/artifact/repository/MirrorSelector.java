@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2018 IBM Corporation and others.
+ * Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.parsers.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
@@ -43,6 +45,14 @@ import org.xml.sax.SAXException;
  * sorted geographically with closer mirrors first.
  * <br><br>
  * Always use {@link MirrorSelector.MirrorInfoComparator} for comparison.
+ * <br><br>
+ * In the active mode, enabled with {@link #PROP_ACTIVE}, the best ranked
+ * mirrors are probed in parallel when the mirrors are first needed, and the
+ * mirrors are ordered by the time they are expected to take for an artifact,
+ * from moving averages of their latency and throughput which are kept across
+ * sessions by {@link MirrorStatistics}. With {@link #PROP_HEDGE}, small
+ * artifacts are additionally requested from two mirrors at once, and the
+ * slower download is canceled.
  */
 public class MirrorSelector {
 
@@ -52,6 +62,29 @@ public class MirrorSelector {
 	 */
 	public static volatile int MIRROR_PARSE_ERROR_LEVEL = IStatus.ERROR;
 
+	/**
+	 * System property enabling the active mirror selection.
+	 */
+	public static final String PROP_ACTIVE = "p2.mirrors.active"; //$NON-NLS-1$
+
+	/**
+	 * System property enabling hedged downloads of small artifacts in the active
+	 * mirror selection.
+	 */
+	public static final String PROP_HEDGE = "p2.mirrors.hedge"; //$NON-NLS-1$
+
+	/**
+	 * The largest artifact downloaded from two mirrors at once.
+	 */
+	public static final long MAX_HEDGED_SIZE = 256 * 1024;
+
+	private static final int PROBE_COUNT = 5;
+	private static final long PROBE_TIMEOUT = 5000;
+	// one selection in this many picks a mirror at random to keep the statistics of the others current
+	private static final int EXPLORATION_RATE = 10;
+	// the statistics are written after this many downloads
+	private static final int SAVE_INTERVAL = 16;
+
 	private static final double LOG2 = Math.log(2);
 
 	/**
@@ -64,6 +97,7 @@ public class MirrorSelector {
 		private static final Timer resetFailure = new Timer(true);
 
 		long bytesPerSecond;
+		long latency = -1; // unknown
 		int failureCount;
 		int fileNotFoundCount;
 		int totalFailureCount;
@@ -118,6 +152,31 @@ public class MirrorSelector {
 			return bytesPerSecond;
 		}
 
+		/**
+		 * Adds a throughput measurement to the moving average of this mirror.
+		 */
+		public synchronized void addBytesPerSecond(long sample) {
+			if (sample > 0)
+				setBytesPerSecond(MirrorStatistics.average(bytesPerSecond, sample));
+		}
+
+		/**
+		 * Adds a latency measurement in milliseconds to the moving average of this
+		 * mirror.
+		 */
+		public synchronized void addLatency(long sample) {
+			if (sample > 0)
+				latency = MirrorStatistics.average(latency, sample);
+		}
+
+		/**
+		 * Returns the average latency of this mirror in milliseconds, or a
+		 * non-positive value if unknown.
+		 */
+		public synchronized long getLatency() {
+			return latency;
+		}
+
 		public synchronized void incrementFileNotFoundCount() {
 			if (++fileNotFoundCount > ACCEPTABLE_FILE_NOT_FOUND_COUNT) {
 				incrementFailureCount();
@@ -139,14 +198,29 @@ public class MirrorSelector {
 
 	private final Transport transport;
 
+	private final boolean active;
+
+	private MirrorStatistics statistics;
+
+	private int unsavedReports;
+
 	/**
 	 * Constructs a mirror support class for the given repository. Mirrors are
 	 * not contacted and the mirrorsURL document is not parsed until a
 	 * mirror location request is sent.
 	 */
 	public MirrorSelector(IRepository<?> repository, Transport transport) {
+		this(repository, transport, Boolean.getBoolean(PROP_ACTIVE));
+	}
+
+	/**
+	 * Constructs a mirror support class for the given repository, using the
+	 * active mirror selection or not.
+	 */
+	public MirrorSelector(IRepository<?> repository, Transport transport, boolean active) {
 		this.repository = repository;
 		this.transport = transport;
+		this.active = active;
 		try {
 			String base = repository.getProperties().get(IRepository.PROP_MIRRORS_BASE_URL);
 			if (base != null) {
@@ -253,6 +327,31 @@ public class MirrorSelector {
 
 	}
 
+	/**
+	 * Orders mirrors by the time they are expected to take for an artifact of
+	 * a typical size, computed from their average latency and throughput and
+	 * scaled up by their recent failures. Unknown values are replaced by
+	 * conservative defaults, so that measured mirrors are tried first unless
+	 * they are slow. The initial rank decides between equal mirrors.
+	 */
+	public static final class ActiveMirrorComparator implements Comparator<MirrorInfo> {
+		static final long TYPICAL_SIZE = 256 * 1024;
+		static final long DEFAULT_LATENCY = 1000;
+		static final long DEFAULT_BYTES_PER_SECOND = 100000;
+
+		static double cost(MirrorInfo mirror) {
+			double latency = mirror.latency > 0 ? mirror.latency : DEFAULT_LATENCY;
+			double bytesPerSecond = mirror.bytesPerSecond > 0 ? mirror.bytesPerSecond : DEFAULT_BYTES_PER_SECOND;
+			return (latency + TYPICAL_SIZE * 1000d / bytesPerSecond) * (1 + mirror.failureCount);
+		}
+
+		@Override
+		public int compare(MirrorInfo o1, MirrorInfo o2) {
+			int result = Double.compare(cost(o1), cost(o2));
+			return result != 0 ? result : Integer.compare(o1.initialRank, o2.initialRank);
+		}
+	}
+
 	/**
 	 * Parses the given mirror URL to obtain the list of mirrors. Returns the mirrors,
 	 * or null if mirrors could not be computed.
@@ -343,7 +442,7 @@ public class MirrorSelector {
 		//if we failed to relativize the location, we can't select a mirror
 		if (relativeLocation == null || relativeLocation.isAbsolute())
 			return inputLocation;
-		MirrorInfo selectedMirror = selectMirror(monitor);
+		MirrorInfo selectedMirror = selectMirror(relativeLocation, monitor);
 		if (selectedMirror == null)
 			return inputLocation;
 		if (Tracing.DEBUG_MIRRORS)
@@ -360,12 +459,137 @@ public class MirrorSelector {
 	 * Initialize {@link #mirrors} for {@link #repository}, or <code>null</code> if
 	 * they could not be computed.
 	 */
-	private void initMirrors(IProgressMonitor monitor) {
+	private void initMirrors(URI relativeLocation, IProgressMonitor monitor) {
 		if (mirrors != null)
 			return;
 		String mirrorsURL = repository.getProperties().get(IRepository.PROP_MIRRORS_URL);
 		if (mirrorsURL != null)
 			mirrors = computeMirrors(mirrorsURL, monitor);
+		if (active && mirrors != null && mirrors.length > 1) {
+			statistics = MirrorStatistics.forAgent(repository.getProvisioningAgent());
+			if (statistics != null) {
+				for (MirrorInfo mirror : mirrors) {
+					long[] values = statistics.get(mirror.locationString);
+					if (values != null) {
+						mirror.addLatency(values[0]);
+						mirror.addBytesPerSecond(values[1]);
+					}
+				}
+			}
+			probeMirrors(relativeLocation, monitor);
+		}
+	}
+
+	/**
+	 * Measures the latency of the best ranked mirrors with concurrent requests for
+	 * the last modified time of the artifact at the given location. Mirrors which
+	 * fail to answer are counted as failing, those which do not answer in time
+	 * get the timeout as their latency.
+	 */
+	private void probeMirrors(URI relativeLocation, IProgressMonitor monitor) {
+		sortMirrors();
+		int count = min(PROBE_COUNT, mirrors.length);
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(count, r -> {
+			Thread thread = new Thread(r, "p2 Mirror Probe " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		IProgressMonitor probeMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor != null && monitor.isCanceled();
+			}
+		};
+		try {
+			List<Probe> probes = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				Probe probe = new Probe(mirrors[i], relativeLocation, probeMonitor);
+				probe.future = executor.submit(probe);
+				probes.add(probe);
+			}
+			long deadline = System.currentTimeMillis() + PROBE_TIMEOUT;
+			for (Probe probe : probes) {
+				try {
+					probe.future.get(max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+					probe.record();
+				} catch (TimeoutException e) {
+					// the outcome of the canceled probe is never recorded
+					probe.future.cancel(true);
+					probe.mirror.addLatency(PROBE_TIMEOUT);
+				} catch (ExecutionException e) {
+					probe.mirror.incrementFailureCount();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		if (Tracing.DEBUG_MIRRORS)
+			Tracing.debug("Probed mirrors " + Arrays.toString(mirrors)); //$NON-NLS-1$
+		saveStatistics();
+	}
+
+	/**
+	 * A request for the last modified time of an artifact on a mirror. The
+	 * outcome is kept with the probe and only added to the mirror once the probe
+	 * completed in time, so that every probe counts exactly once.
+	 */
+	private final class Probe implements Callable<Void> {
+		final MirrorInfo mirror;
+		private final URI relativeLocation;
+		private final IProgressMonitor monitor;
+		Future<Void> future;
+		private long latency;
+		private boolean fileNotFound;
+		private boolean canceled;
+
+		Probe(MirrorInfo mirror, URI relativeLocation, IProgressMonitor monitor) {
+			this.mirror = mirror;
+			this.relativeLocation = relativeLocation;
+			this.monitor = monitor;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			long start = System.nanoTime();
+			try {
+				transport.getLastModified(new URI(mirror.locationString + relativeLocation.getPath()), monitor);
+			} catch (FileNotFoundException e) {
+				// the mirror answered, but may not be complete
+				fileNotFound = true;
+			} catch (OperationCanceledException e) {
+				canceled = true;
+				return null;
+			}
+			latency = max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			return null;
+		}
+
+		void record() {
+			if (canceled)
+				return;
+			if (fileNotFound)
+				mirror.incrementFileNotFoundCount();
+			mirror.addLatency(latency);
+		}
+	}
+
+	private void sortMirrors() {
+		if (active)
+			Arrays.sort(mirrors, new ActiveMirrorComparator());
+		else
+			Arrays.sort(mirrors, getComparator());
+	}
+
+	private void saveStatistics() {
+		if (statistics == null)
+			return;
+		for (MirrorInfo mirror : mirrors)
+			statistics.put(mirror.locationString, mirror.getLatency(), mirror.getBytesPerSecond());
+		statistics.save();
+		unsavedReports = 0;
 	}
 
 	private MirrorInfoComparator getComparator() {
@@ -404,8 +628,12 @@ public class MirrorSelector {
 				if (result instanceof DownloadStatus) {
 					long oldRate = mirror.bytesPerSecond;
 					long newRate = ((DownloadStatus) result).getTransferRate();
-					//average old and new rate so one slow download doesn't ruin the mirror's reputation
-					if (newRate > 0) {
+					if (active) {
+						mirror.addBytesPerSecond(newRate);
+						if (statistics != null && ++unsavedReports >= SAVE_INTERVAL)
+							saveStatistics();
+					} else if (newRate > 0) {
+						//average old and new rate so one slow download doesn't ruin the mirror's reputation
 						if (oldRate > 0)
 							newRate = (oldRate + newRate) / 2;
 						mirror.setBytesPerSecond(newRate);
@@ -426,16 +654,55 @@ public class MirrorSelector {
 		// return true if there is a mirror and it doesn't have multiple failures.
 		if (mirrors == null || mirrors.length == 0)
 			return false;
-		Arrays.sort(mirrors, getComparator());
+		sortMirrors();
 		return mirrors[0].failureCount < 2;
 	}
 
+	/**
+	 * Returns whether small artifacts should be downloaded from two mirrors at
+	 * once.
+	 */
+	public boolean isHedging() {
+		return active && Boolean.getBoolean(PROP_HEDGE);
+	}
+
+	/**
+	 * Returns the location of the given artifact location on the best mirror
+	 * other than the one it is on, or <code>null</code> if there is no other
+	 * valid mirror.
+	 */
+	public synchronized URI getAlternativeLocation(URI mirrorLocation) {
+		if (mirrors == null || mirrors.length < 2)
+			return null;
+		String location = mirrorLocation.toString();
+		String relativePath = null;
+		for (MirrorInfo mirror : mirrors) {
+			if (location.startsWith(mirror.locationString)) {
+				relativePath = location.substring(mirror.locationString.length());
+				break;
+			}
+		}
+		if (relativePath == null)
+			return null;
+		sortMirrors();
+		for (MirrorInfo mirror : mirrors) {
+			if (mirror.failureCount <= 1 && !location.startsWith(mirror.locationString)) {
+				try {
+					return new URI(mirror.locationString + relativePath);
+				} catch (URISyntaxException e) {
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Selects a mirror from the given list of mirrors. Returns null if a mirror
 	 * could not be found.
 	 */
-	private MirrorInfo selectMirror(IProgressMonitor monitor) {
-		initMirrors(monitor);
+	private MirrorInfo selectMirror(URI relativeLocation, IProgressMonitor monitor) {
+		initMirrors(relativeLocation, monitor);
 		final int mirrorCount;
 		if (mirrors == null || (mirrorCount = mirrors.length) == 0)
 			return null;
@@ -443,8 +710,11 @@ public class MirrorSelector {
 		MirrorInfo selected;
 		if (mirrorCount == 1)
 			selected = mirrors[0];
-		else {
-			Arrays.sort(mirrors, getComparator());
+		else if (active && random.nextInt(EXPLORATION_RATE) != 0) {
+			sortMirrors();
+			selected = mirrors[0];
+		} else {
+			sortMirrors();
 			for (;;) {
 				//this is a function that randomly selects a mirror based on a logarithmic
 				//distribution. Mirror 0 has a 1/2 chance of being selected, mirror 1 has a 1/4 chance,
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.p2.core.IAgentLocation;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+
+/**
+ * The latency and throughput measured for mirrors, kept across sessions in the
+ * data area of an agent. Both are exponentially weighted moving averages, so
+ * recent measurements count more than old ones. Entries not updated for a
+ * month are dropped when the statistics are loaded.
+ */
+public class MirrorStatistics {
+	/**
+	 * The weight of a new sample in a moving average.
+	 */
+	static final double ALPHA = 0.3d;
+
+	private static final String FILE_NAME = "mirrors.properties"; //$NON-NLS-1$
+	private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+	private static final Map<File, MirrorStatistics> instances = new HashMap<>();
+
+	private final File file;
+	// mirror location -> {latency, bytesPerSecond, last update}
+	private final Map<String, long[]> entries = new HashMap<>();
+
+	/**
+	 * Returns the statistics stored in the data area of the given agent, or
+	 * <code>null</code> if the agent has no location.
+	 */
+	public static MirrorStatistics forAgent(IProvisioningAgent agent) {
+		IAgentLocation location = agent == null ? null : agent.getService(IAgentLocation.class);
+		if (location == null)
+			return null;
+		URI dataArea = location.getDataArea(Activator.ID);
+		if (dataArea == null || !"file".equals(dataArea.getScheme())) //$NON-NLS-1$
+			return null;
+		File file = new File(URIUtil.toFile(dataArea), FILE_NAME);
+		synchronized (instances) {
+			return instances.computeIfAbsent(file, MirrorStatistics::new);
+		}
+	}
+
+	public MirrorStatistics(File file) {
+		this.file = file;
+		load();
+	}
+
+	/**
+	 * Returns the moving average of a sample series after adding a new sample.
+	 * A non-positive average is unknown and is replaced by the sample.
+	 */
+	static long average(long average, long sample) {
+		if (average <= 0)
+			return sample;
+		return Math.round(ALPHA * sample + (1 - ALPHA) * average);
+	}
+
+	private void load() {
+		if (!file.exists())
+			return;
+		Properties properties = new Properties();
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			properties.load(in);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error reading mirror statistics " + file, e)); //$NON-NLS-1$
+			return;
+		}
+		long oldest = System.currentTimeMillis() - MAX_AGE;
+		for (String mirror : properties.stringPropertyNames()) {
+			String[] values = properties.getProperty(mirror).split(","); //$NON-NLS-1$
+			try {
+				long[] entry = new long[] {Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2])};
+				if (entry[2] >= oldest)
+					entries.put(mirror, entry);
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				// skip damaged entries
+			}
+		}
+	}
+
+	/**
+	 * Returns the latency in milliseconds and the throughput in bytes per second
+	 * last stored for a mirror, or <code>null</code>.
+	 */
+	public synchronized long[] get(String mirror) {
+		long[] entry = entries.get(mirror);
+		return entry == null ? null : new long[] {entry[0], entry[1]};
+	}
+
+	/**
+	 * Stores the latency and throughput of a mirror, non-positive values being
+	 * unknown.
+	 */
+	public synchronized void put(String mirror, long latency, long bytesPerSecond) {
+		if (latency <= 0 && bytesPerSecond <= 0)
+			return;
+		entries.put(mirror, new long[] {latency, bytesPerSecond, System.currentTimeMillis()});
+	}
+
+	/**
+	 * Writes the statistics to the data area.
+	 */
+	public synchronized void save() {
+		Properties properties = new Properties();
+		for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+			long[] values = entry.getValue();
+			properties.setProperty(entry.getKey(), values[0] + "," + values[1] + ',' + values[2]); //$NON-NLS-1$
+		}
+		file.getParentFile().mkdirs();
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+			properties.store(out, null);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error writing mirror statistics " + file, e)); //$NON-NLS-1$
+			temp.delete();
+			return;
+		}
+		file.delete();
+		if (!temp.renameTo(file))
+			temp.delete();
+	}
+}
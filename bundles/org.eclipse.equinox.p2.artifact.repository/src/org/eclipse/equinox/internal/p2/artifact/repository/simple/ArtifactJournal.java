@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.repository.simple;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.repository.artifact.IProcessingStepDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.spi.ProcessingStepDescriptor;
+
+/**
+ * An append-only log of the descriptors added to and removed from a local
+ * simple artifact repository since its <code>artifacts.xml</code> snapshot was
+ * last written. The journal starts with the timestamp of the snapshot it
+ * continues, followed by length prefixed records. A record that was not
+ * completely written is ignored and overwritten by the next append.
+ * <p>
+ * The journal remembers how far it has been read so that later reads only
+ * return the records appended since, by this or by another process.
+ * </p>
+ */
+class ArtifactJournal {
+	static final String JOURNAL_FILENAME = "artifacts.journal"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x70326a6c;
+	private static final int FORMAT_VERSION = 1;
+	private static final int NONE = -1;
+	private static final byte ADDED = 1;
+	private static final byte REMOVED = 2;
+
+	static class Change {
+		final boolean added;
+		final SimpleArtifactDescriptor descriptor;
+
+		Change(boolean added, SimpleArtifactDescriptor descriptor) {
+			this.added = added;
+			this.descriptor = descriptor;
+		}
+	}
+
+	private final File file;
+	// the end of the last complete record read or written, 0 if nothing was read yet
+	private volatile long position = 0;
+	private int recordCount = 0;
+	// whether the journal on disk does not continue the loaded snapshot
+	private volatile boolean stale = false;
+	private final List<Change> pending = new ArrayList<>();
+
+	ArtifactJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Remembers a change to be written by the next {@link #appendPending(String)}.
+	 */
+	void record(boolean added, SimpleArtifactDescriptor descriptor) {
+		pending.add(new Change(added, descriptor));
+	}
+
+	/**
+	 * Returns the number of records in the journal including the pending ones.
+	 */
+	int size() {
+		return recordCount + pending.size();
+	}
+
+	boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Returns whether records might have been appended since the journal was
+	 * last read or written. Called without holding the monitor of the repository.
+	 */
+	boolean hasUnread() {
+		return !stale && file.length() != position;
+	}
+
+	/**
+	 * Returns the changes appended since the journal was last read or written,
+	 * or <code>null</code> if the journal does not continue the snapshot with
+	 * the given timestamp.
+	 */
+	List<Change> read(String snapshotId) throws IOException {
+		if (!file.isFile()) {
+			if (position == 0)
+				return Collections.emptyList();
+			stale = true;
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long headerEnd = readHeader(channel, snapshotId);
+			if (headerEnd < 0 || size < position) {
+				stale = true;
+				return null;
+			}
+			long pos = Math.max(position, headerEnd);
+			List<Change> result = new ArrayList<>();
+			while (pos + 4 <= size) {
+				int length = readFully(channel, pos, 4).getInt();
+				if (length < 0 || pos + 4 + length > size)
+					break;
+				ByteBuffer record = readFully(channel, pos + 4, length);
+				result.add(readChange(new DataInputStream(new ByteArrayInputStream(record.array()))));
+				pos += 4 + length;
+			}
+			position = pos;
+			recordCount += result.size();
+			return result;
+		}
+	}
+
+	/**
+	 * Writes the pending changes at the end of the journal. The journal must
+	 * have been read up to its end before.
+	 */
+	void appendPending(String snapshotId) throws IOException {
+		if (pending.isEmpty() && position > 0)
+			return;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		if (position == 0)
+			writeHeader(out, snapshotId);
+		for (Change change : pending) {
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			writeChange(new DataOutputStream(record), change);
+			out.writeInt(record.size());
+			record.writeTo(out);
+		}
+		out.flush();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			// drop an incomplete record left behind by an interrupted append
+			channel.truncate(position);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			long pos = position;
+			while (buffer.hasRemaining())
+				pos += channel.write(buffer, pos);
+			position = pos;
+		}
+		recordCount += pending.size();
+		pending.clear();
+	}
+
+	/**
+	 * Empties the journal after a snapshot with the given timestamp was written.
+	 */
+	void reset(String snapshotId) throws IOException {
+		pending.clear();
+		position = 0;
+		recordCount = 0;
+		stale = false;
+		file.delete();
+		appendPending(snapshotId);
+	}
+
+	void delete() {
+		pending.clear();
+		position = 0;
+		recordCount = 0;
+		stale = false;
+		file.delete();
+	}
+
+	private static long readHeader(FileChannel channel, String snapshotId) throws IOException {
+		if (channel.size() < 12)
+			return -1;
+		ByteBuffer header = readFully(channel, 0, 12);
+		if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION)
+			return -1;
+		int length = header.getInt();
+		if (length < 0 || channel.size() < 12 + length)
+			return -1;
+		String id = new String(readFully(channel, 12, length).array(), StandardCharsets.UTF_8);
+		return id.equals(snapshotId) ? 12 + length : -1;
+	}
+
+	private static void writeHeader(DataOutputStream out, String snapshotId) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		writeString(out, snapshotId == null ? "" : snapshotId); //$NON-NLS-1$
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long pos, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, pos + buffer.position()) < 0)
+				throw new EOFException();
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void writeChange(DataOutputStream out, Change change) throws IOException {
+		SimpleArtifactDescriptor descriptor = change.descriptor;
+		out.writeByte(change.added ? ADDED : REMOVED);
+		writeString(out, descriptor.getArtifactKey().toExternalForm());
+		writeMap(out, descriptor.getProperties());
+		writeMap(out, descriptor.getRepositoryProperties());
+		IProcessingStepDescriptor[] steps = descriptor.getProcessingSteps();
+		out.writeInt(steps.length);
+		for (IProcessingStepDescriptor step : steps) {
+			writeString(out, step.getProcessorId());
+			out.writeBoolean(step.getData() != null);
+			if (step.getData() != null)
+				writeString(out, step.getData());
+			out.writeBoolean(step.isRequired());
+		}
+	}
+
+	private static Change readChange(DataInputStream in) throws IOException {
+		boolean added = in.readByte() == ADDED;
+		SimpleArtifactDescriptor descriptor = new SimpleArtifactDescriptor(ArtifactKey.parse(readString(in)));
+		descriptor.addProperties(readMap(in));
+		descriptor.addRepositoryProperties(readMap(in));
+		int count = in.readInt();
+		IProcessingStepDescriptor[] steps = new IProcessingStepDescriptor[count];
+		for (int i = 0; i < count; i++) {
+			String processorId = readString(in);
+			String data = in.readBoolean() ? readString(in) : null;
+			steps[i] = new ProcessingStepDescriptor(processorId, data, in.readBoolean());
+		}
+		descriptor.setProcessingSteps(steps);
+		return new Change(added, descriptor);
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+		if (map == null) {
+			out.writeInt(NONE);
+			return;
+		}
+		out.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static Map<String, String> readMap(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size == NONE)
+			return Collections.emptyMap();
+		Map<String, String> result = new LinkedHashMap<>(size);
+		for (int i = 0; i < size; i++)
+			result.put(readString(in), readString(in));
+		return result;
+	}
+
+	// DataOutput.writeUTF is limited to 64k which large properties exceed
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2018 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -13,12 +13,14 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.artifact.repository.simple;
 
+import java.net.URI;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IProcessingStepDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 
 public class SimpleArtifactDescriptor extends ArtifactDescriptor {
@@ -26,6 +28,24 @@ public class SimpleArtifactDescriptor extends ArtifactDescriptor {
 
 	protected Map<String, String> repositoryProperties;
 
+	/**
+	 * The location computed by the mapping rules of a repository, remembered
+	 * together with the mapper and the repository location it was computed for.
+	 */
+	private static final class MappedLocation {
+		final Mapper mapper;
+		final URI repositoryLocation;
+		final URI location;
+
+		MappedLocation(Mapper mapper, URI repositoryLocation, URI location) {
+			this.mapper = mapper;
+			this.repositoryLocation = repositoryLocation;
+			this.location = location;
+		}
+	}
+
+	private transient volatile MappedLocation mappedLocation;
+
 	public SimpleArtifactDescriptor(IArtifactKey key) {
 		super(key);
 	}
@@ -34,11 +54,41 @@ public class SimpleArtifactDescriptor extends ArtifactDescriptor {
 		super(base);
 	}
 
+	URI getMappedLocation(Mapper mapper, URI repositoryLocation) {
+		MappedLocation cached = mappedLocation;
+		if (cached != null && cached.mapper == mapper && cached.repositoryLocation.equals(repositoryLocation))
+			return cached.location;
+		return null;
+	}
+
+	void setMappedLocation(Mapper mapper, URI repositoryLocation, URI location) {
+		mappedLocation = new MappedLocation(mapper, repositoryLocation, location);
+	}
+
+	@Override
+	public void setProperty(String key, String value) {
+		super.setProperty(key, value);
+		mappedLocation = null;
+	}
+
+	@Override
+	public void addProperties(Map<String, String> additionalProperties) {
+		super.addProperties(additionalProperties);
+		mappedLocation = null;
+	}
+
+	@Override
+	public void setProcessingSteps(IProcessingStepDescriptor[] value) {
+		super.setProcessingSteps(value);
+		mappedLocation = null;
+	}
+
 	public String getRepositoryProperty(String propertyKey) {
 		return repositoryProperties != null ? repositoryProperties.get(propertyKey) : null;
 	}
 
 	public void setRepositoryProperty(String key, String value) {
+		mappedLocation = null;
 		if (value == null) {
 			if (repositoryProperties != null) {
 				repositoryProperties.remove(key);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2018 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -24,6 +24,15 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import org.eclipse.core.runtime.*;
@@ -94,17 +103,29 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 */
 	public static final String PROP_BLOBSTORE_NAME = "p2.blobstore.name"; //$NON-NLS-1$
 
+	/**
+	 * The key for a boolean property that makes a local repository record added
+	 * and removed descriptors in an append-only journal next to its
+	 * <code>artifacts.xml</code> instead of rewriting the whole file on every
+	 * change. The journal is folded into <code>artifacts.xml</code> when it grows
+	 * too long. Remote clients only see the folded state.
+	 */
+	public static final String PROP_JOURNAL = "p2.journal"; //$NON-NLS-1$
+
+	// the journal is folded into the snapshot when it has more records than this, or more than a quarter of the descriptors
+	private static final int MIN_JOURNAL_RECORDS = 1000;
+
 	/**
 	 * Does this instance of the repository currently hold a lock
 	 */
-	private boolean holdsLock = false;
+	private volatile boolean holdsLock = false;
 	/**
 	 * Does this instance of the repository can be locked.
 	 * It will be initialized when initializing the location for repository
 	 */
-	private Boolean canLock = null;
+	private volatile Boolean canLock = null;
 
-	private long cacheTimestamp = 0l;
+	private volatile long cacheTimestamp = 0l;
 
 	public class ArtifactOutputStream extends OutputStream implements IStateful, IAdaptable {
 		private boolean closed;
@@ -262,25 +283,62 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	static final private Integer REPOSITORY_VERSION = 1;
 	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
-	protected Set<SimpleArtifactDescriptor> artifactDescriptors = new HashSet<>();
+	/*
+	 * The descriptors are read without holding the monitor of the repository.
+	 * Modifications hold the monitor, and the lists in the artifact map are
+	 * replaced instead of modified.
+	 */
+	protected volatile Set<SimpleArtifactDescriptor> artifactDescriptors = ConcurrentHashMap.newKeySet();
 	private Set<SimpleArtifactDescriptor> addedDescriptors = new HashSet<>();
 	/**
 	 * Map<IArtifactKey,List<IArtifactDescriptor>> containing the index of artifacts in the repository.
 	 */
-	private Map<IArtifactKey, List<IArtifactDescriptor>> artifactMap = new HashMap<>();
-	private transient BlobStore blobStore;
-	transient private Mapper mapper = new Mapper();
-	private KeyIndex keyIndex;
-	private boolean snapshotNeeded = false;
+	private volatile Map<IArtifactKey, List<IArtifactDescriptor>> artifactMap = new ConcurrentHashMap<>();
+	private transient volatile BlobStore blobStore;
+	transient private volatile Mapper mapper = new Mapper();
+	private volatile KeyIndexSnapshot keyIndex;
+	// incremented whenever the artifact map changes
+	private volatile int modificationCount = 0;
+	private volatile ArtifactJournal journal;
+	// whether a change other than adding or removing descriptors has to be saved
+	private boolean snapshotRequired = true;
 
 	private static final int DEFAULT_MAX_THREADS = 4;
+	// the number of threads deleting the files of the artifacts removed at once
+	private static final int DELETE_THREADS = Math.max(1, Integer.getInteger("p2.artifact.deleteThreads", DEFAULT_MAX_THREADS)); //$NON-NLS-1$
+
+	private static final AtomicInteger hedgeThreadCount = new AtomicInteger();
+	// runs the downloads of an artifact requested from two mirrors at once
+	private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "p2 Hedged Download " + hedgeThreadCount.incrementAndGet()); //$NON-NLS-1$
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	protected String[][] mappingRules = DEFAULT_MAPPING_RULES;
 
-	private MirrorSelector mirrors;
+	private volatile MirrorSelector mirrors;
 
 	private boolean disableSave = false;
 
+	// the number of threads running a concurrent batch, the repository is saved
+	// when the last one ends
+	private int concurrentBatches = 0;
+	// whether the first concurrent batch acquired the repository lock
+	private boolean concurrentBatchLockAcquired = false;
+	// the nesting depth of concurrent batches on each thread
+	private final ThreadLocal<int[]> concurrentBatchDepth = ThreadLocal.withInitial(() -> new int[1]);
+
+	private static final class KeyIndexSnapshot {
+		final int modificationCount;
+		final KeyIndex index;
+
+		KeyIndexSnapshot(int modificationCount, KeyIndex index) {
+			this.modificationCount = modificationCount;
+			this.index = index;
+		}
+	}
+
 	static void delete(File toDelete) {
 		if (toDelete.isDirectory()) {
 			File[] children = toDelete.listFiles();
@@ -316,6 +374,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		this.mappingRules = mappingRules;
 		for (SimpleArtifactDescriptor desc : artifactDescriptors)
 			mapDescriptor(desc, false);
+		this.snapshotRequired = false;
 	}
 
 	private synchronized void mapDescriptor(SimpleArtifactDescriptor descriptor, boolean added) {
@@ -323,17 +382,13 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			addedDescriptors.add(descriptor);
 		}
 		IArtifactKey key = descriptor.getArtifactKey();
-		if (snapshotNeeded) {
-			cloneAritfactMap();
-			snapshotNeeded = false;
-		}
 		List<IArtifactDescriptor> descriptors = artifactMap.get(key);
-		if (descriptors == null) {
-			descriptors = new ArrayList<>();
-			artifactMap.put(key, descriptors);
-		}
-		descriptors.add(descriptor);
-		keyIndex = null;
+		List<IArtifactDescriptor> updated = new ArrayList<>(descriptors == null ? 1 : descriptors.size() + 1);
+		if (descriptors != null)
+			updated.addAll(descriptors);
+		updated.add(descriptor);
+		artifactMap.put(key, updated);
+		modificationCount++;
 	}
 
 	private synchronized void unmapDescriptor(IArtifactDescriptor descriptor) {
@@ -343,22 +398,13 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		if (descriptors == null)
 			return;
 
-		if (snapshotNeeded) {
-			cloneAritfactMap();
-			snapshotNeeded = false;
-			descriptors = artifactMap.get(key);
-		}
-		descriptors.remove(descriptor);
-		if (descriptors.isEmpty())
+		List<IArtifactDescriptor> updated = new ArrayList<>(descriptors);
+		updated.remove(descriptor);
+		if (updated.isEmpty())
 			artifactMap.remove(key);
-		keyIndex = null;
-	}
-
-	private void cloneAritfactMap() {
-		HashMap<IArtifactKey, List<IArtifactDescriptor>> clone = new HashMap<>(artifactMap.size());
-		for (Entry<IArtifactKey, List<IArtifactDescriptor>> entry : artifactMap.entrySet())
-			clone.put(entry.getKey(), new ArrayList<>(entry.getValue()));
-		artifactMap = clone;
+		else
+			artifactMap.put(key, updated);
+		modificationCount++;
 	}
 
 	public SimpleArtifactRepository(IProvisioningAgent agent, String repositoryName, URI location, Map<String, String> properties) {
@@ -398,6 +444,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			SimpleArtifactDescriptor internalDescriptor = createInternalDescriptor(toAdd);
 			artifactDescriptors.add(internalDescriptor);
 			mapDescriptor(internalDescriptor, true);
+			recordChange(true, internalDescriptor);
 			save();
 		} finally {
 			if (lockAcquired)
@@ -443,6 +490,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 				SimpleArtifactDescriptor internalDescriptor = createInternalDescriptor(descriptor);
 				artifactDescriptors.add(internalDescriptor);
 				mapDescriptor(internalDescriptor, true);
+				recordChange(true, internalDescriptor);
 			}
 			save();
 		} finally {
@@ -451,7 +499,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		}
 	}
 
-	private synchronized OutputStream addPostSteps(ProcessingStepHandler handler, IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
+	private OutputStream addPostSteps(ProcessingStepHandler handler, IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		monitor = IProgressMonitor.nullSafe(monitor);
 		ArrayList<ProcessingStep> steps = new ArrayList<>();
 		steps.add(new SignatureVerifier());
@@ -537,7 +585,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized boolean contains(IArtifactDescriptor descriptor) {
+	public boolean contains(IArtifactDescriptor descriptor) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
@@ -546,14 +594,14 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized boolean contains(IArtifactKey key) {
+	public boolean contains(IArtifactKey key) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
 		return artifactMap.containsKey(key);
 	}
 
-	public synchronized URI createLocation(ArtifactDescriptor descriptor) {
+	public URI createLocation(ArtifactDescriptor descriptor) {
 		// if the descriptor is canonical, clear out any UUID that might be set and use the Mapper
 		if (descriptor.getProcessingSteps().length == 0) {
 			descriptor.setProperty(ARTIFACT_UUID, null);
@@ -597,12 +645,52 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			}
 		}
 		boolean result = artifactDescriptors.remove(descriptor);
-		if (result)
+		if (result) {
 			unmapDescriptor(descriptor);
+			recordChange(false, simple);
+		}
 
 		return result;
 	}
 
+	/**
+	 * Deletes the physical artifacts of the given descriptors on several
+	 * threads. The descriptors themselves are left in place, they are removed
+	 * afterwards by {@link #doRemoveArtifact(IArtifactDescriptor)}, which then
+	 * finds nothing left to delete.
+	 */
+	private void deleteArtifactFiles(List<IArtifactDescriptor> descriptors) {
+		List<File> files = new ArrayList<>(descriptors.size());
+		for (IArtifactDescriptor descriptor : descriptors) {
+			SimpleArtifactDescriptor simple = descriptor instanceof SimpleArtifactDescriptor ? (SimpleArtifactDescriptor) descriptor : createInternalDescriptor(descriptor);
+			if (simple.getRepositoryProperty(SimpleArtifactDescriptor.ARTIFACT_REFERENCE) != null)
+				continue;
+			File file = getArtifactFile(descriptor);
+			if (file != null)
+				files.add(file);
+		}
+		int threads = Math.min(DELETE_THREADS, files.size());
+		if (threads < 2)
+			return;
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "p2 Artifact Remover " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Callable<Object>> tasks = new ArrayList<>(files.size());
+			for (File file : files)
+				tasks.add(Executors.callable(() -> delete(file)));
+			executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			// the remaining files are deleted one by one with their descriptors
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	protected IStatus downloadArtifact(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		SubMonitor subMon = SubMonitor.convert(monitor, 2);
 		if (isFolderBased(descriptor)) {
@@ -719,11 +807,15 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		monitor = IProgressMonitor.nullSafe(monitor);
 		//Bug 340352: transport has performance overhead of 100ms and more, bypass it for local copies
 		IStatus result = Status.OK_STATUS;
+		URI alternativeLocation = null;
 		if (SimpleArtifactRepositoryFactory.PROTOCOL_FILE.equals(mirrorLocation.getScheme()))
 			result = copyFileToStream(new File(mirrorLocation), destination, monitor);
+		else if ((alternativeLocation = getHedgeLocation(descriptor, mirrorLocation)) != null)
+			result = downloadHedged(descriptor, new URI[] {mirrorLocation, alternativeLocation}, destination, monitor);
 		else
 			result = getTransport().downloadArtifact(mirrorLocation, destination, descriptor, monitor);
-		if (mirrors != null)
+		// the hedged download reports the results of both mirrors
+		if (mirrors != null && alternativeLocation == null)
 			mirrors.reportResult(mirrorLocation.toString(), result);
 		if (result.isOK() || result.getSeverity() == IStatus.CANCEL)
 			return result;
@@ -738,18 +830,100 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return result;
 	}
 
+	/**
+	 * Returns the location of a small artifact on a second mirror when hedged
+	 * downloads are enabled, or <code>null</code>.
+	 */
+	private URI getHedgeLocation(IArtifactDescriptor descriptor, URI mirrorLocation) {
+		MirrorSelector selector = mirrors;
+		if (selector == null || !selector.isHedging())
+			return null;
+		try {
+			String size = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_SIZE);
+			if (size == null || Long.parseLong(size) > MirrorSelector.MAX_HEDGED_SIZE)
+				return null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return selector.getAlternativeLocation(mirrorLocation);
+	}
+
+	/**
+	 * Downloads an artifact from two mirrors at once into memory, and copies the
+	 * first complete download to the destination. The other download is canceled
+	 * once a download succeeded. The result of the second download is only waited
+	 * for if the first one failed.
+	 */
+	private IStatus downloadHedged(IArtifactDescriptor descriptor, URI[] locations, OutputStream destination,
+			IProgressMonitor monitor) {
+		AtomicBoolean done = new AtomicBoolean();
+		IProgressMonitor raceMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return done.get() || monitor.isCanceled();
+			}
+		};
+		ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[locations.length];
+		IStatus[] results = new IStatus[locations.length];
+		CompletionService<Integer> race = new ExecutorCompletionService<>(HEDGE_EXECUTOR);
+		for (int i = 0; i < locations.length; i++) {
+			int index = i;
+			buffers[i] = new ByteArrayOutputStream();
+			race.submit(() -> {
+				try {
+					results[index] = getTransport().downloadArtifact(locations[index], buffers[index], descriptor, raceMonitor);
+				} catch (OperationCanceledException e) {
+					results[index] = Status.CANCEL_STATUS;
+				}
+				return index;
+			});
+		}
+		IStatus result = Status.CANCEL_STATUS;
+		try {
+			for (int i = 0; i < locations.length; i++) {
+				int index = race.take().get();
+				result = results[index];
+				mirrors.reportResult(locations[index].toString(), result);
+				if (result.isOK()) {
+					done.set(true);
+					buffers[index].writeTo(destination);
+					return result;
+				}
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
+			}
+		} catch (ExecutionException e) {
+			result = new Status(IStatus.ERROR, Activator.ID, e.getCause().getMessage(), e.getCause());
+		} catch (IOException e) {
+			result = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result = Status.CANCEL_STATUS;
+		} finally {
+			done.set(true);
+		}
+		return result;
+	}
+
 	/**
 	 * Returns an equivalent mirror location for the given artifact location.
 	 * @param baseLocation The location of the artifact in this repository
 	 * @return the Location of the artifact in this repository, or an equivalent mirror
 	 */
-	private synchronized URI getMirror(URI baseLocation, IProgressMonitor monitor) {
+	private URI getMirror(URI baseLocation, IProgressMonitor monitor) {
 		monitor = IProgressMonitor.nullSafe(monitor);
 		if (!isMirrorsEnabled(getProvisioningAgent()) || (!isForceThreading() && isLocal()))
 			return baseLocation;
-		if (mirrors == null)
-			mirrors = new MirrorSelector(this, getTransport());
-		return mirrors.getMirrorLocation(baseLocation, monitor);
+		// the selector synchronizes itself, download jobs only share the monitor to create it
+		MirrorSelector selector = mirrors;
+		if (selector == null) {
+			synchronized (this) {
+				if (mirrors == null)
+					mirrors = new MirrorSelector(this, getTransport());
+				selector = mirrors;
+			}
+		}
+		return selector.getMirrorLocation(baseLocation, monitor);
 	}
 
 	/**
@@ -858,7 +1032,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
+	public IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
@@ -941,7 +1115,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			return overallStatus;
 	}
 
-	public synchronized IArtifactDescriptor getCompleteArtifactDescriptor(IArtifactKey key) {
+	public IArtifactDescriptor getCompleteArtifactDescriptor(IArtifactKey key) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
@@ -957,14 +1131,14 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return null;
 	}
 
-	public synchronized Set<SimpleArtifactDescriptor> getDescriptors() {
+	public Set<SimpleArtifactDescriptor> getDescriptors() {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
 		return artifactDescriptors;
 	}
 
-	public synchronized URI getLocation(IArtifactDescriptor descriptor) {
+	public URI getLocation(IArtifactDescriptor descriptor) {
 		// if the artifact has a uuid then use it
 		String uuid = descriptor.getProperty(ARTIFACT_UUID);
 		if (uuid != null)
@@ -985,16 +1159,20 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 			// if the descriptor is complete then use the mapping rules...
 			if (descriptor.getProcessingSteps().length == 0) {
-				IArtifactKey key = descriptor.getArtifactKey();
-				URI result = mapper.map(getLocation(), key.getClassifier(), key.getId(), key.getVersion().toString(),
-						descriptor.getProperty(IArtifactDescriptor.FORMAT), descriptor.getProperties());
-				if (result != null) {
-					if (isFolderBased(descriptor) && URIUtil.lastSegment(result).endsWith(JAR_EXTENSION))
-						return URIUtil.removeFileExtension(result);
-					if (result.getScheme() == null && "file".equals(getLocation().getScheme())) //$NON-NLS-1$
-						return URIUtil.makeAbsolute(result, new File(System.getProperty("user.dir")).toURI()); //$NON-NLS-1$
+				Mapper currentMapper = mapper;
+				URI repositoryLocation = getLocation();
+				// mapping is comparatively expensive and done for every download, remember the result
+				if (descriptor instanceof SimpleArtifactDescriptor) {
+					SimpleArtifactDescriptor simple = (SimpleArtifactDescriptor) descriptor;
+					URI result = simple.getMappedLocation(currentMapper, repositoryLocation);
+					if (result == null) {
+						result = mapLocation(descriptor, currentMapper, repositoryLocation);
+						if (result != null)
+							simple.setMappedLocation(currentMapper, repositoryLocation, result);
+					}
 					return result;
 				}
+				return mapLocation(descriptor, currentMapper, repositoryLocation);
 			}
 		} catch (URISyntaxException e) {
 			return null;
@@ -1003,6 +1181,19 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return null;
 	}
 
+	private URI mapLocation(IArtifactDescriptor descriptor, Mapper currentMapper, URI repositoryLocation) throws URISyntaxException {
+		IArtifactKey key = descriptor.getArtifactKey();
+		URI result = currentMapper.map(repositoryLocation, key.getClassifier(), key.getId(), key.getVersion().toString(),
+				descriptor.getProperty(IArtifactDescriptor.FORMAT), descriptor.getProperties());
+		if (result != null) {
+			if (isFolderBased(descriptor) && URIUtil.lastSegment(result).endsWith(JAR_EXTENSION))
+				return URIUtil.removeFileExtension(result);
+			if (result.getScheme() == null && "file".equals(repositoryLocation.getScheme())) //$NON-NLS-1$
+				return URIUtil.makeAbsolute(result, new File(System.getProperty("user.dir")).toURI()); //$NON-NLS-1$
+		}
+		return result;
+	}
+
 	/**
 	 * Returns the maximum number of concurrent download threads.
 	 */
@@ -1119,6 +1310,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	// use this method to setup any transient fields etc after the object has been restored from a stream
 	public synchronized void initializeAfterLoad(URI repoLocation) {
 		this.initializeAfterLoad(repoLocation, true);
+		catchUpJournal();
 	}
 
 	private synchronized void initializeAfterLoad(URI repoLocation, boolean updateTimestamp) {
@@ -1143,8 +1335,10 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	private synchronized void initializeMapper() {
-		mapper = new Mapper();
-		mapper.initialize(Activator.getContext(), mappingRules);
+		// the mapper is used without holding the monitor, publish it initialized
+		Mapper initialized = new Mapper();
+		initialized.initialize(Activator.getContext(), mappingRules);
+		mapper = initialized;
 	}
 
 	private boolean isFolderBased(IArtifactDescriptor descriptor) {
@@ -1266,14 +1460,18 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 					return;
 			}
 
-			boolean changed = false;
+			List<IArtifactDescriptor> toRemove = new ArrayList<>();
 			for (IArtifactKey key : keys) {
 				IArtifactDescriptor[] descriptors = getArtifactDescriptors(key);
 				for (IArtifactDescriptor descriptor : descriptors)
 					if (!removeIfAdded || addedDescriptors.remove(descriptor)) {
-						changed |= doRemoveArtifact(descriptor);
+						toRemove.add(descriptor);
 					}
 			}
+			deleteArtifactFiles(toRemove);
+			boolean changed = false;
+			for (IArtifactDescriptor descriptor : toRemove)
+				changed |= doRemoveArtifact(descriptor);
 			if (changed)
 				save();
 		} finally {
@@ -1349,7 +1547,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	public void save() {
-		if (disableSave)
+		if (disableSave || concurrentBatches > 0)
 			return;
 		boolean compress = TRUE.equalsIgnoreCase(getProperty(PROP_COMPRESSED));
 		save(compress);
@@ -1357,6 +1555,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	private void save(boolean compress) {
 		assertModifiable();
+		boolean journalEnabled = isJournalEnabled();
+		if (journalEnabled && !snapshotRequired && appendToJournal())
+			return;
 		OutputStream os = null;
 		try {
 			try {
@@ -1385,6 +1586,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 				}
 				super.setProperty(IRepository.PROP_TIMESTAMP, Long.toString(System.currentTimeMillis()), new NullProgressMonitor());
 				new SimpleArtifactRepositoryIO(getProvisioningAgent()).write(this, os);
+				snapshotRequired = false;
 			} catch (IOException e) {
 				// TODO proper exception handling
 				e.printStackTrace();
@@ -1393,16 +1595,91 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 					os.close();
 				updateTimestamp();
 			}
+			// the journal continues the snapshot just written
+			if (journalEnabled)
+				getJournal().reset(getProperty(IRepository.PROP_TIMESTAMP));
+			else if (URIUtil.isFileURI(getLocation()))
+				getJournal().delete();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	private boolean isJournalEnabled() {
+		return TRUE.equalsIgnoreCase(getProperty(PROP_JOURNAL)) && URIUtil.isFileURI(getLocation());
+	}
+
+	private ArtifactJournal getJournal() {
+		if (journal == null)
+			journal = new ArtifactJournal(URIUtil.toFile(URIUtil.append(getLocation(), ArtifactJournal.JOURNAL_FILENAME)));
+		return journal;
+	}
+
+	private void recordChange(boolean added, SimpleArtifactDescriptor descriptor) {
+		if (isJournalEnabled())
+			getJournal().record(added, descriptor);
+	}
+
+	/**
+	 * Appends the pending changes to the journal. Returns <code>false</code> if
+	 * the snapshot has to be written instead.
+	 */
+	private boolean appendToJournal() {
+		ArtifactJournal current = getJournal();
+		// pick up what other processes appended so that nothing is overwritten
+		if (!catchUpJournal() || current.isStale())
+			return false;
+		if (current.size() > Math.max(MIN_JOURNAL_RECORDS, artifactDescriptors.size() / 4))
+			return false;
+		try {
+			current.appendPending(getProperty(IRepository.PROP_TIMESTAMP));
+			return true;
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to append to the artifact repository journal of " + getLocation(), e)); //$NON-NLS-1$
+			return false;
+		}
+	}
+
+	/**
+	 * Applies the changes appended to the journal since it was last read.
+	 * Returns <code>false</code> if the journal no longer continues the loaded
+	 * snapshot, so the repository has to be loaded again.
+	 */
+	private synchronized boolean catchUpJournal() {
+		if (!isJournalEnabled())
+			return true;
+		ArtifactJournal current = getJournal();
+		if (current.isStale())
+			return true;
+		List<ArtifactJournal.Change> changes;
+		try {
+			changes = current.read(getProperty(IRepository.PROP_TIMESTAMP));
+		} catch (IOException | RuntimeException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to read the artifact repository journal of " + getLocation(), e)); //$NON-NLS-1$
+			return false;
+		}
+		if (changes == null)
+			return false;
+		for (ArtifactJournal.Change change : changes) {
+			SimpleArtifactDescriptor descriptor = change.descriptor;
+			if (change.added) {
+				if (artifactDescriptors.add(descriptor)) {
+					descriptor.setRepository(this);
+					mapDescriptor(descriptor, false);
+				}
+			} else if (artifactDescriptors.remove(descriptor)) {
+				unmapDescriptor(descriptor);
+			}
+		}
+		return true;
+	}
+
 	private String doSetProperty(String key, String newValue, IProgressMonitor monitor, boolean save) {
 		monitor = IProgressMonitor.nullSafe(monitor);
 		String oldValue = super.setProperty(key, newValue, new NullProgressMonitor());
 		if (oldValue == newValue || (oldValue != null && oldValue.equals(newValue)))
 			return oldValue;
+		snapshotRequired = true;
 		if (save)
 			save();
 		return oldValue;
@@ -1427,6 +1704,25 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	public synchronized void setRules(String[][] rules) {
 		mappingRules = rules;
+		snapshotRequired = true;
+	}
+
+	@Override
+	public synchronized void setName(String value) {
+		super.setName(value);
+		snapshotRequired = true;
+	}
+
+	@Override
+	public synchronized void setDescription(String description) {
+		super.setDescription(description);
+		snapshotRequired = true;
+	}
+
+	@Override
+	public synchronized void setProvider(String provider) {
+		super.setProvider(provider);
+		snapshotRequired = true;
 	}
 
 	@Override
@@ -1437,11 +1733,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	@Override
 	public IQueryable<IArtifactDescriptor> descriptorQueryable() {
 		return (query, monitor) -> {
-			synchronized (SimpleArtifactRepository.this) {
-				snapshotNeeded = true;
-				Collection<List<IArtifactDescriptor>> descs = SimpleArtifactRepository.this.artifactMap.values();
-				return query.perform(new CompoundIterator<>(descs.iterator()));
-			}
+			Collection<List<IArtifactDescriptor>> descs = SimpleArtifactRepository.this.artifactMap.values();
+			return query.perform(new CompoundIterator<>(descs.iterator()));
 		};
 	}
 
@@ -1452,11 +1745,10 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized Iterator<IArtifactKey> everything() {
+	public Iterator<IArtifactKey> everything() {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
-		snapshotNeeded = true;
 		return artifactMap.keySet().iterator();
 	}
 
@@ -1503,16 +1795,78 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return result;
 	}
 
+	/**
+	 * Like {@link #executeBatch(IRunnableWithProgress, IProgressMonitor)}, but the
+	 * runnable does not hold the monitor of this repository. It may therefore
+	 * modify the repository from several threads, each operation being atomic on
+	 * its own rather than the batch as a whole. The repository is saved once, when
+	 * the last concurrent batch in progress ends.
+	 */
+	public IStatus executeConcurrentBatch(IRunnableWithProgress runnable, IProgressMonitor monitor) {
+		monitor = IProgressMonitor.nullSafe(monitor);
+		int[] depth = concurrentBatchDepth.get();
+		if (depth[0] == 0) {
+			synchronized (this) {
+				if (concurrentBatches == 0 && canLock()) {
+					concurrentBatchLockAcquired = lockAndLoad(false, monitor);
+					if (!concurrentBatchLockAcquired)
+						return new Status(IStatus.ERROR, Activator.ID, "Could not lock artifact repository for writing", null); //$NON-NLS-1$
+				}
+				concurrentBatches++;
+			}
+		}
+		IStatus result = null;
+		depth[0]++;
+		try {
+			runnable.run(monitor);
+		} catch (OperationCanceledException oce) {
+			result = new Status(IStatus.CANCEL, Activator.ID, oce.getMessage(), oce);
+		} catch (Throwable e) {
+			result = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+		} finally {
+			depth[0]--;
+			if (depth[0] == 0)
+				result = endConcurrentBatch(result);
+		}
+		if (result == null)
+			result = Status.OK_STATUS;
+		return result;
+	}
+
+	private synchronized IStatus endConcurrentBatch(IStatus result) {
+		concurrentBatches--;
+		if (concurrentBatches > 0)
+			return result;
+		try {
+			save();
+		} catch (Exception e) {
+			if (result != null)
+				result = new MultiStatus(Activator.ID, IStatus.ERROR, new IStatus[] {result}, e.getMessage(), e);
+			else
+				result = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+		} finally {
+			if (concurrentBatchLockAcquired) {
+				concurrentBatchLockAcquired = false;
+				unlock();
+			}
+		}
+		return result;
+	}
+
 	@Override
-	public synchronized IIndex<IArtifactKey> getIndex(String memberName) {
+	public IIndex<IArtifactKey> getIndex(String memberName) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
 		if (ArtifactKey.MEMBER_ID.equals(memberName)) {
-			snapshotNeeded = true;
-			if (keyIndex == null)
-				keyIndex = new KeyIndex(artifactMap.keySet());
-			return keyIndex;
+			int count = modificationCount;
+			KeyIndexSnapshot cached = keyIndex;
+			if (cached != null && cached.modificationCount == count)
+				return cached.index;
+			// an index built while the map changes is not cached as the count moved on
+			KeyIndex index = new KeyIndex(artifactMap.keySet());
+			keyIndex = new KeyIndexSnapshot(count, index);
+			return index;
 		}
 		return null;
 	}
@@ -1641,10 +1995,33 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 */
 	private void load(IProgressMonitor monitor) {
 		monitor = IProgressMonitor.nullSafe(monitor);
-		if (!holdsLock())
-			doLoad(monitor);
-		else
+		// readers only take the monitor if there is something to load
+		if (holdsLock() || isUpToDate()) {
 			monitor.done();
+			return;
+		}
+		synchronized (this) {
+			if (!holdsLock())
+				doLoad(monitor);
+			else
+				monitor.done();
+		}
+	}
+
+	/**
+	 * Returns whether neither the repository file nor the journal changed since
+	 * they were last read.
+	 */
+	private boolean isUpToDate() {
+		try {
+			File localFile = new SimpleArtifactRepositoryFactory().getLocalFile(getLocation(), new NullProgressMonitor());
+			if (localFile.lastModified() > cacheTimestamp)
+				return false;
+		} catch (Exception e) {
+			return false;
+		}
+		ArtifactJournal current = journal;
+		return current == null || !isJournalEnabled() || !current.hasUnread();
 	}
 
 	private void updateTimestamp() {
@@ -1676,7 +2053,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			try {
 				File localFile = repositoryFactory.getLocalFile(getLocation(), subMonitor.newChild(1));
 				long lastModified = localFile.lastModified();
-				if (lastModified <= cacheTimestamp)
+				// an unchanged snapshot only needs the journal records appended since
+				if (lastModified <= cacheTimestamp && catchUpJournal())
 					return;
 				cacheTimestamp = lastModified;
 			} catch (Exception e) {
@@ -1711,7 +2089,11 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 				//
 				this.artifactDescriptors = ((SimpleArtifactRepository) repositoryOnDisk).artifactDescriptors;
 				this.artifactMap = ((SimpleArtifactRepository) repositoryOnDisk).artifactMap;
+				this.modificationCount++;
 				this.addedDescriptors.clear();
+				// the loaded repository has already caught up with the journal
+				this.journal = ((SimpleArtifactRepository) repositoryOnDisk).journal;
+				this.snapshotRequired = false;
 			}
 		} finally {
 			monitor.done();
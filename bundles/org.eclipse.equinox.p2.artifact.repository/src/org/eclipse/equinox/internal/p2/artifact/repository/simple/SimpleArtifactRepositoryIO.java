@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2023 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -308,8 +308,7 @@ public class SimpleArtifactRepositoryIO {
 		public synchronized void parse(InputStream stream) throws IOException {
 			this.status = null;
 			try {
-				// TODO: currently not caching the parser since we make no assumptions
-				//		 or restrictions on concurrent parsing
+				// the parser is only reused on this thread in the fast parsing mode
 				XMLReader reader = getParser().getXMLReader();
 				RepositoryHandler repositoryHandler = new RepositoryHandler(uri);
 				reader.setContentHandler(new RepositoryDocHandler(REPOSITORY_ELEMENT, repositoryHandler));
@@ -326,6 +325,7 @@ public class SimpleArtifactRepositoryIO {
 				ioException.initCause(e);
 				throw ioException;
 			} finally {
+				releaseParser();
 				stream.close();
 			}
 		}
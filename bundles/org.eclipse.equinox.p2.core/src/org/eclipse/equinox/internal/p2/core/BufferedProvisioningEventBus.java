@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
+import org.eclipse.equinox.p2.core.spi.IAgentService;
+
+/**
+ * High throughput implementation of the {@link IProvisioningEventBus} service.
+ * <p>
+ * Publishing does not take any lock: synchronous listeners are notified from a
+ * snapshot of the listener list, and every asynchronous listener has its own
+ * mailbox that is drained in order by the dispatcher thread. Events
+ * implementing {@link CoalescableEvent} occupy a single slot per coalescing key
+ * in a mailbox, so a listener that falls behind only sees the latest state, and
+ * such events are delivered at most once per coalescing interval per key.
+ * {@link LosslessProvisioningListener}s receive every event.
+ * </p>
+ */
+public class BufferedProvisioningEventBus implements IProvisioningEventBus, IAgentService {
+
+	/**
+	 * Default minimum time in milliseconds between two deliveries of coalescable
+	 * events with the same key to a listener.
+	 */
+	public static final long DEFAULT_COALESCE_INTERVAL = 100;
+
+	private static final int MAX_TRACKED_KEYS = 256;
+
+	/**
+	 * Marks the position of pending coalescable events in a mailbox.
+	 */
+	private static final class Slot {
+		final Object key;
+
+		Slot(Object key) {
+			this.key = key;
+		}
+	}
+
+	private final class Mailbox implements Runnable {
+		final ProvisioningListener listener;
+		final boolean coalesce;
+		final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+		final Map<Object, EventObject> latest = new ConcurrentHashMap<>();
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		// only accessed by the dispatcher thread
+		final Map<Object, Long> lastDelivery = new HashMap<>();
+		volatile boolean removed;
+
+		Mailbox(ProvisioningListener listener) {
+			this.listener = listener;
+			this.coalesce = !(listener instanceof LosslessProvisioningListener);
+		}
+
+		void post(EventObject event) {
+			if (coalesce && event instanceof CoalescableEvent) {
+				Object key = ((CoalescableEvent) event).getCoalescingKey();
+				// only the first pending occurrence of a key takes a place in the queue
+				if (latest.put(key, event) == null)
+					queue.offer(new Slot(key));
+			} else {
+				queue.offer(event);
+			}
+			schedule();
+		}
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the bus has been closed
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			long delay = drain();
+			if (delay > 0) {
+				try {
+					executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+					return;
+				} catch (RejectedExecutionException e) {
+					// the bus has been closed
+				}
+			}
+			scheduled.set(false);
+			if (!queue.isEmpty() && !closed && !removed)
+				schedule();
+		}
+
+		/**
+		 * Delivers the queued events in order.
+		 *
+		 * @return the time to wait before a rate limited event can be delivered, or
+		 *         <code>0</code> if the mailbox is empty
+		 */
+		private long drain() {
+			Object item;
+			while ((item = queue.peek()) != null) {
+				if (closed || removed) {
+					queue.clear();
+					latest.clear();
+					return 0;
+				}
+				EventObject event;
+				if (item instanceof Slot) {
+					Object key = ((Slot) item).key;
+					long now = System.currentTimeMillis();
+					Long last = lastDelivery.get(key);
+					if (last != null && now - last.longValue() < coalesceInterval)
+						return coalesceInterval - (now - last.longValue());
+					queue.poll();
+					event = latest.remove(key);
+					trackDelivery(key, now);
+				} else {
+					queue.poll();
+					event = (EventObject) item;
+				}
+				if (event != null)
+					dispatchEvent(listener, listener, 0, event);
+			}
+			return 0;
+		}
+
+		private void trackDelivery(Object key, long now) {
+			if (lastDelivery.size() >= MAX_TRACKED_KEYS)
+				lastDelivery.values().removeIf(time -> now - time.longValue() >= coalesceInterval);
+			lastDelivery.put(key, Long.valueOf(now));
+		}
+	}
+
+	private final long coalesceInterval;
+	private final ScheduledThreadPoolExecutor executor;
+	private volatile boolean closed = false;
+
+	/* @GuardedBy("this") for writes */
+	private volatile ProvisioningListener[] syncListeners = new ProvisioningListener[0];
+	/* @GuardedBy("this") for writes */
+	private volatile Mailbox[] mailboxes = new Mailbox[0];
+
+	public BufferedProvisioningEventBus() {
+		this(DEFAULT_COALESCE_INTERVAL);
+	}
+
+	public BufferedProvisioningEventBus(long coalesceInterval) {
+		this.coalesceInterval = Math.max(0, coalesceInterval);
+		this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "Provisioning Event Dispatcher"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	@Override
+	public synchronized void addListener(ProvisioningListener toAdd) {
+		if (toAdd instanceof SynchronousProvisioningListener) {
+			for (ProvisioningListener listener : syncListeners)
+				if (listener == toAdd)
+					return;
+			ProvisioningListener[] result = Arrays.copyOf(syncListeners, syncListeners.length + 1);
+			result[result.length - 1] = toAdd;
+			syncListeners = result;
+		} else {
+			for (Mailbox mailbox : mailboxes)
+				if (mailbox.listener == toAdd)
+					return;
+			Mailbox[] result = Arrays.copyOf(mailboxes, mailboxes.length + 1);
+			result[result.length - 1] = new Mailbox(toAdd);
+			mailboxes = result;
+		}
+	}
+
+	@Override
+	public synchronized void removeListener(ProvisioningListener toRemove) {
+		if (toRemove instanceof SynchronousProvisioningListener) {
+			List<ProvisioningListener> result = new ArrayList<>(Arrays.asList(syncListeners));
+			if (result.removeIf(listener -> listener == toRemove))
+				syncListeners = result.toArray(new ProvisioningListener[result.size()]);
+		} else {
+			List<Mailbox> result = new ArrayList<>(Arrays.asList(mailboxes));
+			for (Iterator<Mailbox> iter = result.iterator(); iter.hasNext();) {
+				Mailbox mailbox = iter.next();
+				if (mailbox.listener == toRemove) {
+					mailbox.removed = true;
+					iter.remove();
+				}
+			}
+			if (result.size() != mailboxes.length)
+				mailboxes = result.toArray(new Mailbox[result.size()]);
+		}
+	}
+
+	@Override
+	public void publishEvent(EventObject event) {
+		if (closed)
+			return;
+		for (ProvisioningListener listener : syncListeners)
+			dispatchEvent(listener, listener, 0, event);
+		for (Mailbox mailbox : mailboxes)
+			mailbox.post(event);
+	}
+
+	@Override
+	public void dispatchEvent(ProvisioningListener eventListener, ProvisioningListener listenerObject, int eventAction, EventObject eventObject) {
+		if (closed)
+			return;
+		try {
+			eventListener.notify(eventObject);
+		} catch (Exception e) {
+			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, "Exception during event notification", e)); //$NON-NLS-1$
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		executor.shutdown();
+		try {
+			// we're going to cap waiting time at 30s
+			executor.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void start() {
+		//nothing to do
+	}
+
+	@Override
+	public void stop() {
+		close();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -24,9 +24,36 @@ import org.osgi.service.component.annotations.Component;
 @Component(service = IAgentServiceFactory.class, property = IAgentServiceFactory.PROP_CREATED_SERVICE_NAME + "="
 		+ IProvisioningEventBus.SERVICE_NAME, name = "org.eclipse.equinox.p2.core.eventbus")
 public class EventBusComponent implements IAgentServiceFactory {
+	/**
+	 * Agent property selecting the {@link BufferedProvisioningEventBus}, which
+	 * coalesces progress events instead of delivering each of them.
+	 */
+	public static final String PROP_HIGH_THROUGHPUT = "eclipse.p2.eventbus.highThroughput"; //$NON-NLS-1$
+
+	/**
+	 * Agent property holding the minimum time in milliseconds between the
+	 * delivery of two coalescable events with the same key in high throughput
+	 * mode.
+	 */
+	public static final String PROP_COALESCE_INTERVAL = "eclipse.p2.eventbus.coalesceInterval"; //$NON-NLS-1$
+
 	@Override
 	public Object createService(IProvisioningAgent agent) {
+		if (agent.getBooleanProperty(PROP_HIGH_THROUGHPUT))
+			return new BufferedProvisioningEventBus(getCoalesceInterval(agent));
 		return new ProvisioningEventBus();
 	}
 
+	private static long getCoalesceInterval(IProvisioningAgent agent) {
+		String value = agent.getProperty(PROP_COALESCE_INTERVAL);
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				// fall through to the default
+			}
+		}
+		return BufferedProvisioningEventBus.DEFAULT_COALESCE_INTERVAL;
+	}
+
 }
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.provisional.p2.core.eventbus;
+
+/**
+ * Implemented by events that only report the latest state of something, such
+ * as download progress. When the event bus runs in high throughput mode, a
+ * pending event is replaced by a newer one with the same coalescing key, and
+ * such events are delivered at a bounded rate, unless the listener is a
+ * {@link LosslessProvisioningListener}.
+ */
+public interface CoalescableEvent {
+
+	/**
+	 * Returns the key identifying the state this event reports. Events with equal
+	 * keys supersede each other.
+	 */
+	Object getCoalescingKey();
+}
@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.provisional.p2.core.eventbus;
+
+/**
+ * An asynchronous listener that receives every published event, including
+ * every {@link CoalescableEvent}, regardless of the event bus mode.
+ */
+public interface LosslessProvisioningListener extends ProvisioningListener {
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2008 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -49,4 +49,13 @@ public abstract class DirectoryChangeListener {
 	public Long getSeenFile(File file) {
 		return null;
 	}
+
+	/**
+	 * Returns the size the given file had when it was last seen, or
+	 * <code>null</code> if it is not known. A file whose size differs has
+	 * changed even if its time stamp has not.
+	 */
+	public Long getSeenFileSize(File file) {
+		return null;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2017 aQute and others.
+ *  Copyright (c) 2007, 2024 aQute and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -15,7 +15,10 @@
 package org.eclipse.equinox.internal.provisional.p2.directorywatcher;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.BundleContext;
 
@@ -53,11 +56,127 @@ public class DirectoryWatcher {
 			done = true;
 			notify();
 		}
+
+		synchronized boolean isDone() {
+			return done;
+		}
+	}
+
+	/**
+	 * A watcher thread reacting to the events of a watch service instead of
+	 * listing the directories periodically. The events of a burst are reported
+	 * to the listeners as one poll, once no event came for a quiet period. The
+	 * directories are only scanned in full at startup, when events have been
+	 * lost, and periodically while a directory cannot be watched.
+	 */
+	private class EventWatcherThread extends WatcherThread {
+		private final long pollFrequency;
+		private final WatchService watchService;
+		private final Map<WatchKey, File> keys = new HashMap<>();
+
+		EventWatcherThread(long pollFrequency, WatchService watchService) {
+			super(pollFrequency);
+			this.pollFrequency = pollFrequency;
+			this.watchService = watchService;
+		}
+
+		@Override
+		public void run() {
+			try {
+				register();
+				poll();
+				while (!isDone()) {
+					Set<File> changed = new HashSet<>();
+					boolean rescan;
+					WatchKey key;
+					if (keys.size() < directories.length)
+						key = watchService.poll(pollFrequency, TimeUnit.MILLISECONDS);
+					else
+						key = watchService.take();
+					if (key == null) {
+						// some directory is not watched, look for changes the hard way
+						rescan = true;
+					} else {
+						rescan = collect(key, changed);
+						long deadline = System.currentTimeMillis() + pollFrequency;
+						while (System.currentTimeMillis() < deadline) {
+							key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+							if (key == null)
+								break;
+							rescan |= collect(key, changed);
+						}
+					}
+					if (rescan) {
+						register();
+						poll();
+					} else if (!changed.isEmpty()) {
+						processChanges(changed);
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				// stopped
+			} catch (Throwable e) {
+				log(Messages.error_main_loop, e);
+			} finally {
+				try {
+					watchService.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		/*
+		 * Add the changed files of the given key to the given set, and return
+		 * whether the directories have to be scanned in full.
+		 */
+		private boolean collect(WatchKey key, Set<File> changed) {
+			File directory = keys.get(key);
+			boolean rescan = false;
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+					rescan = true;
+				else if (directory != null)
+					changed.add(new File(directory, event.context().toString()));
+			}
+			if (!key.reset()) {
+				// the directory is gone
+				keys.remove(key);
+				rescan = true;
+			}
+			return rescan;
+		}
+
+		private void register() {
+			for (File directory : directories) {
+				if (keys.containsValue(directory))
+					continue;
+				try {
+					WatchKey key = directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+					keys.put(key, directory);
+				} catch (IOException e) {
+					// does not exist (yet), the directory is scanned periodically
+				}
+			}
+		}
+
+		@Override
+		public synchronized void done() {
+			super.done();
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
 	}
 
 	public final static String POLL = "eclipse.p2.directory.watcher.poll"; //$NON-NLS-1$
 	public final static String DIR = "eclipse.p2.directory.watcher.dir"; //$NON-NLS-1$
 	private static final long DEFAULT_POLL_FREQUENCY = 2000;
+	// the time without events after which a burst of events is reported
+	static final long QUIET_PERIOD = 200;
 
 	public static void log(String string, Throwable e) {
 		System.err.println(string + ": " + e); //$NON-NLS-1$
@@ -121,6 +240,35 @@ public class DirectoryWatcher {
 		watcher.start();
 	}
 
+	/**
+	 * Starts watching the directories for changes with the watch service of the
+	 * file system, falling back to polling if there is none.
+	 */
+	public void startWatching() {
+		startWatching(DEFAULT_POLL_FREQUENCY);
+	}
+
+	/**
+	 * Starts watching the directories for changes with the watch service of the
+	 * file system, falling back to polling if there is none. The poll frequency
+	 * bounds the time a burst of changes is held back, and is the period of the
+	 * full scans of directories that cannot be watched.
+	 */
+	public synchronized void startWatching(final long pollFrequency) {
+		if (watcher != null)
+			throw new IllegalStateException(Messages.thread_started);
+
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException e) {
+			start(pollFrequency);
+			return;
+		}
+		watcher = new EventWatcherThread(pollFrequency, watchService);
+		watcher.start();
+	}
+
 	public synchronized void stop() {
 		if (watcher == null)
 			throw new IllegalStateException(Messages.thread_not_started);
@@ -166,6 +314,44 @@ public class DirectoryWatcher {
 		}
 	}
 
+	/**
+	 * Notify the listeners of the changes to the given files of the directories
+	 * as one poll, without scanning the other files.
+	 */
+	synchronized void processChanges(Set<File> changed) {
+		List<File> relevant = new ArrayList<>(changed.size());
+		for (File file : changed) {
+			// deleted markers and unknown files that are gone make no difference
+			if (file.exists() || (!file.getPath().endsWith(DEL_EXT) && scannedFiles.contains(file)))
+				relevant.add(file);
+		}
+		if (relevant.isEmpty())
+			return;
+		removals = new HashSet<>();
+		pendingDeletions = new HashSet<>();
+		for (DirectoryChangeListener listener : listeners)
+			listener.startPoll();
+		for (File file : relevant) {
+			if (file.getPath().endsWith(DEL_EXT)) {
+				File target = new File(file.getPath().substring(0, file.getPath().length() - 4));
+				scannedFiles.remove(target);
+				removals.add(target);
+				pendingDeletions.add(target);
+			} else if (file.exists()) {
+				scannedFiles.add(file);
+				removals.remove(file);
+				for (DirectoryChangeListener listener : listeners) {
+					if (isInterested(listener, file))
+						processFile(file, listener);
+				}
+			} else {
+				scannedFiles.remove(file);
+				removals.add(file);
+			}
+		}
+		stopPoll();
+	}
+
 	private void stopPoll() {
 		notifyRemovals();
 		removals = scannedFiles;
@@ -198,9 +384,11 @@ public class DirectoryWatcher {
 				// The file is new
 				listener.added(file);
 			} else {
-				// The file is not new but may have changed
+				// The file is not new but may have changed, also when replaced by one
+				// of another size keeping the time stamp
 				long lastModified = file.lastModified();
-				if (oldTimestamp.longValue() != lastModified)
+				Long oldSize = listener.getSeenFileSize(file);
+				if (oldTimestamp.longValue() != lastModified || (oldSize != null && oldSize.longValue() != file.length()))
 					listener.changed(file);
 			}
 		} catch (Exception e) {
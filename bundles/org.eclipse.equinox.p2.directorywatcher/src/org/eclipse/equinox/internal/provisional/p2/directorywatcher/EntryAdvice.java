@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 Code 9 and others. 
+ * Copyright (c) 2008, 2024 Code 9 and others. 
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -29,15 +29,33 @@ import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 /**
  * Entry advice captures the name, location, modified time, shape etc of something
  * discovered by the repository listener.  It is a simplified structure intended to represent
- * only one entry at a time and that entry is the the only entry being published.  
+ * only one entry at a time and that entry is the the only entry being published, unless
+ * the advice is restricted to the id and version of the entry.
  */
 public class EntryAdvice implements IPropertyAdvice {
 	private Map<String, String> metadataProps = new HashMap<>();
 	private Map<String, String> artifactProps = new HashMap<>();
+	private final String id;
+	private final Version version;
+
+	public EntryAdvice() {
+		this(null, null);
+	}
+
+	/**
+	 * Creates an advice applying only to the given id and version, so that
+	 * several entries can be published together.
+	 */
+	EntryAdvice(String id, Version version) {
+		this.id = id;
+		this.version = version;
+	}
 
 	@Override
 	public boolean isApplicable(String configSpec, boolean includeDefault, String id, Version version) {
-		return true;
+		if (this.id == null)
+			return true;
+		return this.id.equals(id) && this.version.equals(version);
 	}
 
 	void setProperties(File location, long timestamp, URI reference) {
@@ -56,6 +74,10 @@ public class EntryAdvice implements IPropertyAdvice {
 		artifactProps.put(RepositoryListener.FILE_NAME, location.getAbsolutePath());
 		metadataProps.put(RepositoryListener.FILE_NAME, location.getAbsolutePath());
 		metadataProps.put(RepositoryListener.FILE_LAST_MODIFIED, Long.toString(timestamp));
+		if (location.isFile())
+			metadataProps.put(RepositoryListener.FILE_SIZE, Long.toString(location.length()));
+		else
+			metadataProps.remove(RepositoryListener.FILE_SIZE);
 		if (linkFile != null)
 			metadataProps.put(Site.PROP_LINK_FILE, linkFile);
 	}
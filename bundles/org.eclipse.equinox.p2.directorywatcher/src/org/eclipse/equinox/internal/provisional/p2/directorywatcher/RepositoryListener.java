@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2018 IBM Corporation and others.
+ *  Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -17,13 +17,17 @@ package org.eclipse.equinox.internal.provisional.p2.directorywatcher;
 import java.io.File;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactDescriptor;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
 import org.eclipse.equinox.internal.p2.update.Site;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.publisher.*;
 import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
 import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAction;
@@ -42,12 +46,31 @@ public class RepositoryListener extends DirectoryChangeListener {
 	public static final String ARTIFACT_REFERENCE = "artifact.reference"; //$NON-NLS-1$
 	public static final String FILE_LAST_MODIFIED = "file.lastModified"; //$NON-NLS-1$
 	public static final String FILE_NAME = "file.name"; //$NON-NLS-1$
+	/**
+	 * The property recording the size of the file an installable unit was
+	 * published from. Directories have none.
+	 */
+	public static final String FILE_SIZE = "file.size"; //$NON-NLS-1$
+	/**
+	 * The system property turning on batched publishing by default, see
+	 * {@link #setBatched(boolean)}.
+	 */
+	public static final String PROP_BATCHED = "p2.directorywatcher.batched"; //$NON-NLS-1$
+	private static final int PARSE_THREADS = Math.max(1, Integer.getInteger("p2.directorywatcher.parseThreads", 4)); //$NON-NLS-1$
 	private final IMetadataRepository metadataRepository;
 	private final CachingArtifactRepository artifactRepository;
 	// at any point in time currentFiles is the list of files/dirs that the watcher has seen and 
 	// believes to be on disk.
 	private final Map<File, Long> currentFiles = new HashMap<>();
+	// the size of the current files when they were published, for the files recording one
+	private final Map<File, Long> currentSizes = new HashMap<>();
 	private final Collection<File> polledSeenFiles = new HashSet<>();
+	// map of String (file.name) to the IUs published for that file, as of the start of the poll
+	private final Map<String, Collection<IInstallableUnit>> iusByFile = new HashMap<>();
+	// the bundles added and changed during the poll in batched mode, to their modification time
+	private final Map<File, Long> pendingAdditions = new LinkedHashMap<>();
+	private final Map<File, Long> pendingChanges = new LinkedHashMap<>();
+	private boolean batched = Boolean.getBoolean(PROP_BATCHED);
 
 	private EntryAdvice advice = new EntryAdvice();
 	private PublisherInfo info;
@@ -74,11 +97,28 @@ public class RepositoryListener extends DirectoryChangeListener {
 	}
 
 	private void initializePublisher() {
-		info = new PublisherInfo();
-		info.setArtifactRepository(artifactRepository);
-		info.setMetadataRepository(metadataRepository);
+		info = createPublisherInfo();
 		info.addAdvice(advice);
-		info.setArtifactOptions(IPublisherInfo.A_INDEX | IPublisherInfo.A_NO_MD5);
+	}
+
+	private PublisherInfo createPublisherInfo() {
+		PublisherInfo result = new PublisherInfo();
+		result.setArtifactRepository(artifactRepository);
+		result.setMetadataRepository(metadataRepository);
+		result.setArtifactOptions(IPublisherInfo.A_INDEX | IPublisherInfo.A_NO_MD5);
+		return result;
+	}
+
+	/**
+	 * Sets whether the bundles added or changed during a poll are published
+	 * together when the poll stops, their manifests being read concurrently,
+	 * instead of one by one as they are found. In batched mode {@link #added(File)}
+	 * and {@link #changed(File)} accept every jar and directory that may be a
+	 * bundle, the files found not to be bundles are passed to
+	 * {@link #notPublished(File)} when the batch is published.
+	 */
+	public void setBatched(boolean batched) {
+		this.batched = batched;
 	}
 
 	protected CachingArtifactRepository initializeArtifactRepository(String name, URI repositoryLocation,
@@ -117,8 +157,12 @@ public class RepositoryListener extends DirectoryChangeListener {
 				&& new File(file, "feature.xml").exists()) //$NON-NLS-1$ )
 			return processFeature(file, isAddition);
 		// could it be a bundle ?
-		if (isDirectory || file.getName().endsWith(".jar")) //$NON-NLS-1$
-			return processBundle(file, isDirectory, isAddition);
+		if (isDirectory || file.getName().endsWith(".jar")) { //$NON-NLS-1$
+			if (!batched)
+				return processBundle(file, isDirectory, isAddition);
+			(isAddition ? pendingAdditions : pendingChanges).put(file, file.lastModified());
+			return true;
+		}
 		return false;
 	}
 
@@ -145,6 +189,97 @@ public class RepositoryListener extends DirectoryChangeListener {
 		return action.perform(info, result, new NullProgressMonitor()).isOK();
 	}
 
+	/**
+	 * Publish the bundles collected in batched mode. This is done when the poll
+	 * stops, subclasses needing the outcome earlier can call it before.
+	 */
+	protected void publishPending() {
+		if (pendingAdditions.isEmpty() && pendingChanges.isEmpty())
+			return;
+		Set<File> files = new HashSet<>(pendingAdditions.keySet());
+		files.addAll(pendingChanges.keySet());
+		Map<File, BundleDescription> descriptions = parseBundles(files);
+		publishBundles(pendingAdditions, descriptions, iusToAdd);
+		publishBundles(pendingChanges, descriptions, iusToChange);
+		pendingAdditions.clear();
+		pendingChanges.clear();
+	}
+
+	/**
+	 * Called in batched mode for a file accepted as a possible bundle which is
+	 * not one.
+	 */
+	protected void notPublished(File file) {
+		// do nothing
+	}
+
+	private void publishBundles(Map<File, Long> files, Map<File, BundleDescription> descriptions,
+			IPublisherResult result) {
+		PublisherInfo batchInfo = createPublisherInfo();
+		List<BundleDescription> batch = new ArrayList<>(files.size());
+		Set<String> batchIds = new HashSet<>();
+		for (Map.Entry<File, Long> entry : files.entrySet()) {
+			File file = entry.getKey();
+			BundleDescription bundleDescription = descriptions.get(file);
+			if (bundleDescription == null) {
+				notPublished(file);
+				continue;
+			}
+			String id = bundleDescription.getSymbolicName();
+			Version version = Version.create(bundleDescription.getVersion().toString());
+			if (id == null || !batchIds.add(id + '_' + version)) {
+				// the advice could not tell this bundle from another one of the batch
+				advice.setProperties(file, entry.getValue(), file.toURI());
+				new BundlesAction(new BundleDescription[] { bundleDescription }).perform(info, result,
+						new NullProgressMonitor());
+				continue;
+			}
+			EntryAdvice entryAdvice = new EntryAdvice(id, version);
+			entryAdvice.setProperties(file, entry.getValue(), file.toURI());
+			batchInfo.addAdvice(entryAdvice);
+			batch.add(bundleDescription);
+		}
+		if (!batch.isEmpty())
+			new BundlesAction(batch.toArray(new BundleDescription[batch.size()])).perform(batchInfo, result,
+					new NullProgressMonitor());
+	}
+
+	/**
+	 * Read the manifests of the given files concurrently and return the
+	 * descriptions of the bundles among them.
+	 */
+	public static Map<File, BundleDescription> parseBundles(Collection<File> files) {
+		Map<File, BundleDescription> result = new HashMap<>(files.size());
+		if (files.isEmpty())
+			return result;
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(PARSE_THREADS, files.size()), r -> {
+			Thread thread = new Thread(r, "p2 Bundle Parser " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			Map<File, Future<BundleDescription>> futures = new HashMap<>(files.size());
+			for (File file : files)
+				futures.put(file, executor.submit(() -> BundlesAction.createBundleDescriptionIgnoringExceptions(file)));
+			for (Map.Entry<File, Future<BundleDescription>> entry : futures.entrySet()) {
+				try {
+					BundleDescription bundleDescription = entry.getValue().get();
+					if (bundleDescription != null)
+						result.put(entry.getKey(), bundleDescription);
+				} catch (ExecutionException e) {
+					LogHelper.log(new Status(IStatus.ERROR, Constants.BUNDLE_ID,
+							NLS.bind(Messages.error_processing, entry.getKey()), e.getCause()));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
 	@Override
 	public boolean isInterested(File file) {
 		return true;
@@ -153,11 +288,17 @@ public class RepositoryListener extends DirectoryChangeListener {
 	@Override
 	public Long getSeenFile(File file) {
 		Long lastSeen = currentFiles.get(file);
-		if (lastSeen != null)
-			polledSeenFiles.add(file);
+		if (lastSeen == null)
+			return null;
+		polledSeenFiles.add(file);
 		return lastSeen;
 	}
 
+	@Override
+	public Long getSeenFileSize(File file) {
+		return currentSizes.get(file);
+	}
+
 	@Override
 	public void startPoll() {
 		iusToAdd = new PublisherResult();
@@ -167,12 +308,23 @@ public class RepositoryListener extends DirectoryChangeListener {
 
 	@Override
 	public void stopPoll() {
+		publishPending();
 		final Set<File> filesToRemove = new HashSet<>(currentFiles.keySet());
 		filesToRemove.removeAll(polledSeenFiles);
 		polledSeenFiles.clear();
 
-		synchronizeMetadataRepository(filesToRemove);
-		synchronizeArtifactRepository(filesToRemove);
+		// the IUs related to removed files, found through the index of file names
+		// rather than by querying the repository, see bug 324353.
+		Collection<String> removedPaths = new HashSet<>(filesToRemove.size());
+		Collection<IInstallableUnit> removedIUs = new ArrayList<>();
+		for (File file : filesToRemove) {
+			removedPaths.add(file.getAbsolutePath());
+			Collection<IInstallableUnit> ius = iusByFile.get(file.getAbsolutePath());
+			if (ius != null)
+				removedIUs.addAll(ius);
+		}
+		synchronizeMetadataRepository(removedIUs);
+		synchronizeArtifactRepository(removedPaths, removedIUs);
 		iusToAdd = null;
 		iusToChange = null;
 	}
@@ -180,25 +332,14 @@ public class RepositoryListener extends DirectoryChangeListener {
 	/**
 	 * Flush all the pending changes to the metadata repository.
 	 */
-	private void synchronizeMetadataRepository(final Collection<File> removedFiles) {
+	private void synchronizeMetadataRepository(final Collection<IInstallableUnit> removedIUs) {
 		if (metadataRepository == null)
 			return;
 		final Collection<IInstallableUnit> changes = iusToChange.getIUs(null, null);
 		// first remove any IUs that have changed or that are associated with removed files
-		if (!removedFiles.isEmpty() || !changes.isEmpty()) {
+		if (!removedIUs.isEmpty() || !changes.isEmpty()) {
 			metadataRepository.removeInstallableUnits(changes);
-
-			// create a query that will identify all ius related to removed files.
-			// We convert the java.io.File objects to Strings before doing the comparison
-			// because when we have large numbers of files, the performance is much better.
-			// See bug 324353.
-			Collection<String> paths = new HashSet<>(removedFiles.size());
-			for (File file : removedFiles)
-				paths.add(file.getAbsolutePath());
-			IQuery<IInstallableUnit> removeQuery = QueryUtil.createMatchQuery( //
-					"$1.exists(x | properties[$0] == x)", FILE_NAME, paths); //$NON-NLS-1$
-			IQueryResult<IInstallableUnit> toRemove = metadataRepository.query(removeQuery, null);
-			metadataRepository.removeInstallableUnits(toRemove.toUnmodifiableSet());
+			metadataRepository.removeInstallableUnits(removedIUs);
 		}
 		// Then add all the new IUs as well as the new copies of the ones that have changed
 		Collection<IInstallableUnit> additions = iusToAdd.getIUs(null, null);
@@ -212,24 +353,24 @@ public class RepositoryListener extends DirectoryChangeListener {
 	 * descriptors related to any file that has been removed and flush the repo
 	 * to ensure that all the additions and removals have been completed.
 	 */
-	private void synchronizeArtifactRepository(final Collection<File> removedFiles) {
+	private void synchronizeArtifactRepository(final Collection<String> removedPaths,
+			final Collection<IInstallableUnit> removedIUs) {
 		if (artifactRepository == null)
 			return;
-		if (!removedFiles.isEmpty()) {
-			IArtifactDescriptor[] descriptors = artifactRepository.descriptorQueryable()
-					.query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null).toArray(IArtifactDescriptor.class);
-			for (IArtifactDescriptor d : descriptors) {
-				SimpleArtifactDescriptor descriptor = (SimpleArtifactDescriptor) d;
-				String filename = descriptor.getRepositoryProperty(FILE_NAME);
-				if (filename == null) {
-					if (Tracing.DEBUG) {
-						String message = NLS.bind(Messages.filename_missing, "artifact", descriptor.getArtifactKey()); //$NON-NLS-1$
-						LogHelper.log(new Status(IStatus.ERROR, Constants.BUNDLE_ID, message, null));
-					}
-				} else {
-					File artifactFile = new File(filename);
-					if (removedFiles.contains(artifactFile))
+		// the artifacts of removed files are those of their IUs
+		for (IInstallableUnit iu : removedIUs) {
+			for (IArtifactKey key : iu.getArtifacts()) {
+				for (IArtifactDescriptor d : artifactRepository.getArtifactDescriptors(key)) {
+					SimpleArtifactDescriptor descriptor = (SimpleArtifactDescriptor) d;
+					String filename = descriptor.getRepositoryProperty(FILE_NAME);
+					if (filename == null) {
+						if (Tracing.DEBUG) {
+							String message = NLS.bind(Messages.filename_missing, "artifact", descriptor.getArtifactKey()); //$NON-NLS-1$
+							LogHelper.log(new Status(IStatus.ERROR, Constants.BUNDLE_ID, message, null));
+						}
+					} else if (removedPaths.contains(filename)) {
 						artifactRepository.removeDescriptor(descriptor);
+					}
 				}
 			}
 		}
@@ -242,6 +383,8 @@ public class RepositoryListener extends DirectoryChangeListener {
 	 */
 	private void synchronizeCurrentFiles() {
 		currentFiles.clear();
+		currentSizes.clear();
+		iusByFile.clear();
 		if (metadataRepository != null) {
 			IQueryResult<IInstallableUnit> ius = metadataRepository.query(QueryUtil.createIUAnyQuery(), null);
 			for (IInstallableUnit iu : ius) {
@@ -255,6 +398,10 @@ public class RepositoryListener extends DirectoryChangeListener {
 					File iuFile = new File(filename);
 					Long iuLastModified = Long.valueOf(iu.getProperty(FILE_LAST_MODIFIED));
 					currentFiles.put(iuFile, iuLastModified);
+					String size = iu.getProperty(FILE_SIZE);
+					if (size != null)
+						currentSizes.put(iuFile, Long.valueOf(size));
+					iusByFile.computeIfAbsent(iuFile.getAbsolutePath(), key -> new ArrayList<>()).add(iu);
 				}
 			}
 		}
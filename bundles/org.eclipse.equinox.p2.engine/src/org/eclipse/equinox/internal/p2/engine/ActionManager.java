@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2017 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -39,6 +39,7 @@ public class ActionManager implements IRegistryChangeListener {
 
 	private HashMap<String, IConfigurationElement> actionMap;
 	private TouchpointManager touchpointManager;
+	private final ActionTemplateCache actionTemplateCache = new ActionTemplateCache();
 
 	public ActionManager() {
 		this.touchpointManager = new TouchpointManager();
@@ -51,6 +52,13 @@ public class ActionManager implements IRegistryChangeListener {
 		return touchpointManager.getTouchpoint(type);
 	}
 
+	/**
+	 * Returns the cache of parsed touchpoint instructions used by the {@link InstructionParser}.
+	 */
+	public ActionTemplateCache getActionTemplateCache() {
+		return actionTemplateCache;
+	}
+
 	public String getTouchpointQualifiedActionId(String actionId, ITouchpointType type) {
 		if (actionId.indexOf('.') == -1) {
 			if (type == null || type == ITouchpointType.NONE)
@@ -120,6 +128,7 @@ public class ActionManager implements IRegistryChangeListener {
 	@Override
 	public synchronized void registryChanged(IRegistryChangeEvent event) {
 		actionMap = null;
+		actionTemplateCache.clear();
 	}
 
 	static void reportError(String errorMsg) {
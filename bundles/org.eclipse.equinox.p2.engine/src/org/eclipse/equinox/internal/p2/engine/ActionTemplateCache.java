@@ -0,0 +1,163 @@
+/*******************************************************************************
+ *  Copyright (c) 2024 Eclipse contributors and others.
+ *
+ *  This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License 2.0
+ *  which accompanies this distribution, and is available at
+ *  https://www.eclipse.org/legal/epl-2.0/
+ *
+ *  SPDX-License-Identifier: EPL-2.0
+ *
+ *  Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
+import org.eclipse.equinox.p2.metadata.*;
+
+/**
+ * Caches the result of parsing touchpoint instructions so that operands sharing
+ * the same instruction text only pay for tokenizing the body, parsing the
+ * import attribute and resolving the actions once. The cache is owned by the
+ * {@link ActionManager} and is cleared whenever the action registry changes.
+ */
+public class ActionTemplateCache {
+
+	/**
+	 * The maximum number of distinct instructions kept. Instructions that embed
+	 * IU specific values would otherwise grow the cache without bound.
+	 */
+	private static final int MAX_ENTRIES = 2048;
+
+	/**
+	 * A pre-parsed action statement. Binding a template creates the per operand
+	 * {@link ProvisioningAction}. Actions keep their undo values in their memento,
+	 * so a new instance is created for every operand and only the parsed id,
+	 * version range and parameters are shared.
+	 */
+	public static class ActionTemplate {
+		private final String actionId;
+		private final VersionRange versionRange;
+		private final Map<String, String> parameters;
+		private final String statement;
+		// whether no action was registered for the id when the statement was parsed
+		private final boolean missing;
+
+		ActionTemplate(String actionId, VersionRange versionRange, Map<String, String> parameters, String statement, boolean missing) {
+			this.actionId = actionId;
+			this.versionRange = versionRange;
+			this.parameters = parameters;
+			this.statement = statement;
+			this.missing = missing;
+		}
+
+		ProvisioningAction bind(ActionManager actionManager) {
+			ProvisioningAction action = missing ? null : actionManager.getAction(actionId, versionRange);
+			if (action == null)
+				return new MissingAction(actionId, versionRange);
+			return new ParameterizedProvisioningAction(action, parameters, statement);
+		}
+	}
+
+	private static class Key {
+		private final ITouchpointInstruction instruction;
+		private final ITouchpointType touchpointType;
+		private final int hash;
+
+		Key(ITouchpointInstruction instruction, ITouchpointType touchpointType) {
+			this.instruction = instruction;
+			this.touchpointType = touchpointType;
+			this.hash = 31 * Objects.hash(instruction.getBody(), instruction.getImportAttribute()) + Objects.hashCode(touchpointType);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return Objects.equals(instruction.getBody(), other.instruction.getBody()) && Objects.equals(instruction.getImportAttribute(), other.instruction.getImportAttribute()) && Objects.equals(touchpointType, other.touchpointType);
+		}
+	}
+
+	private final Map<Key, List<ActionTemplate>> templates = new LinkedHashMap<>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, List<ActionTemplate>> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	List<ActionTemplate> get(ITouchpointInstruction instruction, ITouchpointType touchpointType) {
+		List<ActionTemplate> result;
+		synchronized (templates) {
+			result = templates.get(new Key(instruction, touchpointType));
+		}
+		if (result == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return result;
+	}
+
+	void put(ITouchpointInstruction instruction, ITouchpointType touchpointType, List<ActionTemplate> actionTemplates) {
+		synchronized (templates) {
+			templates.put(new Key(instruction, touchpointType), Collections.unmodifiableList(actionTemplates));
+		}
+	}
+
+	/**
+	 * Discards all cached templates. Statistics are kept.
+	 */
+	public void clear() {
+		synchronized (templates) {
+			templates.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (templates) {
+			return templates.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the fraction of lookups that were answered from the cache, or
+	 * <code>0</code> if no lookup has been made yet.
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "ActionTemplateCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2018 IBM Corporation and others.
+ * Copyright (c) 2005, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -15,6 +15,7 @@ package org.eclipse.equinox.internal.p2.engine;
 
 import java.util.*;
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.equinox.internal.p2.engine.ActionTemplateCache.ActionTemplate;
 import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.osgi.util.NLS;
@@ -41,13 +42,26 @@ public class InstructionParser {
 	}
 
 	public List<ProvisioningAction> parseActions(ITouchpointInstruction instruction, ITouchpointType touchpointType) {
-		List<ProvisioningAction> actions = new ArrayList<>();
+		ActionTemplateCache cache = actionManager.getActionTemplateCache();
+		List<ActionTemplate> templates = cache.get(instruction, touchpointType);
+		if (templates == null) {
+			templates = parseTemplates(instruction, touchpointType);
+			cache.put(instruction, touchpointType, templates);
+		}
+		List<ProvisioningAction> actions = new ArrayList<>(templates.size());
+		for (ActionTemplate template : templates)
+			actions.add(template.bind(actionManager));
+		return actions;
+	}
+
+	private List<ActionTemplate> parseTemplates(ITouchpointInstruction instruction, ITouchpointType touchpointType) {
+		List<ActionTemplate> templates = new ArrayList<>();
 		Map<String, ActionEntry> importMap = parseImportAttribute(instruction.getImportAttribute());
 		StringTokenizer tokenizer = new StringTokenizer(instruction.getBody(), ";"); //$NON-NLS-1$
 		while (tokenizer.hasMoreTokens()) {
-			actions.add(parseAction(tokenizer.nextToken(), importMap, touchpointType));
+			templates.add(parseAction(tokenizer.nextToken(), importMap, touchpointType));
 		}
-		return actions;
+		return templates;
 	}
 
 	private Map<String, ActionEntry> parseImportAttribute(String importAttribute) {
@@ -73,47 +87,39 @@ public class InstructionParser {
 		return result;
 	}
 
-	private ProvisioningAction parseAction(String statement, Map<String, ActionEntry> qualifier, ITouchpointType touchpointType) {
+	private ActionTemplate parseAction(String statement, Map<String, ActionEntry> qualifier, ITouchpointType touchpointType) {
 		int openBracket = statement.indexOf('(');
 		int closeBracket = statement.lastIndexOf(')');
 		if (openBracket == -1 || closeBracket == -1 || openBracket > closeBracket)
 			throw new IllegalArgumentException(NLS.bind(Messages.action_syntax_error, statement));
 		String actionName = statement.substring(0, openBracket).trim();
-		ProvisioningAction action = lookupAction(actionName, qualifier, touchpointType);
-		if (action instanceof MissingAction)
-			return action;
-
-		String nameValuePairs = statement.substring(openBracket + 1, closeBracket);
-		if (nameValuePairs.length() == 0)
-			return new ParameterizedProvisioningAction(action, Collections.emptyMap(), statement);
 
-		StringTokenizer tokenizer = new StringTokenizer(nameValuePairs, ","); //$NON-NLS-1$
-		Map<String, String> parameters = new HashMap<>();
-		while (tokenizer.hasMoreTokens()) {
-			String nameValuePair = tokenizer.nextToken();
-			int colonIndex = nameValuePair.indexOf(":"); //$NON-NLS-1$
-			if (colonIndex == -1)
-				throw new IllegalArgumentException(NLS.bind(Messages.action_syntax_error, statement));
-			String name = nameValuePair.substring(0, colonIndex).trim();
-			String value = nameValuePair.substring(colonIndex + 1).trim();
-			parameters.put(name, value);
-		}
-		return new ParameterizedProvisioningAction(action, parameters, statement);
-	}
-
-	private ProvisioningAction lookupAction(String actionId, Map<String, ActionEntry> importMap, ITouchpointType touchpointType) {
 		VersionRange versionRange = null;
-		ActionEntry actionEntry = importMap.get(actionId);
+		ActionEntry actionEntry = qualifier.get(actionName);
 		if (actionEntry != null) {
-			actionId = actionEntry.actionId;
+			actionName = actionEntry.actionId;
 			versionRange = actionEntry.versionRange;
 		}
+		String actionId = actionManager.getTouchpointQualifiedActionId(actionName, touchpointType);
+		if (actionManager.getAction(actionId, versionRange) == null)
+			return new ActionTemplate(actionId, versionRange, null, statement, true);
 
-		actionId = actionManager.getTouchpointQualifiedActionId(actionId, touchpointType);
-		ProvisioningAction action = actionManager.getAction(actionId, versionRange);
-		if (action == null)
-			action = new MissingAction(actionId, versionRange);
-
-		return action;
+		String nameValuePairs = statement.substring(openBracket + 1, closeBracket);
+		Map<String, String> parameters = Collections.emptyMap();
+		if (nameValuePairs.length() != 0) {
+			StringTokenizer tokenizer = new StringTokenizer(nameValuePairs, ","); //$NON-NLS-1$
+			parameters = new HashMap<>();
+			while (tokenizer.hasMoreTokens()) {
+				String nameValuePair = tokenizer.nextToken();
+				int colonIndex = nameValuePair.indexOf(":"); //$NON-NLS-1$
+				if (colonIndex == -1)
+					throw new IllegalArgumentException(NLS.bind(Messages.action_syntax_error, statement));
+				String name = nameValuePair.substring(0, colonIndex).trim();
+				String value = nameValuePair.substring(colonIndex + 1).trim();
+				parameters.put(name, value);
+			}
+			parameters = Collections.unmodifiableMap(parameters);
+		}
+		return new ActionTemplate(actionId, versionRange, parameters, statement, false);
 	}
 }
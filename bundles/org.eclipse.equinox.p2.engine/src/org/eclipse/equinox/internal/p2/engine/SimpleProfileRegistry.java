@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2022 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -735,8 +735,7 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		public synchronized void parse(InputStream stream) throws IOException {
 			this.status = null;
 			try {
-				// TODO: currently not caching the parser since we make no assumptions
-				//		 or restrictions on concurrent parsing
+				// the parser is only reused on this thread in the fast parsing mode
 				XMLReader reader = getParser().getXMLReader();
 				ProfileHandler profileHandler = new ProfileHandler();
 				reader.setContentHandler(new ProfileDocHandler(PROFILE_ELEMENT, profileHandler));
@@ -751,6 +750,7 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 				ioException.initCause(e);
 				throw ioException;
 			} finally {
+				releaseParser();
 				stream.close();
 			}
 		}
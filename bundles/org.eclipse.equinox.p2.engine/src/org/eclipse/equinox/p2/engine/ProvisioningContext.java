@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2023 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -18,6 +18,9 @@ package org.eclipse.equinox.p2.engine;
 
 import java.net.URI;
 import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.engine.DebugHelper;
 import org.eclipse.equinox.internal.p2.repository.Transport;
@@ -53,6 +56,13 @@ public class ProvisioningContext {
 
 	private static final String FILE_PROTOCOL = "file"; //$NON-NLS-1$
 
+	/**
+	 * The number of threads loading the remote repositories of a context
+	 * concurrently, so that their indexes are revalidated in parallel rather than
+	 * one round-trip after the other. A value of 1 loads them one at a time.
+	 */
+	private static final int LOAD_THREADS = Math.max(1, Integer.getInteger("p2.context.loadThreads", 4)); //$NON-NLS-1$
+
 	class ArtifactRepositoryQueryable implements IQueryable<IArtifactRepository> {
 		List<IArtifactRepository> repositories;
 
@@ -187,6 +197,7 @@ public class ProvisioningContext {
 
 		List<IArtifactRepository> repos = new ArrayList<>();
 		SubMonitor sub = SubMonitor.convert(monitor, repositories.length + 1);
+		preloadRepositories(repoManager, repositories, loadedArtifactRepositories, failedArtifactRepositories, sub);
 		for (URI location : repositories) {
 			getLoadedRepository(location, repoManager, repos, sub.split(1));
 			// Remove this URI from the list of extra references if it is there.
@@ -222,6 +233,55 @@ public class ProvisioningContext {
 		}
 	}
 
+	/**
+	 * Loads the given remote repositories which are not loaded yet on several
+	 * threads. Loading them afterwards in order finds them in the given map, or in
+	 * the set of failed repositories.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T, R extends IRepository<T>> void preloadRepositories(IRepositoryManager<T> manager, URI[] locations,
+			Map<URI, R> loadedRepositories, Set<URI> failedRepositories, IProgressMonitor monitor) {
+		List<URI> toLoad = new ArrayList<>();
+		for (URI location : locations) {
+			if (location != null && !FILE_PROTOCOL.equals(location.getScheme())
+					&& !loadedRepositories.containsKey(location) && !failedRepositories.contains(location))
+				toLoad.add(location);
+		}
+		if (LOAD_THREADS < 2 || toLoad.size() < 2)
+			return;
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(LOAD_THREADS, toLoad.size()), r -> {
+			Thread thread = new Thread(r, "p2 Repository Loader " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		// progress is reported by the loads in order, the concurrent ones only check for cancellation
+		IProgressMonitor cancelMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+		try {
+			Map<URI, Future<IRepository<T>>> futures = new LinkedHashMap<>();
+			for (URI location : toLoad)
+				futures.put(location, executor.submit(() -> manager.loadRepository(location, cancelMonitor)));
+			for (Entry<URI, Future<IRepository<T>>> entry : futures.entrySet()) {
+				try {
+					loadedRepositories.put(entry.getKey(), (R) entry.getValue().get());
+				} catch (ExecutionException e) {
+					// skip and remember unreadable repositories, other failures show when loading in order
+					if (e.getCause() instanceof ProvisionException)
+						failedRepositories.add(entry.getKey());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	private Set<IMetadataRepository> getLoadedMetadataRepositories(IProgressMonitor monitor) {
 		IMetadataRepositoryManager repoManager = agent.getService(IMetadataRepositoryManager.class);
 		URI[] repositories = metadataRepositories == null ? repoManager.getKnownRepositories(IRepositoryManager.REPOSITORIES_ALL) : metadataRepositories;
@@ -231,6 +291,7 @@ public class ProvisioningContext {
 
 		// Clear out the list of remembered artifact repositories
 		referencedArtifactRepositories = new HashMap<>();
+		preloadRepositories(repoManager, repositories, loadedMetadataRepositories, failedMetadataRepositories, sub);
 		for (URI repositorie : repositories) {
 			loadMetadataRepository(repoManager, repositorie, repos, shouldFollowReferences(), sub.split(1));
 		}
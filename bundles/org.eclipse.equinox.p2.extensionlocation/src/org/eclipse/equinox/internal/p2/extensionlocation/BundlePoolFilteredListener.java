@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 IBM Corporation and others.
+ * Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials 
  * are made available under the terms of the Eclipse Public License 2.0
@@ -52,6 +52,11 @@ public class BundlePoolFilteredListener extends DirectoryChangeListener {
 		return delegate.getSeenFile(file);
 	}
 
+	@Override
+	public Long getSeenFileSize(File file) {
+		return delegate.getSeenFileSize(file);
+	}
+
 	@Override
 	public boolean isInterested(File file) {
 		if (bundlePoolFiles.contains(file))
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2017 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -106,7 +106,11 @@ public class SiteListener extends DirectoryChangeListener {
 		DirectoryWatcher watcher = new DirectoryWatcher(new File[] {plugins, features});
 		//  here we have to sync with the inner repos as the extension location repos are 
 		// read-only wrappers.
-		DirectoryChangeListener listener = new RepositoryListener(metadataRepository.metadataRepository, artifactRepository.artifactRepository);
+		RepositoryListener repositoryListener = new RepositoryListener(metadataRepository.metadataRepository, artifactRepository.artifactRepository);
+		// the files already published keep their installable units and artifacts in the
+		// nested repositories, the manifests of the others are read in parallel
+		repositoryListener.setBatched(true);
+		DirectoryChangeListener listener = repositoryListener;
 		if (metadataRepository.getProperties().get(SiteListener.SITE_POLICY) != null)
 			listener = new SiteListener(metadataRepository.getProperties(), metadataRepository.getLocation().toString(), new BundlePoolFilteredListener(listener));
 		watcher.addListener(listener);
@@ -303,16 +307,21 @@ public class SiteListener extends DirectoryChangeListener {
 	 */
 	private Map<String, File> getPlugins(File location) {
 		File[] plugins = new File(location, PLUGINS).listFiles();
-		Map<String, File> result = new HashMap<>();
+		List<File> bundleLocations = new ArrayList<>();
 		for (int i = 0; plugins != null && i < plugins.length; i++) {
 			File bundleLocation = plugins[i];
-			if (bundleLocation.isDirectory() || bundleLocation.getName().endsWith(".jar")) { //$NON-NLS-1$
-				BundleDescription description = BundlesAction.createBundleDescriptionIgnoringExceptions(bundleLocation);
-				if (description != null) {
-					String id = description.getSymbolicName();
-					String version = description.getVersion().toString();
-					result.put(id + '/' + version, bundleLocation);
-				}
+			if (bundleLocation.isDirectory() || bundleLocation.getName().endsWith(".jar")) //$NON-NLS-1$
+				bundleLocations.add(bundleLocation);
+		}
+		Map<File, BundleDescription> descriptions = RepositoryListener.parseBundles(bundleLocations);
+		Map<String, File> result = new HashMap<>();
+		// keep the order of the listing for bundles found twice
+		for (File bundleLocation : bundleLocations) {
+			BundleDescription description = descriptions.get(bundleLocation);
+			if (description != null) {
+				String id = description.getSymbolicName();
+				String version = description.getVersion().toString();
+				result.put(id + '/' + version, bundleLocation);
 			}
 		}
 		return result;
@@ -333,6 +342,11 @@ public class SiteListener extends DirectoryChangeListener {
 		return delegate.getSeenFile(file);
 	}
 
+	@Override
+	public Long getSeenFileSize(File file) {
+		return delegate.getSeenFileSize(file);
+	}
+
 	@Override
 	public boolean removed(File file) {
 		return delegate.removed(file);
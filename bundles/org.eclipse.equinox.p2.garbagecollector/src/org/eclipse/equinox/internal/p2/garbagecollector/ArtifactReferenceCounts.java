@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.garbagecollector;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.p2.core.IAgentLocation;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+
+/**
+ * The number of profiles of an agent whose installable units reference each
+ * artifact key, kept across sessions in the data area of the agent. The counts
+ * are updated with the installable units added to and removed from a profile,
+ * so that the garbage collector only has to look at the keys whose count
+ * dropped to zero. They are rebuilt from the profiles by a full collection.
+ * The time stamp of each profile the counts describe is kept with them, so
+ * that changes made to the profiles without updating the counts are noticed.
+ */
+public class ArtifactReferenceCounts {
+	private static final String FILE_NAME = "references.properties"; //$NON-NLS-1$
+	// the number of incremental collections since the counts were last rebuilt,
+	// an artifact key in external form never starts with '@'
+	private static final String PROP_INCREMENTAL_RUNS = "@incrementalRuns"; //$NON-NLS-1$
+	// followed by the profile id, the time stamp of the profile described
+	private static final String PROP_TIMESTAMP_PREFIX = "@timestamp."; //$NON-NLS-1$
+
+	private final File file;
+	private final Map<String, Integer> counts = new HashMap<>();
+	private final Map<String, Long> timestamps = new HashMap<>();
+	private int incrementalRuns;
+	// whether the counts match the profiles, as far as is known
+	private boolean valid;
+
+	/**
+	 * Returns the counts stored in the data area of the given agent, or
+	 * <code>null</code> if the agent has no location on disk.
+	 */
+	public static ArtifactReferenceCounts forAgent(IProvisioningAgent agent) {
+		IAgentLocation location = agent == null ? null : agent.getService(IAgentLocation.class);
+		if (location == null)
+			return null;
+		URI dataArea = location.getDataArea(GarbageCollectorHelper.ID);
+		if (dataArea == null || !"file".equals(dataArea.getScheme())) //$NON-NLS-1$
+			return null;
+		return new ArtifactReferenceCounts(new File(URIUtil.toFile(dataArea), FILE_NAME));
+	}
+
+	public ArtifactReferenceCounts(File file) {
+		this.file = file;
+		load();
+	}
+
+	private void load() {
+		if (!file.exists())
+			return;
+		Properties properties = new Properties();
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			properties.load(in);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, GarbageCollectorHelper.ID, "Error reading artifact reference counts " + file, e)); //$NON-NLS-1$
+			return;
+		}
+		try {
+			for (String key : properties.stringPropertyNames()) {
+				if (key.equals(PROP_INCREMENTAL_RUNS))
+					incrementalRuns = Integer.parseInt(properties.getProperty(key));
+				else if (key.startsWith(PROP_TIMESTAMP_PREFIX))
+					timestamps.put(key.substring(PROP_TIMESTAMP_PREFIX.length()), Long.valueOf(properties.getProperty(key)));
+				else
+					counts.put(key, Integer.valueOf(properties.getProperty(key)));
+			}
+		} catch (NumberFormatException e) {
+			// damaged, the next full collection rebuilds the counts
+			counts.clear();
+			timestamps.clear();
+			return;
+		}
+		valid = true;
+	}
+
+	/**
+	 * Returns whether the counts can be used for an incremental collection. They
+	 * cannot before they have been built once by a full collection, or when an
+	 * update did not match them.
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Returns whether the counts describe exactly the given profiles, mapped from
+	 * their ids to their time stamps. Profiles changed, added or removed
+	 * otherwise than through the updates of the counts do not match.
+	 */
+	public boolean matches(Map<String, Long> profileTimestamps) {
+		return timestamps.equals(profileTimestamps);
+	}
+
+	/**
+	 * Marks the counts as not matching the profiles, so that they are rebuilt.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * Records the time stamp of the state of a profile the counts have been
+	 * updated to.
+	 */
+	public void setTimestamp(String profileId, long timestamp) {
+		timestamps.put(profileId, Long.valueOf(timestamp));
+	}
+
+	/**
+	 * Returns the number of incremental collections since the counts were last
+	 * rebuilt.
+	 */
+	public int getIncrementalRuns() {
+		return incrementalRuns;
+	}
+
+	public void incrementalRun() {
+		incrementalRuns++;
+	}
+
+	/**
+	 * Returns the number of profiles referencing the given artifact key.
+	 */
+	public int getCount(IArtifactKey key) {
+		Integer count = counts.get(key.toExternalForm());
+		return count == null ? 0 : count.intValue();
+	}
+
+	/**
+	 * Adds the given changes to the counts and returns the keys which are no
+	 * longer referenced. If a count would drop below zero the counts did not
+	 * match the profiles, they become invalid and nothing is returned.
+	 */
+	public Set<IArtifactKey> update(Map<IArtifactKey, Integer> delta) {
+		Set<IArtifactKey> released = new HashSet<>();
+		if (!valid)
+			return released;
+		for (Map.Entry<IArtifactKey, Integer> entry : delta.entrySet()) {
+			if (entry.getValue().intValue() == 0)
+				continue;
+			String key = entry.getKey().toExternalForm();
+			Integer count = counts.get(key);
+			int newCount = (count == null ? 0 : count.intValue()) + entry.getValue().intValue();
+			if (newCount < 0) {
+				valid = false;
+				return Collections.emptySet();
+			}
+			if (newCount == 0) {
+				counts.remove(key);
+				released.add(entry.getKey());
+			} else {
+				counts.put(key, Integer.valueOf(newCount));
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Recomputes the counts from the installable units of the given profiles.
+	 * Returns whether the previous counts were valid and matched the new ones.
+	 */
+	public boolean rebuild(IProfile[] profiles) {
+		Map<String, Integer> rebuilt = new HashMap<>();
+		timestamps.clear();
+		for (IProfile profile : profiles) {
+			for (IArtifactKey key : getArtifactKeys(profile))
+				rebuilt.merge(key.toExternalForm(), Integer.valueOf(1), (a, b) -> Integer.valueOf(a.intValue() + b.intValue()));
+			setTimestamp(profile.getProfileId(), profile.getTimestamp());
+		}
+		boolean matched = valid && rebuilt.equals(counts);
+		counts.clear();
+		counts.putAll(rebuilt);
+		incrementalRuns = 0;
+		valid = true;
+		return matched;
+	}
+
+	/**
+	 * Returns the artifact keys referenced by the installable units of a profile.
+	 */
+	static Set<IArtifactKey> getArtifactKeys(IProfile profile) {
+		Set<IArtifactKey> keys = new HashSet<>();
+		for (IInstallableUnit iu : profile.query(QueryUtil.createIUAnyQuery(), null)) {
+			Collection<IArtifactKey> artifacts = iu.getArtifacts();
+			if (artifacts != null)
+				keys.addAll(artifacts);
+		}
+		return keys;
+	}
+
+	/**
+	 * Writes the counts to the data area. Invalid counts are deleted instead, so
+	 * that the next collection is a full one.
+	 */
+	public void save() {
+		if (!valid) {
+			file.delete();
+			return;
+		}
+		Properties properties = new Properties();
+		for (Map.Entry<String, Integer> entry : counts.entrySet())
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		for (Map.Entry<String, Long> entry : timestamps.entrySet())
+			properties.setProperty(PROP_TIMESTAMP_PREFIX + entry.getKey(), entry.getValue().toString());
+		properties.setProperty(PROP_INCREMENTAL_RUNS, Integer.toString(incrementalRuns));
+		file.getParentFile().mkdirs();
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+			properties.store(out, null);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, GarbageCollectorHelper.ID, "Error writing artifact reference counts " + file, e)); //$NON-NLS-1$
+			temp.delete();
+			file.delete();
+			return;
+		}
+		file.delete();
+		if (!temp.renameTo(file))
+			temp.delete();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -17,7 +17,7 @@ import java.util.*;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
-import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 
 /**
@@ -28,22 +28,52 @@ public class CoreGarbageCollector {
 	/**
 	 * When set to true, information will be logged every time an artifact is removed
 	 */
-	private static boolean DEBUG = "true".equalsIgnoreCase(GarbageCollectorHelper.ID + "/debug"); //$NON-NLS-1$ //$NON-NLS-2$
+	static boolean DEBUG = "true".equalsIgnoreCase(GarbageCollectorHelper.ID + "/debug"); //$NON-NLS-1$ //$NON-NLS-2$
 
 	/**
 	 * Given a list of IArtifactKeys and an IArtifactRepository, removes all artifacts
 	 * in aRepository that are not mapped to by an IArtifactKey in markSet
 	 */
 	public synchronized void clean(IArtifactKey[] markSet, final IArtifactRepository aRepository) {
-		Set<IArtifactKey> set = new HashSet<>(Arrays.asList(markSet));
-		//this query will match all artifact keys that are not in the given set
-		IQuery<IArtifactKey> query = QueryUtil.createQuery(IArtifactKey.class, "unique($0)", set); //$NON-NLS-1$
+		clean(new HashSet<>(Arrays.asList(markSet)), aRepository);
+	}
+
+	/**
+	 * Given a set of IArtifactKeys and an IArtifactRepository, removes all artifacts
+	 * in aRepository that are not mapped to by an IArtifactKey in markSet. The keys
+	 * of the repository are compared with the set directly, and the unmarked ones
+	 * are removed at once so that the repository is saved only once.
+	 */
+	public synchronized void clean(Set<IArtifactKey> markSet, final IArtifactRepository aRepository) {
+		List<IArtifactKey> unmarked = new ArrayList<>();
+		for (IArtifactKey key : aRepository.query(ArtifactKeyQuery.ALL_KEYS, null)) {
+			if (!markSet.contains(key))
+				unmarked.add(key);
+		}
+		removeKeys(unmarked, aRepository);
+	}
+
+	/**
+	 * Removes the artifacts of aRepository which are mapped to by one of the given
+	 * IArtifactKeys. Keys the repository does not contain are ignored.
+	 */
+	public synchronized void remove(Collection<IArtifactKey> keys, final IArtifactRepository aRepository) {
+		List<IArtifactKey> present = new ArrayList<>();
+		for (IArtifactKey key : keys) {
+			if (aRepository.contains(key))
+				present.add(key);
+		}
+		removeKeys(present, aRepository);
+	}
+
+	private void removeKeys(List<IArtifactKey> unmarked, final IArtifactRepository aRepository) {
+		if (unmarked.isEmpty())
+			return;
 		aRepository.executeBatch(monitor -> {
-			for (IArtifactKey key : aRepository.query(query, null)) {
-				aRepository.removeDescriptor(key, new NullProgressMonitor());
-				if (DEBUG) {
+			aRepository.removeDescriptors(unmarked.toArray(new IArtifactKey[unmarked.size()]), new NullProgressMonitor());
+			if (DEBUG) {
+				for (IArtifactKey key : unmarked)
 					Tracing.debug("Key removed:" + key); //$NON-NLS-1$
-				}
 			}
 		}, new NullProgressMonitor());
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2019 IBM Corporation and others.
+ *  Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -14,9 +14,12 @@
 package org.eclipse.equinox.internal.p2.garbagecollector;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.preferences.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.engine.*;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.SynchronousProvisioningListener;
@@ -38,6 +41,12 @@ import org.osgi.service.prefs.Preferences;
  * Then, the MarkSets are obtained for every other registered Profile in a similar fashion.  Each MarkSet is
  * checked to see if its artifact repository is already a key in markSet.  If so, that MarkSet's artifact keys
  * are added to the list that is mapped to by the artifact repository.
+ *
+ * In incremental mode the number of profiles referencing each artifact key is kept
+ * up to date from the installable units added to and removed from profiles, and
+ * only the keys which are no longer referenced are removed. Every few collections,
+ * and whenever the counts turn out to be wrong, a full collection is run instead
+ * and the counts are rebuilt.
  */
 public class GarbageCollector implements SynchronousProvisioningListener, IAgentService {
 	/**
@@ -49,6 +58,8 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 		IProfile aProfile;
 		MarkSet[] aProfileMarkSets;
 		IConfigurationElement cfg;
+		// whether the provider failed, SafeRunner only reports it to handleException
+		boolean failed;
 
 		public ParameterizedSafeRunnable(IConfigurationElement runtAttribute, IProfile profile) {
 			cfg = runtAttribute;
@@ -61,6 +72,7 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 
 		@Override
 		public void handleException(Throwable exception) {
+			failed = true;
 			LogHelper.log(new Status(IStatus.ERROR, GarbageCollectorHelper.ID, Messages.Error_in_extension, exception));
 		}
 
@@ -78,15 +90,37 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 	private static final String ATTRIBUTE_CLASS = "class"; //$NON-NLS-1$
 
 	private static final String PT_MARKSET = GarbageCollectorHelper.ID + ".marksetproviders"; //$NON-NLS-1$
+
+	/**
+	 * The number of threads computing the mark sets of the registered profiles.
+	 */
+	private static final int MARK_THREADS = Math.max(1, Integer.getInteger("p2.gc.markThreads", Runtime.getRuntime().availableProcessors())); //$NON-NLS-1$
+
+	/**
+	 * The number of incremental collections after which a full collection is run.
+	 */
+	private static final int FULL_GC_INTERVAL = Math.max(1, Integer.getInteger("p2.gc.fullInterval", 10)); //$NON-NLS-1$
 	final IProvisioningAgent agent;
 
 	//The GC is triggered when an uninstall event occurred during a "transaction" and the transaction is committed.
 	String uninstallEventProfileId = null;
 
+	/**
+	 * Maps profile ids to the changes to the reference counts of artifact keys made
+	 * by the operation in progress on the profile.
+	 */
+	private final Map<String, Map<IArtifactKey, Integer>> referenceDeltas = new HashMap<>();
+
+	/**
+	 * Maps profile ids to the time stamps of the profiles when the operation in
+	 * progress on them began.
+	 */
+	private final Map<String, Long> previousTimestamps = new HashMap<>();
+
 	/**
 	 * Maps IArtifactRepository objects to their respective "marked set" of IArtifactKeys
 	 */
-	private Map<IArtifactRepository, Collection<IArtifactKey>> markSet;
+	private Map<IArtifactRepository, Set<IArtifactKey>> markSet;
 
 	public GarbageCollector(IProvisioningAgent agent) {
 		this.agent = agent;
@@ -97,10 +131,19 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 			keyList.add(element);
 	}
 
-	private void contributeMarkSets(IConfigurationElement runAttribute, IProfile profile, boolean addRepositories) {
+	/*
+	 * Returns false if the provider failed, in which case nothing is contributed.
+	 */
+	private boolean contributeMarkSets(IConfigurationElement runAttribute, IProfile profile, boolean addRepositories) {
 		ParameterizedSafeRunnable providerExecutor = new ParameterizedSafeRunnable(runAttribute, profile);
 		SafeRunner.run(providerExecutor);
-		MarkSet[] aProfileMarkSets = providerExecutor.getResult();
+		if (providerExecutor.failed)
+			return false;
+		contributeMarkSets(providerExecutor.getResult(), addRepositories);
+		return true;
+	}
+
+	private void contributeMarkSets(MarkSet[] aProfileMarkSets, boolean addRepositories) {
 		if (aProfileMarkSets == null || aProfileMarkSets.length == 0 || aProfileMarkSets[0] == null)
 			return;
 
@@ -108,7 +151,7 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 			if (aProfileMarkSet == null) {
 				continue;
 			}
-			Collection<IArtifactKey> keys = markSet.get(aProfileMarkSet.getRepo());
+			Set<IArtifactKey> keys = markSet.get(aProfileMarkSet.getRepo());
 			if (keys == null) {
 				if (addRepositories) {
 					keys = new HashSet<>();
@@ -133,40 +176,122 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 	}
 
 	private void invokeCoreGC() {
-		for (IArtifactRepository nextRepo : markSet.keySet()) {
-			IArtifactKey[] keys = markSet.get(nextRepo).toArray(new IArtifactKey[0]);
-			MarkSet aMarkSet = new MarkSet(keys, nextRepo);
-			new CoreGarbageCollector().clean(aMarkSet.getKeys(), aMarkSet.getRepo());
+		for (Map.Entry<IArtifactRepository, Set<IArtifactKey>> entry : markSet.entrySet()) {
+			new CoreGarbageCollector().clean(entry.getValue(), entry.getKey());
 		}
 	}
 
 	@Override
 	public void notify(EventObject o) {
-		if (o instanceof InstallableUnitEvent) {
+		if (o instanceof BeginOperationEvent) {
+			IProfile profile = ((BeginOperationEvent) o).getProfile();
+			previousTimestamps.put(profile.getProfileId(), Long.valueOf(profile.getTimestamp()));
+		} else if (o instanceof InstallableUnitEvent) {
 			InstallableUnitEvent event = (InstallableUnitEvent) o;
 			if (event.isUninstall() && event.isPost()) {
 				uninstallEventProfileId = event.getProfile().getProfileId();
 			}
+			if ((event.isInstall() || event.isUninstall()) && event.isPost())
+				recordReferences(event);
 		} else if (o instanceof CommitOperationEvent) {
-			if (uninstallEventProfileId != null) {
-				CommitOperationEvent event = (CommitOperationEvent) o;
-				if (uninstallEventProfileId.equals(event.getProfile().getProfileId()) && getBooleanPreference(GarbageCollectorHelper.GC_ENABLED, true))
-					runGC(event.getProfile());
-				uninstallEventProfileId = null;
-			}
+			CommitOperationEvent event = (CommitOperationEvent) o;
+			String profileId = event.getProfile().getProfileId();
+			Map<IArtifactKey, Integer> delta = referenceDeltas.remove(profileId);
+			Long previousTimestamp = previousTimestamps.remove(profileId);
+			boolean collect = profileId.equals(uninstallEventProfileId) && getBooleanPreference(GarbageCollectorHelper.GC_ENABLED, true);
+			uninstallEventProfileId = null;
+			if (getBooleanPreference(GarbageCollectorHelper.GC_INCREMENTAL, false))
+				runIncrementalGC(event.getProfile(), previousTimestamp == null ? -1 : previousTimestamp.longValue(), delta, collect);
+			else if (collect)
+				runGC(event.getProfile());
 		} else if (o instanceof RollbackOperationEvent) {
+			referenceDeltas.remove(((RollbackOperationEvent) o).getProfile().getProfileId());
+			previousTimestamps.remove(((RollbackOperationEvent) o).getProfile().getProfileId());
 			if (uninstallEventProfileId != null && uninstallEventProfileId.equals(((RollbackOperationEvent) o).getProfile().getProfileId()))
 				uninstallEventProfileId = null;
 		}
 	}
 
+	private void recordReferences(InstallableUnitEvent event) {
+		Collection<IArtifactKey> keys = event.getInstallableUnit().getArtifacts();
+		if (keys == null || keys.isEmpty())
+			return;
+		Map<IArtifactKey, Integer> delta = referenceDeltas.computeIfAbsent(event.getProfile().getProfileId(), id -> new HashMap<>());
+		Integer change = Integer.valueOf(event.isInstall() ? 1 : -1);
+		for (IArtifactKey key : keys)
+			delta.merge(key, change, (a, b) -> Integer.valueOf(a.intValue() + b.intValue()));
+	}
+
+	/**
+	 * Updates the reference counts with the changes made to a profile and, if
+	 * <code>collect</code> is set, removes the artifacts no longer referenced.
+	 * The counts are only updated if they describe the profiles as they were
+	 * before the change, the profile being in the state with the given time
+	 * stamp. Otherwise they are rebuilt by the next full collection.
+	 */
+	public void runIncrementalGC(IProfile profile, long previousTimestamp, Map<IArtifactKey, Integer> delta, boolean collect) {
+		ArtifactReferenceCounts counts = ArtifactReferenceCounts.forAgent(agent);
+		IProfileRegistry profileRegistry = agent.getService(IProfileRegistry.class);
+		if (counts == null || profileRegistry == null) {
+			if (collect)
+				runGC(profile);
+			return;
+		}
+		// changes the deltas do not describe, like operations run while the incremental
+		// mode was off, by another process, or on a shared base, and added or removed
+		// profiles, show in the time stamps
+		Map<String, Long> profileTimestamps = new HashMap<>();
+		for (IProfile registered : profileRegistry.getProfiles())
+			profileTimestamps.put(registered.getProfileId(), Long.valueOf(registered.getTimestamp()));
+		profileTimestamps.put(profile.getProfileId(), Long.valueOf(previousTimestamp));
+		if (!counts.matches(profileTimestamps))
+			counts.invalidate();
+		if (delta == null)
+			delta = Collections.emptyMap();
+		Set<IArtifactKey> released = counts.update(delta);
+		counts.setTimestamp(profile.getProfileId(), profile.getTimestamp());
+		if (!collect) {
+			counts.save();
+			return;
+		}
+		if (!counts.isValid() || counts.getIncrementalRuns() >= FULL_GC_INTERVAL) {
+			runGC(profile);
+			if (!counts.rebuild(profileRegistry.getProfiles()) && Tracing.DEBUG)
+				Tracing.debug("Artifact reference counts did not match the profiles and have been rebuilt"); //$NON-NLS-1$
+			counts.save();
+			return;
+		}
+		counts.incrementalRun();
+		if (released.isEmpty()) {
+			counts.save();
+			return;
+		}
+
+		// the mark sets of the profile tell which repositories to look at, and
+		// protect what the providers mark besides the artifacts of installable units
+		markSet = new HashMap<>();
+		IProfile self = profileRegistry.getProfile(IProfileRegistry.SELF);
+		if (!traverseMainProfile(profile) || (self != null && !self.getProfileId().equals(profile.getProfileId()) && !traverseProfile(self, false))) {
+			// the released artifacts are left for the next full collection
+			counts.save();
+			return;
+		}
+		for (Map.Entry<IArtifactRepository, Set<IArtifactKey>> entry : markSet.entrySet()) {
+			Set<IArtifactKey> unmarked = new HashSet<>(released);
+			unmarked.removeAll(entry.getValue());
+			new CoreGarbageCollector().remove(unmarked, entry.getKey());
+		}
+		counts.save();
+	}
+
 	public void runGC(IProfile profile) {
 		markSet = new HashMap<>();
 		if (!traverseMainProfile(profile))
 			return;
 
 		//Complete each MarkSet with the MarkSets provided by all of the other registered Profiles
-		traverseRegisteredProfiles();
+		if (!traverseRegisteredProfiles())
+			return;
 
 		//Run the GC on each MarkSet
 		invokeCoreGC();
@@ -188,33 +313,88 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 	}
 
 	private boolean traverseMainProfile(IProfile profile) {
+		//First we collect all repos and keys for the profile being GC'ed
+		return traverseProfile(profile, true);
+	}
+
+	/*
+	 * Returns false if a provider failed for the profile, in which case nothing must be
+	 * removed.
+	 */
+	private boolean traverseProfile(IProfile profile, boolean addRepositories) {
 		IExtensionRegistry registry = RegistryFactory.getRegistry();
 		IConfigurationElement[] configElts = registry.getConfigurationElementsFor(PT_MARKSET);
-
-		//First we collect all repos and keys for the profile being GC'ed
 		for (IConfigurationElement configElt : configElts) {
 			if (configElt == null || !(configElt.getName().equals("run"))) { //$NON-NLS-1$
 				continue;
 			}
-			contributeMarkSets(configElt, profile, true);
+			if (!contributeMarkSets(configElt, profile, addRepositories))
+				return false;
 		}
 		return true;
 	}
 
-	private void traverseRegisteredProfiles() {
+	/*
+	 * Returns false if the mark sets of some profile could not be collected, in which
+	 * case nothing must be removed.
+	 */
+	private boolean traverseRegisteredProfiles() {
 		IExtensionRegistry registry = RegistryFactory.getRegistry();
 		IConfigurationElement[] configElts = registry.getConfigurationElementsFor(PT_MARKSET);
+		List<ParameterizedSafeRunnable> providerExecutors = new ArrayList<>();
 		for (IConfigurationElement configElt : configElts) {
 			if (configElt == null || !(configElt.getName().equals("run"))) { //$NON-NLS-1$
 				continue;
 			}
 			IProfileRegistry profileRegistry = agent.getService(IProfileRegistry.class);
 			if (profileRegistry == null)
-				return;
+				return true;
 			IProfile[] registeredProfiles = profileRegistry.getProfiles();
 			for (IProfile registeredProfile : registeredProfiles) {
-				contributeMarkSets(configElt, registeredProfile, false);
+				providerExecutors.add(new ParameterizedSafeRunnable(configElt, registeredProfile));
 			}
 		}
+		int threads = Math.min(MARK_THREADS, providerExecutors.size());
+		if (threads < 2) {
+			for (ParameterizedSafeRunnable providerExecutor : providerExecutors) {
+				SafeRunner.run(providerExecutor);
+				if (providerExecutor.failed)
+					return false;
+				contributeMarkSets(providerExecutor.getResult(), false);
+			}
+			return true;
+		}
+
+		// the providers of all profiles run in parallel, their results are merged
+		// in the order the profiles would have been traversed in
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "p2 Garbage Collector " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Callable<Object>> tasks = new ArrayList<>(providerExecutors.size());
+			for (ParameterizedSafeRunnable providerExecutor : providerExecutors)
+				tasks.add(Executors.callable(() -> SafeRunner.run(providerExecutor)));
+			for (Future<Object> result : executor.invokeAll(tasks))
+				result.get();
+		} catch (ExecutionException e) {
+			// an error SafeRunner does not handle, other failures are recorded by the runnable
+			LogHelper.log(new Status(IStatus.ERROR, GarbageCollectorHelper.ID, Messages.Error_in_extension, e.getCause()));
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			executor.shutdownNow();
+		}
+		for (ParameterizedSafeRunnable providerExecutor : providerExecutors) {
+			if (providerExecutor.failed)
+				return false;
+		}
+		for (ParameterizedSafeRunnable providerExecutor : providerExecutors)
+			contributeMarkSets(providerExecutor.getResult(), false);
+		return true;
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2022 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -63,7 +63,7 @@ public class MetadataRepositoryIO {
 
 				Parser repositoryParser = new Parser(Constants.ID);
 				repositoryParser.setErrorContext(location.toExternalForm());
-				repositoryParser.parse(input, monitor);
+				repositoryParser.parse(bufferedInput, monitor);
 				IStatus result = repositoryParser.getStatus();
 				switch (result.getSeverity()) {
 					case IStatus.CANCEL :
@@ -195,8 +195,7 @@ public class MetadataRepositoryIO {
 			setProgressMonitor(monitor);
 			monitor.beginTask(Messages.repo_loading, IProgressMonitor.UNKNOWN);
 			try {
-				// TODO: currently not caching the parser since we make no assumptions
-				//		 or restrictions on concurrent parsing
+				// the parser is only reused on this thread in the fast parsing mode
 				XMLReader reader = getParser().getXMLReader();
 				RepositoryHandler repositoryHandler = new RepositoryHandler();
 				reader.setContentHandler(new RepositoryDocHandler(REPOSITORY_ELEMENT, repositoryHandler));
@@ -215,6 +214,7 @@ public class MetadataRepositoryIO {
 				ioException.initCause(e);
 				throw ioException;
 			} finally {
+				releaseParser();
 				monitor.done();
 				stream.close();
 			}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015, 2017 Rapicorp, Inc and others.
+ * Copyright (c) 2015, 2024 Rapicorp, Inc and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -19,6 +19,7 @@ import java.util.Map;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.internal.p2.repository.helpers.ReadAheadInputStream;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -79,7 +80,8 @@ public class XZedSimpleMetadataRepositoryFactory extends MetadataRepositoryFacto
 		try {
 			File localFile = getLocalFile(location, sub.newChild(300));
 			InputStream stream = new BufferedInputStream(new FileInputStream(localFile));
-			XZInputStream descriptorStream = new XZInputStream(stream);
+			// decompress on another thread while the descriptor is parsed
+			InputStream descriptorStream = new ReadAheadInputStream(new XZInputStream(stream), "XZ Decoder"); //$NON-NLS-1$
 			try {
 				//parse the repository descriptor file
 				sub.setWorkRemaining(100);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2022 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -37,6 +37,8 @@ import org.xml.sax.ContentHandler;
 public abstract class MetadataParser extends XMLParser implements XMLConstants {
 	static final ILicense[] NO_LICENSES = new ILicense[0];
 
+	private final Map<String, IMatchExpression<IInstallableUnit>> filters = new BoundedCache<>();
+
 	public MetadataParser(String bundleId) {
 		super(bundleId);
 	}
@@ -45,6 +47,22 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 		super(factory, bundleId);
 	}
 
+	/**
+	 * Parses the filter of an installable unit or a requirement. In the fast
+	 * parsing mode the expressions of recently seen filters are reused.
+	 */
+	protected IMatchExpression<IInstallableUnit> parseFilter(String filter) {
+		if (!isFastParsing() || filter == null) {
+			return InstallableUnit.parseFilter(filter);
+		}
+		IMatchExpression<IInstallableUnit> result = filters.get(filter);
+		if (result == null && !filters.containsKey(filter)) {
+			result = InstallableUnit.parseFilter(filter);
+			filters.put(filter, result);
+		}
+		return result;
+	}
+
 	protected abstract class AbstractMetadataHandler extends AbstractHandler {
 
 		public AbstractMetadataHandler(ContentHandler parentHandler, String elementHandled) {
@@ -326,7 +344,7 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 				IRequirement[] metaRequiredCapabilities = (metaRequiredCapabilitiesHandler == null ? new IRequirement[0] : metaRequiredCapabilitiesHandler.getMetaRequiredCapabilities());
 				currentUnit.setMetaRequirements(metaRequiredCapabilities);
 				if (filterHandler != null) {
-					currentUnit.setFilter(filterHandler.getText());
+					currentUnit.setFilter(parseFilter(filterHandler.getText()));
 				}
 				IArtifactKey[] artifacts = (artifactsHandler == null ? new IArtifactKey[0] : artifactsHandler.getArtifactKeys());
 				currentUnit.setArtifacts(artifacts);
@@ -795,7 +813,7 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			IMatchExpression<IInstallableUnit> filter = null;
 			if (filterHandler != null) {
 				try {
-					filter = InstallableUnit.parseFilter(filterHandler.getText());
+					filter = parseFilter(filterHandler.getText());
 				} catch (ExpressionParseException e) {
 					if (removeWhiteSpace(filterHandler.getText()).equals("(&(|)(|)(|))")) {//$NON-NLS-1$
 						// We could log this I guess
@@ -875,7 +893,7 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			IMatchExpression<IInstallableUnit> filter = null;
 			if (filterHandler != null) {
 				try {
-					filter = InstallableUnit.parseFilter(filterHandler.getText());
+					filter = parseFilter(filterHandler.getText());
 				} catch (ExpressionParseException e) {
 					if (removeWhiteSpace(filterHandler.getText()).equals("(&(|)(|)(|))")) {//$NON-NLS-1$
 						// We could log this I guess
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2021 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -24,6 +24,8 @@ import static java.util.stream.Collectors.toMap;
 import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -31,6 +33,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.frameworkadmin.BundleInfo;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintIndex;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.GeneratorBundleInfo;
 import org.eclipse.equinox.p2.metadata.*;
@@ -68,6 +71,12 @@ import org.osgi.resource.Namespace;
  * <li>{@link IPropertyAdvice}</li>
  * <li>{@link ITouchpointAdvice}</li>
  * </ul>
+ *
+ * When the parallelism is greater than one, manifests are read and artifacts
+ * are checksummed and copied concurrently. IUs are still added to the result in
+ * the order of the bundles so the result is the same as the one of a sequential
+ * run. The destination artifact repository must then support concurrent
+ * writes.
  */
 @SuppressWarnings("restriction")
 public class BundlesAction extends AbstractPublisherAction {
@@ -135,8 +144,15 @@ public class BundlesAction extends AbstractPublisherAction {
 	 */
 	public static final String INSTALLATION_GREEDY = "greedy"; //$NON-NLS-1$
 
+	/**
+	 * System property holding the default number of threads used to publish
+	 * bundles. Bundles are published sequentially when it is not set.
+	 */
+	public static final String PROP_PARALLELISM = "eclipse.p2.publisher.bundles.parallelism"; //$NON-NLS-1$
+
 	private File[] locations;
 	private BundleDescription[] bundles;
+	private int parallelism = Integer.getInteger(PROP_PARALLELISM, 1).intValue();
 	protected MultiStatus finalStatus;
 
 	public static IArtifactKey createBundleArtifactKey(String bsn, String version) {
@@ -926,6 +942,18 @@ public class BundlesAction extends AbstractPublisherAction {
 		this.bundles = bundles;
 	}
 
+	/**
+	 * Sets the number of threads used to read manifests and to publish artifacts.
+	 * A value less than or equal to one publishes the bundles sequentially.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
 	@Override
 	public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		if (bundles == null && locations == null)
@@ -948,6 +976,21 @@ public class BundlesAction extends AbstractPublisherAction {
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Queries and adds bundle IUs, consults the advice for them and registers
+	 * the advice found in the <code>p2.inf</code> of each bundle, which only
+	 * applies to that bundle.
+	 */
+	@Override
+	public PublisherActionAccess getAccess() {
+		if (getClass() != BundlesAction.class)
+			return null;
+		return new PublisherActionAccess().readsIUs(PublisherActionAccess.KIND_BUNDLE)
+				.writesIUs(PublisherActionAccess.KIND_BUNDLE)
+				.readsAdvice(PublisherActionAccess.KIND_BUNDLE, IPublisherAdvice.class)
+				.writesAdvice(PublisherActionAccess.KIND_BUNDLE, AdviceFileAdvice.class);
+	}
+
 	protected void publishArtifact(IArtifactDescriptor descriptor, File base, File[] inclusions,
 			IPublisherInfo publisherInfo) {
 		IArtifactRepository destination = publisherInfo.getArtifactRepository();
@@ -1028,6 +1071,10 @@ public class BundlesAction extends AbstractPublisherAction {
 	 */
 	protected void generateBundleIUs(BundleDescription[] bundleDescriptions, IPublisherInfo publisherInfo,
 			IPublisherResult result, IProgressMonitor monitor) {
+		if (parallelism > 1 && bundleDescriptions.length > 1) {
+			generateBundleIUsInParallel(bundleDescriptions, publisherInfo, result, monitor);
+			return;
+		}
 		// This assumes that hosts are processed before fragments because for each
 		// fragment the host
 		// is queried for the strings that should be translated.
@@ -1039,54 +1086,172 @@ public class BundlesAction extends AbstractPublisherAction {
 			if (bd == null || bd.getSymbolicName() == null || bd.getVersion() == null) {
 				continue;
 			}
+			generateBundleIU(bd, publisherInfo, result);
+		}
+	}
 
-			// First check to see if there is already an IU around for this
-			IInstallableUnit bundleIU = queryForIU(result, bd.getSymbolicName(),
-					PublisherHelper.fromOSGiVersion(bd.getVersion()));
-			IArtifactKey bundleArtKey = createBundleArtifactKey(bd.getSymbolicName(), bd.getVersion().toString());
-			if (bundleIU == null) {
-				createAdviceFileAdvice(bd, publisherInfo);
-				// Create the bundle IU according to any shape advice we have
-				bundleIU = doCreateBundleIU(bd, bundleArtKey, publisherInfo);
-			}
+	private void generateBundleIU(BundleDescription bd, IPublisherInfo publisherInfo, IPublisherResult result) {
+		// First check to see if there is already an IU around for this
+		IInstallableUnit bundleIU = queryForIU(result, bd.getSymbolicName(),
+				PublisherHelper.fromOSGiVersion(bd.getVersion()));
+		IArtifactKey bundleArtKey = createBundleArtifactKey(bd.getSymbolicName(), bd.getVersion().toString());
+		if (bundleIU == null) {
+			createAdviceFileAdvice(bd, publisherInfo);
+			// Create the bundle IU according to any shape advice we have
+			bundleIU = doCreateBundleIU(bd, bundleArtKey, publisherInfo);
+		}
+		publishBundleArtifact(bd, bundleIU, bundleArtKey, publisherInfo);
+		addBundleIUs(bd, bundleIU, publisherInfo, result);
+	}
 
-			File bundleLocation = new File(bd.getLocation());
-			IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(publisherInfo, bundleArtKey, bundleLocation);
-			processArtifactPropertiesAdvice(bundleIU, ad, publisherInfo);
+	private void publishBundleArtifact(BundleDescription bd, IInstallableUnit bundleIU, IArtifactKey bundleArtKey,
+			IPublisherInfo publisherInfo) {
+		File bundleLocation = new File(bd.getLocation());
+		IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(publisherInfo, bundleArtKey, bundleLocation);
+		processArtifactPropertiesAdvice(bundleIU, ad, publisherInfo);
 
-			// Publish according to the shape on disk
-			if (bundleLocation.isDirectory()) {
-				publishArtifact(ad, bundleLocation, bundleLocation.listFiles(), publisherInfo);
-			} else {
-				publishArtifact(ad, bundleLocation, publisherInfo);
+		// Publish according to the shape on disk
+		if (bundleLocation.isDirectory()) {
+			publishArtifact(ad, bundleLocation, bundleLocation.listFiles(), publisherInfo);
+		} else {
+			publishArtifact(ad, bundleLocation, publisherInfo);
+		}
+	}
+
+	private void addBundleIUs(BundleDescription bd, IInstallableUnit bundleIU, IPublisherInfo publisherInfo,
+			IPublisherResult result) {
+		IInstallableUnit fragment = null;
+		if (isFragment(bd)) {
+			String hostId = bd.getHost().getName();
+			VersionRange hostVersionRange = PublisherHelper.fromOSGiVersionRange(bd.getHost().getVersionRange());
+
+			IQueryResult<IInstallableUnit> hosts = queryForIUs(result, hostId, hostVersionRange);
+
+			for (IInstallableUnit host : hosts) {
+				String fragmentId = makeHostLocalizationFragmentId(bd.getSymbolicName());
+				fragment = queryForIU(result, fragmentId, PublisherHelper.fromOSGiVersion(bd.getVersion()));
+				if (fragment == null) {
+					String[] externalizedStrings = getExternalizedStrings(host);
+					fragment = createHostLocalizationFragment(bundleIU, bd, hostId, externalizedStrings);
+				}
 			}
+		}
 
-			IInstallableUnit fragment = null;
-			if (isFragment(bd)) {
-				String hostId = bd.getHost().getName();
-				VersionRange hostVersionRange = PublisherHelper.fromOSGiVersionRange(bd.getHost().getVersionRange());
+		result.addIU(bundleIU, IPublisherResult.ROOT);
+		if (fragment != null) {
+			result.addIU(fragment, IPublisherResult.NON_ROOT);
+		}
 
-				IQueryResult<IInstallableUnit> hosts = queryForIUs(result, hostId, hostVersionRange);
+		InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(bundleIU, publisherInfo);
+		for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
+			result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
+		}
+	}
 
-				for (IInstallableUnit host : hosts) {
-					String fragmentId = makeHostLocalizationFragmentId(bd.getSymbolicName());
-					fragment = queryForIU(result, fragmentId, PublisherHelper.fromOSGiVersion(bd.getVersion()));
-					if (fragment == null) {
-						String[] externalizedStrings = getExternalizedStrings(host);
-						fragment = createHostLocalizationFragment(bundleIU, bd, hostId, externalizedStrings);
-					}
-				}
-			}
+	/**
+	 * Publishes the given bundles in three steps. The advice files are registered
+	 * in order first since advice registration is not thread safe. The bundle IUs
+	 * are then created and the artifacts are checksummed and published
+	 * concurrently while the result is only read. Finally the IUs are added to the
+	 * result in the order of the bundles, which keeps hosts ahead of their
+	 * fragments for the localization fragments. Bundles that occur more than once
+	 * are published sequentially in the last step, as they would be without
+	 * parallelism.
+	 */
+	private void generateBundleIUsInParallel(BundleDescription[] bundleDescriptions, IPublisherInfo publisherInfo,
+			IPublisherResult result, IProgressMonitor monitor) {
+		List<BundleDescription> valid = new ArrayList<>(bundleDescriptions.length);
+		for (BundleDescription bd : bundleDescriptions) {
+			if (bd != null && bd.getSymbolicName() != null && bd.getVersion() != null)
+				valid.add(bd);
+		}
+		int count = valid.size();
+		boolean[] duplicate = new boolean[count];
+		Set<String> seen = new HashSet<>();
+		for (int i = 0; i < count; i++)
+			duplicate[i] = !seen.add(valid.get(i).getSymbolicName() + '_' + valid.get(i).getVersion());
+
+		List<IInstallableUnit> existing = runInParallel(count, i -> duplicate[i] ? null
+				: queryForIU(result, valid.get(i).getSymbolicName(), PublisherHelper.fromOSGiVersion(valid.get(i).getVersion())),
+				monitor);
+		for (int i = 0; i < count; i++) {
+			if (!duplicate[i] && existing.get(i) == null)
+				createAdviceFileAdvice(valid.get(i), publisherInfo);
+		}
 
-			result.addIU(bundleIU, IPublisherResult.ROOT);
-			if (fragment != null) {
-				result.addIU(fragment, IPublisherResult.NON_ROOT);
+		List<IInstallableUnit> bundleIUs = runInParallel(count, i -> {
+			if (duplicate[i])
+				return null;
+			BundleDescription bd = valid.get(i);
+			IArtifactKey bundleArtKey = createBundleArtifactKey(bd.getSymbolicName(), bd.getVersion().toString());
+			IInstallableUnit bundleIU = existing.get(i);
+			if (bundleIU == null)
+				bundleIU = doCreateBundleIU(bd, bundleArtKey, publisherInfo);
+			publishBundleArtifact(bd, bundleIU, bundleArtKey, publisherInfo);
+			return bundleIU;
+		}, monitor);
+
+		for (int i = 0; i < count; i++) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			BundleDescription bd = valid.get(i);
+			if (duplicate[i]) {
+				generateBundleIU(bd, publisherInfo, result);
+				continue;
+			}
+			IInstallableUnit bundleIU = bundleIUs.get(i);
+			if (existing.get(i) == null) {
+				// an IU added by an earlier bundle of this run takes precedence as it would sequentially
+				IInstallableUnit added = queryForIU(result, bd.getSymbolicName(), PublisherHelper.fromOSGiVersion(bd.getVersion()));
+				if (added != null)
+					bundleIU = added;
 			}
+			addBundleIUs(bd, bundleIU, publisherInfo, result);
+		}
+	}
 
-			InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(bundleIU, publisherInfo);
-			for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
-				result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
+	/**
+	 * Runs the given task for the indexes from zero to <code>count</code> on a
+	 * pool of {@link #getParallelism()} threads and returns the results in index
+	 * order. The first failure cancels the remaining tasks and is rethrown.
+	 */
+	private <T> List<T> runInParallel(int count, IntFunction<T> task, IProgressMonitor monitor) {
+		if (count == 0)
+			return Collections.emptyList();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, count), runnable -> {
+			Thread thread = new Thread(runnable, "Bundles Publisher"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<T>> futures = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int index = i;
+				futures.add(executor.submit(() -> {
+					if (monitor.isCanceled())
+						throw new OperationCanceledException();
+					return task.apply(index);
+				}));
+			}
+			List<T> results = new ArrayList<>(count);
+			for (Future<T> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException(cause);
+				}
 			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
@@ -1131,13 +1296,15 @@ public class BundlesAction extends AbstractPublisherAction {
 	protected BundleDescription[] getBundleDescriptions(File[] bundleLocations, IProgressMonitor monitor) {
 		if (bundleLocations == null)
 			return new BundleDescription[0];
+		if (parallelism > 1 && bundleLocations.length > 1)
+			return getBundleDescriptionsInParallel(bundleLocations, monitor);
 		List<BundleDescription> result = new ArrayList<>(bundleLocations.length);
 		for (File bundleLocation : bundleLocations) {
 			if (monitor.isCanceled())
 				throw new OperationCanceledException();
 			BundleDescription description = null;
 			try {
-				description = createBundleDescription(bundleLocation);
+				description = loadBundleDescription(bundleLocation);
 			} catch (IOException e) {
 				addPublishingErrorToFinalStatus(e, bundleLocation);
 			} catch (BundleException e) {
@@ -1150,6 +1317,53 @@ public class BundlesAction extends AbstractPublisherAction {
 		return result.toArray(new BundleDescription[0]);
 	}
 
+	/**
+	 * Creates the description of the given bundle, taking the manifest from the
+	 * {@link FingerprintIndex} if the bundle did not change since the last run.
+	 */
+	private BundleDescription loadBundleDescription(File bundleLocation) throws IOException, BundleException {
+		FingerprintIndex index = FingerprintIndex.get(info);
+		if (index == null || !bundleLocation.isFile())
+			return createBundleDescription(bundleLocation);
+		Map<String, String> known = index.getManifest(bundleLocation);
+		if (known != null) {
+			CaseInsensitiveDictionaryMap<String, String> manifest = new CaseInsensitiveDictionaryMap<>(known.size());
+			manifest.putAll(known);
+			return createBundleDescription(manifest, bundleLocation);
+		}
+		Dictionary<String, String> manifest = loadManifest(bundleLocation);
+		if (manifest == null)
+			return null;
+		Map<String, String> headers = new HashMap<>();
+		for (Enumeration<String> keys = manifest.keys(); keys.hasMoreElements();) {
+			String key = keys.nextElement();
+			headers.put(key, manifest.get(key));
+		}
+		index.recordManifest(bundleLocation, headers);
+		return createBundleDescription(manifest, bundleLocation);
+	}
+
+	private BundleDescription[] getBundleDescriptionsInParallel(File[] bundleLocations, IProgressMonitor monitor) {
+		// errors are collected per bundle and reported in order since the status is not thread safe
+		Throwable[] errors = new Throwable[bundleLocations.length];
+		List<BundleDescription> descriptions = runInParallel(bundleLocations.length, i -> {
+			try {
+				return loadBundleDescription(bundleLocations[i]);
+			} catch (IOException | BundleException e) {
+				errors[i] = e;
+				return null;
+			}
+		}, monitor);
+		List<BundleDescription> result = new ArrayList<>(bundleLocations.length);
+		for (int i = 0; i < bundleLocations.length; i++) {
+			if (errors[i] != null)
+				addPublishingErrorToFinalStatus(errors[i], bundleLocations[i]);
+			if (descriptions.get(i) != null)
+				result.add(descriptions.get(i));
+		}
+		return result.toArray(new BundleDescription[0]);
+	}
+
 	private void addPublishingErrorToFinalStatus(Throwable t, File bundleLocation) {
 		finalStatus.add(new Status(IStatus.ERROR, Activator.ID,
 				NLS.bind(Messages.exception_errorPublishingBundle, bundleLocation, t.getMessage()), t));
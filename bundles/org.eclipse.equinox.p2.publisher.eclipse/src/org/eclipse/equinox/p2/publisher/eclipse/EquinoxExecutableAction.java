@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -66,6 +66,17 @@ public class EquinoxExecutableAction extends AbstractPublisherAction {
 		this.flavor = flavor;
 	}
 
+	/**
+	 * Adds the launcher IUs, named after the branding advice if there is any.
+	 */
+	@Override
+	public PublisherActionAccess getAccess() {
+		if (getClass() != EquinoxExecutableAction.class)
+			return null;
+		return new PublisherActionAccess().writesIUs(PublisherActionAccess.KIND_EXECUTABLE)
+				.readsAdvice(IBrandingAdvice.class);
+	}
+
 	@Override
 	public IStatus perform(IPublisherInfo publisherinfo, IPublisherResult result, IProgressMonitor monitor) {
 		setPublisherInfo(publisherinfo);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -186,11 +186,15 @@ public class FeaturesAction extends AbstractPublisherAction {
 	private void createBundleShapeAdvice(Feature feature, IPublisherInfo publisherInfo) {
 		FeatureEntry entries[] = feature.getEntries();
 		for (FeatureEntry entry : entries) {
-			if (entry.unpackSet() && entry.isUnpack() && entry.isPlugin() && !entry.isRequires())
+			if (isUnpackedPlugin(entry))
 				publisherInfo.addAdvice(new BundleShapeAdvice(entry.getId(), Version.parseVersion(entry.getVersion()), IBundleShapeAdvice.DIR));
 		}
 	}
 
+	private static boolean isUnpackedPlugin(FeatureEntry entry) {
+		return entry.unpackSet() && entry.isUnpack() && entry.isPlugin() && !entry.isRequires();
+	}
+
 	protected IInstallableUnit createFeatureRootFileIU(String featureId, String featureVersion, File location, FileSetDescriptor descriptor) {
 		InstallableUnitDescription iu = new MetadataFactory.InstallableUnitDescription();
 		iu.setSingleton(true);
@@ -600,6 +604,31 @@ public class FeaturesAction extends AbstractPublisherAction {
 		return false;
 	}
 
+	/**
+	 * Queries and adds feature IUs, consults the advice for them and registers
+	 * the advice found in the <code>p2.inf</code> of each feature. The shape of
+	 * the bundles included by the features is only registered for the features
+	 * unpacking some of them, the features are read here to find out.
+	 */
+	@Override
+	public PublisherActionAccess getAccess() {
+		if (getClass() != FeaturesAction.class || (features == null && locations == null))
+			return null;
+		if (features == null)
+			features = getFeatures(expandLocations(locations));
+		PublisherActionAccess access = new PublisherActionAccess().readsIUs(PublisherActionAccess.KIND_FEATURE)
+				.writesIUs(PublisherActionAccess.KIND_FEATURE)
+				.readsAdvice(PublisherActionAccess.KIND_FEATURE, IPublisherAdvice.class)
+				.writesAdvice(PublisherActionAccess.KIND_FEATURE, AdviceFileAdvice.class);
+		for (Feature feature : features) {
+			for (FeatureEntry entry : feature.getEntries()) {
+				if (isUnpackedPlugin(entry))
+					return access.writesAdvice(PublisherActionAccess.KIND_BUNDLE, IBundleShapeAdvice.class);
+			}
+		}
+		return access;
+	}
+
 	@Override
 	public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		if (features == null && locations == null)
@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License 2.0 which accompanies this distribution, and is
+ * available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Eclipse contributors - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.internal.p2.publisher;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumHelper;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.publisher.IPublisherInfo;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+
+/**
+ * Remembers what was derived from the input files of the previous publishing
+ * run into a repository so that unchanged inputs do not have to be read again.
+ * An input is identified by its absolute path and is unchanged when its size
+ * and last modified time match, or when only the time differs and the SHA-256
+ * digest still matches.
+ * <p>
+ * For unchanged inputs the index provides the manifest headers of bundles and
+ * the size and checksum properties of the artifact descriptor. Everything else
+ * is computed as usual, so the published metadata and artifacts are the same as
+ * the ones of a clean run. The publisher application associates the index with
+ * the publisher info it runs the actions with, see {@link #set(IPublisherInfo, FingerprintIndex)}.
+ * </p>
+ */
+public class FingerprintIndex {
+
+	/**
+	 * The name of the index file stored next to the artifact repository.
+	 */
+	public static final String INDEX_FILE = "publisher.fingerprints"; //$NON-NLS-1$
+	private static final String SHA_256_PROPERTY = IArtifactDescriptor.DOWNLOAD_CHECKSUM + ".sha-256"; //$NON-NLS-1$
+	private static final int FORMAT_VERSION = 1;
+	private static final int NONE = -1;
+
+	private static class Entry {
+		final long length;
+		long lastModified;
+		String sha256;
+		Map<String, String> manifest;
+		IArtifactKey artifactKey;
+		Map<String, String> artifactProperties;
+
+		Entry(long length, long lastModified) {
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private final File indexFile;
+	private final Map<String, Entry> entries = new HashMap<>();
+	// whether an input is unchanged, computed at most once per run
+	private final Map<String, Boolean> checked = new HashMap<>();
+	private final Set<IArtifactKey> published = new HashSet<>();
+
+	// the index used by each publisher info that publishes incrementally
+	private static final Map<IPublisherInfo, FingerprintIndex> indexes = new WeakHashMap<>();
+
+	/**
+	 * Returns the index to use when publishing with the given info, or
+	 * <code>null</code> if the publishing is not incremental.
+	 */
+	public static FingerprintIndex get(IPublisherInfo info) {
+		if (info == null)
+			return null;
+		synchronized (indexes) {
+			return indexes.get(info);
+		}
+	}
+
+	/**
+	 * Sets the index to use when publishing with the given info, or removes it
+	 * when <code>null</code>.
+	 */
+	public static void set(IPublisherInfo info, FingerprintIndex index) {
+		synchronized (indexes) {
+			if (index == null)
+				indexes.remove(info);
+			else
+				indexes.put(info, index);
+		}
+	}
+
+	public FingerprintIndex(File indexFile) {
+		this.indexFile = indexFile;
+		load();
+	}
+
+	/**
+	 * Returns whether the given input is the same as when it was last recorded.
+	 */
+	public synchronized boolean isUnchanged(File input) {
+		String path = input.getAbsolutePath();
+		Boolean result = checked.get(path);
+		if (result == null) {
+			result = Boolean.valueOf(computeUnchanged(path, input));
+			checked.put(path, result);
+		}
+		return result.booleanValue();
+	}
+
+	private boolean computeUnchanged(String path, File input) {
+		Entry entry = entries.get(path);
+		if (entry == null || !input.isFile() || input.length() != entry.length)
+			return false;
+		long lastModified = input.lastModified();
+		if (lastModified == entry.lastModified)
+			return true;
+		// the file was touched, compare the content
+		if (entry.sha256 == null || !entry.sha256.equals(digest(input)))
+			return false;
+		entry.lastModified = lastModified;
+		return true;
+	}
+
+	/**
+	 * Returns the manifest headers recorded for the given unchanged input, or
+	 * <code>null</code> if the input changed or no manifest was recorded.
+	 */
+	public synchronized Map<String, String> getManifest(File input) {
+		if (!isUnchanged(input))
+			return null;
+		Map<String, String> manifest = entries.get(input.getAbsolutePath()).manifest;
+		return manifest == null ? null : new HashMap<>(manifest);
+	}
+
+	public synchronized void recordManifest(File input, Map<String, String> manifest) {
+		Entry entry = getCurrentEntry(input);
+		if (entry != null)
+			entry.manifest = new HashMap<>(manifest);
+	}
+
+	/**
+	 * Returns the descriptor properties recorded for the artifact with the given
+	 * key published from the given unchanged input, or <code>null</code> if they
+	 * have to be computed.
+	 */
+	public synchronized Map<String, String> getArtifactProperties(File input, IArtifactKey key) {
+		if (!isUnchanged(input))
+			return null;
+		Entry entry = entries.get(input.getAbsolutePath());
+		if (entry.artifactProperties == null || !key.equals(entry.artifactKey))
+			return null;
+		published.add(key);
+		return new HashMap<>(entry.artifactProperties);
+	}
+
+	public synchronized void recordArtifact(File input, IArtifactKey key, Map<String, String> properties) {
+		Entry entry = getCurrentEntry(input);
+		if (entry == null)
+			return;
+		entry.artifactKey = key;
+		entry.artifactProperties = new HashMap<>(properties);
+		entry.sha256 = properties.get(SHA_256_PROPERTY);
+		if (entry.sha256 == null)
+			entry.sha256 = digest(input);
+		published.add(key);
+	}
+
+	/**
+	 * Returns the entry describing the current state of the input, replacing an
+	 * outdated one.
+	 */
+	private Entry getCurrentEntry(File input) {
+		if (!input.isFile())
+			return null;
+		String path = input.getAbsolutePath();
+		if (isUnchanged(input))
+			return entries.get(path);
+		Entry entry = new Entry(input.length(), input.lastModified());
+		entries.put(path, entry);
+		checked.put(path, Boolean.TRUE);
+		return entry;
+	}
+
+	/**
+	 * Returns the keys of the artifacts published from inputs that did not
+	 * change since they were recorded. Their artifacts can stay in the repository.
+	 */
+	public synchronized Set<IArtifactKey> getReusableKeys() {
+		Set<IArtifactKey> result = new HashSet<>();
+		for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+			IArtifactKey key = mapEntry.getValue().artifactKey;
+			if (key != null && isUnchanged(new File(mapEntry.getKey())))
+				result.add(key);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the keys of the artifacts published from inputs that still exist
+	 * but changed since they were recorded.
+	 */
+	public synchronized Set<IArtifactKey> getChangedKeys() {
+		Set<IArtifactKey> result = new HashSet<>();
+		for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+			IArtifactKey key = mapEntry.getValue().artifactKey;
+			File input = new File(mapEntry.getKey());
+			if (key != null && input.isFile() && !isUnchanged(input))
+				result.add(key);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the keys of the artifacts that were published or reused in this
+	 * run.
+	 */
+	public synchronized Set<IArtifactKey> getPublishedKeys() {
+		return new HashSet<>(published);
+	}
+
+	private static String digest(File input) {
+		try (InputStream in = new FileInputStream(input)) {
+			MessageDigest md = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				md.update(buffer, 0, read);
+			return ChecksumHelper.toHexString(md.digest());
+		} catch (IOException | NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	private void load() {
+		if (indexFile == null || !indexFile.isFile())
+			return;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != FORMAT_VERSION)
+				return;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = readString(in);
+				Entry entry = new Entry(in.readLong(), in.readLong());
+				entry.sha256 = readNullableString(in);
+				entry.manifest = readMap(in);
+				String key = readNullableString(in);
+				entry.artifactKey = key == null ? null : ArtifactKey.parse(key);
+				entry.artifactProperties = readMap(in);
+				entries.put(path, entry);
+			}
+		} catch (IOException | RuntimeException e) {
+			// a corrupt index means everything is published again
+			entries.clear();
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Ignoring unreadable publisher index " + indexFile, e)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Writes the index back to disk. Entries of inputs that no longer exist are
+	 * dropped.
+	 */
+	public synchronized void save() {
+		if (indexFile == null)
+			return;
+		entries.keySet().removeIf(path -> !new File(path).isFile());
+		File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp"); //$NON-NLS-1$
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				writeString(out, mapEntry.getKey());
+				out.writeLong(entry.length);
+				out.writeLong(entry.lastModified);
+				writeNullableString(out, entry.sha256);
+				writeMap(out, entry.manifest);
+				writeNullableString(out, entry.artifactKey == null ? null : entry.artifactKey.toExternalForm());
+				writeMap(out, entry.artifactProperties);
+			}
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to write publisher index " + indexFile, e)); //$NON-NLS-1$
+			tempFile.delete();
+			return;
+		}
+		indexFile.delete();
+		tempFile.renameTo(indexFile);
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+		if (map == null) {
+			out.writeInt(NONE);
+			return;
+		}
+		out.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static Map<String, String> readMap(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size == NONE)
+			return null;
+		Map<String, String> result = new HashMap<>(size);
+		for (int i = 0; i < size; i++)
+			result.put(readString(in), readString(in));
+		return result;
+	}
+
+	private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			writeString(out, value);
+	}
+
+	private static String readNullableString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? readString(in) : null;
+	}
+
+	// DataOutput.writeUTF is limited to 64k which large manifest headers exceed
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License 2.0 which accompanies this distribution, and is
+ * available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Eclipse contributors - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.internal.p2.publisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.p2.publisher.*;
+
+/**
+ * Runs publisher actions on a pool of threads. An action is started once all
+ * the actions before it that it interferes with according to their
+ * {@link PublisherActionAccess} have completed, so the outcome is the same as
+ * running the actions in order. Actions that do not describe their access wait
+ * for all the actions before them and are waited for by all the actions after
+ * them.
+ */
+public class PublisherActionScheduler {
+
+	private final IPublisherAction[] actions;
+	private final int parallelism;
+
+	public PublisherActionScheduler(IPublisherAction[] actions, int parallelism) {
+		this.actions = actions;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns for each action the indexes of the later actions that have to wait
+	 * for it.
+	 */
+	List<List<Integer>> computeSuccessors(int[] pending) {
+		int count = actions.length;
+		PublisherActionAccess[] access = new PublisherActionAccess[count];
+		for (int i = 0; i < count; i++) {
+			if (actions[i] instanceof AbstractPublisherAction)
+				access[i] = ((AbstractPublisherAction) actions[i]).getAccess();
+		}
+		List<List<Integer>> successors = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			successors.add(new ArrayList<>());
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < i; j++) {
+				if (access[i] == null || access[j] == null || access[j].interferesWith(access[i])) {
+					successors.get(j).add(Integer.valueOf(i));
+					pending[i]++;
+				}
+			}
+		}
+		return successors;
+	}
+
+	/**
+	 * Performs the actions and returns their statuses merged in the order of the
+	 * actions.
+	 */
+	public IStatus run(IPublisherInfo info, IPublisherResult results, IProgressMonitor monitor) {
+		int count = actions.length;
+		int[] pending = new int[count];
+		List<List<Integer>> successors = computeSuccessors(pending);
+		IStatus[] statuses = new IStatus[count];
+		// progress monitors are not thread safe, the actions only get to see cancellation
+		IProgressMonitor actionMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, count)), runnable -> {
+			Thread thread = new Thread(runnable, "Publisher Action"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+		try {
+			int running = 0;
+			boolean canceled = false;
+			for (int i = 0; i < count; i++) {
+				if (pending[i] == 0) {
+					submit(completion, i, info, results, actionMonitor, statuses);
+					running++;
+				}
+			}
+			while (running > 0) {
+				int index = completion.take().get().intValue();
+				running--;
+				monitor.worked(1);
+				if (monitor.isCanceled())
+					canceled = true;
+				if (canceled)
+					continue;
+				for (Integer successor : successors.get(index)) {
+					if (--pending[successor.intValue()] == 0) {
+						submit(completion, successor.intValue(), info, results, actionMonitor, statuses);
+						running++;
+					}
+				}
+			}
+			if (canceled)
+				return Status.CANCEL_STATUS;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		MultiStatus finalStatus = new MultiStatus("this", 0, "publishing result", null); //$NON-NLS-1$//$NON-NLS-2$
+		for (IStatus status : statuses)
+			finalStatus.merge(status);
+		return finalStatus;
+	}
+
+	private void submit(CompletionService<Integer> completion, int index, IPublisherInfo info, IPublisherResult results, IProgressMonitor monitor, IStatus[] statuses) {
+		completion.submit(() -> {
+			IPublisherAction action = actions[index];
+			long start = System.currentTimeMillis();
+			statuses[index] = action.perform(info, results, monitor);
+			if (Tracing.DEBUG_PUBLISHING)
+				Tracing.debug("Performed " + action.getClass().getName() + " in " + (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return Integer.valueOf(index);
+		});
+	}
+}
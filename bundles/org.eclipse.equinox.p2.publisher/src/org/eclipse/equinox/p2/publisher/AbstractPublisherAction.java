@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -657,4 +657,17 @@ public abstract class AbstractPublisherAction implements IPublisherAction {
 	public void setPublisherInfo(IPublisherInfo info) {
 		this.info = info;
 	}
+
+	/**
+	 * Returns which parts of the publisher info and result this action reads and
+	 * writes, or <code>null</code> if this is not known. Actions without a
+	 * description are never run concurrently with other actions.
+	 * <p>
+	 * An action describing itself should return <code>null</code> for its
+	 * subclasses, since they may consult or produce more than the action does.
+	 * </p>
+	 */
+	public PublisherActionAccess getAccess() {
+		return null;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -17,14 +17,14 @@ package org.eclipse.equinox.p2.publisher;
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.app.IApplication;
 import org.eclipse.equinox.app.IApplicationContext;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
 import org.eclipse.equinox.internal.p2.publisher.Activator;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintIndex;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
 import org.eclipse.equinox.p2.core.*;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
@@ -62,8 +62,11 @@ public abstract class AbstractPublisherApplication implements IApplication {
 	protected boolean compress = false;
 	protected boolean inplace = false;
 	protected boolean append = false;
+	// whether unchanged inputs of the previous run are reused
+	protected boolean incremental = false;
 	protected String[] configurations;
 	private IStatus status;
+	private FingerprintIndex fingerprintIndex;
 
 	private ServiceReference<IProvisioningAgent> agentRef;
 
@@ -107,11 +110,26 @@ public abstract class AbstractPublisherApplication implements IApplication {
 		return result.isEmpty();
 	}
 
+	private FingerprintIndex createFingerprintIndex() {
+		File repoLocation = URIUtil.toFile(artifactLocation);
+		if (repoLocation == null)
+			return null;
+		if (repoLocation.isFile())
+			repoLocation = repoLocation.getParentFile();
+		return new FingerprintIndex(new File(repoLocation, FingerprintIndex.INDEX_FILE));
+	}
+
+	private static void removeArtifacts(IArtifactRepository repo, Collection<IArtifactKey> keys) {
+		if (!keys.isEmpty())
+			repo.removeDescriptors(keys.toArray(new IArtifactKey[keys.size()]), new NullProgressMonitor());
+	}
+
 	protected void initializeRepositories(PublisherInfo publisherInfo) throws ProvisionException {
 		if (artifactLocation != null) {
 			@SuppressWarnings("removal")
 			IArtifactRepository repo = Publisher.createArtifactRepository(agent, artifactLocation, artifactRepoName,
 					compress);
+			fingerprintIndex = incremental ? createFingerprintIndex() : null;
 			if (!append && !isEmpty(repo)) {
 				File repoLocation = URIUtil.toFile(artifactLocation);
 				if (repoLocation != null && source != null) {
@@ -122,8 +140,19 @@ public abstract class AbstractPublisherApplication implements IApplication {
 								NLS.bind(Messages.exception_artifactRepoNoAppendDestroysInput,
 										URIUtil.toUnencodedString(artifactLocation)));
 				}
-				repo.removeAll(new NullProgressMonitor());
+				if (fingerprintIndex != null) {
+					// keep the artifacts of unchanged inputs instead of publishing them again
+					Set<IArtifactKey> obsolete = repo.query(ArtifactKeyQuery.ALL_KEYS, null).toSet();
+					obsolete.removeAll(fingerprintIndex.getReusableKeys());
+					removeArtifacts(repo, obsolete);
+				} else
+					repo.removeAll(new NullProgressMonitor());
+			} else if (fingerprintIndex != null) {
+				// changed inputs replace the artifacts published from them before
+				removeArtifacts(repo, fingerprintIndex.getChangedKeys());
 			}
+			if (fingerprintIndex != null)
+				FingerprintIndex.set(publisherInfo, fingerprintIndex);
 			publisherInfo.setArtifactRepository(repo);
 		} else if ((publisherInfo.getArtifactOptions() & IPublisherInfo.A_PUBLISH) > 0)
 			throw new ProvisionException(createConfigurationEror(Messages.exception_noArtifactRepo));
@@ -252,6 +281,9 @@ public abstract class AbstractPublisherApplication implements IApplication {
 
 		if (arg.equalsIgnoreCase("-inplace")) //$NON-NLS-1$
 			inplace = true;
+
+		if (arg.equalsIgnoreCase("-incremental")) //$NON-NLS-1$
+			incremental = true;
 	}
 
 	protected void setupAgent() throws ProvisionException {
@@ -325,6 +357,7 @@ public abstract class AbstractPublisherApplication implements IApplication {
 				}
 			}
 			if (!result.matches(IStatus.ERROR | IStatus.CANCEL)) {
+				finishIncrementalPublishing(publisherInfo);
 				System.out.println(
 						NLS.bind(Messages.message_generationCompleted, String.valueOf((after - before) / 1000)));
 				return IApplication.EXIT_OK;
@@ -338,6 +371,20 @@ public abstract class AbstractPublisherApplication implements IApplication {
 		return Integer.valueOf(1);
 	}
 
+	private void finishIncrementalPublishing(PublisherInfo publisherInfo) {
+		if (fingerprintIndex == null)
+			return;
+		IArtifactRepository repo = publisherInfo.getArtifactRepository();
+		if (!append && repo != null) {
+			// kept artifacts whose input is no longer part of the publishing
+			Set<IArtifactKey> unused = fingerprintIndex.getReusableKeys();
+			unused.removeAll(fingerprintIndex.getPublishedKeys());
+			removeArtifacts(repo, unused);
+		}
+		fingerprintIndex.save();
+		FingerprintIndex.set(publisherInfo, null);
+	}
+
 	protected abstract IPublisherAction[] createActions();
 
 	protected Publisher createPublisher(PublisherInfo publisherInfo) {
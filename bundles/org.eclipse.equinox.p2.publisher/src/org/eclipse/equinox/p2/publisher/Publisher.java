@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -20,6 +20,7 @@ import java.util.Collection;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.publisher.Activator;
+import org.eclipse.equinox.internal.p2.publisher.PublisherActionScheduler;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
@@ -31,10 +32,17 @@ import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 
 public class Publisher {
 	static final public String PUBLISH_PACK_FILES_AS_SIBLINGS = "publishPackFilesAsSiblings"; //$NON-NLS-1$
+	/**
+	 * System property holding the default number of threads used to run
+	 * independent publisher actions concurrently. Actions are run in order when
+	 * it is not set.
+	 */
+	static final public String PROP_PARALLELISM = "eclipse.p2.publisher.parallelism"; //$NON-NLS-1$
 	private static final long SERVICE_TIMEOUT = 5000;
 
 	private IPublisherInfo info;
 	private IPublisherResult results;
+	private int parallelism = Integer.getInteger(PROP_PARALLELISM, 1).intValue();
 
 	/**
 	 * Returns a metadata repository that corresponds to the given settings. If a
@@ -206,6 +214,16 @@ public class Publisher {
 		this.results = results;
 	}
 
+	/**
+	 * Sets the number of threads used to run the actions. With more than one
+	 * thread, actions are run concurrently when their
+	 * {@link AbstractPublisherAction#getAccess() access} descriptions show that
+	 * they do not interfere.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
 	class ArtifactProcess implements IRunnableWithProgress {
 
 		private final IPublisherAction[] actions;
@@ -219,6 +237,10 @@ public class Publisher {
 
 		@Override
 		public void run(IProgressMonitor monitor) {
+			if (parallelism > 1 && actions.length > 1) {
+				result = new PublisherActionScheduler(actions, parallelism).run(publisherInfo, results, monitor);
+				return;
+			}
 			MultiStatus finalStatus = new MultiStatus("this", 0, "publishing result", null); //$NON-NLS-1$//$NON-NLS-2$
 			for (IPublisherAction action : actions) {
 				if (monitor.isCanceled()) {
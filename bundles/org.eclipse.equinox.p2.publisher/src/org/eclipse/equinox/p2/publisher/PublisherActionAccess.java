@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License 2.0 which accompanies this distribution, and is
+ * available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Eclipse contributors - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.p2.publisher;
+
+import java.util.*;
+
+/**
+ * Describes which parts of the shared publishing state a publisher action reads
+ * and writes. The publisher uses it to run actions that do not interfere with
+ * each other concurrently while keeping the outcome of running them in order.
+ * <p>
+ * IUs in the result are described by kind, such as {@link #KIND_BUNDLE}, rather
+ * than by root or non-root since almost every action adds and queries both.
+ * Two actions interfere if one of them adds IUs of a kind the other one
+ * queries, or if one of them registers advice the other one consults or
+ * registers. Adding IUs of the same kind from two actions does not interfere
+ * since the result is a set. Advice types interfere when one is assignable to
+ * the other.
+ * </p>
+ * <p>
+ * Advice may be declared for the IUs of one kind, such as the advice found in
+ * the <code>p2.inf</code> of a bundle which only applies to that bundle. Advice
+ * declared for different kinds does not interfere, advice declared without a
+ * kind interferes with advice of any kind.
+ * </p>
+ */
+public class PublisherActionAccess {
+
+	/**
+	 * Bundle IUs together with their localization fragments and the IUs added
+	 * for them by advice.
+	 */
+	public static final String KIND_BUNDLE = "bundle"; //$NON-NLS-1$
+	/**
+	 * Feature jar and group IUs and the IUs added for them by advice.
+	 */
+	public static final String KIND_FEATURE = "feature"; //$NON-NLS-1$
+	/**
+	 * The IUs describing a JRE.
+	 */
+	public static final String KIND_JRE = "jre"; //$NON-NLS-1$
+	/**
+	 * The IUs of launcher executables.
+	 */
+	public static final String KIND_EXECUTABLE = "executable"; //$NON-NLS-1$
+
+	private final Set<String> resultReads = new HashSet<>();
+	private final Set<String> resultWrites = new HashSet<>();
+	private final Set<AdviceAccess> adviceReads = new HashSet<>();
+	private final Set<AdviceAccess> adviceWrites = new HashSet<>();
+
+	/*
+	 * Advice of a type, applying to the IUs of a kind or to any IU if the kind is null.
+	 */
+	private static final class AdviceAccess {
+		final String kind;
+		final Class<?> type;
+
+		AdviceAccess(String kind, Class<?> type) {
+			this.kind = kind;
+			this.type = type;
+		}
+
+		boolean overlaps(AdviceAccess other) {
+			if (kind != null && other.kind != null && !kind.equals(other.kind))
+				return false;
+			return type.isAssignableFrom(other.type) || other.type.isAssignableFrom(type);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof AdviceAccess))
+				return false;
+			AdviceAccess other = (AdviceAccess) obj;
+			return Objects.equals(kind, other.kind) && type == other.type;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(kind, type);
+		}
+
+		@Override
+		public String toString() {
+			return kind == null ? type.getName() : type.getName() + '@' + kind;
+		}
+	}
+
+	/**
+	 * Declares that the action queries the result for IUs of the given kinds.
+	 */
+	public PublisherActionAccess readsIUs(String... kinds) {
+		resultReads.addAll(Arrays.asList(kinds));
+		return this;
+	}
+
+	/**
+	 * Declares that the action adds IUs of the given kinds to the result.
+	 */
+	public PublisherActionAccess writesIUs(String... kinds) {
+		resultWrites.addAll(Arrays.asList(kinds));
+		return this;
+	}
+
+	/**
+	 * Declares that the action consults advice of the given types.
+	 */
+	@SafeVarargs
+	public final PublisherActionAccess readsAdvice(Class<? extends IPublisherAdvice>... types) {
+		return readsAdvice(null, types);
+	}
+
+	/**
+	 * Declares that the action consults advice of the given types for IUs of the
+	 * given kind only.
+	 */
+	@SafeVarargs
+	public final PublisherActionAccess readsAdvice(String kind, Class<? extends IPublisherAdvice>... types) {
+		for (Class<? extends IPublisherAdvice> type : types)
+			adviceReads.add(new AdviceAccess(kind, type));
+		return this;
+	}
+
+	/**
+	 * Declares that the action registers advice of the given types.
+	 */
+	@SafeVarargs
+	public final PublisherActionAccess writesAdvice(Class<? extends IPublisherAdvice>... types) {
+		return writesAdvice(null, types);
+	}
+
+	/**
+	 * Declares that the action registers advice of the given types which only
+	 * applies to IUs of the given kind.
+	 */
+	@SafeVarargs
+	public final PublisherActionAccess writesAdvice(String kind, Class<? extends IPublisherAdvice>... types) {
+		for (Class<? extends IPublisherAdvice> type : types)
+			adviceWrites.add(new AdviceAccess(kind, type));
+		return this;
+	}
+
+	/**
+	 * Returns whether running this action and the given one concurrently may
+	 * give a different outcome than running them in order.
+	 */
+	public boolean interferesWith(PublisherActionAccess other) {
+		if (!Collections.disjoint(resultWrites, other.resultReads) || !Collections.disjoint(resultReads, other.resultWrites))
+			return true;
+		return overlaps(adviceWrites, other.adviceReads) || overlaps(adviceWrites, other.adviceWrites) || overlaps(adviceReads, other.adviceWrites);
+	}
+
+	private static boolean overlaps(Set<AdviceAccess> first, Set<AdviceAccess> second) {
+		for (AdviceAccess a : first) {
+			for (AdviceAccess b : second) {
+				if (a.overlaps(b))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "PublisherActionAccess[resultReads=" + resultReads + ", resultWrites=" + resultWrites + ", adviceReads=" + adviceReads + ", adviceWrites=" + adviceWrites + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+}
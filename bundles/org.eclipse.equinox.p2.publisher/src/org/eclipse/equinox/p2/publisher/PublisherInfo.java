@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -28,13 +28,18 @@ public class PublisherInfo implements IPublisherInfo {
 	private IMetadataRepository contextMetadataRepository;
 	private IArtifactRepository contextArtifactRepository;
 	private String[] configurations = new String[0];
-	private List<IPublisherAdvice> adviceList = new ArrayList<>(11);
+	// advice is added and consulted by actions the publisher may run concurrently
+	private List<IPublisherAdvice> adviceList = Collections.synchronizedList(new ArrayList<>(11));
 
 	@Override
 	public void addAdvice(IPublisherAdvice advice) {
 		adviceList.add(advice);
 	}
 
+	/**
+	 * Returns the registered advice. Iterating the returned list requires
+	 * synchronizing on it.
+	 */
 	public List<IPublisherAdvice> getAdvice() {
 		return adviceList;
 	}
@@ -43,10 +48,12 @@ public class PublisherInfo implements IPublisherInfo {
 	@SuppressWarnings("unchecked")
 	public <T extends IPublisherAdvice> Collection<T> getAdvice(String configSpec, boolean includeDefault, String id, Version version, Class<T> type) {
 		ArrayList<T> result = new ArrayList<>();
-		for (IPublisherAdvice advice : adviceList) {
-			if (type.isInstance(advice) && advice.isApplicable(configSpec, includeDefault, id, version))
-				// Ideally, we would use Class.cast here but it was introduced in Java 1.5
-				result.add((T) advice);
+		synchronized (adviceList) {
+			for (IPublisherAdvice advice : adviceList) {
+				if (type.isInstance(advice) && advice.isApplicable(configSpec, includeDefault, id, version))
+					// Ideally, we would use Class.cast here but it was introduced in Java 1.5
+					result.add((T) advice);
+			}
 		}
 		return result;
 	}
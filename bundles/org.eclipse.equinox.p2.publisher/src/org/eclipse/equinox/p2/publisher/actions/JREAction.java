@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2021 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -67,6 +67,17 @@ public class JREAction extends AbstractPublisherAction {
 		this.environment = environment;
 	}
 
+	/**
+	 * Only adds the IUs of the JRE, it neither queries the result nor consults
+	 * advice.
+	 */
+	@Override
+	public PublisherActionAccess getAccess() {
+		if (getClass() != JREAction.class)
+			return null;
+		return new PublisherActionAccess().writesIUs(PublisherActionAccess.KIND_JRE);
+	}
+
 	@Override public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		String problemMessage = NLS.bind(Messages.message_problemsWhilePublishingEE, jreLocation != null ? jreLocation : environment);
 		resultStatus = new MultiStatus(Activator.ID, 0, problemMessage, null);
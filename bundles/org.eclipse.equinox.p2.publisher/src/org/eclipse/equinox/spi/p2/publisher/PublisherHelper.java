@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2018 IBM Corporation and others.
+ *  Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -24,6 +24,7 @@ import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumUtil
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.BasicVersion;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintIndex;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitFragmentDescription;
@@ -109,18 +110,38 @@ public class PublisherHelper {
 		if (result instanceof ArtifactDescriptor) {
 			if (pathOnDisk != null && pathOnDisk.isFile()) {
 				ArtifactDescriptor descriptor = (ArtifactDescriptor) result;
+				boolean generateChecksums = info == null || isArtifactGenerateChecksums(info);
+				FingerprintIndex index = FingerprintIndex.get(info);
+				Map<String, String> known = index == null ? null : index.getArtifactProperties(pathOnDisk, key);
+				if (known != null && generateChecksums == hasChecksums(known)) {
+					descriptor.addProperties(known);
+					return result;
+				}
+				Map<String, String> before = new HashMap<>(descriptor.getProperties());
 				descriptor.setProperty(IArtifactDescriptor.ARTIFACT_SIZE, Long.toString(pathOnDisk.length()));
 				descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, Long.toString(pathOnDisk.length()));
 
-				boolean generateChecksums = info == null || isArtifactGenerateChecksums(info);
 				if (generateChecksums) {
 					calculateChecksums(pathOnDisk, descriptor);
 				}
+				if (index != null) {
+					Map<String, String> computed = new HashMap<>(descriptor.getProperties());
+					computed.entrySet().removeAll(before.entrySet());
+					index.recordArtifact(pathOnDisk, key, computed);
+				}
 			}
 		}
 		return result;
 	}
 
+	private static boolean hasChecksums(Map<String, String> properties) {
+		for (String property : properties.keySet()) {
+			if (property.startsWith(IArtifactDescriptor.DOWNLOAD_CHECKSUM))
+				return true;
+		}
+		return false;
+	}
+
 	private static void calculateChecksums(File pathOnDisk, ArtifactDescriptor descriptor) {
 		// TODO disable specific algorithms
 		List<String> checksumsToSkip = Collections.emptyList();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  * All rights reserved.
  * This program and the accompanying materials are made available under the
  * terms of the Eclipse Public License 2.0 which accompanies this distribution,
@@ -17,6 +17,15 @@ package org.eclipse.equinox.internal.p2.reconciler.dropins;
 import java.io.*;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.ArtifactRepositoryManager;
@@ -51,6 +60,13 @@ public class Activator implements BundleActivator {
 	private static final String CONFIG_INI = "config.ini"; //$NON-NLS-1$
 	private static final String PLATFORM_CFG = "org.eclipse.update/platform.xml"; //$NON-NLS-1$
 	private static final String CACHE_FILENAME = "cache.timestamps"; //$NON-NLS-1$
+	private static final String DIGEST_FILENAME = "cache.digest"; //$NON-NLS-1$
+	// deep enough for dropins/foo/eclipse/plugins/bundle, the deepest entry that gets reconciled
+	private static final int DIGEST_DEPTH = 4;
+	// the descriptors read from bundles and features in folder form at or below that depth
+	private static final String[] DIGEST_DESCRIPTORS = {"META-INF/MANIFEST.MF", "plugin.xml", "fragment.xml", "feature.xml"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final String DIR_META_INF = "META-INF"; //$NON-NLS-1$
+	private static final String MANIFEST = "MANIFEST.MF"; //$NON-NLS-1$
 	private static final String DIR_ECLIPSE = "eclipse"; //$NON-NLS-1$
 	private static final String DIR_PLUGINS = "plugins"; //$NON-NLS-1$
 	private static final String DIR_FEATURES = "features"; //$NON-NLS-1$
@@ -222,6 +238,16 @@ public class Activator implements BundleActivator {
 			return false;
 		}
 
+		// the digest of the last reconciled state tells whether anything changed, including
+		// files replaced in place, which the timestamps of the folders do not show
+		String digest = readDigest();
+		if (digest != null) {
+			boolean result = digest.equals(computeDigest());
+			trace(result ? "Digest up to date." : "Digest has changed."); //$NON-NLS-1$ //$NON-NLS-2$
+			trace(result ? "Reconciliation skipped." : "Performing reconciliation."); //$NON-NLS-1$ //$NON-NLS-2$
+			return result;
+		}
+
 		// read timestamps
 		Properties timestamps = readTimestamps();
 		if (timestamps.isEmpty()) {
@@ -266,6 +292,100 @@ public class Activator implements BundleActivator {
 		return result;
 	}
 
+	/*
+	 * Return the digest of the reconciled state that was persisted last time, or null.
+	 */
+	private String readDigest() {
+		File file = Activator.getContext().getDataFile(DIGEST_FILENAME);
+		if (file == null || !file.exists())
+			return null;
+		try {
+			return Files.readString(file.toPath(), StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Return a digest over the names, sizes and modification times of the files in the dropins
+	 * and links folders, the files checked for timestamps like platform.xml, and the timestamp of
+	 * the profile. Everything reconciled derives from these, so that when the digest has not
+	 * changed the repositories do not need to be loaded. The cache extensions are a property of
+	 * the profile and change along with its timestamp. Returns null if the digest cannot be computed.
+	 * 
+	 * The folders are walked down to DIGEST_DEPTH. Below that only the descriptors of bundles and
+	 * features in folder form are included, so other files edited in place deep inside them, like a
+	 * class or feature.properties, are not noticed; use osgi.checkConfiguration to reconcile then.
+	 */
+	private String computeDigest() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		List<String> entries = new ArrayList<>();
+		for (File file : getFilesToCheck())
+			entries.add(file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified());
+		List<File> roots = new ArrayList<>(Arrays.asList(getDropinsDirectories()));
+		roots.addAll(Arrays.asList(getLinksDirectories()));
+		for (File root : roots) {
+			if (!root.isDirectory())
+				continue;
+			try {
+				Files.walkFileTree(root.toPath(), EnumSet.noneOf(FileVisitOption.class), DIGEST_DEPTH, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+						entries.add(file.toString() + '|' + attributes.size() + '|' + attributes.lastModifiedTime().toMillis());
+						// a folder at the maximum depth, which may be a bundle or feature or the
+						// META-INF folder of a bundle one level up
+						if (attributes.isDirectory()) {
+							String[] names = DIR_META_INF.equals(file.getFileName().toString()) ? new String[] {MANIFEST} : DIGEST_DESCRIPTORS;
+							for (String name : names) {
+								File descriptor = file.resolve(name).toFile();
+								if (descriptor.isFile())
+									entries.add(descriptor.getPath() + '|' + descriptor.length() + '|' + descriptor.lastModified());
+							}
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) {
+						entries.add(file.toString());
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		// the order of a directory listing is not defined
+		Collections.sort(entries);
+		for (String entry : entries) {
+			digest.update(entry.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+		}
+		digest.update(Long.toString(getProfileTimestamp()).getBytes(StandardCharsets.UTF_8));
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest())
+			result.append(String.format("%02x", b & 0xff)); //$NON-NLS-1$
+		return result.toString();
+	}
+
+	/*
+	 * Return the timestamp of the current profile, read from the names of the profile files
+	 * rather than by loading the profile.
+	 */
+	private static long getProfileTimestamp() {
+		IProvisioningAgent agent = getAgent();
+		IProfileRegistry profileRegistry = agent == null ? null : agent.getService(IProfileRegistry.class);
+		if (profileRegistry == null)
+			return -1;
+		long[] timestamps = profileRegistry.listProfileTimestamps(IProfileRegistry.SELF);
+		return timestamps.length == 0 ? -1 : timestamps[timestamps.length - 1];
+	}
+
 	/*
 	 * Restore the cached timestamp values.
 	 */
@@ -420,6 +540,18 @@ public class Activator implements BundleActivator {
 		} catch (IOException e) {
 			LogHelper.log(new Status(IStatus.ERROR, ID, "Error occurred while writing cache timestamps for reconciliation.", e)); //$NON-NLS-1$
 		}
+
+		File digestFile = Activator.getContext().getDataFile(DIGEST_FILENAME);
+		digestFile.delete();
+		String digest = computeDigest();
+		if (digest == null)
+			return;
+		trace("Writing out digest to file : " + digestFile.getAbsolutePath()); //$NON-NLS-1$
+		try {
+			Files.writeString(digestFile.toPath(), digest, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.ERROR, ID, "Error occurred while writing cache digest for reconciliation.", e)); //$NON-NLS-1$
+		}
 	}
 
 	/*
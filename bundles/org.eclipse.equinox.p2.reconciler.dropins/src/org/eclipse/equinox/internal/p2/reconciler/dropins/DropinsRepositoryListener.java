@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 IBM Corporation and others.
+ * Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -113,6 +113,12 @@ public class DropinsRepositoryListener extends RepositoryListener {
 		return true;
 	}
 
+	@Override
+	protected void notPublished(File file) {
+		// a file taken for a bundle in batched mode may still be a repository
+		addRepository(file);
+	}
+
 	private void addRepository(File file) {
 		URI repoLocation = createRepositoryLocation(file);
 		if (repoLocation == null)
@@ -270,6 +276,8 @@ public class DropinsRepositoryListener extends RepositoryListener {
 
 	@Override
 	public void stopPoll() {
+		// the repositories found among the batched files have to be known first
+		publishPending();
 		synchronizeDropinMetadataRepositories();
 		synchronizeDropinArtifactRepositories();
 		super.stopPoll();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2015, 2018 Mykola Nikishov.
+ *  Copyright (c) 2015, 2024 Mykola Nikishov and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -13,19 +13,23 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.internal.repository.comparator;
 
+import java.io.File;
+import java.util.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumUtilities;
 import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
 import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumHelper;
 import org.eclipse.equinox.p2.internal.repository.tools.Messages;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IFileArtifactRepository;
 import org.eclipse.equinox.p2.repository.tools.comparator.IArtifactComparator;
 import org.eclipse.osgi.util.NLS;
 
 /**
  * A comparator that compares two artifacts by checking the checksum
- * recorded in the artifact descriptor. This comparator doesn't actually compute
- * checksums directly.
+ * recorded in the artifact descriptor. The checksum is only computed when it
+ * is recorded for one of the artifacts and the other one is a local file.
  */
 final public class ArtifactChecksumComparator implements IArtifactComparator {
 	final public static String COMPARATOR_ID = "org.eclipse.equinox.artifact.comparator.checksum"; //$NON-NLS-1$
@@ -45,6 +49,10 @@ final public class ArtifactChecksumComparator implements IArtifactComparator {
 	final public IStatus compare(IArtifactRepository source, IArtifactDescriptor sourceDescriptor, IArtifactRepository destination, IArtifactDescriptor destDescriptor) {
 		String sourceChecksum = ChecksumHelper.getChecksums(sourceDescriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM).get(id);
 		String destChecksum = ChecksumHelper.getChecksums(destDescriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM).get(id);
+		if (sourceChecksum == null && destChecksum != null)
+			sourceChecksum = computeChecksum(source, sourceDescriptor);
+		else if (destChecksum == null && sourceChecksum != null)
+			destChecksum = computeChecksum(destination, destDescriptor);
 
 		if (sourceChecksum == null && destChecksum == null)
 			return new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.info_noChecksumInfomation, name, sourceDescriptor));
@@ -61,4 +69,20 @@ final public class ArtifactChecksumComparator implements IArtifactComparator {
 		return new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.warning_different_checksum, new Object[] {URIUtil.toUnencodedString(sourceDescriptor.getRepository().getLocation()), URIUtil.toUnencodedString(destDescriptor.getRepository().getLocation()), name, sourceDescriptor}));
 	}
 
+	private String computeChecksum(IArtifactRepository repository, IArtifactDescriptor descriptor) {
+		if (!(repository instanceof IFileArtifactRepository))
+			return null;
+		File artifactFile = ((IFileArtifactRepository) repository).getArtifactFile(descriptor);
+		if (artifactFile == null || !artifactFile.isFile())
+			return null;
+		// only the compared checksum is needed
+		Set<String> checksumsToSkip = new HashSet<>();
+		for (IConfigurationElement configuration : ChecksumUtilities.getChecksumComparatorConfigurations())
+			checksumsToSkip.add(configuration.getAttribute("id")); //$NON-NLS-1$
+		checksumsToSkip.remove(id);
+		Map<String, String> checksums = new HashMap<>();
+		ChecksumUtilities.calculateChecksums(artifactFile, checksums, checksumsToSkip);
+		return checksums.get(id);
+	}
+
 }
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.internal.repository.comparator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+
+/**
+ * Remembers the fingerprints of disassembled class files, keyed by the SHA-256
+ * digest of the class file, so that a class found in several compared jars is
+ * disassembled only once. The most recently used fingerprints are kept in
+ * memory. When the system property {@link #PROP_CACHE_FILE} names a file, new
+ * fingerprints are appended to it and loaded again by later runs. The file is
+ * written when the cache is closed, which {@link #closeDefault()} does for the
+ * shared instance.
+ */
+public class ClassFingerprintCache {
+	/**
+	 * System property naming the file the fingerprints are persisted in.
+	 */
+	public static final String PROP_CACHE_FILE = "eclipse.p2.comparator.classFingerprints"; //$NON-NLS-1$
+	private static final String PLUGIN_ID = "org.eclipse.equinox.p2.repository.tools"; //$NON-NLS-1$
+	private static final int MAX_ENTRIES = 100000;
+	private static final char SEPARATOR = ' ';
+	// the length of a SHA-256 digest in hex, lines with other keys are ignored
+	private static final int KEY_LENGTH = 64;
+
+	private static ClassFingerprintCache instance;
+
+	private final File cacheFile;
+	private final Map<String, String> fingerprints = new LinkedHashMap<>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private Writer writer;
+	private boolean persistenceDisabled;
+
+	public static synchronized ClassFingerprintCache getDefault() {
+		if (instance == null) {
+			String location = System.getProperty(PROP_CACHE_FILE);
+			instance = new ClassFingerprintCache(location == null || location.isEmpty() ? null : new File(location));
+		}
+		return instance;
+	}
+
+	/**
+	 * Closes the shared instance, if any, so that its new fingerprints are
+	 * written. It keeps the fingerprints in memory and can still be used.
+	 */
+	public static synchronized void closeDefault() {
+		if (instance != null)
+			instance.close();
+	}
+
+	public ClassFingerprintCache(File cacheFile) {
+		this.cacheFile = cacheFile;
+		load();
+	}
+
+	/**
+	 * Returns the fingerprint of the class file with the given SHA-256 digest, or
+	 * <code>null</code> if it is not known.
+	 */
+	public synchronized String get(String classDigest) {
+		return fingerprints.get(classDigest);
+	}
+
+	public synchronized void put(String classDigest, String fingerprint) {
+		if (fingerprint.equals(fingerprints.put(classDigest, fingerprint)) || cacheFile == null || persistenceDisabled)
+			return;
+		try {
+			if (writer == null)
+				writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(cacheFile, true), StandardCharsets.UTF_8));
+			writer.write(fingerprint + SEPARATOR + classDigest + '\n');
+		} catch (IOException e) {
+			disablePersistence(e);
+		}
+	}
+
+	/**
+	 * Writes the new fingerprints to the cache file and closes it. Fingerprints
+	 * added afterwards open it again.
+	 */
+	public synchronized void close() {
+		if (writer == null)
+			return;
+		try {
+			writer.close();
+			writer = null;
+		} catch (IOException e) {
+			disablePersistence(e);
+		}
+	}
+
+	private void disablePersistence(IOException e) {
+		LogHelper.log(new Status(IStatus.WARNING, PLUGIN_ID, "Unable to write class fingerprint cache " + cacheFile, e)); //$NON-NLS-1$
+		try {
+			if (writer != null)
+				writer.close();
+		} catch (IOException e2) {
+			// ignore
+		}
+		writer = null;
+		persistenceDisabled = true;
+	}
+
+	private void load() {
+		if (cacheFile == null || !cacheFile.isFile())
+			return;
+		int lines = 0;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int index = line.indexOf(SEPARATOR);
+				// files written by older versions keyed the entries differently
+				if (index > 0 && line.length() - index - 1 == KEY_LENGTH)
+					fingerprints.put(line.substring(index + 1), line.substring(0, index));
+				lines++;
+			}
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, PLUGIN_ID, "Unable to read class fingerprint cache " + cacheFile, e)); //$NON-NLS-1$
+			return;
+		}
+		// the file only grows, drop what no longer fits into memory
+		if (lines > 2 * MAX_ENTRIES)
+			compact();
+	}
+
+	private void compact() {
+		File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp"); //$NON-NLS-1$
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+			for (Map.Entry<String, String> entry : fingerprints.entrySet())
+				out.write(entry.getValue() + SEPARATOR + entry.getKey() + '\n');
+		} catch (IOException e) {
+			tempFile.delete();
+			return;
+		}
+		cacheFile.delete();
+		tempFile.renameTo(cacheFile);
+	}
+}
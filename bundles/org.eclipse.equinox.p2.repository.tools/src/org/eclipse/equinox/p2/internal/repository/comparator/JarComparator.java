@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,6 +14,9 @@
 package org.eclipse.equinox.p2.internal.repository.comparator;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.jar.*;
@@ -21,11 +24,13 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.FeatureParser;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumHelper;
 import org.eclipse.equinox.p2.internal.repository.comparator.java.*;
 import org.eclipse.equinox.p2.publisher.eclipse.Feature;
 import org.eclipse.equinox.p2.publisher.eclipse.FeatureEntry;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IFileArtifactRepository;
 import org.eclipse.equinox.p2.repository.tools.comparator.IArtifactComparator;
 import org.eclipse.osgi.util.NLS;
 
@@ -33,6 +38,13 @@ import org.eclipse.osgi.util.NLS;
  * An artifact comparator that compares two JAR files. Class files are disassembled 
  * and compared for equivalence, properties and manifest files are compared as such, 
  * all other files are compared byte-for-byte. 
+ * <p>
+ * Entries with the same CRC and size in both JAR files are considered equal
+ * without reading them. The disassembled classes are compared by fingerprint,
+ * which the {@link ClassFingerprintCache} remembers, and classes of large JAR
+ * files are disassembled in parallel. Callers comparing many artifacts close
+ * the cache with {@link ClassFingerprintCache#closeDefault()} when done.
+ * </p>
  */
 public class JarComparator implements IArtifactComparator {
 
@@ -96,6 +108,8 @@ public class JarComparator implements IArtifactComparator {
 	private static final String DSA_EXT = ".dsa"; //$NON-NLS-1$
 	private static final String RSA_EXT = ".rsa"; //$NON-NLS-1$
 	private static final String SF_EXT = ".sf"; //$NON-NLS-1$
+	// the number of classes to disassemble from which it is done in parallel
+	private static final int PARALLEL_THRESHOLD = 32;
 
 	private String sourceLocation, destinationLocation, descriptorString;
 
@@ -112,15 +126,19 @@ public class JarComparator implements IArtifactComparator {
 			return Status.OK_STATUS;
 		}
 
+		File firstFile = getArtifactFile(source, sourceDescriptor);
+		File secondFile = getArtifactFile(destination, destinationDescriptor);
 		File firstTempFile = null;
 		File secondTempFile = null;
 		try {
-			firstTempFile = getLocalJarFile(source, sourceDescriptor, SOURCE_ARTIFACT_PREFIX);
-			secondTempFile = getLocalJarFile(destination, destinationDescriptor, DESTINATION_ARTIFACT_PREFIX);
+			if (firstFile == null)
+				firstFile = firstTempFile = getLocalJarFile(source, sourceDescriptor, SOURCE_ARTIFACT_PREFIX);
+			if (secondFile == null)
+				secondFile = secondTempFile = getLocalJarFile(destination, destinationDescriptor, DESTINATION_ARTIFACT_PREFIX);
 			if (classifier1.equals(OSGI_BUNDLE_CLASSIFIER))
-				return compare(firstTempFile, secondTempFile);
+				return compare(firstFile, secondFile);
 			else if (classifier1.equals(FEATURE_CLASSIFIER))
-				return compareFeatures(firstTempFile, secondTempFile);
+				return compareFeatures(firstFile, secondFile);
 		} catch (CoreException e) {
 			return e.getStatus();
 		} finally {
@@ -132,6 +150,17 @@ public class JarComparator implements IArtifactComparator {
 		return Status.OK_STATUS;
 	}
 
+	/*
+	 * Returns the file of an artifact stored as such in a local repository, or
+	 * null if the artifact has to be fetched.
+	 */
+	private File getArtifactFile(IArtifactRepository repository, IArtifactDescriptor descriptor) {
+		if (!(repository instanceof IFileArtifactRepository) || descriptor.getProcessingSteps().length > 0)
+			return null;
+		File file = ((IFileArtifactRepository) repository).getArtifactFile(descriptor);
+		return file != null && file.isFile() ? file : null;
+	}
+
 	public IStatus compareFeatures(File sourceFile, File destinationFile) {
 		FeatureParser parser = new FeatureParser();
 		Feature feature1 = parser.parse(sourceFile);
@@ -191,43 +220,61 @@ public class JarComparator implements IArtifactComparator {
 				parent.add(newErrorStatus(NLS.bind(Messages.differentNumberOfEntries, new String[] {descriptorString, sourceLocation, Integer.toString(firstFileSize), destinationLocation, Integer.toString(secondFileSize)})));
 				return parent;
 			}
+			// the entries that have to be read, in the order of the first file
+			List<ZipEntry[]> pairs = new ArrayList<>();
+			List<ZipEntry[]> classPairs = new ArrayList<>();
 			for (Enumeration<? extends ZipEntry> enumeration = firstFile.entries(); enumeration.hasMoreElements();) {
 				ZipEntry entry = enumeration.nextElement();
 				String entryName = entry.getName();
 				final ZipEntry entry2 = secondFile.getEntry(entryName);
-				IStatus result = null;
-				if (!entry.isDirectory() && entry2 != null) {
+				if (entry.isDirectory())
+					continue;
+				if (entry2 != null) {
 					String lowerCase = entryName.toLowerCase();
-					if (isSigningEntry(lowerCase)) {
+					if (isSigningEntry(lowerCase) || isSameContent(entry, entry2))
 						continue;
-					}
+					if (lowerCase.endsWith(CLASS_EXTENSION))
+						classPairs.add(new ZipEntry[] {entry, entry2});
+				}
+				pairs.add(new ZipEntry[] {entry, entry2});
+			}
 
-					InputStream firstStream = null;
-					InputStream secondStream = null;
-					try {
-						firstStream = new BufferedInputStream(firstFile.getInputStream(entry));
-						secondStream = new BufferedInputStream(secondFile.getInputStream(entry2));
-						if (lowerCase.endsWith(CLASS_EXTENSION)) {
-							result = compareClasses(entryName, firstStream, entry.getSize(), secondStream, entry2.getSize());
-						} else if (lowerCase.endsWith(JAR_EXTENSION)) {
-							result = compareNestedJars(firstStream, entry.getSize(), secondStream, entry2.getSize(), entryName);
-						} else if (lowerCase.endsWith(PROPERTIES_EXTENSION) || lowerCase.endsWith(MAPPINGS_EXTENSION)) {
-							result = compareProperties(entryName, firstStream, secondStream);
-						} else if (entryName.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
-							result = compareManifest(firstStream, secondStream); //MANIFEST.MF file
-						} else {
-							long size1 = entry.getSize();
-							long size2 = entry2.getSize();
-							if (size1 != size2)
-								result = newErrorStatus(NLS.bind(Messages.binaryDifferentLength, new String[] {entryName, String.valueOf(Math.abs(size1 - size2))}));
-							else
-								result = compareBytes(entryName, firstStream, entry.getSize(), secondStream, entry2.getSize());
+			Map<ZipEntry, IStatus> classResults = compareClasses(firstFile, secondFile, classPairs);
+			for (ZipEntry[] pair : pairs) {
+				ZipEntry entry = pair[0];
+				ZipEntry entry2 = pair[1];
+				String entryName = entry.getName();
+				IStatus result = null;
+				if (entry2 != null) {
+					String lowerCase = entryName.toLowerCase();
+					if (lowerCase.endsWith(CLASS_EXTENSION)) {
+						result = classResults.get(entry);
+					} else {
+						InputStream firstStream = null;
+						InputStream secondStream = null;
+						try {
+							firstStream = new BufferedInputStream(firstFile.getInputStream(entry));
+							secondStream = new BufferedInputStream(secondFile.getInputStream(entry2));
+							if (lowerCase.endsWith(JAR_EXTENSION)) {
+								result = compareNestedJars(firstStream, entry.getSize(), secondStream, entry2.getSize(), entryName);
+							} else if (lowerCase.endsWith(PROPERTIES_EXTENSION) || lowerCase.endsWith(MAPPINGS_EXTENSION)) {
+								result = compareProperties(entryName, firstStream, secondStream);
+							} else if (entryName.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+								result = compareManifest(firstStream, secondStream); //MANIFEST.MF file
+							} else {
+								long size1 = entry.getSize();
+								long size2 = entry2.getSize();
+								if (size1 != size2)
+									result = newErrorStatus(NLS.bind(Messages.binaryDifferentLength, new String[] {entryName, String.valueOf(Math.abs(size1 - size2))}));
+								else
+									result = compareBytes(entryName, firstStream, entry.getSize(), secondStream, entry2.getSize());
+							}
+						} finally {
+							Utility.close(firstStream);
+							Utility.close(secondStream);
 						}
-					} finally {
-						Utility.close(firstStream);
-						Utility.close(secondStream);
 					}
-				} else if (!entry.isDirectory()) {
+				} else {
 					// missing entry, entry2 == null
 					result = newErrorStatus(NLS.bind(Messages.missingEntry, new String[] {entryName, descriptorString, sourceLocation}));
 				}
@@ -247,6 +294,99 @@ public class JarComparator implements IArtifactComparator {
 		return Status.OK_STATUS;
 	}
 
+	/*
+	 * Whether the central directories of both files record the same content for
+	 * the entries.
+	 */
+	private boolean isSameContent(ZipEntry entry, ZipEntry entry2) {
+		return entry.getCrc() != -1 && entry.getCrc() == entry2.getCrc() && entry.getSize() == entry2.getSize();
+	}
+
+	/*
+	 * Compares the given pairs of class entries, in parallel if there are many of
+	 * them, and returns the result for each entry of the first file.
+	 */
+	private Map<ZipEntry, IStatus> compareClasses(ZipFile firstFile, ZipFile secondFile, List<ZipEntry[]> classPairs) throws IOException {
+		Map<ZipEntry, IStatus> results = new HashMap<>();
+		if (classPairs.size() < PARALLEL_THRESHOLD) {
+			for (ZipEntry[] pair : classPairs)
+				results.put(pair[0], compareClasses(firstFile, pair[0], secondFile, pair[1]));
+			return results;
+		}
+		IStatus[] statuses;
+		try {
+			// zip files can be read from several threads
+			statuses = classPairs.parallelStream().map(pair -> {
+				try {
+					return compareClasses(firstFile, pair[0], secondFile, pair[1]);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).toArray(IStatus[]::new);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		for (int i = 0; i < statuses.length; i++)
+			results.put(classPairs.get(i)[0], statuses[i]);
+		return results;
+	}
+
+	private IStatus compareClasses(ZipFile firstFile, ZipEntry entry, ZipFile secondFile, ZipEntry entry2) throws IOException {
+		String entryName = entry.getName();
+		String fingerprint1 = getClassFingerprint(firstFile, entry);
+		String fingerprint2 = getClassFingerprint(secondFile, entry2);
+		if (fingerprint1 == null || fingerprint2 == null) {
+			// one of the two .class file (or both) is corrupted
+			if (fingerprint1 == null && fingerprint2 == null) {
+				// both .class files are corrupted and we need to do a byte comparison in case the .class file is corrupted on purpose
+				try (InputStream firstStream = new BufferedInputStream(firstFile.getInputStream(entry)); InputStream secondStream = new BufferedInputStream(secondFile.getInputStream(entry2))) {
+					return compareBytes(entryName, firstStream, entry.getSize(), secondStream, entry2.getSize());
+				}
+			}
+			return newErrorStatus(NLS.bind(Messages.classesDifferent, entryName));
+		}
+		if (!fingerprint1.equals(fingerprint2)) {
+			return newErrorStatus(NLS.bind(Messages.classesDifferent, entryName));
+		}
+		return Status.OK_STATUS;
+	}
+
+	/*
+	 * Returns the digest of the disassembled class, or null if the class file is
+	 * corrupted.
+	 */
+	private String getClassFingerprint(ZipFile file, ZipEntry entry) throws IOException {
+		byte[] classFileBytes;
+		try (InputStream stream = new BufferedInputStream(file.getInputStream(entry))) {
+			classFileBytes = Utility.getInputStreamAsByteArray(stream, (int) entry.getSize());
+		}
+		ClassFingerprintCache cache = ClassFingerprintCache.getDefault();
+		String classDigest = sha256(classFileBytes);
+		String fingerprint = classDigest == null ? null : cache.get(classDigest);
+		if (fingerprint != null)
+			return fingerprint;
+		String contents;
+		try {
+			contents = new Disassembler().disassemble(classFileBytes, LINE_SEPARATOR, Disassembler.DETAILED | Disassembler.COMPACT);
+		} catch (ClassFormatException e) {
+			return null;
+		}
+		// every Java platform supports SHA-256, compare the disassembled text otherwise
+		if (classDigest == null)
+			return contents;
+		fingerprint = sha256(contents.getBytes(StandardCharsets.UTF_8));
+		cache.put(classDigest, fingerprint);
+		return fingerprint;
+	}
+
+	private static String sha256(byte[] bytes) {
+		try {
+			return ChecksumHelper.toHexString(MessageDigest.getInstance("SHA-256").digest(bytes)); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
 	private IStatus compareManifest(InputStream firstStream, InputStream secondStream) throws IOException {
 		Manifest manifest = new Manifest(firstStream);
 		Manifest manifest2 = new Manifest(secondStream);
@@ -270,45 +410,6 @@ public class JarComparator implements IArtifactComparator {
 		return Status.OK_STATUS;
 	}
 
-	private IStatus compareClasses(String entryName, InputStream stream1, long size1, InputStream stream2, long size2) throws IOException {
-		Disassembler disassembler = new Disassembler();
-		byte[] firstEntryClassFileBytes = Utility.getInputStreamAsByteArray(stream1, (int) size1);
-		byte[] secondEntryClassFileBytes = Utility.getInputStreamAsByteArray(stream2, (int) size2);
-
-		String contentsFile1 = null;
-		try {
-			contentsFile1 = disassembler.disassemble(firstEntryClassFileBytes, LINE_SEPARATOR, Disassembler.DETAILED | Disassembler.COMPACT);
-		} catch (ClassFormatException e) {
-			// ignore
-		}
-		String contentsFile2 = null;
-		try {
-			contentsFile2 = disassembler.disassemble(secondEntryClassFileBytes, LINE_SEPARATOR, Disassembler.DETAILED | Disassembler.COMPACT);
-		} catch (ClassFormatException e) {
-			// ignore
-		}
-		if (contentsFile1 == null || contentsFile2 == null) {
-			// one of the two .class file (or both) is corrupted
-			if (contentsFile1 == null) {
-				if (contentsFile2 != null) {
-					// first .class file is corrupted and not the second one
-					return newErrorStatus(NLS.bind(Messages.classesDifferent, entryName));
-				}
-				// both .class files are corrupted and we need to do a byte comparison in case the .class file is corrupted on purpose
-				if (!Arrays.equals(firstEntryClassFileBytes, secondEntryClassFileBytes)) {
-					return newErrorStatus(NLS.bind(Messages.binaryFilesDifferent, entryName));
-				}
-				return Status.OK_STATUS;
-			}
-			// first .class file is not corrupted but the second one is
-			return newErrorStatus(NLS.bind(Messages.classesDifferent, entryName));
-		}
-		if (!contentsFile1.equals(contentsFile2)) {
-			return newErrorStatus(NLS.bind(Messages.classesDifferent, entryName));
-		}
-		return Status.OK_STATUS;
-	}
-
 	private IStatus compareNestedJars(InputStream stream1, long size1, InputStream stream2, long size2, String entry) throws IOException {
 		File firstTempFile = getLocalJarFile(stream1, entry, size1);
 		File secondTempFile = getLocalJarFile(stream2, entry, size2);
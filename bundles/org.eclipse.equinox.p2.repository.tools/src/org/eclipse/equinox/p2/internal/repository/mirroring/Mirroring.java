@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2018 IBM Corporation and others.
+ *  Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -16,16 +16,20 @@
 package org.eclipse.equinox.p2.internal.repository.mirroring;
 
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.RawMirrorRequest;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.internal.repository.comparator.ClassFingerprintCache;
 import org.eclipse.equinox.p2.internal.repository.tools.Activator;
 import org.eclipse.equinox.p2.internal.repository.tools.Messages;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.repository.IRunnableWithProgress;
 import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.tools.comparator.ArtifactComparatorFactory;
@@ -36,6 +40,12 @@ import org.eclipse.osgi.util.NLS;
  * A utility class that performs mirroring of artifacts between repositories.
  */
 public class Mirroring {
+	/**
+	 * System property for the number of artifacts mirrored concurrently, one by
+	 * default.
+	 */
+	public static final String PROP_PARALLELISM = "eclipse.p2.mirror.parallelism"; //$NON-NLS-1$
+
 	private IArtifactRepository source;
 	private IArtifactRepository destination;
 	private IArtifactRepository baseline;
@@ -50,6 +60,58 @@ public class Mirroring {
 	private IArtifactMirrorLog comparatorLog;
 	private Transport transport;
 	private boolean mirrorProperties = false;
+	private int parallelism = Integer.getInteger(PROP_PARALLELISM, 1).intValue();
+	// comparators may keep state while comparing, every worker thread gets its own
+	private final ThreadLocal<IArtifactComparator> workerComparator = ThreadLocal
+			.withInitial(() -> ArtifactComparatorFactory.getArtifactComparator(comparatorID));
+
+	/**
+	 * Remembers what is logged while mirroring a descriptor on a worker thread
+	 * so that it can be passed on to the comparator log in the order of the
+	 * descriptors.
+	 */
+	private static class BufferedMirrorLog implements IArtifactMirrorLog {
+		private final List<IArtifactDescriptor> descriptors = new ArrayList<>(1);
+		private final List<IStatus> statuses = new ArrayList<>(1);
+
+		@Override
+		public void log(IArtifactDescriptor descriptor, IStatus status) {
+			descriptors.add(descriptor);
+			statuses.add(status);
+		}
+
+		@Override
+		public void log(IStatus status) {
+			log(null, status);
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+
+		void replay(IArtifactMirrorLog target) {
+			for (int i = 0; i < statuses.size(); i++) {
+				if (descriptors.get(i) == null)
+					target.log(statuses.get(i));
+				else
+					target.log(descriptors.get(i), statuses.get(i));
+			}
+		}
+	}
+
+	/**
+	 * The outcome of mirroring one descriptor on a worker thread.
+	 */
+	private static class MirrorResult {
+		final IStatus status;
+		final BufferedMirrorLog log;
+
+		MirrorResult(IStatus status, BufferedMirrorLog log) {
+			this.status = status;
+			this.log = log;
+		}
+	}
 
 	private IArtifactComparator getComparator() {
 		if (comparator == null)
@@ -87,6 +149,15 @@ public class Mirroring {
 		this.mirrorProperties = properties;
 	}
 
+	/**
+	 * Sets the number of artifacts that are mirrored concurrently into a simple
+	 * artifact repository. The statuses and comparator log entries are still
+	 * reported in the order of the artifacts.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
 	public MultiStatus run(boolean failOnError, boolean verbose) {
 		if (!destination.isModifiable())
 			throw new IllegalStateException(
@@ -108,18 +179,22 @@ public class Mirroring {
 			compareExclusions = exclusions.toUnmodifiableSet();
 		}
 		MultiStatus multiStatus = new MultiStatus(Activator.ID, IStatus.OK, Messages.message_mirroringStatus, null);
-		IStatus batchStatus = destination.executeBatch(monitor -> {
-			while (keys.hasNext()) {
-				IArtifactKey key = keys.next();
-				IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
-				for (IArtifactDescriptor descriptor : descriptors) {
-					IStatus result = mirror(descriptor, verbose);
-					// Only log INFO and WARNING if we want verbose logging. Always log ERRORs
-					if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
-						multiStatus.add(result);
-					// stop mirroring as soon as we have an error
-					if (failOnError && multiStatus.getSeverity() == IStatus.ERROR)
-						return;
+		// other repositories may hold their monitor for the whole batch, which would
+		// block the workers
+		boolean concurrent = parallelism > 1 && destination instanceof SimpleArtifactRepository;
+		IRunnableWithProgress mirrorAll = monitor -> {
+			if (concurrent) {
+				if (!mirrorInParallel(keys, multiStatus, failOnError, verbose))
+					return;
+			} else {
+				while (keys.hasNext()) {
+					IArtifactKey key = keys.next();
+					IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
+					for (IArtifactDescriptor descriptor : descriptors) {
+						IStatus result = mirror(descriptor, verbose, comparatorLog);
+						if (!addResult(multiStatus, result, failOnError, verbose))
+							return;
+					}
 				}
 			}
 			// mirror the source repository's properties unless they are already set up
@@ -137,7 +212,17 @@ public class Mirroring {
 						destination.setProperty(key, sourceProperties.get(key));
 				}
 			}
-		}, new NullProgressMonitor());
+		};
+		IStatus batchStatus;
+		try {
+			batchStatus = concurrent
+					? ((SimpleArtifactRepository) destination).executeConcurrentBatch(mirrorAll, new NullProgressMonitor())
+					: destination.executeBatch(mirrorAll, new NullProgressMonitor());
+		} finally {
+			// write the class fingerprints remembered while comparing
+			if (compare)
+				ClassFingerprintCache.closeDefault();
+		}
 		multiStatus.add(batchStatus);
 
 		if (validate) {
@@ -149,7 +234,88 @@ public class Mirroring {
 		return multiStatus;
 	}
 
-	private IStatus mirror(IArtifactDescriptor sourceDescriptor, boolean verbose) {
+	/**
+	 * Adds the result of mirroring a descriptor to the overall status and returns
+	 * whether mirroring should go on.
+	 */
+	private boolean addResult(MultiStatus multiStatus, IStatus result, boolean failOnError, boolean verbose) {
+		// Only log INFO and WARNING if we want verbose logging. Always log ERRORs
+		if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
+			multiStatus.add(result);
+		// stop mirroring as soon as we have an error
+		return !(failOnError && multiStatus.getSeverity() == IStatus.ERROR);
+	}
+
+	/**
+	 * Mirrors the descriptors of the given keys on a pool of threads. At most a
+	 * few descriptors per thread are queued at any time and their results are
+	 * consumed in order. The workers are done when this method returns so the
+	 * destination saves everything they added at the end of the batch.
+	 *
+	 * @return whether all descriptors were mirrored, <code>false</code> if
+	 *         mirroring stopped at an error
+	 */
+	private boolean mirrorInParallel(Iterator<IArtifactKey> keys, MultiStatus multiStatus, boolean failOnError,
+			boolean verbose) {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "Artifact Mirroring"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		Deque<Future<MirrorResult>> pending = new ArrayDeque<>();
+		int maxPending = parallelism * 4;
+		try {
+			while (keys.hasNext()) {
+				IArtifactKey key = keys.next();
+				for (IArtifactDescriptor descriptor : source.getArtifactDescriptors(key)) {
+					if (pending.size() >= maxPending && !addResult(multiStatus, takeResult(pending), failOnError, verbose))
+						return false;
+					pending.add(executor.submit(() -> {
+						BufferedMirrorLog log = comparatorLog != null ? new BufferedMirrorLog() : null;
+						return new MirrorResult(mirror(descriptor, verbose, log), log);
+					}));
+				}
+			}
+			while (!pending.isEmpty()) {
+				if (!addResult(multiStatus, takeResult(pending), failOnError, verbose))
+					return false;
+			}
+			return true;
+		} finally {
+			for (Future<MirrorResult> future : pending)
+				future.cancel(false);
+			executor.shutdown();
+			try {
+				// artifacts being transferred are completed before the batch ends
+				while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+					// keep waiting
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private IStatus takeResult(Deque<Future<MirrorResult>> pending) {
+		try {
+			MirrorResult result = pending.remove().get();
+			if (result.log != null)
+				result.log.replay(comparatorLog);
+			return result.status;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private IStatus mirror(IArtifactDescriptor sourceDescriptor, boolean verbose, IArtifactMirrorLog log) {
 		IArtifactDescriptor targetDescriptor = raw ? sourceDescriptor : new ArtifactDescriptor(sourceDescriptor);
 		IArtifactDescriptor baselineDescriptor = getBaselineDescriptor(sourceDescriptor);
 
@@ -162,14 +328,14 @@ public class Mirroring {
 		if (comparing) {
 			if (baselineDescriptor != null) {
 				// compare source & baseline
-				compareStatus.add(compare(baseline, baselineDescriptor, source, sourceDescriptor));
+				compareStatus.add(compare(baseline, baselineDescriptor, source, sourceDescriptor, log));
 				// compare baseline & destination
 				if (destination.contains(baselineDescriptor)) {
-					compareStatus.add(compareToDestination(baselineDescriptor));
+					compareStatus.add(compareToDestination(baselineDescriptor, log));
 					return compareStatus;
 				}
 			} else if (destination.contains(targetDescriptor)) {
-				compareStatus.add(compareToDestination(sourceDescriptor));
+				compareStatus.add(compareToDestination(sourceDescriptor, log));
 				return compareStatus;
 			}
 		}
@@ -204,7 +370,7 @@ public class Mirroring {
 	 *
 	 * @return the status of the compare
 	 */
-	private IStatus compareToDestination(IArtifactDescriptor descriptor) {
+	private IStatus compareToDestination(IArtifactDescriptor descriptor, IArtifactMirrorLog log) {
 		IArtifactDescriptor[] destDescriptors = destination.getArtifactDescriptors(descriptor.getArtifactKey());
 		IArtifactDescriptor destDescriptor = null;
 		for (int i = 0; destDescriptor == null && i < destDescriptors.length; i++) {
@@ -214,15 +380,16 @@ public class Mirroring {
 		if (destDescriptor == null)
 			return new Status(IStatus.INFO, Activator.ID, ProvisionException.ARTIFACT_EXISTS,
 					Messages.Mirroring_noMatchingDescriptor, null);
-		return compare(source, descriptor, destination, destDescriptor);
+		return compare(source, descriptor, destination, destDescriptor, log);
 	}
 
 	private IStatus compare(IArtifactRepository sourceRepository, IArtifactDescriptor sourceDescriptor,
-			IArtifactRepository destRepository, IArtifactDescriptor destDescriptor) {
-		IStatus comparison = getComparator().compare(sourceRepository, sourceDescriptor, destRepository,
+			IArtifactRepository destRepository, IArtifactDescriptor destDescriptor, IArtifactMirrorLog log) {
+		IArtifactComparator artifactComparator = parallelism > 1 ? workerComparator.get() : getComparator();
+		IStatus comparison = artifactComparator.compare(sourceRepository, sourceDescriptor, destRepository,
 				destDescriptor);
-		if (comparatorLog != null && !comparison.isOK())
-			comparatorLog.log(sourceDescriptor, comparison);
+		if (log != null && !comparison.isOK())
+			log.log(sourceDescriptor, comparison);
 		return comparison;
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2021 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -58,6 +58,7 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	private String metadataOrArtifacts = null;
 	private String[] rootIUs = null;
 	private boolean mirrorProperties = false;
+	private int parallelism = 0; // use the default of Mirroring
 
 	private File mirrorLogFile; // file to log mirror output to (optional)
 	private File comparatorLogFile; // file to comparator output to (optional)
@@ -174,6 +175,8 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 				rootIUs = getArrayArgsFromString(arg, ","); //$NON-NLS-1$
 			} else if (args[i - 1].equalsIgnoreCase("-references")) {//$NON-NLS-1$
 				mirrorReferences = Boolean.parseBoolean(args[i]);
+			} else if (args[i - 1].equalsIgnoreCase("-parallelism")) { //$NON-NLS-1$
+				parallelism = Integer.parseInt(arg);
 			} else {
 				try {
 					if (args[i - 1].equalsIgnoreCase("-source")) { //$NON-NLS-1$
@@ -253,6 +256,8 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 		mirror.setCompareExclusions(compareExclusions);
 		mirror.setTransport((Transport) agent.getService(Transport.SERVICE_NAME));
 		mirror.setMirrorProperties(mirrorProperties);
+		if (parallelism > 0)
+			mirror.setParallelism(parallelism);
 
 		// If IUs have been specified then only they should be mirrored, otherwise
 		// mirror everything.
@@ -496,4 +501,11 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	public void setMirrorProperties(boolean mirrorProperties) {
 		this.mirrorProperties = mirrorProperties;
 	}
+
+	/*
+	 * Set the number of artifacts mirrored concurrently
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
 }
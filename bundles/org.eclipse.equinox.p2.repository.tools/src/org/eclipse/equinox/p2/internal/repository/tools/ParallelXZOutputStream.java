@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.internal.repository.tools;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * An output stream compressing its content with XZ on several threads. The
+ * content is cut into blocks of three times the dictionary size, like
+ * <code>xz --threads</code> does, and every block is compressed on its own
+ * into an XZ stream. The streams are written in order, and their
+ * concatenation is a valid XZ file which <code>XZInputStream</code> reads in
+ * one go.
+ */
+public class ParallelXZOutputStream extends OutputStream {
+	private final OutputStream out;
+	private final LZMA2Options options;
+	private final int maxPending;
+	private final ExecutorService executor;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private byte[] block;
+	private int count;
+	private boolean written;
+	private boolean closed;
+
+	public ParallelXZOutputStream(OutputStream out, LZMA2Options options, int threads) {
+		this.out = out;
+		this.options = options;
+		this.block = new byte[Math.max(3 * options.getDictSize(), 1024 * 1024)];
+		this.maxPending = 2 * threads;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "XZ Compressor " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		while (len > 0) {
+			int chunk = Math.min(len, block.length - count);
+			System.arraycopy(b, off, block, count, chunk);
+			count += chunk;
+			off += chunk;
+			len -= chunk;
+			if (count == block.length)
+				submitBlock();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		byte[] data = block;
+		int length = count;
+		pending.add(executor.submit(() -> compress(data, length)));
+		written = true;
+		block = new byte[block.length];
+		count = 0;
+		// bound the memory used by blocks waiting to be written
+		while (pending.size() > maxPending)
+			writeNext();
+	}
+
+	private byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream(length / 4);
+		try (XZOutputStream xz = new XZOutputStream(result, (LZMA2Options) options.clone())) {
+			xz.write(data, 0, length);
+		}
+		return result.toByteArray();
+	}
+
+	private void writeNext() throws IOException {
+		try {
+			out.write(pending.removeFirst().get());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			// an empty input still has to produce a valid XZ file
+			if (count > 0 || !written)
+				submitBlock();
+			while (!pending.isEmpty())
+				writeNext();
+		} finally {
+			executor.shutdownNow();
+			block = null;
+			out.close();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2022 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -18,12 +18,11 @@ package org.eclipse.equinox.p2.internal.repository.tools;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -127,33 +126,37 @@ public class RecreateRepositoryApplication extends AbstractApplication {
 			throw new ProvisionException(NLS.bind(Messages.exception_notLocalFileRepo, repository.getLocation()));
 
 		IFileArtifactRepository simple = (IFileArtifactRepository) repository;
-		for (IArtifactKey key : repoMap.keySet()) {
-			IArtifactDescriptor[] descriptors = repoMap.get(key);
-
-			Set<File> files = new HashSet<>();
-			for (IArtifactDescriptor descriptor : descriptors) {
-				File artifactFile = simple.getArtifactFile(descriptor);
-				files.add(artifactFile);
+		List<IArtifactDescriptor> descriptors = new ArrayList<>();
+		List<File> artifactFiles = new ArrayList<>();
+		for (IArtifactDescriptor[] keyDescriptors : repoMap.values()) {
+			for (IArtifactDescriptor descriptor : keyDescriptors) {
+				descriptors.add(descriptor);
+				artifactFiles.add(simple.getArtifactFile(descriptor));
+			}
+		}
 
-				String size = Long.toString(artifactFile.length());
+		// the artifacts are local files, reading several of them at once pays off
+		Map<File, Map<String, String>> checksums = new HashMap<>();
+		List<String> checksumsToSkip = Collections.emptyList();
+		IStatus status = ChecksumUtilities.calculateChecksums(artifactFiles, checksums, checksumsToSkip,
+				Runtime.getRuntime().availableProcessors());
+		if (!status.isOK())
+			// TODO handle errors in some way
+			LogHelper.log(status);
 
-				ArtifactDescriptor newDescriptor = new ArtifactDescriptor(descriptor);
-				newDescriptor.setProperty(IArtifactDescriptor.ARTIFACT_SIZE, size);
-				newDescriptor.setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, size);
+		for (int i = 0; i < descriptors.size(); i++) {
+			File artifactFile = artifactFiles.get(i);
+			String size = Long.toString(artifactFile.length());
 
-				Map<String, String> checksums = new HashMap<>();
-				List<String> checksumsToSkip = Collections.emptyList();
-				IStatus status = ChecksumUtilities.calculateChecksums(artifactFile, checksums, checksumsToSkip);
-				if (!status.isOK())
-					// TODO handle errors in some way
-					LogHelper.log(status);
+			ArtifactDescriptor newDescriptor = new ArtifactDescriptor(descriptors.get(i));
+			newDescriptor.setProperty(IArtifactDescriptor.ARTIFACT_SIZE, size);
+			newDescriptor.setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, size);
 
-				Map<String, String> checksumsToProperties = ChecksumUtilities
-						.checksumsToProperties(IArtifactDescriptor.DOWNLOAD_CHECKSUM, checksums);
-				newDescriptor.addProperties(checksumsToProperties);
+			Map<String, String> checksumsToProperties = ChecksumUtilities
+					.checksumsToProperties(IArtifactDescriptor.DOWNLOAD_CHECKSUM, checksums.get(artifactFile));
+			newDescriptor.addProperties(checksumsToProperties);
 
-				repository.addDescriptor(newDescriptor, null);
-			}
+			repository.addDescriptor(newDescriptor, null);
 		}
 	}
 }
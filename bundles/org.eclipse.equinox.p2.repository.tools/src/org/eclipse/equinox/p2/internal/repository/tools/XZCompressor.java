@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015, 2018 Rapicorp, Inc and others.
+ * Copyright (c) 2015, 2024 Rapicorp, Inc and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -30,8 +30,17 @@ import org.tukaani.xz.*;
  * artifacts.xml or artifacts.jar. Note that the tool does not require both the
  * a metadata repository and an artifact repository. The output will be
  * <fileName>.xml.xz, and a p2.index
+ * 
+ * The XML is read straight from the jar when there is no XML file. With more
+ * than one thread, see {@link #PROP_THREADS}, the XML is compressed in blocks
+ * on several threads.
  */
 public class XZCompressor {
+	/**
+	 * System property for the number of threads used to compress, 1 by default.
+	 */
+	public static final String PROP_THREADS = "eclipse.p2.xz.threads"; //$NON-NLS-1$
+
 	private static final String CONTENT_XML_XZ = "content.xml.xz"; //$NON-NLS-1$
 	private static final String ARTIFACTS_XML_XZ = "artifacts.xml.xz"; //$NON-NLS-1$
 	private static final String ARTIFACTS2 = "artifacts"; //$NON-NLS-1$
@@ -41,6 +50,7 @@ public class XZCompressor {
 
 	private String repoFolder;
 	private boolean preserveOriginalFile = true;
+	private int threads = Math.max(1, Integer.getInteger(PROP_THREADS, 1).intValue());
 	private ArrayList<File> filesToDelete = new ArrayList<>();
 
 	public String getRepoFolder() {
@@ -59,40 +69,40 @@ public class XZCompressor {
 		this.preserveOriginalFile = preserveOriginalFile;
 	}
 
-	private File uncompressJar(File jarFile, String fileToExtract) throws IOException {
-		try (JarInputStream jarStream = new JarInputStream(new FileInputStream(jarFile))) {
-			JarEntry jarEntry = jarStream.getNextJarEntry();
-			while (jarEntry != null && (!fileToExtract.equals(jarEntry.getName()))) {
-				jarEntry = jarStream.getNextJarEntry();
-			}
-			// if there is a jar but the entry is missing or invalid, treat this as an
-			// invalid repository
-			if (jarEntry == null) {
-				jarStream.close();
-				throw new IOException(NLS.bind(Messages.repoMan_invalidLocation, jarFile.getAbsolutePath()));
-			}
+	public int getThreads() {
+		return threads;
+	}
 
-			File extractedFile = new File(jarFile.getAbsoluteFile().getParent(), fileToExtract);
-			try (BufferedInputStream input = new BufferedInputStream(jarStream);
-					OutputStream output = new BufferedOutputStream(new FileOutputStream(extractedFile))) {
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
 
-				byte[] buffer = new byte[8192];
-				int bytesRead = 0;
-				while ((bytesRead = input.read(buffer)) != -1)
-					output.write(buffer, 0, bytesRead);
-			}
-			filesToDelete.add(extractedFile);
-			return extractedFile;
+	private InputStream openJarEntry(File jarFile, String fileToExtract) throws IOException {
+		JarInputStream jarStream = new JarInputStream(new BufferedInputStream(new FileInputStream(jarFile)));
+		JarEntry jarEntry = jarStream.getNextJarEntry();
+		while (jarEntry != null && (!fileToExtract.equals(jarEntry.getName()))) {
+			jarEntry = jarStream.getNextJarEntry();
+		}
+		// if there is a jar but the entry is missing or invalid, treat this as an
+		// invalid repository
+		if (jarEntry == null) {
+			jarStream.close();
+			throw new IOException(NLS.bind(Messages.repoMan_invalidLocation, jarFile.getAbsolutePath()));
 		}
+		return jarStream;
 	}
 
-	private File getMetadataFile(String prefix) throws IOException {
+	/**
+	 * Opens the XML of the given repository file, or returns <code>null</code>
+	 * if there is none.
+	 */
+	private InputStream openMetadataFile(String prefix) throws IOException {
 		File candidate = new File(repoFolder, prefix + XML);
 		if (candidate.exists()) {
 			if (!preserveOriginalFile) {
 				filesToDelete.add(candidate);
 			}
-			return candidate;
+			return new BufferedInputStream(new FileInputStream(candidate));
 		}
 
 		candidate = new File(repoFolder, prefix + JAR);
@@ -100,21 +110,16 @@ public class XZCompressor {
 			if (!preserveOriginalFile) {
 				filesToDelete.add(candidate);
 			}
-			return uncompressJar(candidate, prefix + XML);
+			return openJarEntry(candidate, prefix + XML);
 		}
 		return null;
 	}
 
 	public void compressRepo() throws IOException {
-		File metadata = getMetadataFile(CONTENT);
-		if (metadata != null)
-			compressFile(metadata, new File(repoFolder, CONTENT_XML_XZ));
+		boolean metadata = compress(CONTENT, new File(repoFolder, CONTENT_XML_XZ));
+		boolean artifacts = compress(ARTIFACTS2, new File(repoFolder, ARTIFACTS_XML_XZ));
 
-		File artifacts = getMetadataFile(ARTIFACTS2);
-		if (artifacts != null)
-			compressFile(artifacts, new File(repoFolder, ARTIFACTS_XML_XZ));
-
-		createP2Index(metadata != null, artifacts != null);
+		createP2Index(metadata, artifacts);
 		deleteFiles();
 	}
 
@@ -124,7 +129,18 @@ public class XZCompressor {
 		}
 	}
 
-	private void compressFile(File input, File output) throws IOException {
+	private boolean compress(String prefix, File output) throws IOException {
+		try (InputStream input = openMetadataFile(prefix)) {
+			if (input == null)
+				return false;
+			try (OutputStream out = createOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+				input.transferTo(out);
+			}
+			return true;
+		}
+	}
+
+	private OutputStream createOutputStream(OutputStream output) throws IOException {
 		LZMA2Options options = new LZMA2Options();
 		try {
 			options.setDictSize(LZMA2Options.DICT_SIZE_DEFAULT);
@@ -137,15 +153,9 @@ public class XZCompressor {
 		} catch (UnsupportedOptionsException e) {
 			// Can't happen
 		}
-		try (XZOutputStream out = new XZOutputStream(new FileOutputStream(output), options);
-				FileInputStream is = new FileInputStream(input)) {
-
-			byte[] buf = new byte[8192];
-			int size;
-			while ((size = is.read(buf)) != -1)
-				out.write(buf, 0, size);
-		}
-
+		if (threads > 1)
+			return new ParallelXZOutputStream(output, options, threads);
+		return new XZOutputStream(output, options);
 	}
 
 	private void createP2Index(boolean metadata, boolean artifacts) throws IOException {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2018 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -146,4 +146,11 @@ public class MirrorTask extends AbstractRepositoryTask {
 	public void setMirrorProperties(boolean value) {
 		((MirrorApplication) application).setMirrorProperties(value);
 	}
+
+	/*
+	 * Set the number of artifacts mirrored concurrently.
+	 */
+	public void setParallelism(int value) {
+		((MirrorApplication) application).setParallelism(value);
+	}
 }
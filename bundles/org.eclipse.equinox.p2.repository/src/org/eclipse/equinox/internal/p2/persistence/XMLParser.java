@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2022 IBM Corporation and others.
+ *  Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -30,6 +30,35 @@ import org.xml.sax.helpers.DefaultHandler;
 
 public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 
+	/**
+	 * System property enabling the fast parsing mode of new parsers, see
+	 * {@link #setFastParsing(boolean)}.
+	 */
+	public static final String PROP_FAST_PARSING = "p2.parser.fast"; //$NON-NLS-1$
+
+	// the maximum number of entries in each of the caches of a parser
+	private static final int CACHE_LIMIT = 4096;
+
+	// SAX parsers released by the fast parsing mode for reuse on the same thread
+	private static final ThreadLocal<Map<SAXParserFactory, SAXParser>> pooledParsers = ThreadLocal.withInitial(HashMap::new);
+
+	/**
+	 * A map holding a bounded number of entries, dropping the oldest entry when
+	 * full. Values that repeat in a document are seen again while still cached.
+	 */
+	protected static class BoundedCache<V> extends LinkedHashMap<String, V> {
+		private static final long serialVersionUID = 1L; // not serialized
+
+		public BoundedCache() {
+			super(256);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > CACHE_LIMIT;
+		}
+	}
+
 	// Get the root object that is being parsed.
 	protected abstract Object getRootObject();
 
@@ -51,6 +80,12 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 
 	protected SAXParserFactory parserFactory;
 
+	private boolean fastParsing = Boolean.getBoolean(PROP_FAST_PARSING);
+	private SAXParser parser; // the parser in use, when it is pooled
+	private final Map<String, String> strings = new BoundedCache<>();
+	private final Map<String, Version> versions = new BoundedCache<>();
+	private final Map<String, VersionRange> versionRanges = new BoundedCache<>();
+
 	public XMLParser(String pluginId) {
 		this(org.eclipse.equinox.internal.p2.repository.Activator.getParserFactory(), pluginId);
 	}
@@ -71,12 +106,36 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 		return (status == null || !status.matches(IStatus.ERROR | IStatus.CANCEL));
 	}
 
+	/**
+	 * Sets whether this parser favors throughput. In the fast parsing mode the
+	 * SAX parser is taken from a pool kept per thread and given back by
+	 * {@link #releaseParser()}, attribute values are interned through a bounded
+	 * table before falling back to {@link String#intern()}, and parsed versions
+	 * and version ranges are cached. The mode is off unless the system property
+	 * {@value #PROP_FAST_PARSING} is <code>true</code>.
+	 */
+	public void setFastParsing(boolean fastParsing) {
+		this.fastParsing = fastParsing;
+	}
+
+	public boolean isFastParsing() {
+		return fastParsing;
+	}
 
 	protected SAXParser getParser() throws ParserConfigurationException, SAXException {
 		SAXParserFactory factory = parserFactory;
 		if (factory == null) {
 			throw new SAXException(Messages.XMLParser_No_SAX_Parser);
 		}
+		if (fastParsing) {
+			// taken out of the pool so that a nested parse on this thread gets its own
+			SAXParser pooled = pooledParsers.get().remove(factory);
+			if (pooled != null) {
+				parser = pooled;
+				xmlReader = pooled.getXMLReader();
+				return pooled;
+			}
+		}
 		factory.setNamespaceAware(true);
 		factory.setValidating(false);
 		try {
@@ -89,9 +148,43 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 			throw new SAXException(Messages.XMLParser_No_SAX_Parser);
 		}
 		xmlReader = theParser.getXMLReader();
+		if (fastParsing) {
+			parser = theParser;
+		}
 		return theParser;
 	}
 
+	/**
+	 * Gives the parser returned by {@link #getParser()} back to the pool of the
+	 * current thread when it is pooled. Called once the document was parsed.
+	 */
+	protected void releaseParser() {
+		if (parser != null) {
+			// do not keep the handlers, and the objects they built, reachable from the pool
+			xmlReader.setContentHandler(new DefaultHandler());
+			parser.reset();
+			pooledParsers.get().putIfAbsent(parserFactory, parser);
+			parser = null;
+		}
+	}
+
+	/**
+	 * Returns the canonical representation of the given string like
+	 * {@link String#intern()} does, looking recently seen values up in a bounded
+	 * table first in the fast parsing mode.
+	 */
+	protected String intern(String value) {
+		if (!fastParsing) {
+			return value.intern();
+		}
+		String result = strings.get(value);
+		if (result == null) {
+			result = value.intern();
+			strings.put(result, result);
+		}
+		return result;
+	}
+
 	public static String makeSimpleName(String localName, String qualifiedName) {
 		if (localName != null && localName.length() > 0) {
 			return localName;
@@ -125,7 +218,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 		protected ContentHandler parentHandler = null;
 		protected String elementHandled = null;
 
-		protected StringBuffer characters = null; // character data inside an element
+		protected StringBuilder characters = null; // character data inside an element
 
 		public AbstractHandler() {
 			// Empty constructor for a root handler
@@ -193,7 +286,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 		@Override
 		public void characters(char[] chars, int start, int length) {
 			if (this.characters == null) {
-				this.characters = new StringBuffer();
+				this.characters = new StringBuilder();
 			}
 			this.characters.append(chars, start, length);
 		}
@@ -233,7 +326,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 			}
 		}
 
-		private boolean allWhiteSpace(StringBuffer sb) {
+		private boolean allWhiteSpace(StringBuilder sb) {
 			int length = sb.length();
 			for (int i = 0; i < length; i += 1) {
 				if (!Character.isWhitespace(sb.charAt(i))) {
@@ -319,7 +412,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 			String[] result = new String[required.length + optional.length];
 			for (int i = 0; i < attributes.getLength(); i += 1) {
 				String name = attributes.getLocalName(i);
-				String value = attributes.getValue(i).trim().intern();
+				String value = intern(attributes.getValue(i).trim());
 				int j;
 				if ((j = indexOf(required, name)) >= 0) {
 					result[j] = value;
@@ -472,7 +565,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 
 		@Override
 		protected void processCharacters(String data) {
-			this.text = data == null ? null : data.intern();
+			this.text = data == null ? null : intern(data);
 		}
 
 	}
@@ -601,12 +694,12 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 	}
 
 	private static String toString(Attributes attributes) {
-		StringBuffer result = new StringBuffer();
+		StringBuilder result = new StringBuilder();
 		toString(result, attributes);
 		return result.toString();
 	}
 
-	private static void toString(StringBuffer sb, Attributes attributes) {
+	private static void toString(StringBuilder sb, Attributes attributes) {
 		for (int i = 0; i < attributes.getLength(); i += 1) {
 			String name = attributes.getLocalName(i);
 			String value = attributes.getValue(i).trim();
@@ -680,6 +773,14 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 	 */
 	public Version checkVersion(String element, String attribute, String value) {
 		try {
+			if (fastParsing && value != null) {
+				Version version = versions.get(value);
+				if (version == null) {
+					version = Version.parseVersion(value);
+					versions.put(value, version);
+				}
+				return version;
+			}
 			return Version.parseVersion(value);
 		} catch (IllegalArgumentException iae) {
 			invalidAttributeValue(element, attribute, value);
@@ -691,6 +792,14 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 
 	public VersionRange checkVersionRange(String element, String attribute, String value) {
 		try {
+			if (value != null && fastParsing) {
+				VersionRange range = versionRanges.get(value);
+				if (range == null) {
+					range = VersionRange.create(value);
+					versionRanges.put(value, range);
+				}
+				return range;
+			}
 			if (value != null)
 				return VersionRange.create(value);
 		} catch (IllegalArgumentException iae) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -17,7 +17,10 @@ package org.eclipse.equinox.internal.p2.repository;
 
 import java.io.*;
 import java.net.*;
-import java.util.HashSet;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
@@ -37,6 +40,12 @@ import org.eclipse.osgi.util.NLS;
  * Using the bus listeners will allow the manager to listen for repository
  * events. When a repository is removed, it will remove the cache file if one
  * was created for the repository.
+ *
+ * A cache file is brought up to date with a single conditional download, using
+ * the last modified time and the entity tag of the cached copy. The manager
+ * remembers which index files exist at a location, so the variants found
+ * missing are not asked for again for a short while, or until the repository
+ * is removed.
  */
 public class CacheManager {
 	/**
@@ -81,8 +90,15 @@ public class CacheManager {
 	private static final String DOWNLOADING = "downloading"; //$NON-NLS-1$
 	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
 	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String ETAG_EXTENSION = ".etag"; //$NON-NLS-1$
+	// how long a remote file found missing is not asked for again
+	private static final long MISSING_FILE_TIMEOUT = 60 * 1000;
 
-	private final HashSet<String> knownPrefixes = new HashSet<>(5);
+	private final Set<String> knownPrefixes = ConcurrentHashMap.newKeySet(5);
+	// the extension of the index file found for a repository location and prefix
+	private final Map<String, String> knownExtensions = new ConcurrentHashMap<>();
+	// the remote files that were not found, with the time they were found missing
+	private final Map<URI, Long> missingFiles = new ConcurrentHashMap<>();
 
 	/**
 	 * Returns a hash of the repository location.
@@ -96,49 +112,26 @@ public class CacheManager {
 			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, NLS.bind(Messages.CacheManager_CannotLoadNonUrlLocation, remoteFile), null));
 		}
 
+		if (isMissing(remoteFile))
+			throw new FileNotFoundException(NLS.bind(Messages.CacheManager_Repository_not_found, remoteFile));
+
 		SubMonitor submonitor = SubMonitor.convert(monitor, 1000);
 		try {
 			File cacheFile = getCacheFile(remoteFile);
-
-			boolean stale = true;
-			long lastModified = cacheFile.lastModified();
-			long lastModifiedRemote = 0L;
-
-			// bug 269588 - server may return 0 when file exists, so extra flag is needed
-			try {
-				lastModifiedRemote = transport.getLastModified(remoteFile, submonitor.newChild(1));
-				if (lastModifiedRemote <= 0)
-					LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Server returned lastModified <= 0 for " + remoteFile)); //$NON-NLS-1$
-			} catch (AuthenticationFailedException e) {
+			IStatus status = refreshCache(cacheFile, remoteFile, null, submonitor);
+			if (status.isOK())
+				return cacheFile;
+			if (isNotFound(status)) {
+				setMissing(remoteFile);
+				throw new FileNotFoundException(NLS.bind(Messages.CacheManager_Repository_not_found, remoteFile));
+			}
+			if (status.getCode() == ProvisionException.REPOSITORY_FAILED_AUTHENTICATION)
 				// it is not meaningful to continue - the credentials are for the server
 				// do not pass the exception - it gives no additional meaningful user information
 				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, remoteFile), null));
-			} catch (FileNotFoundException e) {
-				throw new FileNotFoundException(NLS.bind(Messages.CacheManager_Repository_not_found, remoteFile));
-			} catch (CoreException e) {
-				IStatus status = e.getStatus();
-				if (status == null)
-					throw new ProvisionException(
-							new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND,
-									NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, remoteFile), e));
-				else if (status.getException() instanceof FileNotFoundException)
-					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID,
-							ProvisionException.REPOSITORY_NOT_FOUND, status.getMessage(), status.getException()));
-				else if (status.getException() != null) {
-					Throwable ex = status.getException();
-					if (ex.getClass() == java.net.SocketTimeoutException.class)
-						throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, remoteFile), ex));
-				}
-				throw new ProvisionException(status);
-			}
-
-			stale = lastModifiedRemote != lastModified;
-			if (!stale)
-				return cacheFile;
-
-			// The cache is stale or missing, so we need to update it from the remote location
-			updateCache(cacheFile, remoteFile, lastModifiedRemote, submonitor);
-			return cacheFile;
+			if (isTimeout(status))
+				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, remoteFile), status.getException()));
+			throw new ProvisionException(status);
 		} finally {
 			submonitor.done();
 		}
@@ -167,125 +160,105 @@ public class CacheManager {
 		SubMonitor submonitor = SubMonitor.convert(monitor, 1000);
 		try {
 			knownPrefixes.add(prefix);
-			File cacheFile = getCache(repositoryLocation, prefix);
+			File[] cacheFiles = getCacheFiles(repositoryLocation, prefix);
 			URI jarLocation = URIUtil.append(repositoryLocation, prefix + JAR_EXTENSION);
 			URI xmlLocation = URIUtil.append(repositoryLocation, prefix + XML_EXTENSION);
-			int hashCode = computeHash(repositoryLocation);
-
-			// Knowing if cache is stale is complicated by the fact that a jar could have been
-			// produced after an xml index (and vice versa), and by the need to capture any
-			// errors, as these needs to be reported to the user as something meaningful - instead of
-			// just a general "can't read repository".
-			// (Previous impl of stale checking ignored errors, and caused multiple round-trips)
-			boolean stale = true;
-			long lastModified = 0L;
-			String name = null;
-			String useExtension = JAR_EXTENSION;
-			URI remoteFile = jarLocation;
-
-			if (cacheFile != null) {
-				lastModified = cacheFile.lastModified();
-				name = cacheFile.getName();
-			}
-			// get last modified on jar
-			long lastModifiedRemote = 0L;
-			// bug 269588 - server may return 0 when file exists, so extra flag is needed
-			boolean useJar = true;
-			try {
-				lastModifiedRemote = getLastModified(jarLocation, submonitor.newChild(1));
-				if (lastModifiedRemote <= 0)
-					LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Server returned lastModified <= 0 for " + jarLocation)); //$NON-NLS-1$
-			} catch (AuthenticationFailedException e) {
-				// it is not meaningful to continue - the credentials are for the server
-				// do not pass the exception - it gives no additional meaningful user information
-				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
-			} catch (CoreException e) {
-				useJar = false;
+			String key = getKey(repositoryLocation, prefix);
+
+			// The jar is preferred over the xml index. Each candidate is fetched with one
+			// conditional request, which answers whether it exists and whether the cache is current.
+			// Errors on the jar other than an authentication failure or a timeout make the xml
+			// the candidate, and it is the errors of the xml which are reported to the user.
+			// The jar is skipped while it is remembered as missing.
+			if (!isMissing(jarLocation)) {
+				IStatus status = refreshCache(cacheFiles[0], jarLocation, cacheFiles[1], submonitor.newChild(500));
+				if (status.isOK()) {
+					knownExtensions.put(key, JAR_EXTENSION);
+					return cacheFiles[0];
+				}
+				if (status.getCode() == ProvisionException.REPOSITORY_FAILED_AUTHENTICATION)
+					// it is not meaningful to continue - the credentials are for the server
+					// do not pass the exception - it gives no additional meaningful user information
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
 				// give up on a timeout - if we did not get a 404 on the jar, we will just prolong the pain
 				// by (almost certainly) also timing out on the xml.
-				if (e.getStatus() != null && e.getStatus().getException() != null) {
-					Throwable ex = e.getStatus().getException();
-					if (ex.getClass() == java.net.SocketTimeoutException.class)
-						throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, repositoryLocation), ex));
-				}
-			} catch (OperationCanceledException e) {
-				// must pass this on
-				throw e;
-			} catch (Exception e) {
-				// not ideal, just skip the jar on error, and try the xml instead - report errors for
-				// the xml.
-				useJar = false;
+				if (isTimeout(status))
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, repositoryLocation), status.getException()));
+				if (isNotFound(status))
+					setMissing(jarLocation);
 			}
 			if (submonitor.isCanceled())
 				throw new OperationCanceledException();
 
-			if (useJar) {
-				// There is a jar, and it should be used - cache is stale if it is xml based or
-				// if older (irrespective of jar or xml).
-				// Bug 269588 - also stale if remote reports 0
-				stale = lastModifiedRemote != lastModified || (name != null && name.endsWith(XML_EXTENSION) || lastModifiedRemote <= 0);
-			} else {
-				// Also need to check remote XML file, and handle cancel, and errors
-				// (Status is reported based on finding the XML file as giving up on certain errors
-				// when checking for the jar may not be correct).
-				try {
-					lastModifiedRemote = getLastModified(xmlLocation, submonitor.newChild(1));
-					// if lastModifiedRemote is 0 - something is wrong in the communication stack, as
-					// a FileNotFound exception should have been thrown.
-					// bug 269588 - server may return 0 when file exists - site is not correctly configured
-					if (lastModifiedRemote <= 0)
-						LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Server returned lastModified <= 0 for " + xmlLocation)); //$NON-NLS-1$
-
-				} catch (FileNotFoundException e) {
-					throw new FileNotFoundException(NLS.bind(Messages.CacheManager_Neither_0_nor_1_found, jarLocation, xmlLocation));
-				} catch (AuthenticationFailedException e) {
-					// do not pass the exception, it provides no additional meaningful user information
-					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
-				} catch (CoreException e) {
-					IStatus status = e.getStatus();
-					if (status == null)
-						throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, repositoryLocation), e));
-					else if (status.getException() instanceof FileNotFoundException)
-						throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, status.getMessage(), status.getException()));
-					throw new ProvisionException(status);
-
+			IStatus status = isMissing(xmlLocation) ? null : refreshCache(cacheFiles[1], xmlLocation, cacheFiles[0], submonitor.newChild(500));
+			if (status != null && status.isOK()) {
+				knownExtensions.put(key, XML_EXTENSION);
+				return cacheFiles[1];
+			}
+			if (status == null || isNotFound(status)) {
+				setMissing(xmlLocation);
+				if (XML_EXTENSION.equals(knownExtensions.remove(key))) {
+					// the xml index may have been replaced by a jar since it was found
+					missingFiles.remove(jarLocation);
+					return createCache(repositoryLocation, prefix, submonitor);
 				}
-				// There is an xml, and it should be used - cache is stale if it is jar based or
-				// if older (irrespective of jar or xml).
-				// bug 269588 - server may return 0 when file exists - assume it is stale
-				stale = lastModifiedRemote != lastModified || (name != null && name.endsWith(JAR_EXTENSION) || lastModifiedRemote <= 0);
-				useExtension = XML_EXTENSION;
-				remoteFile = xmlLocation;
+				throw new FileNotFoundException(NLS.bind(Messages.CacheManager_Neither_0_nor_1_found, jarLocation, xmlLocation));
 			}
-
-			if (!stale)
-				return cacheFile;
-
-			// The cache is stale or missing, so we need to update it from the remote location
-			cacheFile = new File(getCacheDirectory(), prefix + hashCode + useExtension);
-			updateCache(cacheFile, remoteFile, lastModifiedRemote, submonitor);
-			return cacheFile;
+			if (status.getCode() == ProvisionException.REPOSITORY_FAILED_AUTHENTICATION)
+				// do not pass the exception, it provides no additional meaningful user information
+				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
+			throw new ProvisionException(status);
 		} finally {
 			submonitor.done();
 		}
 	}
 
-	private long getLastModified(URI location, IProgressMonitor monitor) throws AuthenticationFailedException, FileNotFoundException, CoreException {
-		CoreException exception = null;
-		long lastModifiedRemote = -1L;
-		do {
-			try {
-				lastModifiedRemote = transport.getLastModified(location, monitor);
-			} catch (CoreException e) {
-				if (e.getStatus() == null) {
-					throw e;
-				}
-				exception = e;
-			}
-		} while (exception != null && exception.getStatus() != null && exception.getStatus().getCode() == IArtifactRepository.CODE_RETRY);
-		if (exception != null)
-			throw exception;
-		return lastModifiedRemote;
+	/*
+	 * Returns whether the given remote file was found missing recently.
+	 */
+	private boolean isMissing(URI remoteFile) {
+		Long missingSince = missingFiles.get(remoteFile);
+		if (missingSince == null)
+			return false;
+		if (System.currentTimeMillis() - missingSince.longValue() < getMissingFileTimeout())
+			return true;
+		missingFiles.remove(remoteFile, missingSince);
+		return false;
+	}
+
+	private void setMissing(URI remoteFile) {
+		missingFiles.put(remoteFile, Long.valueOf(System.currentTimeMillis()));
+	}
+
+	/**
+	 * Returns how long, in milliseconds, a remote file found missing is not
+	 * asked for again.
+	 */
+	protected long getMissingFileTimeout() {
+		return MISSING_FILE_TIMEOUT;
+	}
+
+	/*
+	 * Forgets the remote files found missing in the given repository, a repository
+	 * added again is probed for all its index files.
+	 */
+	private void forgetMissingFiles(URI repositoryLocation) {
+		String location = repositoryLocation.toString();
+		String folder = location.endsWith("/") ? location : location + '/'; //$NON-NLS-1$
+		missingFiles.keySet().removeIf(file -> file.toString().startsWith(folder));
+	}
+
+	private static String getKey(URI repositoryLocation, String prefix) {
+		return prefix + '@' + repositoryLocation;
+	}
+
+	private static boolean isNotFound(IStatus status) {
+		return status.getCode() == ProvisionException.ARTIFACT_NOT_FOUND || status.getCode() == ProvisionException.REPOSITORY_NOT_FOUND || status.getException() instanceof FileNotFoundException;
+	}
+
+	private static boolean isTimeout(IStatus status) {
+		Throwable ex = status.getException();
+		return ex != null && ex.getClass() == java.net.SocketTimeoutException.class;
 	}
 
 	/**
@@ -299,8 +272,11 @@ public class CacheManager {
 				safeDelete(cacheFile);
 				// delete a resumable download if it exists
 				safeDelete(new File(new File(cacheFile.getParentFile(), DOWNLOADING), cacheFile.getName()));
+				safeDelete(new File(cacheFile.getParentFile(), cacheFile.getName() + ETAG_EXTENSION));
 			}
+			knownExtensions.remove(getKey(repositoryLocation, prefix));
 		}
+		forgetMissingFiles(repositoryLocation);
 	}
 
 	/**
@@ -363,8 +339,11 @@ public class CacheManager {
 			busListener = o -> {
 				if (o instanceof RepositoryEvent) {
 					RepositoryEvent event = (RepositoryEvent) o;
-					if (RepositoryEvent.REMOVED == event.getKind() && IRepository.TYPE_METADATA == event.getRepositoryType()) {
-						deleteCache(event.getRepositoryLocation());
+					if (RepositoryEvent.REMOVED == event.getKind()) {
+						if (IRepository.TYPE_METADATA == event.getRepositoryType())
+							deleteCache(event.getRepositoryLocation());
+						else
+							forgetMissingFiles(event.getRepositoryLocation());
 					}
 				}
 			};
@@ -400,7 +379,26 @@ public class CacheManager {
 			bus.removeListener(busListener);
 	}
 
-	protected void updateCache(File cacheFile, URI remoteFile, long lastModifiedRemote, SubMonitor submonitor) throws FileNotFoundException, IOException, ProvisionException {
+	/**
+	 * Brings a cache file up to date with its remote file. The cached copy is
+	 * downloaded again only if the remote file changed since, which the transport
+	 * finds out in the same request when it supports conditional downloads.
+	 *
+	 * @param cacheFile the cache file, which may not exist yet
+	 * @param remoteFile the remote file
+	 * @param replacedFile a cache file replaced by the new one, or <code>null</code>
+	 * @param submonitor a progress monitor
+	 * @return an OK status when the cache file is current, or the status of the
+	 * failed download
+	 * @throws OperationCanceledException if the user canceled
+	 */
+	private IStatus refreshCache(File cacheFile, URI remoteFile, File replacedFile, SubMonitor submonitor) throws IOException, ProvisionException {
+		long lastModified = 0L;
+		String etag = null;
+		if (cacheFile.exists()) {
+			lastModified = cacheFile.lastModified();
+			etag = readETag(cacheFile);
+		}
 		cacheFile.getParentFile().mkdirs();
 		File downloadDir = new File(cacheFile.getParentFile(), DOWNLOADING);
 		if (!downloadDir.exists())
@@ -421,8 +419,14 @@ public class CacheManager {
 		IStatus result = null;
 		try {
 			submonitor.setWorkRemaining(1000);
-			result = transport.download(remoteFile, stream, submonitor.newChild(1000));
+			result = transport.downloadIfModified(remoteFile, stream, lastModified, etag, submonitor.newChild(1000));
 			while (result.getCode() == IArtifactRepository.CODE_RETRY) {
+				submonitor.setWorkRemaining(1000);
+				result = transport.downloadIfModified(remoteFile, stream, lastModified, etag, submonitor.newChild(1000));
+			}
+			// a server comparing dates only reports an older remote file as not modified, bug 324200
+			if (isNotModified(result) && ((DownloadStatus) result).getLastModified() > 0 && ((DownloadStatus) result).getLastModified() != lastModified) {
+				submonitor.setWorkRemaining(1000);
 				result = transport.download(remoteFile, stream, submonitor.newChild(1000));
 			}
 		} catch (OperationCanceledException e) {
@@ -431,25 +435,64 @@ public class CacheManager {
 			result = stream.getStatus();
 		} finally {
 			stream.close();
-			// If there was any problem fetching the file, delete the temp file
-			if (result == null || !result.isOK())
+			// If there was any problem fetching the file, or nothing was fetched, delete the temp file
+			if (result == null || !result.isOK() || isNotModified(result))
 				safeDelete(tempFile);
 		}
-		if (result.isOK()) {
-			if (cacheFile.exists())
-				safeDelete(cacheFile);
-			if (tempFile.renameTo(cacheFile)) {
-				if (lastModifiedRemote != -1 && lastModifiedRemote != 0) {
-					//local cache file should have the same lastModified as the server's file. bug 324200
-					cacheFile.setLastModified(lastModifiedRemote);
-				}
-				return;
-			}
-			result = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.CacheManage_ErrorRenamingCache, new Object[] {remoteFile.toString(), tempFile.getAbsolutePath(), cacheFile.getAbsolutePath()}));
+		if (result == null || result.getSeverity() == IStatus.CANCEL || submonitor.isCanceled())
+			throw new OperationCanceledException();
+		if (!result.isOK() || isNotModified(result))
+			return result;
+
+		long lastModifiedRemote = result instanceof DownloadStatus ? ((DownloadStatus) result).getLastModified() : 0L;
+		String etagRemote = result instanceof DownloadStatus ? ((DownloadStatus) result).getETag() : null;
+		if (lastModifiedRemote <= 0)
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Server returned lastModified <= 0 for " + remoteFile)); //$NON-NLS-1$
+		if (cacheFile.exists())
+			safeDelete(cacheFile);
+		if (!tempFile.renameTo(cacheFile))
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.CacheManage_ErrorRenamingCache, new Object[] {remoteFile.toString(), tempFile.getAbsolutePath(), cacheFile.getAbsolutePath()})));
+		if (lastModifiedRemote > 0) {
+			//local cache file should have the same lastModified as the server's file. bug 324200
+			cacheFile.setLastModified(lastModifiedRemote);
 		}
+		writeETag(cacheFile, etagRemote);
+		if (replacedFile != null) {
+			safeDelete(replacedFile);
+			writeETag(replacedFile, null);
+		}
+		return result;
+	}
 
-		if (result.getSeverity() == IStatus.CANCEL || submonitor.isCanceled())
-			throw new OperationCanceledException();
-		throw new ProvisionException(result);
+	private static boolean isNotModified(IStatus status) {
+		return status instanceof DownloadStatus && ((DownloadStatus) status).isNotModified();
+	}
+
+	/**
+	 * Returns the entity tag recorded for a cache file, or <code>null</code>.
+	 */
+	private static String readETag(File cacheFile) {
+		File etagFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ETAG_EXTENSION);
+		if (!etagFile.exists())
+			return null;
+		try {
+			return Files.readString(etagFile.toPath(), StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void writeETag(File cacheFile, String etag) {
+		File etagFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ETAG_EXTENSION);
+		if (etag == null) {
+			safeDelete(etagFile);
+			return;
+		}
+		try {
+			Files.writeString(etagFile.toPath(), etag, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			// the next refresh compares the last modified time only
+			safeDelete(etagFile);
+		}
 	}
 }
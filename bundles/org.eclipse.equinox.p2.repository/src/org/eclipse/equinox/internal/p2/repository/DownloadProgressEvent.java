@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012 Wind River and others.
+ * Copyright (c) 2012, 2024 Wind River and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -15,8 +15,9 @@ package org.eclipse.equinox.internal.p2.repository;
 
 import java.net.URI;
 import java.util.EventObject;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.CoalescableEvent;
 
-public class DownloadProgressEvent extends EventObject {
+public class DownloadProgressEvent extends EventObject implements CoalescableEvent {
 
 	private static final long serialVersionUID = -7880532297074721824L;
 	private ProgressStatistics stat;
@@ -49,4 +50,12 @@ public class DownloadProgressEvent extends EventObject {
 	public double getPercentage() {
 		return stat.getPercentage();
 	}
+
+	/**
+	 * Progress events of the same download supersede each other.
+	 */
+	@Override
+	public Object getCoalescingKey() {
+		return stat;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -26,6 +26,8 @@ public class DownloadStatus extends Status {
 	private long speed = UNKNOWN_RATE;
 	private long fileSize = UNKNOWN_SIZE;
 	private long lastModified = 0;
+	private String etag;
+	private boolean notModified;
 
 	/**
 	 * Constructs a new DownloadStatus with the given attributes.
@@ -79,6 +81,30 @@ public class DownloadStatus extends Status {
 		return lastModified;
 	}
 
+	/**
+	 * Sets the entity tag the server reported for the downloaded file.
+	 * @param etag The entity tag, or <code>null</code> if none was reported
+	 */
+	public void setETag(String etag) {
+		this.etag = etag;
+	}
+
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Sets whether a conditional download found the remote file unchanged, in
+	 * which case nothing was transferred.
+	 */
+	public void setNotModified(boolean notModified) {
+		this.notModified = notModified;
+	}
+
+	public boolean isNotModified() {
+		return notModified;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder(super.toString());
@@ -0,0 +1,468 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository;
+
+import java.io.*;
+import java.net.*;
+import java.net.http.*;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.Credentials.LoginCanceledException;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.core.UIServices.AuthenticationInfo;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * A transport using the HTTP client of the JRE for http and https locations.
+ * All requests of an agent go through one client, which keeps connections
+ * alive per host and multiplexes concurrent requests to a host over a single
+ * HTTP/2 connection when the server supports it. Requests are sent
+ * asynchronously; the calling thread waits for the response while checking its
+ * progress monitor for cancellation. Failed connections and responses asking
+ * to come back later are retried after an exponentially growing, randomly
+ * jittered delay. Other locations are handed to a fallback transport.
+ */
+public class HttpClientTransport extends Transport {
+
+	/**
+	 * System property making the transport service of an agent an
+	 * {@link HttpClientTransport}.
+	 */
+	public static final String PROP_ENABLED = "p2.transport.httpclient"; //$NON-NLS-1$
+
+	/**
+	 * System property setting how many times a request is attempted before a
+	 * connection failure or a temporarily unavailable server is reported, 3 by
+	 * default.
+	 */
+	public static final String PROP_ATTEMPTS = "p2.transport.httpclient.attempts"; //$NON-NLS-1$
+
+	private static final int ATTEMPTS = Math.max(1, Integer.getInteger(PROP_ATTEMPTS, 3));
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+	// how long to wait for the headers of a response, the body may take longer
+	private static final Duration RESPONSE_TIMEOUT = Duration.ofMinutes(2);
+	private static final long MAX_RETRY_DELAY = 10000;
+	private static final long POLL_INTERVAL = 100;
+	private static final int MAX_REDIRECTS = 20;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String GET = "GET"; //$NON-NLS-1$
+	private static final String HEAD = "HEAD"; //$NON-NLS-1$
+
+	private final IProvisioningAgent agent;
+	private final Transport fallback;
+	private final HttpClient client;
+
+	public HttpClientTransport() {
+		this(null, null);
+	}
+
+	/**
+	 * @param agent    the agent on whose event bus download progress is
+	 *                 published, or <code>null</code>
+	 * @param fallback the transport used for locations other than http and
+	 *                 https, or <code>null</code>
+	 */
+	public HttpClientTransport(IProvisioningAgent agent, Transport fallback) {
+		this.agent = agent;
+		this.fallback = fallback;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.client = HttpClient.newBuilder() //
+				.version(HttpClient.Version.HTTP_2) //
+				// redirects are followed here so that credentials are not sent to another host
+				.followRedirects(HttpClient.Redirect.NEVER) //
+				.connectTimeout(CONNECT_TIMEOUT) //
+				.proxy(ProxySelector.getDefault()) //
+				.executor(Executors.newCachedThreadPool(r -> {
+					Thread thread = new Thread(r, "p2 HTTP Client " + threadCount.incrementAndGet()); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				})) //
+				.build();
+	}
+
+	@Override
+	public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+		return downloadIfModified(toDownload, target, 0, null, monitor);
+	}
+
+	@Override
+	public IStatus downloadIfModified(URI toDownload, OutputStream target, long lastModified, String etag, IProgressMonitor monitor) {
+		URI location;
+		try {
+			location = getSecureLocation(toDownload);
+		} catch (CoreException e) {
+			return e.getStatus();
+		}
+		if (!isHttp(location)) {
+			if (fallback == null)
+				return statusOn(target, unsupported(location));
+			return fallback.downloadIfModified(location, target, lastModified, etag, monitor);
+		}
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		boolean promptUser = false;
+		AuthenticationInfo loginDetails = null;
+		for (int i = RepositoryPreferences.getLoginRetryCount(); i > 0; i--) {
+			try {
+				loginDetails = Credentials.forLocation(location, promptUser, loginDetails);
+				HttpResponse<InputStream> response = send(location, GET, loginDetails, lastModified, etag, monitor);
+				try (InputStream body = response.body()) {
+					int code = response.statusCode();
+					if (code == HttpURLConnection.HTTP_UNAUTHORIZED) {
+						promptUser = true;
+						continue;
+					}
+					DownloadStatus status;
+					if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+						status = new DownloadStatus(IStatus.OK, Activator.ID, Status.OK_STATUS.getMessage());
+						status.setNotModified(true);
+					} else if (code == HttpURLConnection.HTTP_OK) {
+						long size = response.headers().firstValueAsLong("Content-Length").orElse(DownloadStatus.UNKNOWN_SIZE); //$NON-NLS-1$
+						long rate = copy(location, body, size, target, monitor);
+						status = new DownloadStatus(IStatus.OK, Activator.ID, Status.OK_STATUS.getMessage());
+						status.setTransferRate(rate);
+						status.setFileSize(size);
+					} else {
+						return statusOn(target, forCode(code, location));
+					}
+					status.setLastModified(getLastModified(response));
+					status.setETag(response.headers().firstValue("ETag").orElse(null)); //$NON-NLS-1$
+					if (status.isNotModified()) {
+						// the validators of the copy stay valid when the server does not repeat them
+						if (status.getLastModified() == 0)
+							status.setLastModified(lastModified);
+						if (status.getETag() == null)
+							status.setETag(etag);
+					}
+					return statusOn(target, status);
+				}
+			} catch (OperationCanceledException e) {
+				statusOn(target, new DownloadStatus(IStatus.CANCEL, Activator.ID, 1, "", null)); //$NON-NLS-1$
+				throw e;
+			} catch (LoginCanceledException e) {
+				return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, //
+						NLS.bind(Messages.UnableToRead_0_UserCanceled, location), null));
+			} catch (CoreException e) {
+				return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, e.getStatus().getMessage(), e));
+			} catch (IOException e) {
+				return statusOn(target, forException(e, location));
+			}
+		}
+		// reached maximum number of retries without success
+		return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, //
+				NLS.bind(Messages.UnableToRead_0_TooManyAttempts, location), null));
+	}
+
+	@Override
+	public InputStream stream(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException, CoreException, AuthenticationFailedException {
+		URI location = getSecureLocation(toDownload);
+		if (!isHttp(location)) {
+			if (fallback == null)
+				throw new CoreException(unsupported(location));
+			return fallback.stream(location, monitor);
+		}
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		boolean promptUser = false;
+		AuthenticationInfo loginDetails = null;
+		for (int i = RepositoryPreferences.getLoginRetryCount(); i > 0; i--) {
+			try {
+				loginDetails = Credentials.forLocation(location, promptUser, loginDetails);
+				HttpResponse<InputStream> response = send(location, GET, loginDetails, 0, null, monitor);
+				int code = response.statusCode();
+				if (code == HttpURLConnection.HTTP_OK)
+					return response.body();
+				response.body().close();
+				if (code == HttpURLConnection.HTTP_UNAUTHORIZED) {
+					promptUser = true;
+					continue;
+				}
+				if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE)
+					throw new FileNotFoundException(location.toString());
+				throw new CoreException(forCode(code, location));
+			} catch (LoginCanceledException e) {
+				// same behavior when user cancels as when failing n attempts
+				throw new AuthenticationFailedException();
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				throw new CoreException(forException(e, location));
+			}
+		}
+		throw new AuthenticationFailedException();
+	}
+
+	@Override
+	public long getLastModified(URI toDownload, IProgressMonitor monitor) throws CoreException, FileNotFoundException, AuthenticationFailedException {
+		URI location = getSecureLocation(toDownload);
+		if (!isHttp(location)) {
+			if (fallback == null)
+				throw new CoreException(unsupported(location));
+			return fallback.getLastModified(location, monitor);
+		}
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		boolean promptUser = false;
+		AuthenticationInfo loginDetails = null;
+		for (int i = RepositoryPreferences.getLoginRetryCount(); i > 0; i--) {
+			try {
+				loginDetails = Credentials.forLocation(location, promptUser, loginDetails);
+				HttpResponse<InputStream> response = send(location, HEAD, loginDetails, 0, null, monitor);
+				response.body().close();
+				int code = response.statusCode();
+				if (code == HttpURLConnection.HTTP_OK)
+					return getLastModified(response);
+				if (code == HttpURLConnection.HTTP_UNAUTHORIZED) {
+					promptUser = true;
+					continue;
+				}
+				if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE)
+					throw new FileNotFoundException(location.toString());
+				throw new CoreException(forCode(code, location));
+			} catch (LoginCanceledException e) {
+				// same behavior as if user failed n attempts
+				throw new AuthenticationFailedException();
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				throw new CoreException(forException(e, location));
+			}
+		}
+		throw new AuthenticationFailedException();
+	}
+
+	private static boolean isHttp(URI location) {
+		String scheme = location.getScheme();
+		return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Sends a request following redirects, with retries of connection failures
+	 * and temporarily unavailable servers. The body of the returned response must
+	 * be closed.
+	 */
+	private HttpResponse<InputStream> send(URI location, String method, AuthenticationInfo loginDetails, long ifModifiedSince, String ifNoneMatch, IProgressMonitor monitor) throws IOException {
+		URI uri = location;
+		for (int redirects = 0;; redirects++) {
+			HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(RESPONSE_TIMEOUT).method(method, HttpRequest.BodyPublishers.noBody());
+			if (loginDetails != null && isSameOrigin(location, uri)) {
+				String credentials = loginDetails.getUserName() + ':' + loginDetails.getPassword();
+				builder.header("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			if (ifModifiedSince > 0)
+				builder.header("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(ifModifiedSince).atZone(ZoneOffset.UTC))); //$NON-NLS-1$
+			if (ifNoneMatch != null)
+				builder.header("If-None-Match", ifNoneMatch); //$NON-NLS-1$
+			HttpResponse<InputStream> response = sendWithRetries(builder.build(), monitor);
+			int code = response.statusCode();
+			if (!isRedirect(code) || redirects == MAX_REDIRECTS)
+				return response;
+			String target = response.headers().firstValue("Location").orElse(null); //$NON-NLS-1$
+			if (target == null)
+				return response;
+			URI next;
+			try {
+				next = uri.resolve(new URI(target));
+			} catch (URISyntaxException e) {
+				return response;
+			}
+			// like the JRE, never follow a redirect from https to http
+			if ("https".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(next.getScheme())) //$NON-NLS-1$ //$NON-NLS-2$
+				return response;
+			response.body().close();
+			uri = next;
+		}
+	}
+
+	private HttpResponse<InputStream> sendWithRetries(HttpRequest request, IProgressMonitor monitor) throws IOException {
+		for (int attempt = 1;; attempt++) {
+			try {
+				HttpResponse<InputStream> response = await(client.sendAsync(request, BodyHandlers.ofInputStream()), monitor);
+				int code = response.statusCode();
+				if (attempt < ATTEMPTS && (code == 429 || code == HttpURLConnection.HTTP_BAD_GATEWAY || code == HttpURLConnection.HTTP_UNAVAILABLE || code == HttpURLConnection.HTTP_GATEWAY_TIMEOUT)) {
+					response.body().close();
+					pause(attempt, getRetryAfter(response), monitor);
+					continue;
+				}
+				return response;
+			} catch (IOException e) {
+				if (attempt >= ATTEMPTS || hasCause(e, UnknownHostException.class))
+					throw e;
+				pause(attempt, 0, monitor);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the response of a request, cancelling the request when the
+	 * monitor is canceled.
+	 */
+	private static HttpResponse<InputStream> await(CompletableFuture<HttpResponse<InputStream>> future, IProgressMonitor monitor) throws IOException {
+		while (true) {
+			if (monitor.isCanceled()) {
+				future.cancel(true);
+				// a response arriving regardless must not leak its connection
+				future.thenAccept(response -> closeQuietly(response.body()));
+				throw new OperationCanceledException();
+			}
+			try {
+				return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// check the monitor again
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.cancel(true);
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Waits before the given attempt is repeated. The delay doubles with every
+	 * attempt, is spread randomly over its upper half so that clients failing
+	 * together do not retry together, and honors the delay asked by the server.
+	 */
+	private static void pause(int attempt, long retryAfter, IProgressMonitor monitor) {
+		long delay = Math.min(MAX_RETRY_DELAY, RepositoryPreferences.getConnectionMsRetryDelay() << Math.min(attempt - 1, 16));
+		delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+		delay = Math.max(delay, Math.min(retryAfter, MAX_RETRY_DELAY));
+		long end = System.currentTimeMillis() + delay;
+		for (long remaining = delay; remaining > 0; remaining = end - System.currentTimeMillis()) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			try {
+				Thread.sleep(Math.min(remaining, POLL_INTERVAL));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+		}
+	}
+
+	/**
+	 * Copies a response body to the target and returns the average transfer
+	 * rate in bytes per second.
+	 */
+	private long copy(URI location, InputStream body, long total, OutputStream target, IProgressMonitor monitor) throws IOException {
+		String path = location.getPath();
+		String fileName = path == null ? "" : path.substring(path.lastIndexOf('/') + 1); //$NON-NLS-1$
+		ProgressStatistics statistics = new ProgressStatistics(agent, location, fileName, total);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = body.read(buffer)) != -1) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			target.write(buffer, 0, read);
+			statistics.increase(read);
+			if (statistics.shouldReport())
+				monitor.subTask(statistics.report());
+		}
+		return statistics.getAverageSpeed();
+	}
+
+	private static boolean isRedirect(int code) {
+		return code == HttpURLConnection.HTTP_MOVED_PERM || code == HttpURLConnection.HTTP_MOVED_TEMP || code == HttpURLConnection.HTTP_SEE_OTHER || code == 307 || code == 308;
+	}
+
+	private static boolean isSameOrigin(URI first, URI second) {
+		return first.getScheme().equalsIgnoreCase(second.getScheme()) && first.getPort() == second.getPort() && first.getHost() != null && first.getHost().equalsIgnoreCase(second.getHost());
+	}
+
+	private static long getLastModified(HttpResponse<?> response) {
+		String value = response.headers().firstValue("Last-Modified").orElse(null); //$NON-NLS-1$
+		if (value == null)
+			return 0;
+		try {
+			return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return 0;
+		}
+	}
+
+	// the delay in milliseconds asked by the server, only the form in seconds is supported
+	private static long getRetryAfter(HttpResponse<?> response) {
+		try {
+			return response.headers().firstValueAsLong("Retry-After").orElse(0) * 1000; //$NON-NLS-1$
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static boolean hasCause(Throwable t, Class<? extends Throwable> type) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (type.isInstance(cause))
+				return true;
+		}
+		return false;
+	}
+
+	private static void closeQuietly(InputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private static DownloadStatus statusOn(OutputStream target, DownloadStatus status) {
+		if (target instanceof IStateful)
+			((IStateful) target).setStatus(status);
+		return status;
+	}
+
+	private static DownloadStatus unsupported(URI location) {
+		return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_INVALID_LOCATION, //
+				NLS.bind(Messages.TransportErrorTranslator_MalformedRemoteFileReference, location), null);
+	}
+
+	private static DownloadStatus forCode(int code, URI location) {
+		switch (code) {
+			case HttpURLConnection.HTTP_UNAUTHORIZED :
+				return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.TransportErrorTranslator_401, location), null);
+			case HttpURLConnection.HTTP_FORBIDDEN :
+				return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.TransportErrorTranslator_403, location), null);
+			case HttpURLConnection.HTTP_NOT_FOUND :
+			case HttpURLConnection.HTTP_GONE :
+				return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.ARTIFACT_NOT_FOUND, NLS.bind(Messages.TransportErrorTranslator_404, location), null);
+			default :
+				return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.TransportErrorTranslator_UnknownErrorCode, Integer.toString(code), location), null);
+		}
+	}
+
+	private static DownloadStatus forException(IOException e, URI location) {
+		if (hasCause(e, UnknownHostException.class))
+			return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_INVALID_LOCATION, NLS.bind(Messages.TransportErrorTranslator_UnknownHost, location), e);
+		if (e instanceof ConnectException || e instanceof HttpConnectTimeoutException)
+			return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.TransportErrorTranslator_UnableToConnectToRepository_0, location), e);
+		return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.io_failedRead, location), e);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2022 IBM Corporation and others.
+ *  Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -151,6 +151,65 @@ public abstract class Transport {
 		return download(source, target, monitor);
 	}
 
+	/**
+	 * Perform a download like {@link #download(URI, OutputStream, IProgressMonitor)}
+	 * unless the remote file is unchanged since a copy of it was downloaded. The
+	 * copy is described by its last modified time and its entity tag, as reported
+	 * in the {@link DownloadStatus} of its download. When the remote file is
+	 * unchanged nothing is written to the target and the returned status is
+	 * {@link DownloadStatus#isNotModified() not modified}.
+	 * <p>
+	 * The default implementation compares the given last modified time with
+	 * {@link #getLastModified(URI, IProgressMonitor)} before downloading, which
+	 * takes one more request than transports sending a conditional request.
+	 * </p>
+	 *
+	 * @return IStatus, that is a {@link DownloadStatus} on success.
+	 * @param toDownload   URI of file to download
+	 * @param target       OutputStream where result is written
+	 * @param lastModified the last modified time of the copy, or 0 if unknown
+	 * @param etag         the entity tag of the copy, or <code>null</code> if
+	 *                     unknown
+	 * @param monitor      where progress should be reported
+	 * @throws OperationCanceledException if the operation was canceled.
+	 */
+	public IStatus downloadIfModified(URI toDownload, OutputStream target, long lastModified, String etag,
+			IProgressMonitor monitor) {
+		long lastModifiedRemote;
+		try {
+			lastModifiedRemote = getLastModified(toDownload, monitor);
+		} catch (FileNotFoundException e) {
+			return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.ARTIFACT_NOT_FOUND,
+					NLS.bind(Messages.artifact_not_found, toDownload), e));
+		} catch (AuthenticationFailedException e) {
+			return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID,
+					ProvisionException.REPOSITORY_FAILED_AUTHENTICATION,
+					NLS.bind(Messages.UnableToRead_0_TooManyAttempts, toDownload), e));
+		} catch (CoreException e) {
+			IStatus status = e.getStatus();
+			if (target instanceof IStateful)
+				((IStateful) target).setStatus(status);
+			return status;
+		}
+		// bug 269588 - a server may return 0 for an existing file, the copy is then always stale
+		if (lastModified > 0 && lastModifiedRemote == lastModified) {
+			DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID, Status.OK_STATUS.getMessage());
+			status.setLastModified(lastModified);
+			status.setNotModified(true);
+			return statusOn(target, status);
+		}
+		IStatus result = download(toDownload, target, monitor);
+		if (result instanceof DownloadStatus && result.isOK() && ((DownloadStatus) result).getLastModified() <= 0)
+			((DownloadStatus) result).setLastModified(lastModifiedRemote);
+		return result;
+	}
+
+	private static IStatus statusOn(OutputStream target, DownloadStatus status) {
+		if (target instanceof IStateful)
+			((IStateful) target).setStatus(status);
+		return status;
+	}
+
 	/**
 	 * Perform a stream download, writing into an InputStream that is returned.
 	 * Performs authentication if needed.
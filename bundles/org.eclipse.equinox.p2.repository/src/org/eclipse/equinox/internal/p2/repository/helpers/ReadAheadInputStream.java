@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream reading its source on a separate thread, a bounded number of
+ * buffers ahead of the consumer. It lets an expensive source, like a
+ * decompressing stream, run concurrently with the code parsing its content.
+ */
+public class ReadAheadInputStream extends InputStream {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int BUFFER_COUNT = 16;
+	private static final byte[] END = new byte[0];
+
+	private final InputStream source;
+	private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(BUFFER_COUNT);
+	private final Thread reader;
+	private volatile Throwable failure;
+	private volatile boolean closed;
+	private byte[] current;
+	private int position;
+
+	/**
+	 * Creates a stream reading ahead from the given source on a new daemon
+	 * thread with the given name. Closing this stream closes the source.
+	 */
+	public ReadAheadInputStream(InputStream source, String threadName) {
+		this.source = source;
+		this.reader = new Thread(this::readAhead, threadName);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readAhead() {
+		try {
+			while (!closed) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read = source.readNBytes(buffer, 0, BUFFER_SIZE);
+				if (read > 0)
+					buffers.put(read == BUFFER_SIZE ? buffer : Arrays.copyOf(buffer, read));
+				if (read < BUFFER_SIZE)
+					break;
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} catch (Throwable e) {
+			// any failure, also of a decoder, has to reach the consumer
+			failure = e;
+		} finally {
+			// the consumer waits for the end unless it closed this stream
+			try {
+				if (!closed)
+					buffers.put(END);
+			} catch (InterruptedException e) {
+				// closed
+			}
+		}
+	}
+
+	private boolean fill() throws IOException {
+		if (current == END)
+			return false;
+		if (current != null && position < current.length)
+			return true;
+		try {
+			current = buffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		position = 0;
+		if (current == END) {
+			if (failure instanceof IOException)
+				throw (IOException) failure;
+			if (failure != null)
+				throw new IOException(failure);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill())
+			return -1;
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int count = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return current == null || current == END ? 0 : current.length - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		reader.interrupt();
+		buffers.clear();
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		source.close();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2011 IBM Corporation and others.
+ *  Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -33,7 +33,7 @@ import org.eclipse.equinox.p2.repository.IRepository;
 public abstract class AbstractRepository<T> extends PlatformObject implements IRepository<T> {
 	private final IProvisioningAgent agent;
 	private String description;
-	private transient URI location;
+	private transient volatile URI location;
 	private String name;
 	private Map<String, String> properties = new OrderedProperties();
 	private String provider;
@@ -88,7 +88,7 @@ public abstract class AbstractRepository<T> extends PlatformObject implements IR
 	 * @return the URI of the repository.
 	 */
 	@Override
-	public synchronized URI getLocation() {
+	public URI getLocation() {
 		return location;
 	}
 
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.eclipse.equinox.internal.p2.repository.HttpClientTransport;
+
+/**
+ * A plain http server on the loopback interface, answering the requests made
+ * by a test with the given handler.
+ */
+public class TestHttpServer implements AutoCloseable {
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Starts a server handling all the requests with the given handler.
+	 */
+	public TestHttpServer(HttpHandler handler) throws IOException {
+		this("/", handler);
+	}
+
+	/**
+	 * Starts a server handling the requests below the given path with the given
+	 * handler.
+	 */
+	public TestHttpServer(String path, HttpHandler handler) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext(path, handler);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Returns the location of the root of the server.
+	 */
+	public URI getBase() {
+		return URI.create("http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort() + '/');
+	}
+
+	/**
+	 * Returns a transport using the HTTP client of the JRE which accepts the plain
+	 * http of the server.
+	 */
+	public static HttpClientTransport createTransport() {
+		return new HttpClientTransport() {
+			@Override
+			public URI getSecureLocation(URI location) {
+				// the test server only speaks plain http
+				return location;
+			}
+		};
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
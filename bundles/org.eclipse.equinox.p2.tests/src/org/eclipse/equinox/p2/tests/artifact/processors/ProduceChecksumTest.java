@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2022 Christoph Läubrich and others
+ * Copyright (c) 2022, 2024 Christoph Läubrich and others
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -11,6 +11,7 @@
 package org.eclipse.equinox.p2.tests.artifact.processors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -19,22 +20,30 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumUtilities;
 import org.junit.Test;
 
 public class ProduceChecksumTest {
 
-	@Test
-	public void testChecksums() throws IOException {
+	private File createTestArtifact() throws IOException {
 		File tempFile = File.createTempFile("testArtifact", ".tmp");
 		tempFile.deleteOnExit();
 		try (FileOutputStream fout = new FileOutputStream(tempFile);
 				InputStream resource = getClass().getResourceAsStream("testArtifact")) {
 			resource.transferTo(fout);
 		}
+		return tempFile;
+	}
+
+	@Test
+	public void testChecksums() throws IOException {
+		File tempFile = createTestArtifact();
 		HashMap<String, String> hashMap = new HashMap<>();
 		IStatus status = ChecksumUtilities.calculateChecksums(new File(tempFile.toURI()), hashMap,
 				Collections.emptyList());
@@ -45,4 +54,36 @@ public class ProduceChecksumTest {
 		assertNotNull("SHA256 was not computed!", sha256sum);
 		assertEquals("SHA256 mismatch", "39d083c8c75eac51b2c4566cca299b41cc93d5b0313906f5979fbebf1104ff49", sha256sum);
 	}
+
+	@Test
+	public void testChecksumsOfSeveralFiles() throws IOException {
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			files.add(createTestArtifact());
+		File emptyFile = File.createTempFile("emptyArtifact", ".tmp");
+		emptyFile.deleteOnExit();
+		files.add(emptyFile);
+
+		Map<File, Map<String, String>> checksums = new HashMap<>();
+		IStatus status = ChecksumUtilities.calculateChecksums(files, checksums, Collections.emptyList(), 4);
+		assertTrue(status.toString(), status.isOK());
+		assertEquals(files.size(), checksums.size());
+		for (int i = 0; i < 5; i++)
+			assertEquals("39d083c8c75eac51b2c4566cca299b41cc93d5b0313906f5979fbebf1104ff49",
+					checksums.get(files.get(i)).get("sha-256"));
+		assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+				checksums.get(emptyFile).get("sha-256"));
+	}
+
+	@Test
+	public void testChecksumsOfMissingFile() throws IOException {
+		File missingFile = new File(createTestArtifact().getParentFile(), "missingArtifact.tmp");
+		File existingFile = createTestArtifact();
+		Map<File, Map<String, String>> checksums = new HashMap<>();
+		IStatus status = ChecksumUtilities.calculateChecksums(List.of(missingFile, existingFile), checksums,
+				Collections.emptyList(), 2);
+		assertFalse(status.isOK());
+		assertTrue(checksums.get(missingFile).isEmpty());
+		assertNotNull(checksums.get(existingFile).get("sha-256"));
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
-* Copyright (c) 2009, 2017 EclipseSource and others.
+* Copyright (c) 2009, 2024 EclipseSource and others.
  *
  * This
 * program and the accompanying materials are made available under the terms of
@@ -509,4 +509,53 @@ public class BatchExecuteArtifactRepositoryTest extends AbstractProvisioningTest
 		}
 	}
 
+	/*
+	 * This tests that other threads cannot modify the repository while a batch runs
+	 */
+	public void testBatchIsAtomic() throws Exception {
+		repositoryFile = getTempFolder();
+		repositoryURI = repositoryFile.toURI();
+		final SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "My Repo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap<>());
+		Thread writer = new Thread(() -> repo.addDescriptor(createDescriptor("bar", "bar", Version.emptyVersion), new NullProgressMonitor()));
+		IStatus status = repo.executeBatch(monitor -> {
+			repo.addDescriptor(createDescriptor("foo", "foo", Version.emptyVersion), monitor);
+			writer.start();
+			writer.join(500);
+			assertTrue("1.0", writer.isAlive());
+			assertFalse("1.1", repo.contains(new ArtifactKey("bar", "bar", Version.emptyVersion)));
+		}, new NullProgressMonitor());
+		assertTrue(status.isOK());
+		writer.join();
+		assertTrue("2.0", repo.contains(new ArtifactKey("bar", "bar", Version.emptyVersion)));
+	}
+
+	/*
+	 * This tests that several threads can add descriptors in a concurrent batch and
+	 * that the repository is saved once at its end
+	 */
+	public void testConcurrentBatch() throws Exception {
+		repositoryFile = getTempFolder();
+		repositoryURI = repositoryFile.toURI();
+		final SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "My Repo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap<>());
+		final URI artifactXML = new URI(repositoryFile.toURI().toString() + "/artifacts.xml");
+		IStatus status = repo.executeConcurrentBatch(monitor -> {
+			Thread[] writers = new Thread[4];
+			for (int i = 0; i < writers.length; i++) {
+				String id = "foo" + i;
+				// a nested batch on another thread does not save either
+				writers[i] = new Thread(() -> repo.executeBatch(m -> repo.addDescriptor(createDescriptor(id, id, Version.emptyVersion), m), new NullProgressMonitor()));
+				writers[i].start();
+			}
+			for (Thread writer : writers)
+				writer.join();
+			try {
+				assertFalse("1.0", fileContainsString(artifactXML, "foo0"));
+			} catch (IOException e) {
+				fail("0.99");
+			}
+		}, new NullProgressMonitor());
+		assertTrue(status.isOK());
+		for (int i = 0; i < 4; i++)
+			assertTrue("2." + i, fileContainsString(artifactXML, "foo" + i));
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 IBM Corporation and others.
+ * Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,14 +14,19 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.artifact.repository;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.eclipse.equinox.internal.p2.artifact.repository.MirrorSelector;
 import org.eclipse.equinox.internal.p2.artifact.repository.MirrorSelector.MirrorInfo;
+import org.eclipse.equinox.internal.p2.artifact.repository.MirrorStatistics;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -310,6 +315,56 @@ public class MirrorSelectorTest {
 
 	}
 
+	@Test
+	public void testActiveComparator() {
+		MirrorInfo near = new MirrorInfo("https://near.example.org/eclipse/", 2);
+		near.addLatency(20);
+		near.addBytesPerSecond(2000000);
+		MirrorInfo far = new MirrorInfo("https://far.example.org/eclipse/", 0);
+		far.addLatency(100);
+		far.addBytesPerSecond(2000000);
+		MirrorInfo unknown = new MirrorInfo("https://unknown.example.org/eclipse/", 1);
+		MirrorInfo failing = new MirrorInfo("https://failing.example.org/eclipse/", 3);
+		failing.addLatency(20);
+		failing.addBytesPerSecond(2000000);
+		failing.incrementFailureCount();
+		failing.incrementFailureCount();
+
+		MirrorInfo[] mirrors = {unknown, failing, far, near};
+		Arrays.sort(mirrors, new MirrorSelector.ActiveMirrorComparator());
+		assertArrayEquals(new MirrorInfo[] {near, far, failing, unknown}, mirrors);
+	}
+
+	@Test
+	public void testMovingAverage() {
+		MirrorInfo mirror = new MirrorInfo("https://mirror.example.org/eclipse/", 0);
+		mirror.addBytesPerSecond(100000);
+		assertEquals(100000, mirror.getBytesPerSecond());
+		// a single slow download moves the average by 30% of the difference
+		mirror.addBytesPerSecond(10000);
+		assertEquals(73000, mirror.getBytesPerSecond());
+		mirror.addLatency(100);
+		mirror.addLatency(200);
+		assertEquals(130, mirror.getLatency());
+	}
+
+	@Test
+	public void testStatisticsPersisted() throws IOException {
+		File file = File.createTempFile("mirrors", ".properties");
+		try {
+			MirrorStatistics statistics = new MirrorStatistics(file);
+			statistics.put("https://mirror.example.org/eclipse/", 50, 300000);
+			statistics.put("https://unknown.example.org/eclipse/", -1, -1);
+			statistics.save();
+
+			MirrorStatistics loaded = new MirrorStatistics(file);
+			assertArrayEquals(new long[] {50, 300000}, loaded.get("https://mirror.example.org/eclipse/"));
+			assertNull(loaded.get("https://unknown.example.org/eclipse/"));
+		} finally {
+			file.delete();
+		}
+	}
+
 	private void assertList(List<MirrorInfo> originallist, MirrorInfo[] mirrors) {
 		assertEquals("length", originallist.size(), mirrors.length);
 		for (int i = 0; i < originallist.size(); i++) {
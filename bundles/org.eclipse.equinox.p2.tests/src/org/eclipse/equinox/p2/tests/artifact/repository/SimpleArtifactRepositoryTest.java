@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 compeople AG and others.
+ * Copyright (c) 2007, 2024 compeople AG and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -28,6 +28,8 @@ import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -46,6 +48,7 @@ import org.eclipse.equinox.p2.query.IQueryable;
 import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.artifact.ArtifactDescriptorQuery;
+import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
@@ -414,6 +417,89 @@ public class SimpleArtifactRepositoryTest extends AbstractProvisioningTest {
 		assertEquals(d3.getArtifactKey(), resultDescriptor.getArtifactKey());
 	}
 
+	public void testJournal() throws Exception {
+		File folder = getTestFolder("ArtifactRepository_testJournal");
+		repositoryURI = folder.toURI();
+		Map<String, String> properties = new HashMap<>();
+		properties.put(SimpleArtifactRepository.PROP_JOURNAL, "true");
+		IArtifactRepository repo = getArtifactRepositoryManager().createRepository(repositoryURI, "test", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+		File artifactsFile = new File(folder, "artifacts.xml");
+		long length = artifactsFile.length();
+
+		IProgressMonitor monitor = new NullProgressMonitor();
+		ArtifactDescriptor d1 = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0")));
+		ArtifactDescriptor d2 = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "b", Version.create("1.0.0")));
+		d2.setProperty("foo", "bar");
+		repo.addDescriptor(d1, monitor);
+		repo.addDescriptor(d2, monitor);
+		repo.removeDescriptor(d1, monitor);
+		// the changes are only appended to the journal
+		assertEquals(length, artifactsFile.length());
+		assertTrue(new File(folder, "artifacts.journal").isFile());
+
+		SimpleArtifactRepositoryFactory factory = new SimpleArtifactRepositoryFactory();
+		factory.setAgent(getAgent());
+		IArtifactRepository loaded = factory.load(repositoryURI, 0, monitor);
+		assertFalse(loaded.contains(d1.getArtifactKey()));
+		assertTrue(loaded.contains(d2.getArtifactKey()));
+		assertEquals("bar", loaded.getArtifactDescriptors(d2.getArtifactKey())[0].getProperty("foo"));
+
+		// another instance catches up with the records appended since it was loaded
+		ArtifactDescriptor d3 = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "c", Version.create("1.0.0")));
+		repo.addDescriptor(d3, monitor);
+		assertTrue(loaded.contains(d3.getArtifactKey()));
+
+		// other changes fold the journal into artifacts.xml
+		repo.setProperty("foo", "bar", monitor);
+		assertTrue(artifactsFile.length() > length);
+		loaded = factory.load(repositoryURI, 0, monitor);
+		assertEquals("bar", loaded.getProperty("foo"));
+		assertFalse(loaded.contains(d1.getArtifactKey()));
+		assertTrue(loaded.contains(d2.getArtifactKey()));
+		assertTrue(loaded.contains(d3.getArtifactKey()));
+	}
+
+	public void testConcurrentReaders() throws Exception {
+		File folder = getTestFolder("ArtifactRepository_testConcurrentReaders");
+		repositoryURI = folder.toURI();
+		IArtifactRepository repo = getArtifactRepositoryManager().createRepository(repositoryURI, "test", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap<>());
+		int count = 500;
+		IArtifactKey[] keys = new IArtifactKey[count];
+		for (int i = 0; i < count; i++)
+			keys[i] = new ArtifactKey("osgi.bundle", "a" + i, Version.create("1.0.0"));
+
+		AtomicInteger added = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread(() -> {
+				try {
+					while (added.get() < count) {
+						int known = added.get();
+						for (int i = 0; i < known; i++) {
+							assertTrue(repo.contains(keys[i]));
+							assertEquals(1, repo.getArtifactDescriptors(keys[i]).length);
+						}
+						// iterating while descriptors are added must not fail
+						repo.query(ArtifactKeyQuery.ALL_KEYS, null).toUnmodifiableSet();
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			readers[t].start();
+		}
+		for (int i = 0; i < count; i++) {
+			repo.addDescriptor(new ArtifactDescriptor(keys[i]), new NullProgressMonitor());
+			added.incrementAndGet();
+		}
+		for (Thread reader : readers)
+			reader.join();
+		if (failure.get() != null)
+			fail("Concurrent reader failed", failure.get());
+		assertEquals(count, repo.query(ArtifactKeyQuery.ALL_KEYS, null).toUnmodifiableSet().size());
+	}
+
 	/*
 	 * Tests the number of threads allowed
 	 */
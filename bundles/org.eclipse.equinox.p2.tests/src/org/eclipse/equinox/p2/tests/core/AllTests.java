@@ -20,7 +20,8 @@ import org.junit.runners.Suite;
  * Performs all automated core tests.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ AggregateQueryTest.class, BackupTest.class, CollectorTest.class,
+@Suite.SuiteClasses({ AggregateQueryTest.class, BackupTest.class, BufferedProvisioningEventBusTest.class,
+		CollectorTest.class,
 		CompoundQueryableTest.class,
 		FileUtilsTest.class, OrderedPropertiesTest.class, ProvisioningAgentTest.class, QueryTest.class,
 		URLUtilTest.class })
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.core;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.equinox.internal.p2.core.BufferedProvisioningEventBus;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class BufferedProvisioningEventBusTest extends AbstractProvisioningTest {
+
+	static class ProgressEvent extends EventObject implements CoalescableEvent {
+		private static final long serialVersionUID = 1L;
+		final String key;
+		final int value;
+
+		ProgressEvent(String key, int value) {
+			super(key);
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public Object getCoalescingKey() {
+			return key;
+		}
+	}
+
+	static class DoneEvent extends EventObject {
+		private static final long serialVersionUID = 1L;
+
+		DoneEvent() {
+			super("done");
+		}
+	}
+
+	static class RecordingListener implements ProvisioningListener {
+		final List<EventObject> events = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch done = new CountDownLatch(1);
+
+		@Override
+		public void notify(EventObject o) {
+			events.add(o);
+			if (o instanceof DoneEvent)
+				done.countDown();
+		}
+	}
+
+	static class LosslessListener extends RecordingListener implements LosslessProvisioningListener {
+		// marker
+	}
+
+	private BufferedProvisioningEventBus bus;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		bus = new BufferedProvisioningEventBus(50);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		bus.close();
+		super.tearDown();
+	}
+
+	public void testCoalescing() throws InterruptedException {
+		RecordingListener listener = new RecordingListener();
+		LosslessListener lossless = new LosslessListener();
+		bus.addListener(listener);
+		bus.addListener(lossless);
+		for (int i = 0; i < 1000; i++)
+			bus.publishEvent(new ProgressEvent("a", i));
+		bus.publishEvent(new DoneEvent());
+		assertTrue(lossless.done.await(10, TimeUnit.SECONDS));
+		assertEquals(1001, lossless.events.size());
+
+		assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+		// events with the same key supersede each other, the last value wins
+		int last = -1;
+		int count = 0;
+		for (EventObject event : listener.events) {
+			if (event instanceof ProgressEvent) {
+				assertTrue(((ProgressEvent) event).value > last);
+				last = ((ProgressEvent) event).value;
+				count++;
+			}
+		}
+		assertEquals(999, last);
+		assertTrue(count < 1000);
+		assertTrue(listener.events.get(listener.events.size() - 1) instanceof DoneEvent);
+	}
+
+	public void testSynchronousListener() {
+		List<EventObject> received = new ArrayList<>();
+		SynchronousProvisioningListener listener = received::add;
+		bus.addListener(listener);
+		for (int i = 0; i < 10; i++)
+			bus.publishEvent(new ProgressEvent("a", i));
+		// synchronous listeners are notified of every event in the publishing thread
+		assertEquals(10, received.size());
+		bus.removeListener(listener);
+		bus.publishEvent(new DoneEvent());
+		assertEquals(10, received.size());
+	}
+
+	public void testClose() {
+		RecordingListener listener = new RecordingListener();
+		bus.addListener(listener);
+		bus.close();
+		bus.publishEvent(new DoneEvent());
+		assertTrue(listener.events.isEmpty());
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -18,9 +18,12 @@ import static org.junit.Assert.assertThrows;
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.equinox.internal.provisional.p2.directorywatcher.DirectoryChangeListener;
@@ -105,4 +108,78 @@ public class DirectoryWatcherTest extends AbstractProvisioningTest {
 		watcher.poll();
 		assertEquals(2, list.size());
 	}
+
+	public void testWatchingListener() throws Exception {
+		File folder = getTempFolder();
+		new File(folder, "a.jar").createNewFile();
+		DirectoryWatcher watcher = new DirectoryWatcher(folder);
+		final List<String> events = Collections.synchronizedList(new ArrayList<>());
+		final Map<File, Long> seen = new ConcurrentHashMap<>();
+		watcher.addListener(new DirectoryChangeListener() {
+			@Override
+			public void startPoll() {
+				events.add("start");
+			}
+
+			@Override
+			public void stopPoll() {
+				events.add("stop");
+			}
+
+			@Override
+			public boolean added(File file) {
+				seen.put(file, file.lastModified());
+				events.add("added " + file.getName());
+				return true;
+			}
+
+			@Override
+			public boolean changed(File file) {
+				seen.put(file, file.lastModified());
+				return true;
+			}
+
+			@Override
+			public boolean removed(File file) {
+				seen.remove(file);
+				events.add("removed " + file.getName());
+				return true;
+			}
+
+			@Override
+			public boolean isInterested(File file) {
+				return true;
+			}
+
+			@Override
+			public Long getSeenFile(File file) {
+				return seen.get(file);
+			}
+		});
+		watcher.startWatching(1000);
+		try {
+			waitFor(events, 3);
+			assertEquals(Arrays.asList("start", "added a.jar", "stop"), events);
+
+			// a burst of changes is reported as one poll
+			events.clear();
+			new File(folder, "b.jar").createNewFile();
+			new File(folder, "c.jar").createNewFile();
+			new File(folder, "a.jar").delete();
+			waitFor(events, 5);
+			assertEquals("start", events.get(0));
+			assertEquals("stop", events.get(4));
+			assertTrue(events.containsAll(Arrays.asList("added b.jar", "added c.jar", "removed a.jar")));
+		} finally {
+			watcher.stop();
+		}
+	}
+
+	private static void waitFor(List<String> events, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (events.size() < count && System.currentTimeMillis() < deadline)
+			Thread.sleep(50);
+		// give a wrongly split batch the time to show
+		Thread.sleep(500);
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2015 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,7 +14,16 @@
 package org.eclipse.equinox.p2.tests.directorywatcher;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactDescriptor;
@@ -101,6 +110,86 @@ public class RepositoryListenerTest extends AbstractDirectoryWatcherTest {
 		assertEquals("6.1", 1, watcher.getArtifactKeys().length);
 	}
 
+	public void testBatchedListener() {
+		File baseFolder = getTestData("0.99", "/testData/directorywatcher1");
+		File baseFolder2 = getTestData("0.100", "/testData/directorywatcher2");
+
+		// make sure we remove this file after we finish running the tests
+		File folder = getTempFolder();
+		toRemove.add(folder);
+
+		TestRepositoryWatcher watcher = TestRepositoryWatcher.createWatcher(folder);
+		watcher.setBatched(true);
+		watcher.poll();
+		assertEquals("1.0", 0, watcher.getInstallableUnits().length);
+
+		// both data sets are published in one poll
+		copy("2.0", baseFolder, folder);
+		copy("2.1", baseFolder2, folder);
+		watcher.poll();
+		IInstallableUnit[] ius = watcher.getInstallableUnits();
+		assertEquals("3.0", 3, ius.length);
+		assertEquals("3.1", 3, watcher.getArtifactKeys().length);
+		for (IInstallableUnit iu : ius) {
+			// every IU carries the file it was published from
+			String file = iu.getProperty("file.name");
+			assertNotNull("4.0." + iu.getId(), file);
+			assertTrue("4.1." + iu.getId(), new File(file).getName().startsWith(iu.getId()));
+		}
+
+		// remove some of the data and then verify the contents
+		removeContents(baseFolder, folder);
+		watcher.poll();
+		assertEquals("5.0", 1, watcher.getInstallableUnits().length);
+		assertEquals("5.1", 1, watcher.getArtifactKeys().length);
+	}
+
+	public void testChangedSize() throws IOException {
+		File baseFolder = getTestData("0.99", "/testData/directorywatcher1");
+
+		// make sure we remove this file after we finish running the tests
+		File folder = getTempFolder();
+		toRemove.add(folder);
+		copy("1.0", baseFolder, folder);
+
+		TestRepositoryWatcher watcher = TestRepositoryWatcher.createWatcher(folder);
+		watcher.poll();
+		File jar = new File(folder, "org.eclipse.osgi.services_3.1.200.v20070605.jar");
+		assertEquals("1.1", Long.toString(jar.length()), getFileSize(watcher, "org.eclipse.osgi.services"));
+
+		// replace the jar by a bigger one with the same time stamp
+		long lastModified = jar.lastModified();
+		File rewritten = new File(getTempFolder(), jar.getName());
+		toRemove.add(rewritten.getParentFile());
+		try (JarFile in = new JarFile(jar); JarOutputStream out = new JarOutputStream(new FileOutputStream(rewritten))) {
+			for (Enumeration<JarEntry> entries = in.entries(); entries.hasMoreElements();) {
+				JarEntry entry = entries.nextElement();
+				out.putNextEntry(new JarEntry(entry.getName()));
+				try (InputStream content = in.getInputStream(entry)) {
+					content.transferTo(out);
+				}
+				out.closeEntry();
+			}
+			out.putNextEntry(new JarEntry("extra.txt"));
+			out.write(new byte[] {1, 2, 3});
+			out.closeEntry();
+		}
+		Files.copy(rewritten.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		assertTrue("2.0", jar.setLastModified(lastModified));
+
+		watcher.poll();
+		assertEquals("2.1", 2, watcher.getInstallableUnits().length);
+		assertEquals("2.2", Long.toString(jar.length()), getFileSize(watcher, "org.eclipse.osgi.services"));
+	}
+
+	private String getFileSize(TestRepositoryWatcher watcher, String id) {
+		for (IInstallableUnit iu : watcher.getInstallableUnits())
+			if (iu.getId().equals(id))
+				return iu.getProperty("file.size");
+		fail("Missing " + id);
+		return null;
+	}
+
 	public void testBundleShape() {
 
 		// make sure we remove this file after we finish running the tests
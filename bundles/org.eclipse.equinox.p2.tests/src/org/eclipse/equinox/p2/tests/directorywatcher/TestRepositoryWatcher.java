@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 IBM Corporation and others.
+ * Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -59,6 +59,13 @@ class TestRepositoryWatcher extends DirectoryWatcher {
 		this.listener = repoListener;
 	}
 
+	/*
+	 * Set whether the listener publishes the bundles of a poll together.
+	 */
+	public void setBatched(boolean batched) {
+		listener.setBatched(batched);
+	}
+
 	/*
 	 * Return the list of all the IUs known to the metadata repository this watcher's listener.
 	 */
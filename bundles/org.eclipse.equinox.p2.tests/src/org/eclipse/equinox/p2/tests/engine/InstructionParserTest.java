@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2005, 2017 IBM Corporation and others.
+ *  Copyright (c) 2005, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -20,7 +20,9 @@ import java.util.Map;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.equinox.internal.p2.engine.ActionManager;
+import org.eclipse.equinox.internal.p2.engine.ActionTemplateCache;
 import org.eclipse.equinox.internal.p2.engine.InstructionParser;
+import org.eclipse.equinox.internal.p2.engine.ParameterizedProvisioningAction;
 import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
 import org.eclipse.equinox.p2.engine.spi.Touchpoint;
 import org.eclipse.equinox.p2.metadata.ITouchpointType;
@@ -158,4 +160,26 @@ public class InstructionParserTest extends AbstractProvisioningTest {
 				.parseActions(MetadataFactory.createTouchpointInstruction("notfoundaction()", null), TOUCHPOINT_TYPE);
 		assertThrows(IllegalArgumentException.class, () -> actions.get(0).execute(null));
 	}
+
+	public void testCachedInstructionBindsNewParameters() {
+		ActionManager actionManager = new ActionManager();
+		ActionTemplateCache cache = actionManager.getActionTemplateCache();
+		InstructionParser parser = new InstructionParser(actionManager);
+		List<ProvisioningAction> first = parser.parseActions(MetadataFactory.createTouchpointInstruction("goodAction(a:1)", null), TOUCHPOINT_TYPE);
+		List<ProvisioningAction> second = parser.parseActions(MetadataFactory.createTouchpointInstruction("goodAction(a:1)", null), TOUCHPOINT_TYPE);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(0.5, cache.getHitRate(), 0);
+		assertNotSame(first.get(0), second.get(0));
+		ParameterizedProvisioningAction action = (ParameterizedProvisioningAction) second.get(0);
+		assertEquals("1", action.getParameters().get("a"));
+		// actions keep their undo state in their memento, each operand needs its own
+		assertNotSame(((ParameterizedProvisioningAction) first.get(0)).getAction(), action.getAction());
+
+		parser.parseActions(MetadataFactory.createTouchpointInstruction("goodAction(a:1)", null), null);
+		assertEquals(2, cache.getMissCount());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2017 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -13,12 +13,14 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.extensionlocation;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.net.*;
+import java.util.jar.*;
 import org.eclipse.equinox.internal.p2.extensionlocation.Constants;
 import org.eclipse.equinox.internal.p2.extensionlocation.ExtensionLocationMetadataRepositoryFactory;
 import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -342,4 +344,64 @@ public class ExtensionLocationMetadataRepositoryFactoryTest extends AbstractProv
 		}
 		fail("1.0");
 	}
+
+	public void testChangedBundleOnlyReparsed() throws IOException {
+		File directory = new File(tempDirectory, "exists");
+		File plugins = new File(directory, "plugins");
+		plugins.mkdirs();
+		File a = createBundle(plugins, "a", false);
+		File b = createBundle(plugins, "b", false);
+		try {
+			IMetadataRepository repo = factory.load(directory.toURI(), 0, getMonitor());
+			assertEquals("1.0", Long.toString(a.length()), getFileSize(repo, "a"));
+			assertEquals("1.1", Long.toString(b.length()), getFileSize(repo, "b"));
+		} catch (ProvisionException e) {
+			fail("1.2", e);
+		}
+
+		// a is replaced by a bigger jar and b by one of the same size which is not a
+		// bundle, both keeping their time stamps
+		long aTimestamp = a.lastModified();
+		long bTimestamp = b.lastModified();
+		long bSize = b.length();
+		createBundle(plugins, "a", true);
+		assertTrue("2.0", a.setLastModified(aTimestamp));
+		try (OutputStream out = new FileOutputStream(b)) {
+			out.write(new byte[(int) bSize]);
+		}
+		assertTrue("2.1", b.setLastModified(bTimestamp));
+
+		try {
+			IMetadataRepository repo = factory.load(directory.toURI(), 0, getMonitor());
+			assertEquals("3.0", Long.toString(a.length()), getFileSize(repo, "a"));
+			// b was not parsed again, it would no longer be found otherwise
+			assertEquals("3.1", Long.toString(bSize), getFileSize(repo, "b"));
+		} catch (ProvisionException e) {
+			fail("3.2", e);
+		}
+	}
+
+	private String getFileSize(IMetadataRepository repo, String id) {
+		IQueryResult<IInstallableUnit> result = repo.query(QueryUtil.createIUQuery(id), getMonitor());
+		assertEquals(id, 1, queryResultSize(result));
+		return result.iterator().next().getProperty("file.size");
+	}
+
+	private File createBundle(File plugins, String symbolicName, boolean extraEntry) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue("Bundle-ManifestVersion", "2");
+		attributes.putValue("Bundle-SymbolicName", symbolicName);
+		attributes.putValue("Bundle-Version", "1.0.0");
+		File jar = new File(plugins, symbolicName + "_1.0.0.jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+			if (extraEntry) {
+				out.putNextEntry(new JarEntry("extra.txt"));
+				out.write(new byte[] {1, 2, 3});
+				out.closeEntry();
+			}
+		}
+		return jar;
+	}
 }
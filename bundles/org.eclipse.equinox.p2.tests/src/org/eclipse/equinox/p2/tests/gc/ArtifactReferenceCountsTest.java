@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.gc;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.equinox.internal.p2.garbagecollector.ArtifactReferenceCounts;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests the reference counts used by the incremental garbage collection.
+ */
+public class ArtifactReferenceCountsTest extends AbstractProvisioningTest {
+	private final IArtifactKey a = new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0"));
+	private final IArtifactKey b = new ArtifactKey("osgi.bundle", "b", Version.create("1.0.0"));
+
+	public void testUpdate() {
+		File file = new File(getTempFolder(), "references.properties");
+		ArtifactReferenceCounts counts = new ArtifactReferenceCounts(file);
+		assertFalse("1.0", counts.isValid());
+		assertTrue("1.1", counts.update(Map.of(a, -1)).isEmpty());
+
+		// built once by a full collection
+		assertFalse("2.0", counts.rebuild(new IProfile[0]));
+		assertTrue("2.1", counts.isValid());
+		assertTrue("2.2", counts.update(Map.of(a, 1, b, 2)).isEmpty());
+		assertEquals("2.3", Set.of(a), counts.update(Map.of(a, -1, b, -1)));
+		assertEquals("2.4", 0, counts.getCount(a));
+		assertEquals("2.5", 1, counts.getCount(b));
+
+		counts.incrementalRun();
+		counts.save();
+		counts = new ArtifactReferenceCounts(file);
+		assertTrue("3.0", counts.isValid());
+		assertEquals("3.1", 1, counts.getCount(b));
+		assertEquals("3.2", 1, counts.getIncrementalRuns());
+
+		// removing a key that is not referenced means the counts are wrong
+		assertTrue("4.0", counts.update(Map.of(a, -1)).isEmpty());
+		assertFalse("4.1", counts.isValid());
+		counts.save();
+		assertFalse("4.2", file.exists());
+		assertFalse("4.3", new ArtifactReferenceCounts(file).isValid());
+	}
+
+	public void testRebuild() {
+		ArtifactReferenceCounts counts = new ArtifactReferenceCounts(new File(getTempFolder(), "references.properties"));
+		counts.rebuild(new IProfile[0]);
+		assertTrue("1.0", counts.rebuild(new IProfile[0]));
+		counts.update(Map.of(a, 1));
+		counts.incrementalRun();
+		assertFalse("2.0", counts.rebuild(new IProfile[0]));
+		assertEquals("2.1", 0, counts.getCount(a));
+		assertEquals("2.2", 0, counts.getIncrementalRuns());
+	}
+
+	public void testTimestamps() {
+		File file = new File(getTempFolder(), "references.properties");
+		ArtifactReferenceCounts counts = new ArtifactReferenceCounts(file);
+		counts.rebuild(new IProfile[0]);
+		assertTrue("1.0", counts.matches(Map.of()));
+		counts.setTimestamp("p", 5);
+		counts.save();
+
+		counts = new ArtifactReferenceCounts(file);
+		assertTrue("2.0", counts.matches(Map.of("p", Long.valueOf(5))));
+		assertFalse("2.1", counts.matches(Map.of("p", Long.valueOf(6))));
+		assertFalse("2.2", counts.matches(Map.of("p", Long.valueOf(5), "q", Long.valueOf(1))));
+	}
+}
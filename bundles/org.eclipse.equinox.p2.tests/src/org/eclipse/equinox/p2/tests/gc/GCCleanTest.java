@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2017 IBM Corporation and others.
+ * Copyright (c) 2010, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,11 +14,15 @@
 package org.eclipse.equinox.p2.tests.gc;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.garbagecollector.CoreGarbageCollector;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.p2.core.ProvisionException;
@@ -63,4 +67,33 @@ public class GCCleanTest extends AbstractProvisioningTest {
 		assertEquals("1.0", 0, repository.query(ArtifactKeyQuery.ALL_KEYS, null).toSet().size());
 
 	}
+
+	public void testRemoveUnmarked() throws Exception {
+		File folder = getTestFolder("GCCleanTest.testRemoveUnmarked");
+		IArtifactRepository repository = getArtifactRepositoryManager().createRepository(folder.toURI(), "test", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap<>());
+		IArtifactKey[] keys = new IArtifactKey[10];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new ArtifactKey("osgi.bundle", "a", Version.create(i + ".0.0"));
+			writeArtifact(repository, keys[i]);
+		}
+
+		new CoreGarbageCollector().clean(Set.of(keys[0], keys[5]), repository);
+
+		assertEquals("1.0", Set.of(keys[0], keys[5]), repository.query(ArtifactKeyQuery.ALL_KEYS, null).toSet());
+		for (int i = 0; i < keys.length; i++) {
+			File file = new File(folder, "plugins/a_" + i + ".0.0.jar");
+			assertEquals("2." + i, i == 0 || i == 5, file.exists());
+		}
+		// the removal has been persisted
+		getArtifactRepositoryManager().removeRepository(folder.toURI());
+		repository = getArtifactRepositoryManager().loadRepository(folder.toURI(), null);
+		assertEquals("3.0", 2, repository.query(ArtifactKeyQuery.ALL_KEYS, null).toSet().size());
+	}
+
+	private void writeArtifact(IArtifactRepository repository, IArtifactKey key) throws ProvisionException, IOException {
+		try (OutputStream stream = repository.getOutputStream(repository.createArtifactDescriptor(key))) {
+			stream.write(new byte[] {1, 2, 3});
+		}
+		assertTrue(((SimpleArtifactRepository) repository).getArtifactFile(key).exists());
+	}
 }
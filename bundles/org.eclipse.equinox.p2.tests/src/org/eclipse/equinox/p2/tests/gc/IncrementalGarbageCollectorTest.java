@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.gc;
+
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.engine.*;
+import org.eclipse.equinox.internal.p2.garbagecollector.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests how the garbage collector keeps the artifact reference counts up to
+ * date with the operations on the profiles.
+ */
+public class IncrementalGarbageCollectorTest extends AbstractProvisioningTest {
+	private final IArtifactKey key = new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0"));
+	private IInstallableUnit iu;
+	private IProfile profile;
+	private GarbageCollector collector;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		MetadataFactory.InstallableUnitDescription description = createIUDescriptor(createIU("a"));
+		description.setArtifacts(new IArtifactKey[] {key});
+		iu = MetadataFactory.createInstallableUnit(description);
+		profile = createProfile(IncrementalGarbageCollectorTest.class.getName());
+		// incremental, and never removing anything
+		collector = new GarbageCollector(getAgent()) {
+			@Override
+			protected boolean getBooleanPreference(String preference, boolean defaultValue) {
+				return GarbageCollectorHelper.GC_INCREMENTAL.equals(preference);
+			}
+		};
+		ArtifactReferenceCounts counts = getCounts();
+		counts.rebuild(getProfileRegistry().getProfiles());
+		counts.save();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ArtifactReferenceCounts counts = getCounts();
+		counts.invalidate();
+		counts.save();
+		super.tearDown();
+	}
+
+	public void testInstallAndUninstall() {
+		runOperation(InstallableUnitEvent.INSTALL);
+		ArtifactReferenceCounts counts = getCounts();
+		assertTrue("1.0", counts.isValid());
+		assertEquals("1.1", 1, counts.getCount(key));
+
+		runOperation(InstallableUnitEvent.UNINSTALL);
+		counts = getCounts();
+		assertTrue("2.0", counts.isValid());
+		assertEquals("2.1", 0, counts.getCount(key));
+	}
+
+	public void testRollback() {
+		collector.notify(new BeginOperationEvent(profile, null, null, createEngine()));
+		collector.notify(new InstallableUnitEvent("install", false, profile, iu, InstallableUnitEvent.INSTALL, null, Status.OK_STATUS));
+		collector.notify(new RollbackOperationEvent(profile, null, null, createEngine(), Status.CANCEL_STATUS));
+		assertEquals("1.0", 0, getCounts().getCount(key));
+
+		runOperation(InstallableUnitEvent.CONFIGURE);
+		assertTrue("2.0", getCounts().isValid());
+		assertEquals("2.1", 0, getCounts().getCount(key));
+	}
+
+	public void testProfileAdded() {
+		createProfile(IncrementalGarbageCollectorTest.class.getName() + ".other");
+		runOperation(InstallableUnitEvent.INSTALL);
+		assertFalse(getCounts().isValid());
+	}
+
+	public void testProfileChangedOtherwise() {
+		// an operation the collector does not see, like one run by another process
+		IInstallableUnit other = createIU("b");
+		createTestMetdataRepository(new IInstallableUnit[] {other});
+		assertOK("1.0", install(profile, new IInstallableUnit[] {other}, true, createPlanner(), createEngine()));
+		profile = getProfile(profile.getProfileId());
+
+		runOperation(InstallableUnitEvent.INSTALL);
+		assertFalse("2.0", getCounts().isValid());
+	}
+
+	/*
+	 * Drives the events of an operation of the given type on the installable unit.
+	 */
+	private void runOperation(int type) {
+		collector.notify(new BeginOperationEvent(profile, null, null, createEngine()));
+		collector.notify(new InstallableUnitEvent("install", true, profile, iu, type, null));
+		collector.notify(new InstallableUnitEvent("install", false, profile, iu, type, null, Status.OK_STATUS));
+		collector.notify(new CommitOperationEvent(profile, null, null, createEngine()));
+	}
+
+	private ArtifactReferenceCounts getCounts() {
+		ArtifactReferenceCounts counts = ArtifactReferenceCounts.forAgent(getAgent());
+		assertNotNull(counts);
+		return counts;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2018 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -18,21 +18,26 @@ import static org.junit.Assert.assertThrows;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.internal.p2.persistence.XMLParser;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.SynchronousProvisioningListener;
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.ILicense;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.ITouchpointType;
 import org.eclipse.equinox.p2.metadata.MetadataFactory;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepository;
@@ -177,6 +182,38 @@ public class LocalMetadataRepositoryTest extends AbstractProvisioningTest {
 		}
 	}
 
+	public void testFastParsing() throws ProvisionException {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		URI repoURI = repoLocation.toURI();
+		IMetadataRepository repo = createTestRepository(manager, Map.of(IRepository.PROP_COMPRESSED, "false"));
+		List<IInstallableUnit> ius = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			IRequirement[] requires = createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "required" + i % 3, new VersionRange("[1.0.0,2.0.0)"), "(osgi.os=linux)");
+			ius.add(createIU("iu" + i, Version.create("1.0." + i % 4), createFilter("osgi.ws", "gtk"), requires, NO_PROVIDES, NO_PROPERTIES, ITouchpointType.NONE, NO_TP_DATA, false));
+		}
+		repo.addInstallableUnits(ius);
+
+		String previous = System.setProperty(XMLParser.PROP_FAST_PARSING, "true");
+		try {
+			// the second load reuses the parser pooled by the first one
+			for (int round = 0; round < 2; round++) {
+				manager.removeRepository(repoURI);
+				IMetadataRepository loaded = manager.loadRepository(repoURI, null);
+				assertEquals(ius.size(), loaded.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size());
+				for (IInstallableUnit iu : ius) {
+					IInstallableUnit loadedIU = loaded.query(QueryUtil.createIUQuery(iu.getId(), iu.getVersion()), null).iterator().next();
+					assertEquals(iu.getFilter(), loadedIU.getFilter());
+					assertEquals(new ArrayList<>(iu.getRequirements()), new ArrayList<>(loadedIU.getRequirements()));
+				}
+			}
+		} finally {
+			if (previous == null)
+				System.clearProperty(XMLParser.PROP_FAST_PARSING);
+			else
+				System.setProperty(XMLParser.PROP_FAST_PARSING, previous);
+		}
+	}
+
 	/**
 	 * Tests loading a repository that has a reference to itself as a disabled repository.
 	 */
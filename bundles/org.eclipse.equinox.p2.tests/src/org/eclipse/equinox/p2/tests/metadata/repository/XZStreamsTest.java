@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.metadata.repository;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.eclipse.equinox.internal.p2.repository.helpers.ReadAheadInputStream;
+import org.eclipse.equinox.p2.internal.repository.tools.ParallelXZOutputStream;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+
+public class XZStreamsTest extends AbstractProvisioningTest {
+
+	private static byte[] createContent(int size) {
+		StringBuilder content = new StringBuilder(size);
+		for (int i = 0; content.length() < size; i++)
+			content.append("<unit id='org.eclipse.someiu").append(i).append("' version='1.0.").append(i).append("'/>\n");
+		return content.substring(0, size).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] compress(byte[] content) throws IOException {
+		LZMA2Options options = new LZMA2Options();
+		options.setDictSize(LZMA2Options.DICT_SIZE_MIN);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (OutputStream out = new ParallelXZOutputStream(result, options, 4)) {
+			// write in odd sizes so that blocks are filled from several writes
+			for (int offset = 0; offset < content.length; offset += 100000)
+				out.write(content, offset, Math.min(100000, content.length - offset));
+		}
+		return result.toByteArray();
+	}
+
+	private static byte[] decompress(byte[] compressed) throws IOException {
+		try (InputStream in = new XZInputStream(new ByteArrayInputStream(compressed))) {
+			return in.readAllBytes();
+		}
+	}
+
+	public void testParallelCompressionOfSeveralBlocks() throws IOException {
+		byte[] content = createContent(5 * 1024 * 1024 + 17);
+		byte[] compressed = compress(content);
+		assertTrue(compressed.length < content.length);
+		assertTrue(Arrays.equals(content, decompress(compressed)));
+	}
+
+	public void testParallelCompressionOfNothing() throws IOException {
+		assertEquals(0, decompress(compress(new byte[0])).length);
+	}
+
+	public void testReadAhead() throws IOException {
+		byte[] content = createContent(1024 * 1024 + 3);
+		try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(content), "Test Reader")) {
+			assertEquals(content[0], (byte) in.read());
+			byte[] rest = in.readAllBytes();
+			assertTrue(Arrays.equals(Arrays.copyOfRange(content, 1, content.length), rest));
+			assertEquals(-1, in.read());
+		}
+	}
+
+	public void testReadAheadFailure() {
+		InputStream failing = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("broken");
+			}
+		};
+		try (InputStream in = new ReadAheadInputStream(failing, "Test Reader")) {
+			in.readAllBytes();
+			fail("The failure of the source should be reported");
+		} catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+	}
+
+	public void testReadAheadUncheckedFailure() {
+		InputStream failing = new InputStream() {
+			@Override
+			public int read() {
+				throw new IllegalStateException("broken");
+			}
+		};
+		try (InputStream in = new ReadAheadInputStream(failing, "Test Reader")) {
+			in.readAllBytes();
+			fail("The failure of the source should be reported");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+			assertEquals("broken", e.getCause().getMessage());
+		}
+	}
+}
@@ -23,7 +23,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 		ArtifactMirrorApplicationTest.class, MetadataMirrorApplicationTest.class, ArtifactRepositoryCleanupTest.class,
 		MetadataRepositoryCleanupTest.class, NewMirrorApplicationArtifactTest.class,
-		NewMirrorApplicationMetadataTest.class, MirrorApplicationTest.class
+		NewMirrorApplicationMetadataTest.class, MirrorApplicationTest.class, JarComparatorTest.class
 })
 public class AllTests {
 // test suite
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.mirror;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.p2.internal.repository.comparator.ClassFingerprintCache;
+import org.eclipse.equinox.p2.internal.repository.comparator.JarComparator;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class JarComparatorTest extends AbstractProvisioningTest {
+
+	private File folder;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = getTempFolder();
+	}
+
+	private byte[] getClassBytes(Class<?> clazz) throws IOException {
+		try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+			return in.readAllBytes();
+		}
+	}
+
+	private File createJar(String name, Map<String, byte[]> entries) throws IOException {
+		File jar = new File(folder, name);
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				out.putNextEntry(new ZipEntry(entry.getKey()));
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+		}
+		return jar;
+	}
+
+	public void testSameContent() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("p/A.class", getClassBytes(JarComparatorTest.class));
+		entries.put("readme.txt", "hello".getBytes());
+		File first = createJar("first.jar", entries);
+		File second = createJar("second.jar", entries);
+		assertTrue(new JarComparator().compare(first, second).isOK());
+	}
+
+	public void testDifferentClass() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("p/A.class", getClassBytes(JarComparatorTest.class));
+		File first = createJar("first.jar", entries);
+		entries.put("p/A.class", getClassBytes(AllTests.class));
+		File second = createJar("second.jar", entries);
+		IStatus status = new JarComparator().compare(first, second);
+		assertEquals(IStatus.ERROR, status.getSeverity());
+	}
+
+	public void testManyDifferentClassesReportFirst() throws IOException {
+		Map<String, byte[]> firstEntries = new LinkedHashMap<>();
+		Map<String, byte[]> secondEntries = new LinkedHashMap<>();
+		for (int i = 0; i < 50; i++) {
+			firstEntries.put("p/C" + i + ".class", getClassBytes(JarComparatorTest.class));
+			secondEntries.put("p/C" + i + ".class", getClassBytes(AllTests.class));
+		}
+		File first = createJar("first.jar", firstEntries);
+		File second = createJar("second.jar", secondEntries);
+		IStatus status = new JarComparator().compare(first, second);
+		assertEquals(IStatus.ERROR, status.getSeverity());
+		// the classes are disassembled in parallel but the first difference is reported
+		assertEquals(1, status.getChildren().length);
+		assertTrue(status.getChildren()[0].getMessage(), status.getChildren()[0].getMessage().contains("p/C0.class"));
+	}
+
+	public void testFingerprintCachePersistence() throws IOException {
+		String digest = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+		File cacheFile = new File(folder, "fingerprints");
+		ClassFingerprintCache cache = new ClassFingerprintCache(cacheFile);
+		assertNull(cache.get(digest));
+		cache.put(digest, "abc");
+		assertEquals("abc", cache.get(digest));
+		// written when the cache is closed
+		assertEquals(0, cacheFile.length());
+		cache.close();
+		assertEquals("abc", new ClassFingerprintCache(cacheFile).get(digest));
+	}
+
+	public void testFingerprintCacheIgnoresOldFormat() throws IOException {
+		File cacheFile = new File(folder, "fingerprints");
+		try (Writer out = new FileWriter(cacheFile)) {
+			// keyed by CRC, size and entry name
+			out.write("abc 1a2b3c 42 p/A.class\n");
+		}
+		ClassFingerprintCache cache = new ClassFingerprintCache(cacheFile);
+		assertNull(cache.get("1a2b3c 42 p/A.class"));
+	}
+}
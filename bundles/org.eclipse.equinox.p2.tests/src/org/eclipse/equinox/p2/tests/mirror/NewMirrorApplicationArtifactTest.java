@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2021 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -1350,4 +1350,30 @@ public class NewMirrorApplicationArtifactTest extends AbstractProvisioningTest {
 			fail("Error mirroring", e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Tests mirroring with several workers gives the same repository as mirroring
+	 * one artifact at a time
+	 */
+	@Test
+	public void testArtifactMirrorInParallel() throws Exception {
+		MirrorApplication app = new MirrorApplication();
+		app.addSource(createRepositoryDescriptor(sourceRepo3Location.toURI(), null, null, null));
+		app.addDestination(createRepositoryDescriptor(destRepoLocation.toURI(), null, null, null));
+		app.setParallelism(4);
+		app.setCompare(true);
+		PrintStream out = System.out;
+		IStatus status;
+		try {
+			System.setOut(new PrintStream(new StringBufferStream()));
+			status = app.run(null);
+		} finally {
+			System.setOut(out);
+		}
+		assertTrue(status.toString(), status.isOK());
+		// the index of the destination was written at the end of the batch
+		getArtifactRepositoryManager().removeRepository(destRepoLocation.toURI());
+		assertContentEquals("1.0", getArtifactRepositoryManager().loadRepository(sourceRepo3Location.toURI(), null),
+				getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.perf;
+
+import java.io.File;
+import java.util.concurrent.*;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+
+/**
+ * Performance tests for looking up descriptors in a simple artifact repository
+ * from several threads, as the download jobs do.
+ */
+public class ArtifactRepositoryPerformanceTest extends ProvisioningPerformanceTest {
+	private static final int REPEATS = 5;
+	private static final int ARTIFACT_COUNT = 20000;
+	private static final int LOOKUPS_PER_THREAD = 200000;
+
+	protected File repoLocation;
+	SimpleArtifactRepository repository;
+	IArtifactKey[] keys;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		String tempDir = System.getProperty("java.io.tmpdir");
+		repoLocation = new File(tempDir, "ArtifactRepositoryPerformanceTest");
+		delete(repoLocation);
+		repoLocation.mkdir();
+		repository = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repoLocation.toURI(), "TestRepo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		keys = new IArtifactKey[ARTIFACT_COUNT];
+		IArtifactDescriptor[] descriptors = new IArtifactDescriptor[ARTIFACT_COUNT];
+		for (int i = 0; i < ARTIFACT_COUNT; i++) {
+			keys[i] = new ArtifactKey("osgi.bundle", "org.eclipse.someartifact" + i, Version.createOSGi(1, 1, i));
+			descriptors[i] = new ArtifactDescriptor(keys[i]);
+		}
+		repository.addDescriptors(descriptors, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		getArtifactRepositoryManager().removeRepository(repoLocation.toURI());
+		delete(repoLocation);
+		super.tearDown();
+	}
+
+	private void lookUp(int seed) {
+		for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+			IArtifactKey key = keys[(seed + i * 31) % ARTIFACT_COUNT];
+			assertTrue(repository.contains(key));
+			IArtifactDescriptor[] descriptors = repository.getArtifactDescriptors(key);
+			assertNotNull(repository.getLocation(descriptors[0]));
+		}
+	}
+
+	private void runLookups(int threadCount) {
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			new PerformanceTestRunner() {
+				@Override
+				protected void test() {
+					Future<?>[] futures = new Future<?>[threadCount];
+					for (int i = 0; i < threadCount; i++) {
+						int seed = i;
+						futures[i] = executor.submit(() -> lookUp(seed));
+					}
+					try {
+						for (Future<?> future : futures)
+							future.get();
+					} catch (InterruptedException | ExecutionException e) {
+						fail("Lookup failed", e);
+					}
+				}
+			}.run(this, "Look up artifacts from " + threadCount + " threads", REPEATS, 1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// each thread does the same number of lookups, the time should stay flat as threads are added
+
+	public void testLookupsOneThread() {
+		runLookups(1);
+	}
+
+	public void testLookupsTwoThreads() {
+		runLookups(2);
+	}
+
+	public void testLookupsFourThreads() {
+		runLookups(4);
+	}
+
+	public void testLookupsEightThreads() {
+		runLookups(8);
+	}
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.perf;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumUtilities;
+
+/**
+ * Performance tests for computing artifact checksums
+ */
+public class ChecksumPerformanceTest extends ProvisioningPerformanceTest {
+	private static final int REPEATS = 5;
+	private static final int FILE_COUNT = 200;
+	private static final int FILE_SIZE = 1024 * 1024;
+	private static final String[] ALGORITHMS = {"MD5", "SHA-256", "SHA-512"};
+
+	private List<File> files;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		File folder = getTempFolder();
+		Random random = new Random(42);
+		byte[] content = new byte[FILE_SIZE];
+		files = new ArrayList<>(FILE_COUNT);
+		for (int i = 0; i < FILE_COUNT; i++) {
+			random.nextBytes(content);
+			File file = new File(folder, "artifact" + i + ".jar");
+			try (OutputStream out = new FileOutputStream(file)) {
+				out.write(content);
+			}
+			files.add(file);
+		}
+	}
+
+	/**
+	 * The way checksums were computed before, a chain of digest streams per file.
+	 */
+	private static void digestStreams(File file) throws IOException, NoSuchAlgorithmException {
+		InputStream stream = new FileInputStream(file);
+		try {
+			for (String algorithm : ALGORITHMS)
+				stream = new DigestInputStream(stream, MessageDigest.getInstance(algorithm));
+			stream.transferTo(OutputStream.nullOutputStream());
+		} finally {
+			stream.close();
+		}
+	}
+
+	public void testChainedDigestStreams() {
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				try {
+					for (File file : files)
+						digestStreams(file);
+				} catch (IOException | NoSuchAlgorithmException e) {
+					fail("Computing checksums failed", e);
+				}
+			}
+		}.run(this, "Chained digest streams for " + FILE_COUNT + " files", REPEATS, 1);
+	}
+
+	public void testSinglePassChecksums() {
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				for (File file : files) {
+					IStatus status = ChecksumUtilities.calculateChecksums(file, new HashMap<>(), Collections.emptyList());
+					assertTrue(status.toString(), status.isOK());
+				}
+			}
+		}.run(this, "Single pass checksums for " + FILE_COUNT + " files", REPEATS, 1);
+	}
+
+	public void testParallelChecksums() {
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				IStatus status = ChecksumUtilities.calculateChecksums(files, new HashMap<>(), Collections.emptyList(),
+						Runtime.getRuntime().availableProcessors());
+				assertTrue(status.toString(), status.isOK());
+			}
+		}.run(this, "Parallel checksums for " + FILE_COUNT + " files", REPEATS, 1);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -13,13 +13,19 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.perf;
 
-import java.io.File;
+import java.io.*;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.tests.harness.PerformanceTestRunner;
-import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryIO;
+import org.eclipse.equinox.internal.p2.persistence.XMLParser;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 
@@ -28,6 +34,8 @@ import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
  */
 public class MetadataRepositoryPerformanceTest extends ProvisioningPerformanceTest {
 	private static final int REPEATS = 5;
+	private static final int LARGE_IU_COUNT = 100000;
+	private static final String[] OS = {"linux", "win32", "macosx"};
 	protected File repoLocation;
 	IMetadataRepository repository;
 
@@ -73,4 +81,51 @@ public class MetadataRepositoryPerformanceTest extends ProvisioningPerformanceTe
 			}
 		}.run(this, "Test query local metadata repo for " + IU_COUNT + " ius", REPEATS, 10);
 	}
+
+	private IInstallableUnit generateIUWithRequirement(int i) {
+		MetadataFactory.InstallableUnitDescription desc = new MetadataFactory.InstallableUnitDescription();
+		desc.setId("org.eclipse.someiu" + i);
+		desc.setVersion(Version.createOSGi(1, 1, i % 100));
+		desc.setFilter("(osgi.os=" + OS[i % OS.length] + ")");
+		desc.setCapabilities(new IProvidedCapability[] {MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, desc.getId(), desc.getVersion())});
+		desc.setRequirements(new IRequirement[] {MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "org.eclipse.someiu" + i / 2, new VersionRange("[1.0.0,2.0.0)"), null, false, false)});
+		return MetadataFactory.createInstallableUnit(desc);
+	}
+
+	private void loadLargeRepository(boolean fastParsing) throws IOException {
+		List<IInstallableUnit> ius = new ArrayList<>(LARGE_IU_COUNT);
+		for (int i = 0; i < LARGE_IU_COUNT; i++) {
+			ius.add(generateIUWithRequirement(i));
+		}
+		repository.setProperty(IRepository.PROP_COMPRESSED, "false");
+		repository.addInstallableUnits(ius);
+		File content = new File(repoLocation, "content.xml");
+		URL location = content.toURI().toURL();
+		String previous = System.setProperty(XMLParser.PROP_FAST_PARSING, Boolean.toString(fastParsing));
+		try {
+			new PerformanceTestRunner() {
+				@Override
+				protected void test() {
+					try {
+						assertNotNull(new MetadataRepositoryIO(getAgent()).read(location, new FileInputStream(content), new NullProgressMonitor()));
+					} catch (IOException | ProvisionException e) {
+						fail("Loading failed", e);
+					}
+				}
+			}.run(this, "Load a content.xml of " + LARGE_IU_COUNT + " ius" + (fastParsing ? " with fast parsing" : ""), REPEATS, 1);
+		} finally {
+			if (previous == null)
+				System.clearProperty(XMLParser.PROP_FAST_PARSING);
+			else
+				System.setProperty(XMLParser.PROP_FAST_PARSING, previous);
+		}
+	}
+
+	public void testLoadLargeRepository() throws IOException {
+		loadLargeRepository(false);
+	}
+
+	public void testLoadLargeRepositoryFastParsing() throws IOException {
+		loadLargeRepository(true);
+	}
 }
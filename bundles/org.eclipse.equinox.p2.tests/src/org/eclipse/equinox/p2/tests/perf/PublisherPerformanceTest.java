@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 IBM Corporation and others.
+ * Copyright (c) 2009, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -13,10 +13,16 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.perf;
 
+import java.io.*;
+import java.util.jar.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
-import org.eclipse.equinox.p2.publisher.IPublisherResult;
-import org.eclipse.equinox.p2.publisher.PublisherResult;
+import org.eclipse.equinox.p2.publisher.*;
+import org.eclipse.equinox.p2.publisher.actions.JREAction;
+import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.QueryUtil;
 
@@ -77,4 +83,57 @@ public class PublisherPerformanceTest extends ProvisioningPerformanceTest {
 			}
 		}.run(this, "Test query PublisherResult for " + IU_COUNT + " ius", REPEATS, 10);
 	}
+
+	public void testPublishSyntheticSiteSequential() throws IOException {
+		publishSyntheticSite(1);
+	}
+
+	public void testPublishSyntheticSiteParallel() throws IOException {
+		publishSyntheticSite(Runtime.getRuntime().availableProcessors());
+	}
+
+	private void publishSyntheticSite(int parallelism) throws IOException {
+		final int BUNDLE_COUNT = 10000;
+		File bundles = new File(getTempFolder(), "bundles");
+		for (int i = 0; i < BUNDLE_COUNT; i++)
+			writeBundle(new File(bundles, "bundle" + i + ".jar"), "org.eclipse.somebundle" + i, i);
+		new PerformanceTestRunner() {
+			int run;
+
+			@Override
+			protected void test() {
+				File target = new File(getTempFolder(), "repo" + run++);
+				PublisherInfo info = new PublisherInfo();
+				info.setArtifactOptions(IPublisherInfo.A_PUBLISH | IPublisherInfo.A_INDEX);
+				try {
+					info.setArtifactRepository(createArtifactRepository(target.toURI(), null));
+				} catch (ProvisionException e) {
+					fail("Failed to create the artifact repository", e);
+				}
+				BundlesAction bundlesAction = new BundlesAction(new File[] {bundles});
+				bundlesAction.setParallelism(parallelism);
+				Publisher publisher = new Publisher(info);
+				publisher.setParallelism(parallelism);
+				IStatus status = publisher.publish(new IPublisherAction[] {bundlesAction, new JREAction("JavaSE-17")}, new NullProgressMonitor());
+				assertTrue(status.toString(), status.isOK());
+			}
+		}.run(this, "Publish " + BUNDLE_COUNT + " bundles with " + parallelism + " threads", 1, 1);
+	}
+
+	private static void writeBundle(File file, String bsn, int i) throws IOException {
+		file.getParentFile().mkdirs();
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue("Bundle-ManifestVersion", "2");
+		attributes.putValue("Bundle-SymbolicName", bsn);
+		attributes.putValue("Bundle-Version", "1.0." + i);
+		attributes.putValue("Export-Package", bsn + ";version=\"1.0.0\"");
+		attributes.putValue("Import-Package", "org.osgi.framework;version=\"1.6.0\"");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest)) {
+			out.putNextEntry(new JarEntry(bsn.replace('.', '/') + "/Activator.class"));
+			out.write(new byte[1024]);
+			out.closeEntry();
+		}
+	}
 }
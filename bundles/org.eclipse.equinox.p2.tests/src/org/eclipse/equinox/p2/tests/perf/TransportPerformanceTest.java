@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.transport.ecf.RepositoryTransport;
+import org.eclipse.equinox.p2.tests.TestHttpServer;
+
+/**
+ * Performance tests downloading many small files from a local server, as a
+ * provisioning operation fetches artifacts, with the ECF transport and with the
+ * transport using the HTTP client of the JRE.
+ */
+public class TransportPerformanceTest extends ProvisioningPerformanceTest {
+	private static final int REPEATS = 5;
+	private static final int FILE_COUNT = 200;
+	private static final byte[] CONTENT = new byte[32 * 1024];
+
+	private TestHttpServer server;
+	URI base;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Arrays.fill(CONTENT, (byte) 'x');
+		server = new TestHttpServer(exchange -> {
+			try {
+				exchange.sendResponseHeaders(200, CONTENT.length);
+				exchange.getResponseBody().write(CONTENT);
+			} finally {
+				exchange.close();
+			}
+		});
+		base = server.getBase();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+		super.tearDown();
+	}
+
+	private void runDownloads(Transport transport, String name, int threadCount) {
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			new PerformanceTestRunner() {
+				@Override
+				protected void test() {
+					Future<?>[] futures = new Future<?>[FILE_COUNT];
+					for (int i = 0; i < FILE_COUNT; i++) {
+						URI location = base.resolve("file" + i + ".jar");
+						futures[i] = executor.submit(() -> {
+							ByteArrayOutputStream target = new ByteArrayOutputStream();
+							assertOK("Download failed", transport.download(location, target, new NullProgressMonitor()));
+							assertEquals(CONTENT.length, target.size());
+						});
+					}
+					try {
+						for (Future<?> future : futures)
+							future.get();
+					} catch (InterruptedException | ExecutionException e) {
+						fail("Download failed", e);
+					}
+				}
+			}.run(this, "Download " + FILE_COUNT + " files with " + name + " from " + threadCount + " threads", REPEATS, 1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Transport createRepositoryTransport() {
+		return new RepositoryTransport() {
+			@Override
+			public URI getSecureLocation(URI location) {
+				// the test server only speaks plain http
+				return location;
+			}
+		};
+	}
+
+	public void testRepositoryTransportOneThread() {
+		runDownloads(createRepositoryTransport(), "ECF", 1);
+	}
+
+	public void testRepositoryTransportEightThreads() {
+		runDownloads(createRepositoryTransport(), "ECF", 8);
+	}
+
+	public void testHttpClientTransportOneThread() {
+		runDownloads(TestHttpServer.createTransport(), "HTTP client", 1);
+	}
+
+	public void testHttpClientTransportEightThreads() {
+		runDownloads(TestHttpServer.createTransport(), "HTTP client", 8);
+	}
+}
@@ -54,7 +54,8 @@ import org.junit.runners.Suite;
 		ProductActionTest.class, ProductActionCapturingTest.class,
 		ProductActionTestMac.class, ProductActionWithJRELocationTest.class, ProductContentTypeTest.class,
 		ProductFileAdviceTest.class, ProductFileTest.class, RootFilesActionTest.class, RootIUActionTest.class,
-		GeneralPublisherTests.class, VersionAdviceTest.class })
+		GeneralPublisherTests.class, PublisherSchedulingTest.class, FingerprintIndexTest.class,
+		VersionAdviceTest.class })
 public class AllTests {
 // test suite
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License 2.0 which accompanies this distribution, and is
+ * available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Eclipse contributors - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.p2.tests.publisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintIndex;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class FingerprintIndexTest extends AbstractProvisioningTest {
+
+	private File folder;
+	private File indexFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = getTempFolder();
+		indexFile = new File(folder, FingerprintIndex.INDEX_FILE);
+	}
+
+	private File createInput(String name, String content) throws IOException {
+		File input = new File(folder, name);
+		Files.writeString(input.toPath(), content);
+		return input;
+	}
+
+	public void testUnchangedInputIsReused() throws IOException {
+		File input = createInput("a_1.0.0.jar", "content");
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0"));
+		Map<String, String> properties = Map.of(IArtifactDescriptor.ARTIFACT_SIZE, "7");
+
+		FingerprintIndex index = new FingerprintIndex(indexFile);
+		assertFalse(index.isUnchanged(input));
+		index.recordManifest(input, Map.of("Bundle-SymbolicName", "a"));
+		index.recordArtifact(input, key, properties);
+		index.save();
+
+		index = new FingerprintIndex(indexFile);
+		assertTrue(index.isUnchanged(input));
+		assertEquals("a", index.getManifest(input).get("Bundle-SymbolicName"));
+		assertEquals(properties, index.getArtifactProperties(input, key));
+		assertNull(index.getArtifactProperties(input, new ArtifactKey("osgi.bundle", "a", Version.create("2.0.0"))));
+		assertEquals(Set.of(key), index.getReusableKeys());
+		assertEquals(Set.of(key), index.getPublishedKeys());
+		assertTrue(index.getChangedKeys().isEmpty());
+	}
+
+	public void testTouchedInputIsComparedByContent() throws IOException {
+		File input = createInput("a_1.0.0.jar", "content");
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0"));
+		FingerprintIndex index = new FingerprintIndex(indexFile);
+		index.recordArtifact(input, key, Collections.emptyMap());
+		index.save();
+
+		assertTrue(input.setLastModified(input.lastModified() - 10000));
+		assertTrue(new FingerprintIndex(indexFile).isUnchanged(input));
+
+		// same size, different content
+		Files.writeString(input.toPath(), "CONTENT");
+		assertTrue(input.setLastModified(input.lastModified() - 20000));
+		index = new FingerprintIndex(indexFile);
+		assertFalse(index.isUnchanged(input));
+		assertNull(index.getManifest(input));
+		assertEquals(Set.of(key), index.getChangedKeys());
+		assertTrue(index.getReusableKeys().isEmpty());
+	}
+
+	public void testRemovedInputIsDropped() throws IOException {
+		File input = createInput("a_1.0.0.jar", "content");
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0"));
+		FingerprintIndex index = new FingerprintIndex(indexFile);
+		index.recordArtifact(input, key, Collections.emptyMap());
+		index.save();
+
+		assertTrue(input.delete());
+		index = new FingerprintIndex(indexFile);
+		// a removed input is neither reusable nor replaced
+		assertTrue(index.getReusableKeys().isEmpty());
+		assertTrue(index.getChangedKeys().isEmpty());
+	}
+
+	public void testCorruptIndexIsIgnored() throws IOException {
+		File input = createInput("a_1.0.0.jar", "content");
+		Files.writeString(indexFile.toPath(), "garbage");
+		assertFalse(new FingerprintIndex(indexFile).isUnchanged(input));
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License 2.0 which accompanies this distribution, and is
+ * available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Eclipse contributors - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.p2.tests.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.publisher.*;
+import org.eclipse.equinox.p2.publisher.actions.IPropertyAdvice;
+import org.eclipse.equinox.p2.publisher.actions.ITouchpointAdvice;
+import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
+import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAction;
+import org.eclipse.equinox.p2.tests.TestActivator;
+import org.junit.Test;
+
+public class PublisherSchedulingTest {
+
+	static class RecordingAction extends AbstractPublisherAction {
+		final String name;
+		final PublisherActionAccess access;
+		final List<String> log;
+		CountDownLatch awaited;
+		CountDownLatch started = new CountDownLatch(1);
+
+		RecordingAction(String name, PublisherActionAccess access, List<String> log) {
+			this.name = name;
+			this.access = access;
+			this.log = log;
+		}
+
+		@Override
+		public PublisherActionAccess getAccess() {
+			return access;
+		}
+
+		@Override
+		public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
+			started.countDown();
+			if (awaited != null) {
+				try {
+					if (!awaited.await(10, TimeUnit.SECONDS))
+						return Status.error(name + " did not run concurrently");
+				} catch (InterruptedException e) {
+					return Status.CANCEL_STATUS;
+				}
+			}
+			log.add(name);
+			return Status.OK_STATUS;
+		}
+	}
+
+	@Test
+	public void testIndependentActionsOverlap() {
+		List<String> log = Collections.synchronizedList(new ArrayList<>());
+		RecordingAction bundles = new RecordingAction("bundles", new PublisherActionAccess().writesIUs(PublisherActionAccess.KIND_BUNDLE), log);
+		RecordingAction jre = new RecordingAction("jre", new PublisherActionAccess().writesIUs(PublisherActionAccess.KIND_JRE), log);
+		// the first action only completes once the second one started
+		bundles.awaited = jre.started;
+
+		Publisher publisher = new Publisher(new PublisherInfo(), new PublisherResult());
+		publisher.setParallelism(2);
+		IStatus status = publisher.publish(new IPublisherAction[] {bundles, jre}, new NullProgressMonitor());
+		assertTrue(status.toString(), status.isOK());
+		assertEquals(Arrays.asList("jre", "bundles"), log);
+	}
+
+	@Test
+	public void testInterferingActionsRunInOrder() {
+		List<String> log = Collections.synchronizedList(new ArrayList<>());
+		RecordingAction writer = new RecordingAction("writer", new PublisherActionAccess().writesAdvice(ITouchpointAdvice.class), log);
+		RecordingAction reader = new RecordingAction("reader", new PublisherActionAccess().readsAdvice(IPublisherAdvice.class), log);
+		RecordingAction unrelated = new RecordingAction("unrelated", new PublisherActionAccess().readsAdvice(IPropertyAdvice.class), log);
+		RecordingAction unknown = new RecordingAction("unknown", null, log);
+
+		Publisher publisher = new Publisher(new PublisherInfo(), new PublisherResult());
+		publisher.setParallelism(4);
+		IStatus status = publisher.publish(new IPublisherAction[] {writer, reader, unrelated, unknown}, new NullProgressMonitor());
+		assertTrue(status.toString(), status.isOK());
+		assertTrue(log.indexOf("writer") < log.indexOf("reader"));
+		// an action without access description waits for all the others
+		assertEquals("unknown", log.get(3));
+	}
+
+	@Test
+	public void testAccessInterference() {
+		PublisherActionAccess bundles = new PublisherActionAccess().readsIUs(PublisherActionAccess.KIND_BUNDLE).writesIUs(PublisherActionAccess.KIND_BUNDLE);
+		PublisherActionAccess moreBundles = new PublisherActionAccess().writesIUs(PublisherActionAccess.KIND_BUNDLE);
+		PublisherActionAccess features = new PublisherActionAccess().writesIUs(PublisherActionAccess.KIND_FEATURE);
+		assertTrue(bundles.interferesWith(moreBundles));
+		assertTrue(moreBundles.interferesWith(bundles));
+		assertFalse(bundles.interferesWith(features));
+		// adding IUs of the same kind commutes
+		assertFalse(moreBundles.interferesWith(new PublisherActionAccess().writesIUs(PublisherActionAccess.KIND_BUNDLE)));
+	}
+
+	@Test
+	public void testBundlesAndFeaturesOverlap() {
+		File testData = TestActivator.getTestDataFolder();
+		BundlesAction bundles = new BundlesAction(new File[] {new File(testData, "reconciler/plugins/myBundle_1.0.0.jar")});
+		FeaturesAction features = new FeaturesAction(new File[] {new File(testData, "reconciler/features/myFeature_1.0.0")});
+		assertFalse(features.getAccess().interferesWith(bundles.getAccess()));
+
+		// each action only goes on consulting advice once the other one started to
+		CountDownLatch consulting = new CountDownLatch(2);
+		Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+		List<String> failures = Collections.synchronizedList(new ArrayList<>());
+		PublisherInfo info = new PublisherInfo() {
+			@Override
+			public <T extends IPublisherAdvice> Collection<T> getAdvice(String configSpec, boolean includeDefault, String id, Version version, Class<T> type) {
+				if (threads.add(Thread.currentThread())) {
+					consulting.countDown();
+					try {
+						if (!consulting.await(10, TimeUnit.SECONDS))
+							failures.add(id + " did not run concurrently");
+					} catch (InterruptedException e) {
+						failures.add(id + " interrupted");
+					}
+				}
+				return super.getAdvice(configSpec, includeDefault, id, version, type);
+			}
+		};
+		PublisherResult result = new PublisherResult();
+		Publisher publisher = new Publisher(info, result);
+		publisher.setParallelism(2);
+		IStatus status = publisher.publish(new IPublisherAction[] {features, bundles}, new NullProgressMonitor());
+		assertTrue(status.toString(), status.isOK());
+		assertEquals(Collections.emptyList(), failures);
+		assertEquals(1, result.getIUs("myBundle", null).size());
+		assertEquals(1, result.getIUs("myFeature.feature.group", null).size());
+	}
+
+	@Test
+	public void testFeaturesUnpackingBundlesRunFirst() {
+		File testData = TestActivator.getTestDataFolder();
+		BundlesAction bundles = new BundlesAction(new File[] {new File(testData, "extensionlocation/plugins")});
+		// the feature unpacks some of its bundles, which changes their shape
+		FeaturesAction features = new FeaturesAction(new File[] {new File(testData, "extensionlocation/features")});
+		assertTrue(features.getAccess().interferesWith(bundles.getAccess()));
+		assertTrue(bundles.getAccess().interferesWith(features.getAccess()));
+	}
+
+	@Test
+	public void testAdviceOfOtherKind() {
+		PublisherActionAccess bundleAdvice = new PublisherActionAccess().writesAdvice(PublisherActionAccess.KIND_BUNDLE, AdviceFileAdvice.class);
+		PublisherActionAccess featureReader = new PublisherActionAccess().readsAdvice(PublisherActionAccess.KIND_FEATURE, IPublisherAdvice.class);
+		PublisherActionAccess bundleReader = new PublisherActionAccess().readsAdvice(PublisherActionAccess.KIND_BUNDLE, ITouchpointAdvice.class);
+		PublisherActionAccess anyReader = new PublisherActionAccess().readsAdvice(ITouchpointAdvice.class);
+		assertFalse(bundleAdvice.interferesWith(featureReader));
+		assertTrue(bundleAdvice.interferesWith(bundleReader));
+		assertTrue(anyReader.interferesWith(bundleAdvice));
+	}
+}
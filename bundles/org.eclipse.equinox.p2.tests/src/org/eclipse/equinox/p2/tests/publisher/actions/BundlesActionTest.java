@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 Code 9 and others.
+ * Copyright (c) 2008, 2024 Code 9 and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -197,6 +197,39 @@ public class BundlesActionTest extends ActionTest {
 		assertEquals("German Foo", utils.getIUProperty(iu, IInstallableUnit.PROP_NAME, Locale.GERMAN.toString()));
 	}
 
+	public void testParallelPublishingMatchesSequential() {
+		File fragmentTest = new File(TestActivator.getTestDataFolder(), "FragmentPublisherTest");//$NON-NLS-1$
+		List<File> locations = new ArrayList<>(Arrays.asList(TEST_BASE.listFiles()));
+		locations.add(new File(fragmentTest, "foo"));//$NON-NLS-1$
+		locations.add(new File(fragmentTest, "foo.fragment"));//$NON-NLS-1$
+		File[] files = locations.toArray(new File[locations.size()]);
+
+		PublisherResult sequential = new PublisherResult();
+		BundlesAction sequentialAction = new BundlesAction(files);
+		sequentialAction.setParallelism(1);
+		assertEquals(Status.OK_STATUS, sequentialAction.perform(new PublisherInfo(), sequential, new NullProgressMonitor()));
+
+		PublisherResult parallel = new PublisherResult();
+		BundlesAction parallelAction = new BundlesAction(files);
+		parallelAction.setParallelism(4);
+		assertEquals(Status.OK_STATUS, parallelAction.perform(new PublisherInfo(), parallel, new NullProgressMonitor()));
+
+		for (String type : new String[] { IPublisherResult.ROOT, IPublisherResult.NON_ROOT }) {
+			Collection<IInstallableUnit> expected = sequential.getIUs(null, type);
+			Collection<IInstallableUnit> actual = parallel.getIUs(null, type);
+			assertEquals(expected.size(), actual.size());
+			for (IInstallableUnit iu : expected) {
+				IInstallableUnit other = parallel.getIU(iu.getId(), iu.getVersion(), type);
+				assertNotNull(iu.toString(), other);
+				assertEquals(iu.getProperties(), other.getProperties());
+				assertEquals(new ArrayList<>(iu.getRequirements()), new ArrayList<>(other.getRequirements()));
+				assertEquals(new ArrayList<>(iu.getProvidedCapabilities()), new ArrayList<>(other.getProvidedCapabilities()));
+			}
+		}
+		// the localization fragment requires the host to be published first
+		assertEquals(1, parallel.getIUs("foo.fragment.translated_host_properties", IPublisherResult.NON_ROOT).size());//$NON-NLS-1$
+	}
+
 	private void verifyBundlesAction() throws Exception {
 		// verify publisher result
 		verifyBundle1();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2020 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -82,6 +82,7 @@ public class AbstractReconcilerTest extends AbstractProvisioningTest {
 
 	private String propertyToPlatformArchive;
 	protected boolean debug = false;
+	protected boolean checkConfiguration = true;
 
 	static {
 		loadPlatformZipPropertiesFromFile();
@@ -689,7 +690,10 @@ public class AbstractReconcilerTest extends AbstractProvisioningTest {
 		List<String> command = new ArrayList<>();
 		Collections.addAll(command, (new File(location == null ? output : location, getExeFolder() + "eclipse")).getAbsolutePath(), "--launcher.suppressErrors", "-nosplash", "-vm", exe.getAbsolutePath());
 		Collections.addAll(command, args);
-		Collections.addAll(command, "-vmArgs", "-Dosgi.checkConfiguration=true", "-Dosgi.dataAreaRequiresExplicitInit=false");
+		Collections.addAll(command, "-vmArgs", "-Dosgi.dataAreaRequiresExplicitInit=false");
+		// forces the reconciler to run even if nothing changed
+		if (checkConfiguration)
+			command.add("-Dosgi.checkConfiguration=true");
 		// command-line if you want to run and allow a remote debugger to connect
 		if (debug)
 			Collections.addAll(command, "-Xdebug", "-Xnoagent", "-Xrunjdwp:transport=dt_socket,server=y,suspend=y,address=8787");
@@ -705,6 +709,10 @@ public class AbstractReconcilerTest extends AbstractProvisioningTest {
 		this.debug = on;
 	}
 
+	protected void checkConfiguration(boolean on) {
+		this.checkConfiguration = on;
+	}
+
 	protected void parseExitdata(String message) {
 		// if the exit data contains a message telling us the location of the log file, then get it
 		String data = TestActivator.getContext().getProperty("eclipse.exitdata");
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.reconciler.dropins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/*
+ * Tests for the digest the reconciler keeps of the reconciled state, which lets it skip
+ * the reconciliation on startup when nothing changed. The reconciler is run without
+ * osgi.checkConfiguration so that it decides on its own whether to reconcile. A
+ * reconciliation writes the digest file again, so its time stamp tells whether it ran.
+ */
+public class DigestTests extends AbstractReconcilerTest {
+	private static final String DIGEST_FILENAME = "cache.digest";
+	private static final long OLD_TIMESTAMP = 1000000000000L;
+
+	public DigestTests(String name) {
+		super(name);
+	}
+
+	/*
+	 * The list of tests for this class. Order is important since some of them rely
+	 * on the state from the previous test run.
+	 */
+	public static Test suite() {
+		TestSuite suite = new ReconcilerTestSuite();
+		suite.setName(DigestTests.class.getName());
+		suite.addTest(new DigestTests("testUnchanged"));
+		suite.addTest(new DigestTests("testJarReplacedInPlace"));
+		suite.addTest(new DigestTests("testProfileChanged"));
+		suite.addTest(new DigestTests("testMissingDigest"));
+		return suite;
+	}
+
+	public void testUnchanged() {
+		assertInitialized();
+		reconcile("1.0");
+		File digest = getDigestFile();
+		assertNotNull("1.1", digest);
+		assertTrue("1.2", digest.setLastModified(OLD_TIMESTAMP));
+
+		checkConfiguration(false);
+		reconcile("2.0");
+		assertEquals("2.1", OLD_TIMESTAMP, digest.lastModified());
+	}
+
+	public void testJarReplacedInPlace() throws IOException {
+		assertInitialized();
+		checkConfiguration(false);
+		File jar = getTestData("1.0", "testData/reconciler/plugins/myBundle_1.0.0.jar");
+		add("1.1", "dropins", jar);
+		reconcile("1.2");
+		assertExistsInBundlesInfo("1.3", "myBundle", "1.0.0");
+
+		// same name, other content, the dropins folder itself does not change
+		File dropins = new File(output, getRootFolder() + "dropins");
+		long dropinsTimestamp = dropins.lastModified();
+		File newJar = getTestData("2.0", "testData/reconciler/plugins/myBundle_2.0.0.jar");
+		Files.copy(newJar.toPath(), new File(dropins, jar.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		assertTrue("2.1", dropins.setLastModified(dropinsTimestamp));
+		reconcile("2.2");
+		assertExistsInBundlesInfo("2.3", "myBundle", "2.0.0");
+
+		// cleanup
+		remove("99.0", "dropins", jar.getName());
+		reconcile("99.1");
+		assertDoesNotExistInBundlesInfo("99.2", "myBundle");
+	}
+
+	public void testProfileChanged() throws IOException {
+		assertInitialized();
+		reconcile("1.0");
+		File digest = getDigestFile();
+		assertNotNull("1.1", digest);
+		assertTrue("1.2", digest.setLastModified(OLD_TIMESTAMP));
+
+		// a new state of the profile, as written by an install
+		File profile = getLatestProfileFile();
+		assertNotNull("2.0", profile);
+		String name = profile.getName();
+		long timestamp = Long.parseLong(name.substring(0, name.indexOf('.')));
+		Files.copy(profile.toPath(), new File(profile.getParentFile(), (timestamp + 1) + name.substring(name.indexOf('.'))).toPath());
+
+		checkConfiguration(false);
+		reconcile("3.0");
+		assertFalse("3.1", OLD_TIMESTAMP == digest.lastModified());
+	}
+
+	public void testMissingDigest() {
+		assertInitialized();
+		reconcile("1.0");
+		File digest = getDigestFile();
+		assertNotNull("1.1", digest);
+		assertTrue("1.2", digest.delete());
+
+		// the time stamps tell that nothing changed, the digest is not written
+		checkConfiguration(false);
+		reconcile("2.0");
+		assertFalse("2.1", digest.exists());
+
+		// the time stamps tell that the dropins changed
+		File jar = getTestData("3.0", "testData/reconciler/plugins/myBundle_1.0.0.jar");
+		add("3.1", "dropins", jar);
+		reconcile("3.2");
+		assertExistsInBundlesInfo("3.3", "myBundle", "1.0.0");
+		assertTrue("3.4", digest.exists());
+
+		// cleanup
+		remove("99.0", "dropins", jar.getName());
+		reconcile("99.1");
+		assertDoesNotExistInBundlesInfo("99.2", "myBundle");
+	}
+
+	/*
+	 * Return the digest file in the data area of the reconciler, or null if there is none.
+	 */
+	private File getDigestFile() {
+		File osgiArea = new File(output, getRootFolder() + "configuration/org.eclipse.osgi");
+		try (Stream<Path> files = Files.walk(osgiArea.toPath())) {
+			return files.filter(file -> file.getFileName().toString().equals(DIGEST_FILENAME)).map(Path::toFile).findFirst().orElse(null);
+		} catch (IOException e) {
+			fail("Unable to search for the digest file", e);
+			return null;
+		}
+	}
+
+	/*
+	 * Return the file of the latest state of the profile, or null if there is none.
+	 */
+	private File getLatestProfileFile() {
+		File registry = new File(output, getRootFolder() + "p2/org.eclipse.equinox.p2.engine/profileRegistry");
+		File[] profiles = registry.listFiles(file -> file.getName().endsWith(".profile") && file.isDirectory());
+		assertNotNull(profiles);
+		assertEquals("Should only be one profile in registry.", 1, profiles.length);
+		File latest = null;
+		long latestTimestamp = -1;
+		File[] states = profiles[0].listFiles();
+		for (int i = 0; states != null && i < states.length; i++) {
+			String name = states[i].getName();
+			int index = name.indexOf('.');
+			if (index <= 0 || !name.substring(index).startsWith(".profile"))
+				continue;
+			try {
+				long timestamp = Long.parseLong(name.substring(0, index));
+				if (timestamp > latestTimestamp) {
+					latestTimestamp = timestamp;
+					latest = states[i];
+				}
+			} catch (NumberFormatException e) {
+				// not a state of the profile
+			}
+		}
+		return latest;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2018 Cloudsmith Inc and others.
+ * Copyright (c) 2009, 2024 Cloudsmith Inc and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -21,7 +21,7 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ CacheManagerTest.class, RepositoryHelperTest.class, RepositoryExtensionPointTest.class,
-		FileReaderTest2.class, ChecksumHelperTest.class })
+		FileReaderTest2.class, ChecksumHelperTest.class, HttpClientTransportTest.class })
 public class AllTests {
 	// test suite
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2017 EclipseSource.
+ * Copyright (c) 2011, 2024 EclipseSource.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -21,6 +21,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -28,6 +32,7 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.equinox.internal.p2.repository.AuthenticationFailedException;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
 import org.eclipse.equinox.internal.p2.repository.Messages;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.p2.core.IAgentLocation;
@@ -143,6 +148,95 @@ public class CacheManagerTest {
 		}
 	}
 
+	@Test
+	public void testConditionalRefresh() throws ProvisionException, IOException {
+		List<String> requests = new ArrayList<>();
+		CacheManager cacheManagerWithStubTransport = new CacheManager(new AgentLocationMock(), createIndexTransport(requests));
+
+		URI remoteRepository = URI.create("https://foo.bar/repository/"); //$NON-NLS-1$
+		File cache = cacheManagerWithStubTransport.createCache(remoteRepository, cachePrefix, new NullProgressMonitor());
+		assertEquals(ONE_HOUR * 1000L, cache.lastModified());
+		assertEquals(List.of("/repository/content.jar null", "/repository/content.xml null"), requests); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// the cache is revalidated with one request, and the missing jar is not asked for again
+		requests.clear();
+		File cache2 = cacheManagerWithStubTransport.createCache(remoteRepository, cachePrefix, new NullProgressMonitor());
+		assertEquals(cache, cache2);
+		assertEquals(List.of("/repository/content.xml \"v1\""), requests); //$NON-NLS-1$
+		assertEquals("<repository/>", new String(Files.readAllBytes(cache2.toPath()), StandardCharsets.UTF_8)); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testMissingFileExpires() throws ProvisionException, IOException {
+		List<String> requests = new ArrayList<>();
+		long[] timeout = {ONE_HOUR};
+		CacheManager cacheManagerWithStubTransport = new CacheManager(new AgentLocationMock(), createIndexTransport(requests)) {
+			@Override
+			protected long getMissingFileTimeout() {
+				return timeout[0];
+			}
+		};
+
+		URI remoteRepository = URI.create("https://foo.bar/repository/"); //$NON-NLS-1$
+		cacheManagerWithStubTransport.createCache(remoteRepository, cachePrefix, new NullProgressMonitor());
+		requests.clear();
+		cacheManagerWithStubTransport.createCache(remoteRepository, cachePrefix, new NullProgressMonitor());
+		assertEquals(List.of("/repository/content.xml \"v1\""), requests); //$NON-NLS-1$
+
+		// once expired, the missing jar is asked for again
+		timeout[0] = 0;
+		requests.clear();
+		cacheManagerWithStubTransport.createCache(remoteRepository, cachePrefix, new NullProgressMonitor());
+		assertEquals(List.of("/repository/content.jar null", "/repository/content.xml \"v1\""), requests); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * Returns a transport serving a content.xml, and no content.jar, which records
+	 * the requests made.
+	 */
+	private Transport createIndexTransport(List<String> requests) {
+		return new Transport() {
+
+			@Override
+			public InputStream stream(URI toDownload, IProgressMonitor monitor) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public long getLastModified(URI toDownload, IProgressMonitor monitor) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public IStatus downloadIfModified(URI toDownload, OutputStream target, long lastModified, String etag,
+					IProgressMonitor monitor) {
+				requests.add(toDownload.getPath() + ' ' + etag);
+				if (toDownload.getPath().endsWith(".jar")) { //$NON-NLS-1$
+					return new DownloadStatus(IStatus.ERROR, "test", ProvisionException.ARTIFACT_NOT_FOUND, "not found", //$NON-NLS-1$ //$NON-NLS-2$
+							new FileNotFoundException());
+				}
+				DownloadStatus status = new DownloadStatus(IStatus.OK, "test", "OK"); //$NON-NLS-1$ //$NON-NLS-2$
+				status.setLastModified(ONE_HOUR * 1000L);
+				status.setETag("\"v1\""); //$NON-NLS-1$
+				if (status.getETag().equals(etag)) {
+					status.setNotModified(true);
+				} else {
+					try {
+						target.write("<repository/>".getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+					} catch (IOException e) {
+						fail(e.getMessage());
+					}
+				}
+				return status;
+			}
+		};
+	}
+
 	private URI createRepistory() throws IOException {
 		File repository = File.createTempFile("remoteFile", ""); //$NON-NLS-1$//$NON-NLS-2$
 		repository.deleteOnExit();
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import static org.junit.Assert.assertThrows;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.p2.repository.HttpClientTransport;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestHttpServer;
+
+/**
+ * Tests the transport using the HTTP client of the JRE against a server
+ * running in the test.
+ */
+public class HttpClientTransportTest extends AbstractProvisioningTest {
+	private static final String LAST_MODIFIED = "Tue, 15 Nov 1994 08:12:31 GMT";
+	private static final String ETAG = "\"v1\"";
+	private static final byte[] CONTENT = "some content".getBytes(StandardCharsets.UTF_8);
+
+	private TestHttpServer server;
+	private URI base;
+	private HttpClientTransport transport;
+	final AtomicInteger requests = new AtomicInteger();
+	// the number of requests still to be answered as temporarily unavailable
+	final AtomicInteger unavailable = new AtomicInteger();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = new TestHttpServer(this::handle);
+		base = server.getBase();
+		transport = TestHttpServer.createTransport();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+		super.tearDown();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			String path = exchange.getRequestURI().getPath();
+			if (path.equals("/redirect")) {
+				exchange.getResponseHeaders().set("Location", "/file.txt");
+				exchange.sendResponseHeaders(302, -1);
+				return;
+			}
+			if (unavailable.getAndDecrement() > 0) {
+				exchange.sendResponseHeaders(503, -1);
+				return;
+			}
+			if (!path.equals("/file.txt")) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+			exchange.getResponseHeaders().set("ETag", ETAG);
+			if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, CONTENT.length);
+			exchange.getResponseBody().write(CONTENT);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static long lastModified() {
+		return ZonedDateTime.parse(LAST_MODIFIED, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+	}
+
+	public void testDownload() {
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		IStatus status = transport.download(base.resolve("file.txt"), target, new NullProgressMonitor());
+		assertOK("1.0", status);
+		assertEquals(new String(CONTENT, StandardCharsets.UTF_8), target.toString(StandardCharsets.UTF_8));
+		DownloadStatus downloadStatus = (DownloadStatus) status;
+		assertEquals(CONTENT.length, downloadStatus.getFileSize());
+		assertEquals(lastModified(), downloadStatus.getLastModified());
+		assertEquals(ETAG, downloadStatus.getETag());
+		assertFalse(downloadStatus.isNotModified());
+	}
+
+	public void testNotModified() {
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		IStatus status = transport.downloadIfModified(base.resolve("file.txt"), target, lastModified(), ETAG, new NullProgressMonitor());
+		assertOK("1.0", status);
+		assertTrue(((DownloadStatus) status).isNotModified());
+		assertEquals(0, target.size());
+		assertEquals(1, requests.get());
+	}
+
+	public void testNotFound() throws Exception {
+		IStatus status = transport.download(base.resolve("missing.txt"), new ByteArrayOutputStream(), new NullProgressMonitor());
+		assertEquals(IStatus.ERROR, status.getSeverity());
+		assertEquals(ProvisionException.ARTIFACT_NOT_FOUND, status.getCode());
+		assertThrows(FileNotFoundException.class, () -> transport.stream(base.resolve("missing.txt"), new NullProgressMonitor()));
+		assertThrows(FileNotFoundException.class, () -> transport.getLastModified(base.resolve("missing.txt"), new NullProgressMonitor()));
+	}
+
+	public void testGetLastModified() throws Exception {
+		assertEquals(lastModified(), transport.getLastModified(base.resolve("file.txt"), new NullProgressMonitor()));
+	}
+
+	public void testStream() throws Exception {
+		try (InputStream stream = transport.stream(base.resolve("redirect"), new NullProgressMonitor())) {
+			assertEquals(new String(CONTENT, StandardCharsets.UTF_8), new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertEquals(2, requests.get());
+	}
+
+	public void testRetryUnavailable() {
+		unavailable.set(2);
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertOK("1.0", transport.download(base.resolve("file.txt"), target, new NullProgressMonitor()));
+		assertEquals(CONTENT.length, target.size());
+		assertEquals(3, requests.get());
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -17,8 +17,7 @@ package org.eclipse.equinox.p2.tests.simpleconfigurator;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import org.eclipse.core.runtime.FileLocator;
@@ -40,8 +39,13 @@ public abstract class AbstractSimpleConfiguratorTest extends AbstractProvisionin
 	@Override
 	protected void tearDown() throws Exception {
 		super.tearDown();
+		stopFramework();
+	}
+
+	protected void stopFramework() {
 		if (equinox != null)
 			equinox.shutdown();
+		equinox = null;
 	}
 
 	//Assert that all files are in the bundles
@@ -75,14 +79,23 @@ public abstract class AbstractSimpleConfiguratorTest extends AbstractProvisionin
 		}
 	}
 
-	@SuppressWarnings("deprecation")
 	protected BundleContext startFramework(File bundleInfo, File[] additionalBundle) {
+		// for test purposes create an install.area and configuration.area located in the local bundle data area.
+		File installarea = TestActivator.context.getDataFile(getName() + "/" + System.currentTimeMillis() + "/eclipse");
+		return startFramework(bundleInfo, additionalBundle, installarea, Collections.emptyMap());
+	}
+
+	/**
+	 * Starts a framework in the given install area, which is reused when the
+	 * framework is started again. The given properties are added to the framework
+	 * properties.
+	 */
+	@SuppressWarnings("deprecation")
+	protected BundleContext startFramework(File bundleInfo, File[] additionalBundle, File installarea, Map<String, String> properties) {
 		try {
 			File simpleConfiguratorBundle = getLocation("org.eclipse.equinox.simpleconfigurator");
 			File osgiBundleLoc = getLocation("org.eclipse.osgi");
 
-			// for test purposes create an install.area and configuration.area located in the local bundle data area.
-			File installarea = TestActivator.context.getDataFile(getName() + "/" + System.currentTimeMillis() + "/eclipse");
 			File configarea = new File(installarea, "configuration");
 			URL osgiBundle = osgiBundleLoc.toURI().toURL();
 			//if we have framework in workspace need to add the bin directory
@@ -106,6 +119,7 @@ public abstract class AbstractSimpleConfiguratorTest extends AbstractProvisionin
 
 			frameworkProperties.put("org.eclipse.equinox.simpleconfigurator.configUrl", bundleInfo.toURL().toExternalForm());
 			frameworkProperties.put("osgi.dev", "bin/");
+			frameworkProperties.putAll(properties);
 
 			URL[] osgiPath = osgiBundleDevPath == null ? new URL[] {osgiBundle} : new URL[] {osgiBundle, osgiBundleDevPath};
 			equinox = new EmbeddedEquinox(frameworkProperties, new String[] {}, osgiPath);
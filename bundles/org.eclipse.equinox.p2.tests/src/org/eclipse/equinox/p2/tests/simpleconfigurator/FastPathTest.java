@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.simpleconfigurator;
+
+import java.io.File;
+import java.util.Map;
+import org.eclipse.equinox.p2.tests.TestData;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Tests the startup fast path of the simple configurator, enabled with
+ * <code>equinox.simpleconfigurator.fastpath</code>.
+ */
+public class FastPathTest extends AbstractSimpleConfiguratorTest {
+	private static final String DIGEST_FILE = "last.bundles.info.digest";
+	private static final long OLD_TIMESTAMP = 1000000000000L;
+
+	private File[] jars = null;
+	private File bundleInfo = null;
+	private File installArea = null;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		File bundlesTxt = getBundleJars(TestData.getFile("simpleConfiguratorTest/bundlesTxt", ""))[0];
+		File myBundle = getTestData("myBundle", "testData/simpleConfiguratorTest/myBundle_1.0.0.jar");
+		jars = new File[] {bundlesTxt, myBundle};
+		bundleInfo = createBundlesTxt(jars);
+		installArea = new File(getTempFolder(), "eclipse");
+	}
+
+	public void testBatchInstall() {
+		BundleContext equinoxContext = startFramework(bundleInfo, null, installArea, Map.of("equinox.simpleconfigurator.fastpath", "true", "equinox.simpleconfigurator.installThreads", "2"));
+		assertJarsInstalled(jars, equinoxContext.getBundles());
+		assertEquals(jars.length + 2, equinoxContext.getBundles().length);
+		assertTrue(getDigestFile(equinoxContext).isFile());
+	}
+
+	public void testInvalidInstallThreads() {
+		BundleContext equinoxContext = startFramework(bundleInfo, null, installArea, Map.of("equinox.simpleconfigurator.fastpath", "true", "equinox.simpleconfigurator.installThreads", "many"));
+		assertJarsInstalled(jars, equinoxContext.getBundles());
+		assertEquals(jars.length + 2, equinoxContext.getBundles().length);
+	}
+
+	public void testUnchangedConfiguration() {
+		Map<String, String> properties = Map.of("equinox.simpleconfigurator.fastpath", "true");
+		BundleContext equinoxContext = startFramework(bundleInfo, null, installArea, properties);
+		File digestFile = getDigestFile(equinoxContext);
+		assertTrue(digestFile.setLastModified(OLD_TIMESTAMP));
+		stopFramework();
+
+		// the digest is only written again when the configuration is applied
+		equinoxContext = startFramework(bundleInfo, null, installArea, properties);
+		assertJarsInstalled(jars, equinoxContext.getBundles());
+		assertEquals(jars.length + 2, equinoxContext.getBundles().length);
+		assertEquals(OLD_TIMESTAMP, getDigestFile(equinoxContext).lastModified());
+	}
+
+	public void testUninstallInExclusiveMode() throws Exception {
+		Map<String, String> properties = Map.of("equinox.simpleconfigurator.fastpath", "true");
+		File otherBundle = new File(getTempFolder(), "other_1.0.0.jar");
+		copy("copy", jars[1], otherBundle);
+		BundleContext equinoxContext = startFramework(createBundlesTxt(new File[] {jars[0]}), null, installArea, properties);
+		// installed by other means, not listed in the bundles.info
+		equinoxContext.installBundle(otherBundle.toURI().toString());
+		assertTrue(getDigestFile(equinoxContext).setLastModified(OLD_TIMESTAMP));
+		stopFramework();
+
+		equinoxContext = startFramework(createBundlesTxt(new File[] {jars[0]}), null, installArea, properties);
+		assertEquals(3, equinoxContext.getBundles().length);
+		assertNull(equinoxContext.getBundle(otherBundle.toURI().toString()));
+		assertFalse(OLD_TIMESTAMP == getDigestFile(equinoxContext).lastModified());
+	}
+
+	private File getDigestFile(BundleContext equinoxContext) {
+		for (Bundle bundle : equinoxContext.getBundles()) {
+			if ("org.eclipse.equinox.simpleconfigurator".equals(bundle.getSymbolicName()))
+				return bundle.getBundleContext().getDataFile(DIGEST_FILE);
+		}
+		fail("Simple configurator is not installed");
+		return null;
+	}
+}
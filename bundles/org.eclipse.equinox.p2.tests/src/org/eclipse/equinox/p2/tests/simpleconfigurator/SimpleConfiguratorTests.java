@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2013 Red Hat, Inc. and others.
+ * Copyright (c) 2008, 2024 Red Hat, Inc. and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -39,6 +39,9 @@ public class SimpleConfiguratorTests {
 		suite.addTestSuite(NonExclusiveModeExtended.class);
 		suite.addTestSuite(NonExclusiveModeExtendedConfigured.class);
 
+		suite.addTestSuite(FastPathTest.class);
+		suite.addTestSuite(TargetedRefreshTest.class);
+
 		//$JUnit-END$
 		return suite;
 	}
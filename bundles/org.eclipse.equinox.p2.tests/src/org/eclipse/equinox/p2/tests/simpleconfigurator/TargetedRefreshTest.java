@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.simpleconfigurator;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.jar.*;
+import org.osgi.framework.*;
+
+/**
+ * Tests the refresh set computed from the wiring index of the simple
+ * configurator, enabled with
+ * <code>equinox.simpleconfigurator.targetedrefresh</code>.
+ */
+public class TargetedRefreshTest extends AbstractSimpleConfiguratorTest {
+	private static final String CONFIGURATOR = "org.eclipse.equinox.internal.provisional.configurator.Configurator";
+
+	private File folder = null;
+	private final Set<String> refreshed = Collections.synchronizedSet(new HashSet<>());
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = getTempFolder();
+	}
+
+	public void testChangedBundleRefreshesDependents() throws Exception {
+		File a = createBundle("a", "1.0.0", "Export-Package", "a");
+		File b = createBundle("b", "1.0.0", "Import-Package", "a");
+		File c = createBundle("c", "1.0.0", null, null);
+		BundleContext equinoxContext = start(new File[] {a, b, c});
+
+		File newA = createBundle("a", "1.0.1", "Export-Package", "a");
+		apply(equinoxContext, new File[] {newA, b, c});
+		assertTrue(refreshed.contains("b"));
+		assertFalse(refreshed.contains("c"));
+		assertEquals(Bundle.ACTIVE, getBundle(equinoxContext, "b").getState());
+	}
+
+	public void testNewProviderOfOptionalImport() throws Exception {
+		File c = createBundle("c", "1.0.0", null, null);
+		File d = createBundle("d", "1.0.0", "Import-Package", "e;resolution:=optional");
+		BundleContext equinoxContext = start(new File[] {c, d});
+
+		File e = createBundle("e", "1.0.0", "Export-Package", "e");
+		apply(equinoxContext, new File[] {c, d, e});
+		assertTrue(refreshed.contains("d"));
+		assertFalse(refreshed.contains("c"));
+	}
+
+	private BundleContext start(File[] jars) throws IOException {
+		BundleContext equinoxContext = startFramework(createBundlesTxt(jars), null, new File(folder, "eclipse"), Map.of("equinox.simpleconfigurator.targetedrefresh", "true"));
+		assertJarsInstalled(jars, equinoxContext.getBundles());
+		for (Bundle bundle : equinoxContext.getBundles())
+			assertTrue(bundle.getSymbolicName(), (bundle.getState() & (Bundle.RESOLVED | Bundle.STARTING | Bundle.ACTIVE)) != 0);
+		equinoxContext.addBundleListener((SynchronousBundleListener) event -> {
+			if (event.getType() == BundleEvent.UNRESOLVED)
+				refreshed.add(event.getBundle().getSymbolicName());
+		});
+		return equinoxContext;
+	}
+
+	private void apply(BundleContext equinoxContext, File[] jars) throws Exception {
+		ServiceReference<?> reference = equinoxContext.getServiceReference(CONFIGURATOR);
+		assertNotNull(reference);
+		Object configurator = equinoxContext.getService(reference);
+		try {
+			configurator.getClass().getMethod("applyConfiguration", URL.class).invoke(configurator, createBundlesTxt(jars).toURI().toURL());
+		} finally {
+			equinoxContext.ungetService(reference);
+		}
+	}
+
+	private static Bundle getBundle(BundleContext equinoxContext, String symbolicName) {
+		for (Bundle bundle : equinoxContext.getBundles()) {
+			if (symbolicName.equals(bundle.getSymbolicName()))
+				return bundle;
+		}
+		fail("Bundle not installed: " + symbolicName);
+		return null;
+	}
+
+	private File createBundle(String symbolicName, String version, String header, String value) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+		attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+		attributes.putValue(Constants.BUNDLE_VERSION, version);
+		if (header != null)
+			attributes.putValue(header, value);
+		File jar = new File(folder, symbolicName + "_" + version + ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+			// manifest only
+		}
+		return jar;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2017 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -13,14 +13,18 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.updatesite;
 
+import com.sun.net.httpserver.HttpExchange;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import junit.framework.Test;
@@ -34,6 +38,7 @@ import org.eclipse.equinox.internal.p2.artifact.repository.RawMirrorRequest;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.IRequiredCapability;
+import org.eclipse.equinox.internal.p2.repository.HttpClientTransport;
 import org.eclipse.equinox.internal.p2.updatesite.SiteFeature;
 import org.eclipse.equinox.internal.p2.updatesite.UpdateSite;
 import org.eclipse.equinox.internal.p2.updatesite.artifact.UpdateSiteArtifactRepository;
@@ -60,6 +65,7 @@ import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 import org.eclipse.equinox.p2.repository.spi.AbstractRepository;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
 import org.eclipse.equinox.p2.tests.StringBufferStream;
+import org.eclipse.equinox.p2.tests.TestHttpServer;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -493,6 +499,72 @@ public class UpdateSiteTest extends AbstractProvisioningTest {
 		}
 	}
 
+	/*
+	 * Feature jars of remote sites are cached, a second load of the site only
+	 * revalidates them. The jars of the sites not loaded for a while and those a
+	 * site no longer refers to are removed.
+	 */
+	public void testRemoteFeaturesCached() throws Exception {
+		File site = getTestData("0.1", "/testData/updatesite/includedfeature");
+		File cacheDir = getTempFolder();
+		File unusedSite = new File(cacheDir, "unused");
+		assertTrue("0.2", unusedSite.mkdirs());
+		assertTrue("0.3", unusedSite.setLastModified(System.currentTimeMillis() - 100L * 24 * 60 * 60 * 1000));
+		UpdateSite.setFeatureCacheDirectory(cacheDir);
+		AtomicInteger jarDownloads = new AtomicInteger();
+		String path = "/site/";
+		try (TestHttpServer server = new TestHttpServer(path, exchange -> serve(exchange, site, path, jarDownloads))) {
+			URI base = server.getBase().resolve(path);
+			HttpClientTransport transport = TestHttpServer.createTransport();
+			UpdateSite updatesite = UpdateSite.load(base, transport, getMonitor());
+			assertEquals("1.0", 2, updatesite.loadFeatures(getMonitor()).length);
+			assertEquals("1.1", 2, jarDownloads.get());
+			assertFalse("1.2", unusedSite.exists());
+			File[] siteDirs = cacheDir.listFiles();
+			assertEquals("1.3", 1, siteDirs.length);
+			File staleJar = new File(siteDirs[0], "stale.jar");
+			assertTrue("1.4", staleJar.createNewFile());
+
+			// the two locations name the same site but are different site cache entries
+			updatesite = UpdateSite.load(base.resolve("site.xml"), transport, getMonitor());
+			assertEquals("2.0", 2, updatesite.loadFeatures(getMonitor()).length);
+			assertEquals("2.1", 2, jarDownloads.get());
+			assertFalse("2.2", staleJar.exists());
+		} finally {
+			UpdateSite.setFeatureCacheDirectory(null);
+			delete(cacheDir);
+		}
+	}
+
+	private static void serve(HttpExchange exchange, File site, String path, AtomicInteger jarDownloads)
+			throws IOException {
+		try {
+			File file = new File(site, exchange.getRequestURI().getPath().substring(path.length()));
+			if (!file.isFile()) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			String etag = "\"" + file.length() + '\"';
+			exchange.getResponseHeaders().set("Last-Modified", "Tue, 15 Nov 1994 08:12:31 GMT");
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			byte[] content = Files.readAllBytes(file.toPath());
+			if (file.getName().endsWith(".jar"))
+				jarDownloads.incrementAndGet();
+			exchange.sendResponseHeaders(200, content.length);
+			exchange.getResponseBody().write(content);
+		} finally {
+			exchange.close();
+		}
+	}
+
 	public void testSiteFeatureVersionEquals() {
 		SiteFeature a = new SiteFeature();
 		SiteFeature b = new SiteFeature();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2017 IBM Corporation and others.
+ * Copyright (c) 2011, 2024 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -13,6 +13,7 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.transport.ecf;
 
+import org.eclipse.equinox.internal.p2.repository.HttpClientTransport;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.spi.IAgentServiceFactory;
 
@@ -20,7 +21,12 @@ public class ECFTransportComponent implements IAgentServiceFactory {
 
 	@Override
 	public Object createService(IProvisioningAgent agent) {
-		return new RepositoryTransport(agent);
+		RepositoryTransport transport = new RepositoryTransport(agent);
+		if (Boolean.getBoolean(HttpClientTransport.PROP_ENABLED)) {
+			// ECF stays in charge of the locations the JRE client cannot handle
+			return new HttpClientTransport(agent, transport);
+		}
+		return transport;
 	}
 
 }
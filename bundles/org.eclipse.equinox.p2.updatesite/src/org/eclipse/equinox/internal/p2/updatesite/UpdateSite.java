@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2018 IBM Corporation and others.
+ *  Copyright (c) 2008, 2024 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -17,17 +17,23 @@ package org.eclipse.equinox.internal.p2.updatesite;
 import java.io.*;
 import java.lang.ref.SoftReference;
 import java.net.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.FeatureParser;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.publisher.eclipse.*;
 import org.eclipse.osgi.service.resolver.BundleDescription;
 import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.BundleContext;
 import org.xml.sax.SAXException;
 
 /**
@@ -45,6 +51,14 @@ public class UpdateSite {
 	private static final int RETRY_COUNT = 2;
 	private static final String DOT_XML = ".xml"; //$NON-NLS-1$
 	private static final String SITE = "site"; //$NON-NLS-1$
+	private static final String FEATURE_CACHE_DIR = "features"; //$NON-NLS-1$
+	private static final String ETAG_EXTENSION = ".etag"; //$NON-NLS-1$
+	// how long the feature jars of a site are kept after the site was last loaded
+	private static final long FEATURE_CACHE_MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+	/**
+	 * The number of feature jars fetched concurrently when a site has no digest.
+	 */
+	static final int LOAD_THREADS = Math.max(1, Integer.getInteger("p2.updatesite.loadThreads", 8)); //$NON-NLS-1$
 	private String checksum;
 	private URI location;
 	private URI rootLocation;
@@ -54,14 +68,71 @@ public class UpdateSite {
 	 * Some variables for caching.
 	 */
 	// map of String (URI.toString()) to UpdateSite
-	private static Map<String, SoftReference<UpdateSite>> siteCache = new HashMap<>();
+	private static Map<String, SoftReference<UpdateSite>> siteCache = new ConcurrentHashMap<>();
 	// map of String (URI.toString()) to UpdateSite (for category xmls)
-	private static Map<String, SoftReference<UpdateSite>> categoryCache = new HashMap<>();
+	private static Map<String, SoftReference<UpdateSite>> categoryCache = new ConcurrentHashMap<>();
+	// map of String (URI.toString()) to the lock serializing the loads of that location
+	private static Map<String, Object> locationLocks = new ConcurrentHashMap<>();
 	// map of String (featureID_featureVersion) to Feature
 	private Map<String, Feature> featureCache = new HashMap<>();
 	// map of String (bundleID_featureVersion) to BundleDescriptr
 	private Map<String, BundleDescription> bundleCache = new HashMap<>();
 	private Transport transport;
+	// the directory of the feature jar cache, or null for the data area of the bundle
+	private static volatile File featureCacheDirectory;
+	// the feature jar cache directories swept for unused sites in this session
+	private static Set<File> sweptFeatureCaches = ConcurrentHashMap.newKeySet();
+
+	/*
+	 * The feature jars of one site kept across sessions. The jars the site no longer
+	 * refers to are removed once all its features have been loaded.
+	 */
+	private static final class SiteFeatureCache {
+		private final File directory;
+		private final Set<File> used = ConcurrentHashMap.newKeySet();
+		private volatile boolean incomplete;
+
+		SiteFeatureCache(File directory) {
+			this.directory = directory;
+		}
+
+		/*
+		 * Return the file caching the feature jar at the given location.
+		 */
+		File getFile(URI featureURI) {
+			String name = URIUtil.lastSegment(featureURI);
+			if (name == null || !name.endsWith(JAR_EXTENSION))
+				name = FEATURE_TEMP_FILE + JAR_EXTENSION;
+			File file = new File(directory, Integer.toHexString(featureURI.toString().hashCode()) + '_' + name);
+			used.add(file);
+			return file;
+		}
+
+		/*
+		 * Remove the cached jars and their entity tags which have not been used by a
+		 * complete load of the site.
+		 */
+		void prune() {
+			if (incomplete)
+				return;
+			File[] files = directory.listFiles();
+			for (int i = 0; files != null && i < files.length; i++) {
+				String name = files[i].getName();
+				if (name.endsWith(ETAG_EXTENSION))
+					name = name.substring(0, name.length() - ETAG_EXTENSION.length());
+				if (!used.contains(new File(directory, name)))
+					files[i].delete();
+			}
+		}
+	}
+
+	/**
+	 * Set the directory keeping the remote feature jars across sessions, or
+	 * <code>null</code> to keep them in the data area of this bundle.
+	 */
+	public static void setFeatureCacheDirectory(File directory) {
+		featureCacheDirectory = directory;
+	}
 
 	/*
 	 * Return a URI based on the given URI, which points to a site.xml file.
@@ -80,15 +151,31 @@ public class UpdateSite {
 		return segment != null && segment.endsWith(DOT_XML) && segment.contains(SITE);
 	}
 
+	/*
+	 * Return the lock guarding the loads of the given location. Loads of the same
+	 * location are serialized so that the site is only read once, loads of other
+	 * locations are not blocked.
+	 */
+	private static Object getLocationLock(URI location) {
+		return locationLocks.computeIfAbsent(location.toString(), key -> new Object());
+	}
+
 	/**
 	 * Loads and returns a category file
 	 * 
 	 * @return A CategoryFile
 	 */
-	public static synchronized UpdateSite loadCategoryFile(URI location, Transport transport, IProgressMonitor monitor)
+	public static UpdateSite loadCategoryFile(URI location, Transport transport, IProgressMonitor monitor)
 			throws ProvisionException {
 		if (location == null)
 			return null;
+		synchronized (getLocationLock(location)) {
+			return internalLoadCategoryFile(location, transport, monitor);
+		}
+	}
+
+	private static UpdateSite internalLoadCategoryFile(URI location, Transport transport, IProgressMonitor monitor)
+			throws ProvisionException {
 		UpdateSite result = null;
 		if (!PROTOCOL_FILE.equals(location.getScheme()) && categoryCache.containsKey(location.toString())) {
 			result = categoryCache.get(location.toString()).get();
@@ -133,11 +220,17 @@ public class UpdateSite {
 	/*
 	 * Load and return an update site object from the given location.
 	 */
-	public static synchronized UpdateSite load(URI location, Transport transport, IProgressMonitor monitor)
+	public static UpdateSite load(URI location, Transport transport, IProgressMonitor monitor)
 			throws ProvisionException {
 		if (location == null)
 			return null;
+		synchronized (getLocationLock(location)) {
+			return internalLoad(location, transport, monitor);
+		}
+	}
 
+	private static UpdateSite internalLoad(URI location, Transport transport, IProgressMonitor monitor)
+			throws ProvisionException {
 		UpdateSite result = null;
 		// only caching remote sites
 		if (!PROTOCOL_FILE.equals(location.getScheme()) && siteCache.containsKey(location.toString())) {
@@ -264,16 +357,22 @@ public class UpdateSite {
 	/*
 	 * Parse the feature.xml specified by the given input stream and return the
 	 * feature object. In case of failure, the failure is logged and null is
-	 * returned
+	 * returned. Remote feature jars are kept in the given feature cache, if any,
+	 * and only downloaded again when they have been modified.
 	 */
-	private Feature parseFeature(FeatureParser featureParser, URI featureURI, IProgressMonitor monitor) {
+	private Feature parseFeature(FeatureParser featureParser, URI featureURI, SiteFeatureCache cache,
+			IProgressMonitor monitor) {
 		File featureFile = null;
 		if (PROTOCOL_FILE.equals(featureURI.getScheme())) {
 			featureFile = URIUtil.toFile(featureURI);
 			return featureParser.parse(featureFile);
 		}
+		File cachedFile = cache == null ? null : cache.getFile(featureURI);
+		long lastModified = cachedFile != null && cachedFile.isFile() ? cachedFile.lastModified() : 0;
+		String etag = lastModified > 0 ? readETag(cachedFile) : null;
 		try {
-			featureFile = File.createTempFile(FEATURE_TEMP_FILE, JAR_EXTENSION);
+			featureFile = File.createTempFile(FEATURE_TEMP_FILE, JAR_EXTENSION,
+					cachedFile == null ? null : cachedFile.getParentFile());
 			IStatus transferResult = null;
 			// try the download twice in case of transient network problems
 			for (int i = 0; i < RETRY_COUNT; i++) {
@@ -281,7 +380,11 @@ public class UpdateSite {
 					throw new OperationCanceledException();
 				OutputStream destination = new BufferedOutputStream(new FileOutputStream(featureFile));
 				try {
-					transferResult = transport.download(featureURI, destination, monitor);
+					if (lastModified > 0)
+						transferResult = transport.downloadIfModified(featureURI, destination, lastModified, etag,
+								monitor);
+					else
+						transferResult = transport.download(featureURI, destination, monitor);
 				} finally {
 					try {
 						destination.close();
@@ -300,6 +403,12 @@ public class UpdateSite {
 				LogHelper.log(new ProvisionException(transferResult));
 				return null;
 			}
+			if (cachedFile == null)
+				return featureParser.parse(featureFile);
+			if (transferResult instanceof DownloadStatus && ((DownloadStatus) transferResult).isNotModified())
+				return featureParser.parse(cachedFile);
+			if (cacheFeature(featureFile, cachedFile, transferResult))
+				return featureParser.parse(cachedFile);
 			return featureParser.parse(featureFile);
 		} catch (IOException e) {
 			LogHelper.log(
@@ -311,6 +420,81 @@ public class UpdateSite {
 		return null;
 	}
 
+	/*
+	 * Return the cache of the feature jars of this site, or null if there is no
+	 * place for the cache. The first use of a cache directory in a session removes
+	 * the jars of the sites which have not been loaded for a while.
+	 */
+	private SiteFeatureCache getSiteFeatureCache() {
+		File cacheDir = featureCacheDirectory;
+		if (cacheDir == null) {
+			BundleContext context = Activator.getBundleContext();
+			cacheDir = context == null ? null : context.getDataFile(FEATURE_CACHE_DIR);
+			if (cacheDir == null)
+				return null;
+		}
+		if (sweptFeatureCaches.add(cacheDir))
+			sweepFeatureCache(cacheDir);
+		// a site is known by the location of its site.xml however it was given
+		File siteDir = new File(cacheDir, Integer.toHexString(getSiteURI(location).toString().hashCode()));
+		siteDir.mkdirs();
+		if (!siteDir.isDirectory())
+			return null;
+		// the modification time of the directory records the last load of the site
+		siteDir.setLastModified(System.currentTimeMillis());
+		return new SiteFeatureCache(siteDir);
+	}
+
+	private static void sweepFeatureCache(File cacheDir) {
+		long oldest = System.currentTimeMillis() - FEATURE_CACHE_MAX_AGE;
+		File[] entries = cacheDir.listFiles();
+		for (int i = 0; entries != null && i < entries.length; i++) {
+			// files are left over from the time the cache was not kept by site
+			if (!entries[i].isDirectory() || entries[i].lastModified() < oldest)
+				FileUtils.deleteAll(entries[i]);
+		}
+	}
+
+	/*
+	 * Move a downloaded feature jar into the cache. Only downloads with a known
+	 * modification time are kept, as others could not be revalidated later.
+	 */
+	private static boolean cacheFeature(File featureFile, File cachedFile, IStatus transferResult) {
+		long lastModified = transferResult instanceof DownloadStatus ? ((DownloadStatus) transferResult).getLastModified() : 0;
+		String etag = transferResult instanceof DownloadStatus ? ((DownloadStatus) transferResult).getETag() : null;
+		cachedFile.delete();
+		if (lastModified <= 0 || !featureFile.renameTo(cachedFile))
+			return false;
+		cachedFile.setLastModified(lastModified);
+		writeETag(cachedFile, etag);
+		return true;
+	}
+
+	private static String readETag(File cachedFile) {
+		File etagFile = new File(cachedFile.getParentFile(), cachedFile.getName() + ETAG_EXTENSION);
+		if (!etagFile.isFile())
+			return null;
+		try {
+			return Files.readString(etagFile.toPath(), StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void writeETag(File cachedFile, String etag) {
+		File etagFile = new File(cachedFile.getParentFile(), cachedFile.getName() + ETAG_EXTENSION);
+		if (etag == null) {
+			etagFile.delete();
+			return;
+		}
+		try {
+			Files.writeString(etagFile.toPath(), etag, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			// the cached jar is still revalidated by its modification time
+			etagFile.delete();
+		}
+	}
+
 	/*
 	 * Constructor for the class.
 	 */
@@ -576,68 +760,138 @@ public class UpdateSite {
 
 	/*
 	 * Load and return the features that are referenced by this update site. Note
-	 * this requires downloading and parsing the feature manifest locally.
+	 * this requires downloading and parsing the feature manifest locally. The
+	 * features listed by the site are fetched concurrently, then the features
+	 * they include, one level of inclusion at a time.
 	 */
 	private Feature[] loadFeaturesFromSite(IProgressMonitor monitor) throws ProvisionException {
 		SiteFeature[] siteFeatures = site.getFeatures();
-		FeatureParser featureParser = new FeatureParser();
 		Map<String, Feature> tmpFeatureCache = new HashMap<>(siteFeatures.length);
-
-		for (SiteFeature siteFeature1 : siteFeatures) {
-			if (monitor.isCanceled()) {
-				throw new OperationCanceledException();
+		// keys of the features fetched or being fetched
+		Set<String> requested = new HashSet<>();
+		SiteFeatureCache cache = getSiteFeatureCache();
+		ExecutorService executor = createExecutor();
+		try {
+			List<SiteFeature> pendingSiteFeatures = new ArrayList<>(siteFeatures.length);
+			List<Future<Feature>> siteFutures = new ArrayList<>(siteFeatures.length);
+			for (SiteFeature siteFeature : siteFeatures) {
+				if (siteFeature.getFeatureIdentifier() != null && siteFeature.getFeatureVersion() != null) {
+					String key = siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion();
+					if (!requested.add(key))
+						continue;
+				}
+				URI featureURI = getSiteFeatureURI(siteFeature);
+				pendingSiteFeatures.add(siteFeature);
+				siteFutures.add(submitFeature(executor, featureURI, cache, monitor));
 			}
-			SiteFeature siteFeature = siteFeature1;
-			String key = null;
-			if (siteFeature.getFeatureIdentifier() != null && siteFeature.getFeatureVersion() != null) {
-				key = siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion();
-				if (tmpFeatureCache.containsKey(key))
+
+			List<Feature> loaded = new ArrayList<>();
+			for (int i = 0; i < siteFutures.size(); i++) {
+				SiteFeature siteFeature = pendingSiteFeatures.get(i);
+				Feature feature = getFeature(siteFutures.get(i), monitor);
+				if (feature == null) {
+					LogHelper.log(new Status(IStatus.ERROR, Activator.ID,
+							NLS.bind(Messages.ErrorReadingFeature, getSiteFeatureURI(siteFeature))));
 					continue;
-			}
-			URI featureURI = getSiteFeatureURI(siteFeature);
-			Feature feature = parseFeature(featureParser, featureURI, new NullProgressMonitor());
-			if (feature == null) {
-				LogHelper.log(
-						new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.ErrorReadingFeature, featureURI)));
-			} else {
-				if (key == null) {
+				}
+				if (siteFeature.getFeatureIdentifier() == null || siteFeature.getFeatureVersion() == null) {
 					siteFeature.setFeatureIdentifier(feature.getId());
 					siteFeature.setFeatureVersion(feature.getVersion());
-					key = siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion();
 				}
+				String key = siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion();
+				requested.add(key);
 				tmpFeatureCache.put(key, feature);
-				loadIncludedFeatures(feature, featureParser, tmpFeatureCache, monitor);
+				loaded.add(feature);
 			}
+
+			while (!loaded.isEmpty())
+				loaded = loadIncludedFeatures(loaded, executor, requested, tmpFeatureCache, cache, monitor);
+		} finally {
+			executor.shutdownNow();
 		}
+		if (cache != null)
+			cache.prune();
 		featureCache = tmpFeatureCache;
 		return featureCache.values().toArray(new Feature[featureCache.size()]);
 	}
 
 	/*
-	 * Load the features that are included by the given feature.
+	 * Load the features that are included by the given features and have not been
+	 * requested yet, and return them.
 	 */
-	private void loadIncludedFeatures(Feature feature, FeatureParser featureParser, Map<String, Feature> features,
-			IProgressMonitor monitor) throws ProvisionException {
-		FeatureEntry[] featureEntries = feature.getEntries();
-		for (FeatureEntry featureEntry : featureEntries) {
-			if (monitor.isCanceled())
-				throw new OperationCanceledException();
-			FeatureEntry entry = featureEntry;
-			if (entry.isRequires() || entry.isPlugin())
-				continue;
-			String key = entry.getId() + VERSION_SEPARATOR + entry.getVersion();
-			if (features.containsKey(key))
-				continue;
-			URI includedFeatureURI = getFeatureURI(entry.getId(), entry.getVersion());
-			Feature includedFeature = parseFeature(featureParser, includedFeatureURI, monitor);
+	private List<Feature> loadIncludedFeatures(List<Feature> includers, ExecutorService executor, Set<String> requested,
+			Map<String, Feature> features, SiteFeatureCache cache, IProgressMonitor monitor) {
+		Map<String, Future<Feature>> futures = new LinkedHashMap<>();
+		Map<String, URI> locations = new HashMap<>();
+		for (Feature feature : includers) {
+			for (FeatureEntry entry : feature.getEntries()) {
+				if (entry.isRequires() || entry.isPlugin())
+					continue;
+				String key = entry.getId() + VERSION_SEPARATOR + entry.getVersion();
+				if (!requested.add(key))
+					continue;
+				URI includedFeatureURI = getFeatureURI(entry.getId(), entry.getVersion());
+				locations.put(key, includedFeatureURI);
+				futures.put(key, submitFeature(executor, includedFeatureURI, cache, monitor));
+			}
+		}
+		List<Feature> loaded = new ArrayList<>(futures.size());
+		for (Map.Entry<String, Future<Feature>> entry : futures.entrySet()) {
+			Feature includedFeature = getFeature(entry.getValue(), monitor);
 			if (includedFeature == null) {
 				LogHelper.log(new Status(IStatus.ERROR, Activator.ID,
-						NLS.bind(Messages.ErrorReadingFeature, includedFeatureURI)));
+						NLS.bind(Messages.ErrorReadingFeature, locations.get(entry.getKey()))));
 			} else {
-				features.put(key, includedFeature);
-				loadIncludedFeatures(includedFeature, featureParser, features, monitor);
+				features.put(entry.getKey(), includedFeature);
+				loaded.add(includedFeature);
 			}
 		}
+		return loaded;
+	}
+
+	private static ExecutorService createExecutor() {
+		AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(LOAD_THREADS, r -> {
+			Thread thread = new Thread(r, "p2 Feature Loader " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private Future<Feature> submitFeature(ExecutorService executor, URI featureURI, SiteFeatureCache cache,
+			IProgressMonitor monitor) {
+		// the parser keeps state while parsing, every task gets its own
+		return executor.submit(() -> {
+			Feature feature = parseFeature(new FeatureParser(), featureURI, cache, new NullProgressMonitor() {
+				@Override
+				public boolean isCanceled() {
+					return monitor.isCanceled();
+				}
+			});
+			// the jars of the features which could not be loaded are kept
+			if (feature == null && cache != null)
+				cache.incomplete = true;
+			return feature;
+		});
+	}
+
+	private static Feature getFeature(Future<Feature> future, IProgressMonitor monitor) {
+		try {
+			Feature feature = future.get();
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			return feature;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
 	}
 
 	/*
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2020 IBM Corporation and others.
+ * Copyright (c) 2007, 2024 IBM Corporation and others.
  * All rights reserved.
  * This program and the accompanying materials are made available under the
  * terms of the Eclipse Public License 2.0 which accompanies this distribution,
@@ -17,8 +17,13 @@ package org.eclipse.equinox.internal.simpleconfigurator;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.*;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.eclipse.equinox.internal.simpleconfigurator.utils.*;
@@ -36,6 +41,7 @@ import org.osgi.service.resolver.ResolutionException;
 class ConfigApplier {
 
 	private static final String LAST_BUNDLES_INFO = "last.bundles.info"; //$NON-NLS-1$
+	private static final String LAST_BUNDLES_INFO_DIGEST = "last.bundles.info.digest"; //$NON-NLS-1$
 	private static final String PROP_DEVMODE = "osgi.dev"; //$NON-NLS-1$
 
 	private final BundleContext manipulatingContext;
@@ -48,6 +54,17 @@ class ConfigApplier {
 	private final URI baseLocation;
 	private boolean deepRefresh;
 	private int maxRefreshTry;
+	/**
+	 * When enabled, an unchanged configuration is not applied again, and bundles
+	 * to install are validated and installed in parallel batches.
+	 */
+	private final boolean fastPath;
+	private final int installThreads;
+	/**
+	 * When enabled, only the bundles affected by the changed bundles are
+	 * refreshed, computed from a {@link WiringIndex} built once per apply.
+	 */
+	private final boolean targetedRefresh;
 
 	ConfigApplier(BundleContext context, Bundle callingBundle) {
 		deepRefresh = Boolean.parseBoolean(context.getProperty("equinox.simpleconfigurator.deeprefresh"));
@@ -57,6 +74,10 @@ class ConfigApplier {
 		} else {
 			maxRefreshTry = 10;
 		}
+		fastPath = Boolean.parseBoolean(context.getProperty("equinox.simpleconfigurator.fastpath"));
+		String installThreadsValue = context.getProperty("equinox.simpleconfigurator.installThreads");
+		targetedRefresh = Boolean.parseBoolean(context.getProperty("equinox.simpleconfigurator.targetedrefresh"));
+		installThreads = parseInstallThreads(installThreadsValue);
 		manipulatingContext = context;
 		this.callingBundle = callingBundle;
 		runningOnEquinox = "Eclipse".equals(context.getProperty(Constants.FRAMEWORK_VENDOR)); //$NON-NLS-1$
@@ -71,6 +92,18 @@ class ConfigApplier {
 		frameworkWiring = manipulatingContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION).adapt(FrameworkWiring.class);
 	}
 
+	private static int parseInstallThreads(String value) {
+		if (value != null) {
+			try {
+				return Math.max(1, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				if (Activator.DEBUG)
+					System.out.println("Invalid equinox.simpleconfigurator.installThreads value: " + value); //$NON-NLS-1$
+			}
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
 	void install(URL url, boolean exclusiveMode) throws IOException {
 		List<BundleInfo> bundleInfoList = SimpleConfiguratorUtils.readConfiguration(url, baseLocation);
 		if (Activator.DEBUG)
@@ -95,6 +128,15 @@ class ConfigApplier {
 			}
 		}
 
+		if (fastPath) {
+			String digest = computeDigest(expectedState, exclusiveMode);
+			if (digest != null && digest.equals(readLastDigest()) && startUnchangedConfiguration(expectedState)) {
+				if (Activator.DEBUG)
+					System.out.println("applyConfiguration() configuration unchanged, skipping apply"); //$NON-NLS-1$
+				return;
+			}
+		}
+
 		HashSet<BundleInfo> toUninstall = null;
 		if (!exclusiveMode) {
 			BundleInfo[] lastInstalledBundles = getLastState();
@@ -106,6 +148,7 @@ class ConfigApplier {
 		}
 
 		Set<Bundle> prevouslyResolved = getResolvedBundles();
+		WiringIndex wiringIndex = targetedRefresh ? new WiringIndex(manipulatingContext.getBundles()) : null;
 		Collection<Bundle> toRefresh = new LinkedHashSet<>();
 		Collection<Bundle> toStart = new ArrayList<>();
 		if (exclusiveMode) {
@@ -117,7 +160,13 @@ class ConfigApplier {
 				toRefresh.addAll(uninstallBundles(toUninstall));
 		}
 		if (!toRefresh.isEmpty()) {
-			if (manipulatingContext.getBundle().getState() == Bundle.STARTING) {
+			if (wiringIndex != null) {
+				long start = System.currentTimeMillis();
+				Set<Bundle> refreshSet = wiringIndex.computeRefreshSet(toRefresh, getDoNotRefresh());
+				refreshPackages(refreshSet);
+				if (Activator.DEBUG)
+					System.out.println("Refreshed " + refreshSet.size() + " bundles for " + toRefresh.size() + " changed bundles in " + (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			} else if (manipulatingContext.getBundle().getState() == Bundle.STARTING) {
 				// This is the startup of simple configurator.
 				// Do the full refresh of all bundles to force re-resolve
 				refreshAllBundles();
@@ -175,6 +224,215 @@ class ConfigApplier {
 			}
 		}
 		startBundles(toStart.toArray(new Bundle[toStart.size()]));
+		if (fastPath) {
+			// computed after the apply since in exclusive mode it covers the installed bundles
+			String digest = computeDigest(expectedState, exclusiveMode);
+			if (digest != null)
+				saveLastDigest(digest);
+		}
+	}
+
+	/**
+	 * Computes a digest over the expected configuration and the time stamp and
+	 * size of every bundle in it. In exclusive mode the locations of all installed
+	 * bundles are included as well, so that a bundle which is no longer listed
+	 * and has to be uninstalled causes a full apply.
+	 *
+	 * @return the digest or <code>null</code> if it cannot be computed
+	 */
+	private String computeDigest(BundleInfo[] expectedState, boolean exclusiveMode) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		md.update(Boolean.toString(exclusiveMode).getBytes(StandardCharsets.UTF_8));
+		StringBuilder buffer = new StringBuilder();
+		for (BundleInfo element : expectedState) {
+			buffer.setLength(0);
+			buffer.append(element.getSymbolicName()).append(',').append(element.getVersion()).append(',');
+			buffer.append(element.getLocation()).append(',').append(element.getBaseLocation()).append(',');
+			buffer.append(element.getStartLevel()).append(',').append(element.isMarkedAsStarted());
+			File file = getBundleFile(element);
+			if (file != null) {
+				if (file.isDirectory())
+					file = new File(file, JarFile.MANIFEST_NAME);
+				buffer.append(',').append(SimpleConfiguratorUtils.getFileLastModified(file)).append(',').append(file.length());
+			}
+			buffer.append('\n');
+			md.update(buffer.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		if (exclusiveMode) {
+			List<String> installed = new ArrayList<>();
+			for (Bundle bundle : manipulatingContext.getBundles()) {
+				if (bundle.getBundleId() != 0)
+					installed.add(bundle.getLocation());
+			}
+			Collections.sort(installed);
+			for (String location : installed)
+				md.update((location + '\n').getBytes(StandardCharsets.UTF_8));
+		}
+		StringBuilder result = new StringBuilder();
+		for (byte b : md.digest())
+			result.append(String.format("%02x", Byte.valueOf(b))); //$NON-NLS-1$
+		return result.toString();
+	}
+
+	private String readLastDigest() {
+		File digestFile = manipulatingContext.getDataFile(LAST_BUNDLES_INFO_DIGEST);
+		if (digestFile == null || !digestFile.isFile() || !getLastBundleInfo().isFile())
+			return null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(digestFile), StandardCharsets.UTF_8))) {
+			return reader.readLine();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void saveLastDigest(String digest) {
+		File digestFile = manipulatingContext.getDataFile(LAST_BUNDLES_INFO_DIGEST);
+		if (digestFile == null)
+			return;
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(digestFile), StandardCharsets.UTF_8)) {
+			writer.write(digest);
+		} catch (IOException e) {
+			digestFile.delete();
+		}
+	}
+
+	/**
+	 * Starts the bundles marked as started when every bundle of the unchanged
+	 * configuration is still installed.
+	 *
+	 * @return <code>false</code> if a bundle is missing and the configuration has
+	 *         to be applied
+	 */
+	private boolean startUnchangedConfiguration(BundleInfo[] expectedState) {
+		String useReferenceProperty = manipulatingContext.getProperty(SimpleConfiguratorConstants.PROP_KEY_USE_REFERENCE);
+		boolean useReference = useReferenceProperty == null ? runningOnEquinox : Boolean.parseBoolean(useReferenceProperty);
+		List<Bundle> toStart = new ArrayList<>();
+		for (BundleInfo element : expectedState) {
+			Bundle current = findInstalledBundle(element, SimpleConfiguratorUtils.getBundleLocation(element, useReference));
+			if (current == null)
+				return false;
+			if (element.isMarkedAsStarted())
+				toStart.add(current);
+		}
+		startBundles(toStart.toArray(new Bundle[toStart.size()]));
+		return true;
+	}
+
+	private Bundle findInstalledBundle(BundleInfo element, String bundleLocation) {
+		String symbolicName = element.getSymbolicName();
+		String version = element.getVersion();
+		if (symbolicName != null && version != null) {
+			Bundle[] matches = packageAdminService.getBundles(symbolicName, getVersionRange(version));
+			if (matches != null && matches.length > 0)
+				return matches[0];
+		}
+		return manipulatingContext.getBundle(bundleLocation);
+	}
+
+	private static File getBundleFile(BundleInfo element) {
+		URI location = element.getLocation();
+		if (!location.isAbsolute() && element.getBaseLocation() != null)
+			location = element.getBaseLocation().resolve(location);
+		return URIUtil.toFile(location);
+	}
+
+	/**
+	 * Validates and installs the bundles of the given list that are not installed
+	 * yet. The manifests are read and the bundles installed in batches on a
+	 * number of threads, which mostly overlaps the I/O of opening the bundles.
+	 *
+	 * @return a map from each bundle info that needed to be installed to either
+	 *         the installed {@link Bundle} or the {@link BundleException} that
+	 *         prevented it
+	 */
+	private Map<BundleInfo, Object> installInBatches(BundleInfo[] finalList, boolean useReference) {
+		List<BundleInfo> missing = new ArrayList<>();
+		for (BundleInfo element : finalList) {
+			if (element == null)
+				continue;
+			String symbolicName = element.getSymbolicName();
+			String version = element.getVersion();
+			Bundle[] matches = null;
+			if (symbolicName != null && version != null)
+				matches = packageAdminService.getBundles(symbolicName, getVersionRange(version));
+			if (matches == null || matches.length == 0)
+				missing.add(element);
+		}
+		Map<BundleInfo, Object> result = new ConcurrentHashMap<>();
+		if (missing.isEmpty())
+			return result;
+
+		int batchSize = Math.max(1, (missing.size() + installThreads * 4 - 1) / (installThreads * 4));
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(installThreads, missing.size()), runnable -> {
+			Thread thread = new Thread(runnable, "Simple Configurator Installer"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<?>> batches = new ArrayList<>();
+			for (int i = 0; i < missing.size(); i += batchSize) {
+				List<BundleInfo> batch = missing.subList(i, Math.min(i + batchSize, missing.size()));
+				batches.add(executor.submit(() -> {
+					for (BundleInfo element : batch) {
+						String bundleLocation = SimpleConfiguratorUtils.getBundleLocation(element, useReference);
+						try {
+							validateManifest(element);
+							result.put(element, manipulatingContext.installBundle(bundleLocation));
+						} catch (BundleException e) {
+							result.put(element, e);
+						}
+					}
+				}));
+			}
+			for (Future<?> batch : batches) {
+				try {
+					batch.get();
+				} catch (ExecutionException e) {
+					if (Activator.DEBUG)
+						e.getCause().printStackTrace();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that the bundle at the location of the given bundle info exists and
+	 * has a readable manifest, so that broken entries fail before the framework
+	 * gets involved.
+	 */
+	private static void validateManifest(BundleInfo element) throws BundleException {
+		File file = getBundleFile(element);
+		if (file == null)
+			return;
+		if (!file.exists())
+			throw new BundleException("Bundle location does not exist: " + file); //$NON-NLS-1$
+		try {
+			if (file.isDirectory()) {
+				File manifestFile = new File(file, JarFile.MANIFEST_NAME);
+				if (manifestFile.isFile()) {
+					try (InputStream in = new FileInputStream(manifestFile)) {
+						new Manifest(in);
+					}
+				}
+			} else {
+				try (JarFile jar = new JarFile(file, false)) {
+					jar.getManifest();
+				}
+			}
+		} catch (IOException e) {
+			throw new BundleException("Unable to read the manifest of " + file, e); //$NON-NLS-1$
+		}
 	}
 
 	/**
@@ -423,6 +681,7 @@ class ConfigApplier {
 
 		String useReferenceProperty = manipulatingContext.getProperty(SimpleConfiguratorConstants.PROP_KEY_USE_REFERENCE);
 		boolean useReference = useReferenceProperty == null ? runningOnEquinox : Boolean.parseBoolean(useReferenceProperty);
+		Map<BundleInfo, Object> batchInstalled = fastPath ? installInBatches(finalList, useReference) : Collections.emptyMap();
 
 		for (BundleInfo element : finalList) {
 			if (element == null)
@@ -432,9 +691,10 @@ class ConfigApplier {
 
 			String symbolicName = element.getSymbolicName();
 			String version = element.getVersion();
+			Object batchResult = batchInstalled.get(element);
 
 			Bundle[] matches = null;
-			if (symbolicName != null && version != null)
+			if (batchResult == null && symbolicName != null && version != null)
 				matches = packageAdminService.getBundles(symbolicName, getVersionRange(version));
 
 			String bundleLocation = SimpleConfiguratorUtils.getBundleLocation(element, useReference);
@@ -442,7 +702,9 @@ class ConfigApplier {
 			Bundle current = matches == null ? null : (matches.length == 0 ? null : matches[0]);
 			if (current == null) {
 				try {
-					current = manipulatingContext.installBundle(bundleLocation);
+					if (batchResult instanceof BundleException)
+						throw (BundleException) batchResult;
+					current = batchResult != null ? (Bundle) batchResult : manipulatingContext.installBundle(bundleLocation);
 					if (symbolicName != null && version != null) {
 						Version v;
 						try {
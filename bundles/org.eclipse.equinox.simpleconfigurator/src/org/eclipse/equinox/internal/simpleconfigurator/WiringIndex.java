@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Eclipse contributors and others.
+ * All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which accompanies this distribution,
+ * and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eclipse contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.simpleconfigurator;
+
+import java.util.*;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.namespace.*;
+import org.osgi.framework.wiring.*;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+
+/**
+ * A snapshot of the wiring of all bundles taken once per apply, before bundles
+ * are installed or uninstalled. It is used to compute the set of bundles that
+ * has to be refreshed for a set of changed bundles in a single pass instead of
+ * refreshing all bundles or asking the framework for providers of every
+ * requirement.
+ */
+class WiringIndex {
+
+	/**
+	 * Map of provider bundle to the bundles that are wired to it.
+	 */
+	private final Map<Bundle, Set<Bundle>> dependents = new HashMap<>();
+
+	/**
+	 * Optional package and bundle requirements of resolved bundles that are not
+	 * wired, by namespace, together with the (host) bundle owning them.
+	 */
+	private final Map<String, Map<BundleRequirement, Bundle>> unwiredOptional = new HashMap<>();
+
+	private final List<BundleCapability> hostCapabilities = new ArrayList<>();
+
+	private final Map<String, List<Bundle>> bundlesByBsn = new HashMap<>();
+
+	WiringIndex(Bundle[] bundles) {
+		for (Bundle bundle : bundles) {
+			if (bundle.getSymbolicName() != null)
+				bundlesByBsn.computeIfAbsent(bundle.getSymbolicName(), bsn -> new ArrayList<>()).add(bundle);
+			BundleWiring wiring = bundle.adapt(BundleWiring.class);
+			if (wiring == null)
+				continue;
+			for (BundleWire wire : wiring.getProvidedWires(null)) {
+				Bundle requirer = wire.getRequirerWiring().getBundle();
+				if (requirer != bundle)
+					dependents.computeIfAbsent(bundle, b -> new HashSet<>()).add(requirer);
+			}
+			BundleRevision revision = wiring.getRevision();
+			if ((revision.getTypes() & BundleRevision.TYPE_FRAGMENT) == 0)
+				hostCapabilities.addAll(revision.getDeclaredCapabilities(HostNamespace.HOST_NAMESPACE));
+			indexUnwiredOptional(revision, wiring);
+		}
+	}
+
+	private void indexUnwiredOptional(BundleRevision revision, BundleWiring wiring) {
+		Set<BundleRequirement> optionalReqs = new HashSet<>();
+		for (BundleRequirement req : revision.getDeclaredRequirements(null)) {
+			String namespace = req.getNamespace();
+			// only do this for package and bundle namespaces
+			if (PackageNamespace.PACKAGE_NAMESPACE.equals(namespace) || BundleNamespace.BUNDLE_NAMESPACE.equals(namespace)) {
+				if (Namespace.RESOLUTION_OPTIONAL.equals(req.getDirectives().get(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE)))
+					optionalReqs.add(req);
+			}
+		}
+		if (optionalReqs.isEmpty())
+			return;
+		BundleWiring hostWiring = getHostWiring(wiring);
+		for (BundleWire requiredWire : hostWiring.getRequiredWires(null))
+			optionalReqs.remove(requiredWire.getRequirement());
+		for (BundleRequirement req : optionalReqs)
+			unwiredOptional.computeIfAbsent(req.getNamespace(), ns -> new HashMap<>()).put(req, hostWiring.getBundle());
+	}
+
+	private static BundleWiring getHostWiring(BundleWiring wiring) {
+		if ((wiring.getRevision().getTypes() & BundleRevision.TYPE_FRAGMENT) == 0)
+			return wiring;
+		List<BundleWire> hostWires = wiring.getRequiredWires(HostNamespace.HOST_NAMESPACE);
+		// just use the first host wiring
+		return hostWires.isEmpty() ? wiring : hostWires.get(0).getProviderWiring();
+	}
+
+	/**
+	 * Computes the transitive set of bundles to refresh for the given installed,
+	 * updated and uninstalled bundles. The set contains the changed bundles, the
+	 * other bundles with the same symbolic name, the hosts of new fragments that
+	 * carry additional requirements, the resolved bundles with an optional
+	 * requirement a new bundle can now satisfy, and every bundle wired to any of
+	 * those.
+	 *
+	 * @param changed the bundles that were installed, updated or uninstalled
+	 * @param doNotRefresh bundles that are never refreshed
+	 * @return the bundles to refresh
+	 */
+	Set<Bundle> computeRefreshSet(Collection<Bundle> changed, Set<Bundle> doNotRefresh) {
+		Deque<Bundle> queue = new ArrayDeque<>();
+		for (Bundle bundle : changed) {
+			queue.add(bundle);
+			if (bundle.getSymbolicName() != null)
+				queue.addAll(bundlesByBsn.getOrDefault(bundle.getSymbolicName(), List.of()));
+			if (bundle.getState() != Bundle.INSTALLED)
+				continue;
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			if (revision == null)
+				continue;
+			if ((revision.getTypes() & BundleRevision.TYPE_FRAGMENT) != 0)
+				addPayloadHosts(revision, queue);
+			for (BundleCapability capability : revision.getDeclaredCapabilities(null)) {
+				Map<BundleRequirement, Bundle> candidates = unwiredOptional.get(capability.getNamespace());
+				if (candidates == null)
+					continue;
+				for (Map.Entry<BundleRequirement, Bundle> candidate : candidates.entrySet()) {
+					if (candidate.getKey().matches(capability))
+						queue.add(candidate.getValue());
+				}
+			}
+		}
+
+		Set<Bundle> result = new LinkedHashSet<>();
+		while (!queue.isEmpty()) {
+			Bundle bundle = queue.poll();
+			if (doNotRefresh.contains(bundle) || !result.add(bundle))
+				continue;
+			queue.addAll(dependents.getOrDefault(bundle, Set.of()));
+		}
+		return result;
+	}
+
+	private void addPayloadHosts(BundleRevision fragment, Collection<Bundle> queue) {
+		// an unresolved fragment with additional payload requirements changes the wiring of its hosts
+		BundleRequirement hostReq = null;
+		boolean foundPayLoadReq = false;
+		for (Requirement requirement : fragment.getRequirements(null)) {
+			BundleRequirement req = (BundleRequirement) requirement;
+			if (HostNamespace.HOST_NAMESPACE.equals(req.getNamespace()))
+				hostReq = req;
+			else if (!ExecutionEnvironmentNamespace.EXECUTION_ENVIRONMENT_NAMESPACE.equals(req.getNamespace()))
+				foundPayLoadReq = true;
+		}
+		if (!foundPayLoadReq || hostReq == null)
+			return;
+		for (BundleCapability capability : hostCapabilities) {
+			if (hostReq.matches(capability))
+				queue.add(capability.getRevision().getBundle());
+		}
+	}
+}